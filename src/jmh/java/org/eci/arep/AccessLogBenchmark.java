@@ -0,0 +1,69 @@
+package org.eci.arep;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What logging a request costs the request thread: a record handed to the {@link AccessLog} ring, against a
+ * line formatted and printed through an autoflushing {@link PrintStream}, as {@code System.out} does. Both write
+ * to the same kind of file; the ring blocks when full, so its writer keeps up with every record measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessLogBenchmark {
+
+    private final String target = "/temp?msg=hello";
+    private Path ringFile;
+    private Path printFile;
+    private AccessLog log;
+    private PrintStream printer;
+
+    @Setup
+    public void setUp() throws IOException {
+        ringFile = Files.createTempFile("access", ".log");
+        printFile = Files.createTempFile("print", ".log");
+        log = new AccessLog(ringFile, 8192, true, Long.MAX_VALUE, 1);
+        log.start();
+        printer = new PrintStream(new FileOutputStream(printFile.toFile()), true);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        log.close();
+        printer.close();
+        Files.deleteIfExists(ringFile);
+        Files.deleteIfExists(printFile);
+    }
+
+    @Benchmark
+    public void ring() {
+        log.log("GET", target, "HTTP/1.1", 200, 13, 412_000);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void ringContended() {
+        log.log("GET", target, "HTTP/1.1", 200, 13, 412_000);
+    }
+
+    @Benchmark
+    public void println() {
+        printer.println(System.currentTimeMillis() + " \"GET " + target + " HTTP/1.1\" 200 13 0.412");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void printlnContended() {
+        printer.println(System.currentTimeMillis() + " \"GET " + target + " HTTP/1.1\" 200 13 0.412");
+    }
+}
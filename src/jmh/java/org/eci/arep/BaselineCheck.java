@@ -0,0 +1,106 @@
+package org.eci.arep;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares a JMH CSV result file with the checked-in baseline and exits with status 1 when a benchmark got
+ * slower than the time tolerance or allocates more per operation than the allocation tolerance. Allocation per
+ * operation is stable across machines; times are only comparable on the machine that recorded the baseline.
+ */
+public class BaselineCheck {
+    private static final String ALLOCATION = ":gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws IOException {
+        Path baselineFile = Paths.get(args.length > 0 ? args[0] : "src/jmh/baseline.csv");
+        Path resultFile = Paths.get(args.length > 1 ? args[1] : "target/jmh-result.csv");
+        double timeTolerance = Double.parseDouble(System.getProperty("time.tolerance", "0.25"));
+        double allocationTolerance = Double.parseDouble(System.getProperty("alloc.tolerance", "0.05"));
+
+        Map<String, Double> baseline = read(baselineFile);
+        Map<String, Double> result = read(resultFile);
+        int regressions = 0;
+        for (Map.Entry<String, Double> entry : result.entrySet()) {
+            Double before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.println("NEW       " + entry.getKey() + " " + format(entry.getValue()));
+                continue;
+            }
+            double after = entry.getValue();
+            boolean allocation = entry.getKey().contains(ALLOCATION);
+            // a few bytes of slack keeps zero-allocation benchmarks from failing on rounding noise
+            double limit = allocation ? before * (1 + allocationTolerance) + 16 : before * (1 + timeTolerance);
+            boolean regressed = after > limit;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-9s %s %s -> %s%n", regressed ? "REGRESSED" : "ok", entry.getKey(),
+                    format(before), format(after));
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed against " + baselineFile);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Time and allocation per operation of each benchmark, keyed by name, parameters and unit; the other
+     * profiler metrics depend on the run and are skipped.
+     */
+    private static Map<String, Double> read(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        List<String> header = split(lines.get(0));
+        int score = header.indexOf("Score");
+        int unit = header.indexOf("Unit");
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> fields = split(line);
+            String name = fields.get(0);
+            if (name.contains(":") && !name.contains(ALLOCATION)) {
+                continue;
+            }
+            StringBuilder key = new StringBuilder(name);
+            for (int i = unit + 1; i < fields.size(); i++) {
+                if (!fields.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).replace("Param: ", "")).append('=').append(fields.get(i));
+                }
+            }
+            key.append(" [").append(fields.get(unit)).append(']');
+            scores.put(key.toString(), Double.parseDouble(fields.get(score).replace(',', '.')));
+        }
+        return scores;
+    }
+
+    private static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String format(double value) {
+        return String.format("%.3f", value);
+    }
+}
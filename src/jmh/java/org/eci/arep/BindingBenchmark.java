@@ -0,0 +1,76 @@
+package org.eci.arep;
+
+import org.eci.arep.annotations.RequestParam;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a request's query string into controller arguments: the previous per-parameter
+ * {@code split} of the whole query against the precompiled {@link BindingPlan} over a query decoded once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingBenchmark {
+
+    public static String profile(@RequestParam("name") String name, @RequestParam("height") double height,
+                                 @RequestParam("age") int age, @RequestParam(value = "active", defaultValue = "true") boolean active) {
+        return name;
+    }
+
+    @Param({"4", "16"})
+    public int extraParams;
+
+    private URI uri;
+    private Route route;
+    private RouteMatch match;
+
+    @Setup
+    public void setUp() throws Exception {
+        StringBuilder query = new StringBuilder("/users?");
+        for (int i = 0; i < extraParams; i++) {
+            query.append("filler").append(i).append("=value%20").append(i).append('&');
+        }
+        query.append("name=Ana+Maria&height=1.68&age=31");
+        uri = new URI(query.toString());
+        route = new Route("GET", "/users", BindingBenchmark.class.getMethod("profile",
+                String.class, double.class, int.class, boolean.class), args -> null);
+        match = new RouteMatch();
+        match.reset("/users");
+        match.setRoute(route);
+    }
+
+    @Benchmark
+    public Object[] splitPerParameter() {
+        Object[] args = new Object[4];
+        args[0] = splitLookup("name");
+        args[1] = Double.parseDouble(splitLookup("height"));
+        args[2] = Integer.parseInt(splitLookup("age"));
+        String active = splitLookup("active");
+        args[3] = Boolean.parseBoolean(active != null ? active : "true");
+        return args;
+    }
+
+    @Benchmark
+    public Object[] bindingPlan() {
+        HttpRequest request = new HttpRequest();
+        request.setUri(uri);
+        return route.getBindingPlan().bind(request, match);
+    }
+
+    private String splitLookup(String name) {
+        String query = uri.getQuery().split("#")[0];
+        for (String param : query.split("&")) {
+            String[] keyValue = param.split("=", 2);
+            if (keyValue.length == 2 && keyValue[0].equals(name)) {
+                return keyValue[1];
+            }
+        }
+        return null;
+    }
+}
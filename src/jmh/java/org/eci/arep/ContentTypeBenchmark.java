@@ -0,0 +1,42 @@
+package org.eci.arep;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Content type lookup for a static file: the previous lower-cased copy tested with {@code endsWith} against
+ * {@link HttpServer#getContentType(String)}, which matches the extension in place.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentTypeBenchmark {
+
+    @Param({"/assets/css/Site.Main.CSS", "/images/gallery/2024/holiday-photo.jpeg", "/downloads/archive.tar.xz"})
+    public String path;
+
+    @Benchmark
+    public String lowerCaseAndEndsWith() {
+        String name = path.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".html") || name.endsWith(".htm")) return "text/html; charset=utf-8";
+        if (name.endsWith(".css"))  return "text/css; charset=utf-8";
+        if (name.endsWith(".js"))   return "application/javascript; charset=utf-8";
+        if (name.endsWith(".json")) return "application/json; charset=utf-8";
+        if (name.endsWith(".png"))  return "image/png";
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg")) return "image/jpeg";
+        if (name.endsWith(".gif"))  return "image/gif";
+        if (name.endsWith(".svg"))  return "image/svg+xml";
+        if (name.endsWith(".ico"))  return "image/x-icon";
+        return "application/octet-stream";
+    }
+
+    @Benchmark
+    public String regionMatches() {
+        return HttpServer.getContentType(path);
+    }
+}
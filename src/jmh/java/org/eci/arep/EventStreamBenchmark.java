@@ -0,0 +1,69 @@
+package org.eci.arep;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Broadcasting one event to many subscribers: encoded once and shared, against encoding it for each
+ * subscriber, as a server that formats every client's response separately would. Subscribers are drained in
+ * place, so the figures cover encoding and queueing but not socket writes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventStreamBenchmark {
+
+    public record Update(String name, double height) {
+    }
+
+    @Param({"10", "1000"})
+    public int subscribers;
+
+    private final Update update = new Update("ana", 1.62);
+    private EventStream stream;
+    private EventStream.Subscription[] subscriptions;
+
+    @Setup
+    public void setUp() {
+        stream = new EventStream();
+        subscriptions = new EventStream.Subscription[subscribers];
+        for (int i = 0; i < subscribers; i++) {
+            subscriptions[i] = stream.subscribe();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        stream.close();
+    }
+
+    @Benchmark
+    public int shared() {
+        stream.publish("saved", update);
+        return drain();
+    }
+
+    @Benchmark
+    public int perSubscriber() {
+        int bytes = 0;
+        for (EventStream.Subscription subscription : subscriptions) {
+            bytes += EventStream.encode("saved", update).bytes.length;
+        }
+        return bytes + drain();
+    }
+
+    private int drain() {
+        int bytes = 0;
+        for (EventStream.Subscription subscription : subscriptions) {
+            for (EventStream.Event event = subscription.poll(); event != null; event = subscription.poll()) {
+                subscription.sent(event.bytes.length);
+                bytes += event.bytes.length;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,49 @@
+package org.eci.arep;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of dispatching to a controller method: reflective {@code Method.invoke} (the previous
+ * dispatch), the compiled {@link Invoker}, and a plain Java call as the floor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvokerBenchmark {
+
+    public static double scale(String name, double height) {
+        return name.length() * height;
+    }
+
+    private Method method;
+    private Invoker invoker;
+    private Object[] args;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        method = InvokerBenchmark.class.getMethod("scale", String.class, double.class);
+        invoker = Invokers.compile(method, null);
+        args = new Object[]{"benchmark", 1.75};
+    }
+
+    @Benchmark
+    public Object reflective() throws Exception {
+        return method.invoke(null, args);
+    }
+
+    @Benchmark
+    public Object compiled() throws Throwable {
+        return invoker.invoke(args);
+    }
+
+    @Benchmark
+    public Object direct() {
+        return scale((String) args[0], (Double) args[1]);
+    }
+}
@@ -0,0 +1,100 @@
+package org.eci.arep;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.RecordComponent;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A record result encoded by its compiled {@link JsonWriter}, against building the same document by string
+ * concatenation and against a reflective encoder that looks up and invokes the accessors on every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    public record Item(long id, String label, double price, boolean available) {
+    }
+
+    public record Order(String customer, List<Item> items) {
+    }
+
+    @Param({"1", "100"})
+    public int items;
+
+    private Order order;
+    private JsonWriter writer;
+
+    @Setup
+    public void setUp() {
+        List<Item> list = new ArrayList<>();
+        for (int i = 0; i < items; i++) {
+            list.add(new Item(i, "item " + i, 9.5 + i, i % 2 == 0));
+        }
+        order = new Order("bench", list);
+        writer = JsonWriters.forType(Order.class);
+    }
+
+    @Benchmark
+    public byte[] compiled() {
+        return JsonOutput.encode(writer, order);
+    }
+
+    @Benchmark
+    public byte[] concatenation() {
+        StringBuilder body = new StringBuilder("{\"customer\":\"").append(order.customer()).append("\",\"items\":[");
+        for (int i = 0; i < order.items().size(); i++) {
+            Item item = order.items().get(i);
+            body.append(i == 0 ? "" : ",").append("{\"id\":").append(item.id()).append(",\"label\":\"").append(item.label())
+                    .append("\",\"price\":").append(item.price()).append(",\"available\":").append(item.available()).append('}');
+        }
+        return body.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] reflective() throws ReflectiveOperationException {
+        StringBuilder body = new StringBuilder();
+        reflect(order, body);
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void reflect(Object value, StringBuilder body) throws ReflectiveOperationException {
+        if (value == null || value instanceof Number || value instanceof Boolean) {
+            body.append(value);
+        } else if (value instanceof String) {
+            body.append('"').append(value).append('"');
+        } else if (value instanceof Collection) {
+            body.append('[');
+            boolean first = true;
+            for (Object element : (Collection<?>) value) {
+                body.append(first ? "" : ",");
+                first = false;
+                reflect(element, body);
+            }
+            body.append(']');
+        } else {
+            body.append('{');
+            RecordComponent[] components = value.getClass().getRecordComponents();
+            for (int i = 0; i < components.length; i++) {
+                Method accessor = components[i].getAccessor();
+                body.append(i == 0 ? "\"" : ",\"").append(components[i].getName()).append("\":");
+                try {
+                    reflect(accessor.invoke(value), body);
+                } catch (InvocationTargetException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            body.append('}');
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package org.eci.arep;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load against a running server, by default one started in this JVM with {@link HttpServer#run}.
+ * <p>
+ * In the open loop, requests are scheduled at a constant rate spread over the connections and latency is
+ * measured from the time each request was due, so a stalled server is charged for the requests it delayed. In
+ * the closed loop, each connection sends its next request when the previous one completes; the corrected
+ * histogram adds the samples a stalled connection missed, using its mean warmup latency as the expected interval.
+ * The report is written as JSON.
+ * <pre>
+ * mvn -Pbenchmarks test-compile exec:exec@load -Dload.args="--mode=open --rate=2000 --duration=20"
+ * </pre>
+ * Options ({@code --name=value}): {@code mode} (open|closed), {@code rate} (requests per second, open loop),
+ * {@code connections}, {@code duration} and {@code warmup} (seconds), {@code keepalive}, {@code mix} (weighted
+ * paths, {@code 3@/index.html,1@/hello?name=x}), {@code embedded}, {@code host}, {@code port}, {@code out}, and
+ * {@code server.NAME} to set a server variable such as {@code server.SERVER_ENGINE=nio}.
+ */
+public class LoadGenerator {
+    private static final String DEFAULT_MIX = "4@/index.html,1@/styles.css,1@/script.js,"
+            + "3@/hello?name=load,1@/users?name=load&height=1.7";
+
+    private final String mode;
+    private final double rate;
+    private final int connections;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final boolean keepAlive;
+    private final String host;
+    private final int port;
+    private final String[] paths;
+    private final int[] cumulativeWeights;
+
+    private final LatencyHistogram corrected = new LatencyHistogram();
+    private final LatencyHistogram uncorrected = new LatencyHistogram();
+    private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+
+    LoadGenerator(Map<String, String> options) {
+        mode = options.getOrDefault("mode", "closed");
+        rate = Double.parseDouble(options.getOrDefault("rate", "1000"));
+        connections = Integer.parseInt(options.getOrDefault("connections", "16"));
+        durationNanos = (long) (Double.parseDouble(options.getOrDefault("duration", "10")) * 1e9);
+        warmupNanos = (long) (Double.parseDouble(options.getOrDefault("warmup", "2")) * 1e9);
+        keepAlive = Boolean.parseBoolean(options.getOrDefault("keepalive", "true"));
+        host = options.getOrDefault("host", "localhost");
+        port = Integer.parseInt(options.getOrDefault("port", String.valueOf(ServerConfig.getInt("PORT", 35000))));
+
+        String[] entries = options.getOrDefault("mix", DEFAULT_MIX).split(",");
+        paths = new String[entries.length];
+        cumulativeWeights = new int[entries.length];
+        int total = 0;
+        for (int i = 0; i < entries.length; i++) {
+            int at = entries[i].indexOf('@');
+            total += at > 0 ? Integer.parseInt(entries[i].substring(0, at)) : 1;
+            paths[i] = entries[i].substring(at + 1);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String name = arg.substring(2, eq > 0 ? eq : arg.length());
+            options.put(name, eq > 0 ? arg.substring(eq + 1) : "true");
+            if (name.startsWith("server.")) {
+                System.setProperty(name.substring("server.".length()), options.get(name));
+            }
+        }
+        LoadGenerator generator = new LoadGenerator(options);
+        if (Boolean.parseBoolean(options.getOrDefault("embedded", "true"))) {
+            generator.startServer();
+        }
+        String report = generator.run();
+        Path out = Paths.get(options.getOrDefault("out", "target/load-result.json"));
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        Files.writeString(out, report);
+        System.out.println(report);
+        System.exit(0);
+    }
+
+    private void startServer() throws InterruptedException {
+        System.setProperty("PORT", String.valueOf(port));
+        Thread server = new Thread(() -> {
+            try {
+                HttpServer.run(new String[0]);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, "embedded-server");
+        server.setDaemon(true);
+        server.start();
+        for (int attempt = 0; attempt < 100; attempt++) {
+            try (Socket probe = new Socket()) {
+                probe.connect(new InetSocketAddress(host, port), 100);
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("Server did not start on port " + port);
+    }
+
+    String run() throws InterruptedException {
+        boolean open = "open".equals(mode);
+        long start = System.nanoTime() + 50_000_000L;
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        long intervalNanos = (long) (1e9 / rate);
+
+        List<Thread> workers = new ArrayList<>(connections);
+        for (int c = 0; c < connections; c++) {
+            int connection = c;
+            Thread worker = new Thread(() -> {
+                if (open) {
+                    openLoop(connection, start, intervalNanos, measureFrom, end);
+                } else {
+                    closedLoop(start, measureFrom, end);
+                }
+            }, "load-" + c);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return report();
+    }
+
+    /**
+     * Sends requests {@code connection}, {@code connection + connections}, ... of the global schedule.
+     */
+    private void openLoop(int connection, long start, long intervalNanos, long measureFrom, long end) {
+        try (Client client = new Client()) {
+            for (long i = connection; ; i += connections) {
+                long due = start + i * intervalNanos;
+                if (due >= end) {
+                    return;
+                }
+                long now;
+                while ((now = System.nanoTime()) < due) {
+                    LockSupport.parkNanos(due - now);
+                }
+                int status = client.send(nextPath());
+                long done = System.nanoTime();
+                if (due >= measureFrom) {
+                    record(status, done - due, done - now);
+                }
+            }
+        }
+    }
+
+    private void closedLoop(long start, long measureFrom, long end) {
+        long now;
+        while ((now = System.nanoTime()) < start) {
+            LockSupport.parkNanos(start - now);
+        }
+        long warmupTotal = 0;
+        long warmupCount = 0;
+        try (Client client = new Client()) {
+            while ((now = System.nanoTime()) < end) {
+                int status = client.send(nextPath());
+                long latency = System.nanoTime() - now;
+                if (now < measureFrom) {
+                    warmupTotal += latency;
+                    warmupCount++;
+                } else if (status > 0) {
+                    statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+                    uncorrected.record(latency);
+                    corrected.recordCorrected(latency, warmupCount == 0 ? 0 : warmupTotal / warmupCount);
+                }
+            }
+        }
+    }
+
+    private void record(int status, long latency, long serviceTime) {
+        if (status > 0) {
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+            corrected.record(latency);
+            uncorrected.record(serviceTime);
+        }
+    }
+
+    private String nextPath() {
+        int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int i = 0;
+        while (cumulativeWeights[i] <= pick) {
+            i++;
+        }
+        return paths[i];
+    }
+
+    private String report() {
+        StringBuilder json = new StringBuilder(512);
+        json.append("{\n  \"mode\": \"").append(mode).append('"');
+        if ("open".equals(mode)) {
+            json.append(",\n  \"targetRate\": ").append(rate);
+        }
+        json.append(",\n  \"connections\": ").append(connections)
+                .append(",\n  \"keepAlive\": ").append(keepAlive)
+                .append(",\n  \"engine\": \"").append(ServerConfig.getString("SERVER_ENGINE", "blocking")).append('"')
+                .append(",\n  \"durationSeconds\": ").append(durationNanos / 1e9)
+                .append(",\n  \"requests\": ").append(uncorrected.getCount())
+                .append(",\n  \"errors\": ").append(errors.sum())
+                .append(",\n  \"throughput\": ").append(format(uncorrected.getCount() / (durationNanos / 1e9)))
+                .append(",\n  \"bytesIn\": ").append(bytesIn.sum())
+                .append(",\n  \"statuses\": {");
+        String separator = "";
+        for (Map.Entry<Integer, LongAdder> status : new TreeMap<>(statuses).entrySet()) {
+            json.append(separator).append('"').append(status.getKey()).append("\": ").append(status.getValue().sum());
+            separator = ", ";
+        }
+        json.append("},\n  \"latencyMicros\": ");
+        latencies(json, corrected);
+        json.append(",\n  \"uncorrectedLatencyMicros\": ");
+        latencies(json, uncorrected);
+        return json.append("\n}\n").toString();
+    }
+
+    private static void latencies(StringBuilder json, LatencyHistogram histogram) {
+        json.append("{\"p50\": ").append(micros(histogram.getPercentile(50)))
+                .append(", \"p90\": ").append(micros(histogram.getPercentile(90)))
+                .append(", \"p99\": ").append(micros(histogram.getPercentile(99)))
+                .append(", \"p99.9\": ").append(micros(histogram.getPercentile(99.9)))
+                .append(", \"max\": ").append(micros(histogram.getMax()))
+                .append(", \"mean\": ").append(micros((long) histogram.getMean()))
+                .append(", \"samples\": ").append(histogram.getCount()).append('}');
+    }
+
+    private static String micros(long nanos) {
+        return format(nanos / 1000.0);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    /**
+     * One HTTP/1.1 connection, reopened whenever the server or the keep-alive setting closes it.
+     */
+    private final class Client implements AutoCloseable {
+        private Socket socket;
+        private InputStream in;
+        private OutputStream out;
+
+        /**
+         * Sends a GET and reads the whole response; returns its status, or 0 when the exchange failed.
+         */
+        int send(String path) {
+            try {
+                if (socket == null) {
+                    socket = new Socket(host, port);
+                    socket.setTcpNoDelay(true);
+                    in = new BufferedInputStream(socket.getInputStream(), 16 * 1024);
+                    out = socket.getOutputStream();
+                }
+                out.write(("GET " + path + " HTTP/1.1\r\nHost: " + host + ":" + port + "\r\nConnection: "
+                        + (keepAlive ? "keep-alive" : "close") + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+                return readResponse();
+            } catch (IOException | RuntimeException e) {
+                errors.increment();
+                close();
+                return 0;
+            }
+        }
+
+        private int readResponse() throws IOException {
+            String statusLine = readLine();
+            int status = Integer.parseInt(statusLine.substring(9, 12));
+            long length = -1;
+            boolean chunked = false;
+            boolean close = !keepAlive;
+            String line;
+            while (!(line = readLine()).isEmpty()) {
+                String header = line.toLowerCase(Locale.ROOT);
+                if (header.startsWith("content-length:")) {
+                    length = Long.parseLong(header.substring(15).trim());
+                } else if (header.startsWith("transfer-encoding:")) {
+                    chunked = header.contains("chunked");
+                } else if (header.startsWith("connection:")) {
+                    close |= header.contains("close");
+                }
+            }
+            if (chunked) {
+                long size;
+                while ((size = Long.parseLong(readLine().split(";")[0].trim(), 16)) > 0) {
+                    skip(size);
+                    readLine();
+                }
+                while (!readLine().isEmpty()) {
+                    // trailers
+                }
+            } else if (length >= 0) {
+                skip(length);
+            } else {
+                while (in.read() >= 0) {
+                    bytesIn.increment();
+                }
+                close = true;
+            }
+            if (close) {
+                close();
+            }
+            return status;
+        }
+
+        private void skip(long count) throws IOException {
+            bytesIn.add(count);
+            while (count > 0) {
+                long skipped = in.skip(count);
+                if (skipped <= 0) {
+                    if (in.read() < 0) {
+                        throw new IOException("Connection closed mid-body");
+                    }
+                    skipped = 1;
+                }
+                count -= skipped;
+            }
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder(64);
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b < 0) {
+                    throw new IOException("Connection closed");
+                }
+                if (b != '\r') {
+                    line.append((char) b);
+                }
+            }
+            bytesIn.add(line.length() + 2);
+            return line.toString();
+        }
+
+        @Override
+        public void close() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+                socket = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.eci.arep;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost that request instrumentation adds to every request: the full {@link Metrics#requestStarted()} and
+ * {@link Metrics#requestFinished} pair against its two clock reads alone, on one thread and with four threads
+ * recording into the same route. Compare each variant with the clock floor of the same thread count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+    private final Metrics.RouteMetrics route = Metrics.route("/benchmark/{id}");
+
+    @Benchmark
+    public long clockOnly() {
+        long started = System.nanoTime();
+        return System.nanoTime() - started;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long clockOnlyContended() {
+        long started = System.nanoTime();
+        return System.nanoTime() - started;
+    }
+
+    @Benchmark
+    public void record() {
+        Metrics.requestFinished(route, 200, Metrics.requestStarted());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended() {
+        Metrics.requestFinished(route, 200, Metrics.requestStarted());
+    }
+}
@@ -0,0 +1,73 @@
+package org.eci.arep;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse throughput for a typical browser request: the previous {@code BufferedReader}/{@code split}/{@code URI}
+ * reader against {@link HttpRequestParser}, both reading the path and one header as a handler would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    private static final byte[] REQUEST = ("GET /users/profile?name=Ana&height=1.68 HTTP/1.1\r\n"
+            + "Host: localhost:35000\r\n"
+            + "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:128.0) Gecko/20100101 Firefox/128.0\r\n"
+            + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"
+            + "Accept-Language: es-CO,es;q=0.8,en-US;q=0.5,en;q=0.3\r\n"
+            + "Accept-Encoding: gzip, deflate, br, zstd\r\n"
+            + "Connection: keep-alive\r\n"
+            + "Upgrade-Insecure-Requests: 1\r\n"
+            + "Sec-Fetch-Dest: document\r\n"
+            + "Sec-Fetch-Mode: navigate\r\n"
+            + "Sec-Fetch-Site: none\r\n"
+            + "Priority: u=0, i\r\n"
+            + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+    private HttpRequestParser parser;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        parser = new HttpRequestParser();
+        buffer = ByteBuffer.wrap(REQUEST);
+    }
+
+    @Benchmark
+    public Object readerAndSplit() throws IOException, URISyntaxException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(REQUEST),
+                StandardCharsets.ISO_8859_1));
+        String[] parts = in.readLine().split(" ");
+        HttpRequest request = new HttpRequest();
+        request.setMethod(parts[0]);
+        request.setUri(new URI(parts[1]));
+        request.setHttpVersion(parts[2]);
+        String line;
+        while ((line = in.readLine()) != null && !line.isEmpty()) {
+            String[] header = line.split(":", 2);
+            request.addHeader(header[0].trim(), header[1].trim());
+        }
+        return request.getUri().getPath() + request.getHeader("Connection");
+    }
+
+    @Benchmark
+    public Object byteParser() throws HttpParseException {
+        buffer.clear();
+        HttpRequest request = parser.parse(buffer);
+        return request.getPath() + request.getHeader("Connection");
+    }
+}
@@ -0,0 +1,77 @@
+package org.eci.arep;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the rate limit check costs a request: one client, several threads each with their own client, and a
+ * stream of new addresses that keeps the table reclaiming idle slots. The comparison is a map of token buckets
+ * behind one lock, which also keeps every address it has seen.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    // Fast enough that every request is admitted, so each run measures the whole check.
+    private final RateLimiter limiter = new RateLimiter(1e9, 1000, 65536);
+    private final Map<Long, double[]> buckets = new HashMap<>();
+    private long next = 1L << 32;
+
+    @State(Scope.Thread)
+    public static class Client {
+        private static long keys = 1L << 32;
+        final long key;
+
+        public Client() {
+            synchronized (Client.class) {
+                key = ++keys;
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean oneClient() {
+        return limiter.tryAcquire(1L << 32 | 1);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean clientPerThread(Client client) {
+        return limiter.tryAcquire(client.key);
+    }
+
+    @Benchmark
+    public boolean newClients() {
+        return limiter.tryAcquire(next++);
+    }
+
+    @Benchmark
+    public boolean lockedMap() {
+        return lockedAcquire(1L << 32 | 1);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean lockedMapPerThread(Client client) {
+        return lockedAcquire(client.key);
+    }
+
+    private synchronized boolean lockedAcquire(long client) {
+        double[] bucket = buckets.computeIfAbsent(client, key -> new double[]{1000, System.nanoTime()});
+        long now = System.nanoTime();
+        bucket[0] = Math.min(1000, bucket[0] + (now - bucket[1]));
+        bucket[1] = now;
+        if (bucket[0] < 1) {
+            return false;
+        }
+        bucket[0]--;
+        return true;
+    }
+}
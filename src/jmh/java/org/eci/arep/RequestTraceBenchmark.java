@@ -0,0 +1,61 @@
+package org.eci.arep;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the pipeline instrumentation costs a request: the checks the engines make when tracing is off, against a
+ * full trace of every stage handed to the slow request sampler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestTraceBenchmark {
+
+    @Param({"false", "true"})
+    public boolean sampled;
+
+    private static final int[] STAGES = {RequestTrace.QUEUE, RequestTrace.STATIC, RequestTrace.BIND, RequestTrace.INVOKE};
+
+    private final HttpRequest request = new HttpRequest();
+
+    @Setup
+    public void setUp() throws Exception {
+        request.setUri(new URI("/temp"));
+        if (sampled) {
+            // An interval longer than the run, so nothing is logged while measuring.
+            RequestTrace.startSampler(10, TimeUnit.HOURS.toMillis(1));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        RequestTrace.stopSampler();
+    }
+
+    @Benchmark
+    public RequestTrace request() {
+        RequestTrace trace = RequestTrace.start();
+        if (trace != null) {
+            trace.begin(RequestTrace.PARSE);
+            trace.attach(request);
+            trace.end();
+        }
+        for (int stage : STAGES) {
+            if (trace != null) {
+                trace.begin(stage);
+                trace.end();
+            }
+        }
+        if (trace != null) {
+            trace.begin(RequestTrace.WRITE);
+            trace.finish(200);
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,65 @@
+package org.eci.arep;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing a small dynamic response: the original {@code PrintWriter.printf} writer, the interim
+ * {@code StringBuilder} head encoded through a {@code String}, and {@link HttpResponse#encode()}, which copies
+ * pre-encoded status and header lines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseBenchmark {
+    private static final String BODY = "Greeting from microframework to world";
+
+    @Benchmark
+    public Object printfWriter() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(256);
+        PrintWriter writer = new PrintWriter(output, true);
+        writer.printf("HTTP/1.1 %d %s\r\n", 200, "OK");
+        writer.printf("Content-Type: %s\r\n", "text/plain");
+        writer.printf("Content-Length: %d\r\n", BODY.getBytes().length);
+        writer.print("\r\n");
+        writer.print(BODY);
+        writer.flush();
+        return output;
+    }
+
+    @Benchmark
+    public Object stringBuilderHead() {
+        byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Vary", "Accept-Encoding");
+        StringBuilder head = new StringBuilder(128);
+        head.append("HTTP/1.1 ").append(200).append(' ').append("OK").append("\r\n");
+        head.append("Content-Type: ").append("text/plain").append("\r\n");
+        head.append("Content-Length: ").append(body.length).append("\r\n");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        head.append("Connection: ").append("keep-alive").append("\r\n");
+        head.append("\r\n");
+        return new ByteBuffer[]{ByteBuffer.wrap(head.toString().getBytes(StandardCharsets.ISO_8859_1)), ByteBuffer.wrap(body)};
+    }
+
+    @Benchmark
+    public Object preEncodedHead() {
+        HttpResponse response = new HttpResponse();
+        response.setKeepAlive(true);
+        response.setHeader("Vary", "Accept-Encoding");
+        response.setBody(BODY);
+        return response.encode();
+    }
+}
@@ -0,0 +1,60 @@
+package org.eci.arep;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@code @Cacheable} route's hit against invoking its handler and serializing the result, for a short and a
+ * larger rendered body. Arguments are built per operation, as they are for a real request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseCacheBenchmark {
+
+    public static String render(String name, int items) {
+        StringBuilder body = new StringBuilder("{\"name\":\"").append(name).append("\",\"items\":[");
+        for (int i = 0; i < items; i++) {
+            body.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"label\":\"item ").append(i).append("\"}");
+        }
+        return body.append("]}").toString();
+    }
+
+    @Param({"1", "100"})
+    public int items;
+
+    private Invoker invoker;
+    private ResponseCache cache;
+    private HttpRequest request;
+
+    @Setup
+    public void setUp() throws Throwable {
+        invoker = Invokers.compile(ResponseCacheBenchmark.class.getMethod("render", String.class, int.class), null);
+        cache = new ResponseCache(TimeUnit.HOURS.toMillis(1), 1024, 0);
+        request = new HttpRequest();
+        HttpResponse response = new HttpResponse();
+        Object[] arguments = {"bench", items};
+        if (!cache.serve(arguments, request, response, null)) {
+            response.setBody(String.valueOf(invoker.invoke(arguments)));
+            cache.loaded(arguments, response);
+        }
+    }
+
+    @Benchmark
+    public HttpResponse invoke() throws Throwable {
+        HttpResponse response = new HttpResponse();
+        response.setBody(String.valueOf(invoker.invoke(new Object[]{"bench", items})));
+        return response;
+    }
+
+    @Benchmark
+    public HttpResponse hit() {
+        HttpResponse response = new HttpResponse();
+        cache.serve(new Object[]{"bench", items}, request, response, null);
+        return response;
+    }
+}
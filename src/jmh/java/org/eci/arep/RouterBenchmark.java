@@ -0,0 +1,61 @@
+package org.eci.arep;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Route lookup cost as the route table grows, against the exact-match HashMap that the router replaced.
+ * Run with {@code -prof gc} to confirm the router lookups do not allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouterBenchmark {
+
+    @Param({"10", "100", "1000", "5000"})
+    public int routes;
+
+    private Router router;
+    private Map<String, Route> exact;
+    private RouteMatch match;
+    private String literalPath;
+    private String variablePath;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        router = new Router();
+        exact = new HashMap<>();
+        for (int i = 0; i < routes; i++) {
+            String literal = "/api/service" + i + "/items";
+            String variable = "/api/service" + i + "/items/{id}/details";
+            Route literalRoute = new Route("GET", literal, RouterBenchmark.class.getMethod("setUp"), args -> null);
+            router.add("GET", literal, literalRoute);
+            router.add("GET", variable, new Route("GET", variable, RouterBenchmark.class.getMethod("setUp"), args -> null));
+            exact.put(literal, literalRoute);
+        }
+        match = new RouteMatch();
+        literalPath = "/api/service" + (routes - 1) + "/items";
+        variablePath = "/api/service" + (routes / 2) + "/items/12345/details";
+    }
+
+    @Benchmark
+    public Route hashMapLiteral() {
+        return exact.get(literalPath);
+    }
+
+    @Benchmark
+    public Route radixLiteral() {
+        return router.find("GET", literalPath, match);
+    }
+
+    @Benchmark
+    public Route radixVariable() {
+        return router.find("GET", variablePath, match);
+    }
+}
@@ -0,0 +1,64 @@
+package org.eci.arep;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups and updates of controller state: {@code ConcurrentHashMap<String, Double>}, which boxes every stored
+ * height, against {@link PrimitiveStore}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StoreBenchmark {
+
+    @Param({"1000", "1000000"})
+    public int users;
+
+    private String[] names;
+    private ConcurrentHashMap<String, Double> map;
+    private PrimitiveStore store;
+
+    @Setup
+    public void setUp() {
+        names = new String[users];
+        map = new ConcurrentHashMap<>();
+        store = new PrimitiveStore(users);
+        for (int i = 0; i < users; i++) {
+            names[i] = "user" + i;
+            map.put(names[i], 1.5 + i % 50 / 100.0);
+            store.putDouble(names[i], 1.5 + i % 50 / 100.0);
+        }
+    }
+
+    private String name() {
+        return names[ThreadLocalRandom.current().nextInt(names.length)];
+    }
+
+    @Benchmark
+    public double concurrentHashMapGet() {
+        Double height = map.get(name());
+        return height != null ? height : Double.NaN;
+    }
+
+    @Benchmark
+    public double primitiveStoreGet() {
+        return store.getDouble(name(), Double.NaN);
+    }
+
+    @Benchmark
+    public void concurrentHashMapPut() {
+        map.put(name(), 1.72);
+    }
+
+    @Benchmark
+    public void primitiveStorePut() {
+        store.putDouble(name(), 1.72);
+    }
+}
@@ -0,0 +1,357 @@
+package org.eci.arep;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One line per request, written by a background thread. A request thread claims a slot of a preallocated ring
+ * with a compare-and-set and fills in its fields, so logging neither locks nor allocates. The writer formats
+ * what has been published in batches, with one write per batch, to standard output or to a file it rotates by
+ * size. When the ring is full, records are dropped and counted, or, with {@code ACCESS_LOG_OVERFLOW=block},
+ * the request thread waits for room.
+ * <p>
+ * Lines look like {@code 2026-10-18T09:30:00.125Z "GET /temp?msg=hi HTTP/1.1" 200 13 0.412}: the time the
+ * response was ready, in UTC, the request line, the status, the body bytes ({@code -} when streamed) and the
+ * handling time in milliseconds.
+ */
+final class AccessLog {
+    private static final int MAX_BATCH = 512;
+    private static final long IDLE_PAUSE = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long FULL_PAUSE = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final DateTimeFormatter SECONDS = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    private static final Logger LOGGER = Logger.getLogger(AccessLog.class.getName());
+
+    private static final AccessLog INSTANCE = open();
+
+    private final int mask;
+    private final long[] times;
+    private final long[] durations;
+    private final long[] sizes;
+    private final int[] statuses;
+    private final String[] methods;
+    private final String[] targets;
+    private final String[] versions;
+    private final AtomicLong claimed = new AtomicLong();
+    // Slot i holds the sequence last published into it; it starts one lap behind so no slot reads as ready.
+    private final AtomicLongArray published;
+    private volatile long consumed;
+    private final boolean block;
+    private final LongAdder dropped = new LongAdder();
+
+    private final Path file;
+    private final long maxFileSize;
+    private final int files;
+    private OutputStream out;
+    private long fileSize;
+    // Request lines were decoded as ISO-8859-1, so writing each char as a byte gives back what the client sent.
+    private byte[] batch = new byte[MAX_BATCH * 128];
+    private int batchLength;
+    private long second = Long.MIN_VALUE;
+    private byte[] secondText;
+
+    private volatile boolean running = true;
+    private Thread writer;
+
+    /**
+     * @param file        the log file, or null for standard output
+     * @param capacity    records the ring holds, rounded up to a power of two
+     * @param block       whether request threads wait for room instead of dropping records
+     * @param maxFileSize bytes after which the file is rotated
+     * @param files       rotated files kept beside the current one, as {@code file.1} (newest) to {@code file.N}
+     */
+    AccessLog(Path file, int capacity, boolean block, long maxFileSize, int files) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.times = new long[size];
+        this.durations = new long[size];
+        this.sizes = new long[size];
+        this.statuses = new int[size];
+        this.methods = new String[size];
+        this.targets = new String[size];
+        this.versions = new String[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, i - size);
+        }
+        this.block = block;
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.files = Math.max(1, files);
+    }
+
+    private static AccessLog open() {
+        String target = ServerConfig.getString("ACCESS_LOG", "off");
+        if (target.isEmpty() || "off".equalsIgnoreCase(target)) {
+            return null;
+        }
+        String overflow = ServerConfig.getString("ACCESS_LOG_OVERFLOW", "drop");
+        if (!"drop".equalsIgnoreCase(overflow) && !"block".equalsIgnoreCase(overflow)) {
+            System.err.println("Variable ACCESS_LOG_OVERFLOW has unknown value " + overflow + " using default value drop.");
+        }
+        AccessLog log = new AccessLog("stdout".equalsIgnoreCase(target) ? null : Paths.get(target),
+                ServerConfig.getInt("ACCESS_LOG_BUFFER", 8192), "block".equalsIgnoreCase(overflow),
+                ServerConfig.getLong("ACCESS_LOG_MAX_SIZE", 10 * 1024 * 1024), ServerConfig.getInt("ACCESS_LOG_FILES", 5));
+        log.start();
+        return log;
+    }
+
+    static boolean isEnabled() {
+        return INSTANCE != null;
+    }
+
+    /**
+     * Records a request whose response is ready. {@code response} is null when the handler failed.
+     */
+    static void requestFinished(HttpRequest request, HttpResponse response, int status, long started) {
+        AccessLog log = INSTANCE;
+        if (log != null) {
+            long size = response == null || response.getStreamingBody() != null ? -1 : response.getContentLength();
+            log.log(request.getMethod(), request.getTarget(), request.getHttpVersion(), status, size,
+                    System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Writes out the records already logged and stops the writer.
+     */
+    static void shutdown() {
+        AccessLog log = INSTANCE;
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    static long getDropped() {
+        AccessLog log = INSTANCE;
+        return log != null ? log.dropped() : 0;
+    }
+
+    void start() {
+        writer = new Thread(this::drain, "access-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    void log(String method, String target, String version, int status, long size, long durationNanos) {
+        long sequence;
+        while (true) {
+            sequence = claimed.get();
+            if (sequence - consumed > mask) {
+                if (!block || !running) {
+                    dropped.increment();
+                    return;
+                }
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(FULL_PAUSE);
+            } else if (claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        int slot = (int) sequence & mask;
+        times[slot] = System.currentTimeMillis();
+        durations[slot] = durationNanos;
+        sizes[slot] = size;
+        statuses[slot] = status;
+        methods[slot] = method;
+        targets[slot] = target;
+        versions[slot] = version;
+        published.lazySet(slot, sequence);
+    }
+
+    long dropped() {
+        return dropped.sum();
+    }
+
+    void close() {
+        running = false;
+        Thread thread = writer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void drain() {
+        long next = consumed;
+        try {
+            while (running || next < claimed.get()) {
+                int count = 0;
+                for (int slot = (int) next & mask; count < MAX_BATCH && published.get(slot) == next; slot = (int) next & mask) {
+                    format(slot);
+                    methods[slot] = null;
+                    targets[slot] = null;
+                    versions[slot] = null;
+                    next++;
+                    count++;
+                }
+                if (count == 0) {
+                    LockSupport.parkNanos(IDLE_PAUSE);
+                    continue;
+                }
+                consumed = next;
+                write();
+            }
+        } finally {
+            closeOutput();
+        }
+    }
+
+    private void format(int slot) {
+        long millis = times[slot];
+        long epochSecond = Math.floorDiv(millis, 1000);
+        if (epochSecond != second) {
+            second = epochSecond;
+            secondText = SECONDS.format(LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC))
+                    .getBytes(StandardCharsets.ISO_8859_1);
+        }
+        String method = methods[slot];
+        String target = targets[slot];
+        String version = versions[slot];
+        ensure(secondText.length + String.valueOf(method).length() + String.valueOf(target).length()
+                + String.valueOf(version).length() + 80);
+        System.arraycopy(secondText, 0, batch, batchLength, secondText.length);
+        batchLength += secondText.length;
+        append('.');
+        appendFraction(Math.floorMod(millis, 1000));
+        append('Z');
+        append(' ');
+        append('"');
+        append(method);
+        append(' ');
+        append(target);
+        append(' ');
+        append(version);
+        append('"');
+        append(' ');
+        appendLong(statuses[slot]);
+        append(' ');
+        if (sizes[slot] < 0) {
+            append('-');
+        } else {
+            appendLong(sizes[slot]);
+        }
+        append(' ');
+        long micros = TimeUnit.NANOSECONDS.toMicros(durations[slot]);
+        appendLong(micros / 1000);
+        append('.');
+        appendFraction(micros % 1000);
+        append('\n');
+    }
+
+    private void ensure(int extra) {
+        if (batchLength + extra > batch.length) {
+            batch = Arrays.copyOf(batch, Math.max(batch.length * 2, batchLength + extra));
+        }
+    }
+
+    private void append(char c) {
+        batch[batchLength++] = (byte) c;
+    }
+
+    private void append(String text) {
+        if (text == null) {
+            text = "-";
+        }
+        for (int i = 0, length = text.length(); i < length; i++) {
+            batch[batchLength++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void appendFraction(long thousandths) {
+        append((char) ('0' + thousandths / 100));
+        append((char) ('0' + thousandths / 10 % 10));
+        append((char) ('0' + thousandths % 10));
+    }
+
+    private void appendLong(long value) {
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = batchLength + digits - 1; i >= batchLength; i--) {
+            batch[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        batchLength += digits;
+    }
+
+    private void write() {
+        int length = batchLength;
+        batchLength = 0;
+        try {
+            if (out == null) {
+                open(false);
+            }
+            if (file != null && fileSize > 0 && fileSize + length > maxFileSize) {
+                open(true);
+            }
+            out.write(batch, 0, length);
+            fileSize += length;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not write the access log", e);
+            closeOutput();
+        }
+    }
+
+    private void open(boolean rotate) throws IOException {
+        if (file == null) {
+            out = new FileOutputStream(FileDescriptor.out);
+            return;
+        }
+        closeOutput();
+        if (rotate && Files.exists(file)) {
+            for (int i = files - 1; i >= 1; i--) {
+                Path older = rotated(i);
+                if (Files.exists(older)) {
+                    Files.move(older, rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        fileSize = Files.size(file);
+    }
+
+    private Path rotated(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void closeOutput() {
+        OutputStream stream = out;
+        out = null;
+        if (stream != null && file != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not close the access log", e);
+            }
+        }
+    }
+}
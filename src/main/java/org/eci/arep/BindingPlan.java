@@ -0,0 +1,170 @@
+package org.eci.arep;
+
+import org.eci.arep.annotations.PathVariable;
+import org.eci.arep.annotations.RequestParam;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * How to fill the arguments of one controller method, worked out once when the route is registered: annotation
+ * names, default values, path variable indexes and a converter for each parameter type. Binding a request then
+ * only looks values up and converts them. A value that does not convert, or a missing value for a primitive or
+ * required parameter, fails the binding with a {@link BindingException}, which is answered with
+ * {@code 400 Bad Request}.
+ */
+public class BindingPlan {
+
+    interface Converter {
+        Object convert(String value);
+    }
+
+    private interface Binder {
+        Object bind(HttpRequest request, RouteMatch match);
+    }
+
+    /**
+     * A request whose values cannot be bound to the handler's parameters.
+     */
+    static final class BindingException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BindingException(String message) {
+            super(message);
+        }
+    }
+
+    private static final Binder UNBOUND = (request, match) -> null;
+
+    private final Binder[] binders;
+
+    private BindingPlan(Binder[] binders) {
+        this.binders = binders;
+    }
+
+    public static BindingPlan compile(Method method, List<String> variables) {
+        Parameter[] parameters = method.getParameters();
+        Binder[] binders = new Binder[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            binders[i] = binder(parameters[i], variables);
+        }
+        return new BindingPlan(binders);
+    }
+
+    public Object[] bind(HttpRequest request, RouteMatch match) {
+        Object[] args = new Object[binders.length];
+        for (int i = 0; i < binders.length; i++) {
+            args[i] = binders[i].bind(request, match);
+        }
+        return args;
+    }
+
+    private static Binder binder(Parameter parameter, List<String> variables) {
+        Class<?> type = parameter.getType();
+
+        PathVariable variable = parameter.getAnnotation(PathVariable.class);
+        if (variable != null) {
+            int index = variables.indexOf(variable.value());
+            if (index < 0) {
+                return UNBOUND;
+            }
+            if (type == Optional.class) {
+                Converter converter = converter(elementType(parameter));
+                return (request, match) -> Optional.ofNullable(convert(converter, variable.value(), match.getVariable(index)));
+            }
+            Converter converter = converter(type);
+            return (request, match) -> required(convert(converter, variable.value(), match.getVariable(index)),
+                    variable.value(), type.isPrimitive());
+        }
+
+        RequestParam param = parameter.getAnnotation(RequestParam.class);
+        if (param == null) {
+            return UNBOUND;
+        }
+        String name = param.value();
+        String defaultValue = RequestParam.DEFAULT_NONE.equals(param.defaultValue()) ? null : param.defaultValue();
+
+        if (type == List.class || type == Collection.class || type == Iterable.class) {
+            Converter converter = converter(elementType(parameter));
+            return (request, match) -> {
+                List<String> values = request.getAllValues(name);
+                if (values == null || values.isEmpty()) {
+                    values = defaultValue != null ? List.of(defaultValue) : List.of();
+                }
+                List<Object> converted = new ArrayList<>(values.size());
+                for (String value : values) {
+                    converted.add(convert(converter, name, value));
+                }
+                return converted;
+            };
+        }
+        if (type == Optional.class) {
+            Converter converter = converter(elementType(parameter));
+            return (request, match) -> Optional.ofNullable(
+                    convert(converter, name, valueOrDefault(request.getValues(name), defaultValue)));
+        }
+        Converter converter = converter(type);
+        boolean required = param.required() || type.isPrimitive();
+        return (request, match) -> required(convert(converter, name, valueOrDefault(request.getValues(name), defaultValue)),
+                name, required);
+    }
+
+    private static String valueOrDefault(String value, String defaultValue) {
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    private static Object convert(Converter converter, String name, String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return converter.convert(value);
+        } catch (IllegalArgumentException e) {
+            throw new BindingException("Invalid value for " + name + ": " + value);
+        }
+    }
+
+    private static Object required(Object value, String name, boolean required) {
+        if (value == null && required) {
+            throw new BindingException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private static Class<?> elementType(Parameter parameter) {
+        Type type = parameter.getParameterizedType();
+        if (type instanceof ParameterizedType) {
+            Type argument = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (argument instanceof Class) {
+                return (Class<?>) argument;
+            }
+        }
+        return String.class;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Converter converter(Class<?> type) {
+        if (type == String.class || type == Object.class || type == CharSequence.class) {
+            return value -> value;
+        } else if (type == int.class || type == Integer.class) {
+            return Integer::valueOf;
+        } else if (type == long.class || type == Long.class) {
+            return Long::valueOf;
+        } else if (type == double.class || type == Double.class) {
+            return Double::valueOf;
+        } else if (type == boolean.class || type == Boolean.class) {
+            return Boolean::valueOf;
+        } else if (type.isEnum()) {
+            Class<Enum> enumType = (Class<Enum>) type;
+            return value -> Enum.valueOf(enumType, value.toUpperCase(Locale.ROOT));
+        }
+        return value -> value;
+    }
+}
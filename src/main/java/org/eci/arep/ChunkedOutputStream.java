@@ -0,0 +1,99 @@
+package org.eci.arep;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Frames what is written to it as HTTP/1.1 chunks. Small writes are buffered into one chunk; {@link #flush()}
+ * sends the buffered chunk as a single write on the target, and {@link #close()} ends the body with the
+ * zero-length last chunk without closing the target.
+ */
+public class ChunkedOutputStream extends OutputStream {
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final int HEADER_SPACE = 10;
+
+    private final OutputStream target;
+    private final byte[] frame;
+    private int length;
+    private boolean closed;
+
+    public ChunkedOutputStream(OutputStream target) {
+        this(target, 8 * 1024);
+    }
+
+    public ChunkedOutputStream(OutputStream target, int chunkSize) {
+        this.target = target;
+        // Room for the hex size line before the data and the CRLF after it.
+        this.frame = new byte[HEADER_SPACE + chunkSize + 2];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (length == capacity()) {
+            writeChunk();
+        }
+        frame[HEADER_SPACE + length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int count) throws IOException {
+        ensureOpen();
+        while (count > 0) {
+            if (length == capacity()) {
+                writeChunk();
+            }
+            int n = Math.min(count, capacity() - length);
+            System.arraycopy(data, offset, frame, HEADER_SPACE + length, n);
+            length += n;
+            offset += n;
+            count -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        writeChunk();
+        target.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        writeChunk();
+        closed = true;
+        target.write(LAST_CHUNK);
+        target.flush();
+    }
+
+    private int capacity() {
+        return frame.length - HEADER_SPACE - 2;
+    }
+
+    private void writeChunk() throws IOException {
+        if (length == 0) {
+            return;
+        }
+        String size = Integer.toHexString(length);
+        int start = HEADER_SPACE - size.length() - 2;
+        for (int i = 0; i < size.length(); i++) {
+            frame[start + i] = (byte) size.charAt(i);
+        }
+        frame[HEADER_SPACE - 2] = '\r';
+        frame[HEADER_SPACE - 1] = '\n';
+        frame[HEADER_SPACE + length] = '\r';
+        frame[HEADER_SPACE + length + 1] = '\n';
+        target.write(frame, start, HEADER_SPACE + length + 2 - start);
+        length = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
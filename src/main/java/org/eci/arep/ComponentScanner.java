@@ -10,15 +10,20 @@ import java.util.*;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
+/**
+ * Fallback for classpaths without a route index: finds {@code @RestController} classes under a package without
+ * running their static initializers.
+ */
 public class ComponentScanner {
 
     public static List<Class<?>> scanForControllers(String basePackage) throws ClassNotFoundException, IOException {
         List<Class<?>> classes = new ArrayList<>();
 
-        URL root = ComponentScanner.class.getClassLoader().getResource("");
+        ClassLoader loader = ComponentScanner.class.getClassLoader();
+        URL root = loader.getResource("");
         if (root != null) {
-            File baseDir = new File(root.getPath());
-            findClasses(baseDir, "", classes);
+            File baseDir = new File(root.getPath(), basePackage.replace('.', File.separatorChar));
+            findClasses(baseDir, basePackage, classes);
         } else {
             classes.addAll(findClassesInJar(basePackage));
         }
@@ -37,8 +42,8 @@ public class ComponentScanner {
             } else if (file.getName().endsWith(".class")) {
                 String className = packageName + "." + file.getName().replace(".class", "");
                 try {
-                    classes.add(Class.forName(className));
-                } catch (NoClassDefFoundError ignored) {
+                    classes.add(Class.forName(className, false, ComponentScanner.class.getClassLoader()));
+                } catch (LinkageError ignored) {
 
                 }
             }
@@ -58,8 +63,8 @@ public class ComponentScanner {
                     String name = entry.getName();
                     if (name.endsWith(".class")) {
                         String className = name.replace('/', '.').replace(".class", "");
-                        if (className.startsWith(basePackage)) {
-                            classes.add(Class.forName(className));
+                        if (className.startsWith(basePackage + ".")) {
+                            classes.add(Class.forName(className, false, ComponentScanner.class.getClassLoader()));
                         }
                     }
                 }
@@ -0,0 +1,169 @@
+package org.eci.arep;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Content-Encoding negotiation and gzip/deflate encoding. Deflaters hold native buffers that are expensive to
+ * allocate, so they are pooled and reset between uses instead of being created per response.
+ */
+public class Compression {
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    private static final boolean ENABLED = ServerConfig.getBoolean("COMPRESSION", true);
+    private static final int MIN_SIZE = ServerConfig.getInt("COMPRESSION_MIN_SIZE", 1024);
+    private static final int LEVEL = ServerConfig.getInt("COMPRESSION_LEVEL", 6);
+    private static final int POOL_SIZE = 32;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final Queue<Deflater> rawDeflaters = new ConcurrentLinkedQueue<>();
+    private static final Queue<Deflater> zlibDeflaters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Picks the encoding with the highest quality in an Accept-Encoding header, or null for identity.
+     */
+    public static String negotiate(String acceptEncoding) {
+        if (!ENABLED || acceptEncoding == null) {
+            return null;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double wildcard = 0;
+        for (String token : acceptEncoding.split(",")) {
+            String[] parts = token.trim().split(";");
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            String coding = parts[0].trim().toLowerCase();
+            if (coding.equals(GZIP) || coding.equals("x-gzip")) {
+                gzip = quality;
+            } else if (coding.equals(DEFLATE)) {
+                deflate = quality;
+            } else if (coding.equals("*")) {
+                wildcard = quality;
+            }
+        }
+        if (gzip < 0) {
+            gzip = wildcard;
+        }
+        if (deflate < 0) {
+            deflate = wildcard;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : null;
+    }
+
+    public static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text/")
+                || contentType.startsWith("application/javascript")
+                || contentType.startsWith("application/json")
+                || contentType.startsWith("image/svg+xml");
+    }
+
+    /**
+     * Compresses a dynamic response in place when the client accepts it and the body is worth compressing. A body
+     * that is already encoded, such as one replayed by a {@link ResponseCache}, is left as is.
+     */
+    static void compress(HttpRequest request, HttpResponse response) {
+        if (!ENABLED || response.getFileBody() != null || response.getBufferBody() != null
+                || response.getStreamingBody() != null || !isCompressible(response.getContentType())) {
+            return;
+        }
+        response.setHeader("Vary", "Accept-Encoding");
+        if (response.getHeader("Content-Encoding") != null) {
+            return;
+        }
+        byte[] body = response.getBodyBytes();
+        String encoding = encodingFor(request, response.getContentType(), body.length);
+        if (encoding != null) {
+            response.setBody(encode(body, encoding));
+            response.setHeader("Content-Encoding", encoding);
+        }
+    }
+
+    /**
+     * Encoding a dynamic body of this type and length is sent with, or null when it is sent as is.
+     */
+    static String encodingFor(HttpRequest request, String contentType, int length) {
+        if (!ENABLED || length < MIN_SIZE || !isCompressible(contentType)) {
+            return null;
+        }
+        return negotiate(request.getHeader("Accept-Encoding"));
+    }
+
+    public static byte[] encode(byte[] data, String encoding) {
+        return GZIP.equals(encoding) ? gzip(data) : deflate(data);
+    }
+
+    public static byte[] gzip(byte[] data) {
+        Deflater deflater = borrow(rawDeflaters, true);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 3 + 32);
+            out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+            run(deflater, data, out);
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            writeIntLittleEndian(out, (int) crc.getValue());
+            writeIntLittleEndian(out, data.length);
+            return out.toByteArray();
+        } finally {
+            release(rawDeflaters, deflater);
+        }
+    }
+
+    public static byte[] deflate(byte[] data) {
+        Deflater deflater = borrow(zlibDeflaters, false);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 3 + 16);
+            run(deflater, data, out);
+            return out.toByteArray();
+        } finally {
+            release(zlibDeflaters, deflater);
+        }
+    }
+
+    private static void run(Deflater deflater, byte[] data, ByteArrayOutputStream out) {
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] chunk = new byte[Math.min(Math.max(data.length, 64), 16 * 1024)];
+        while (!deflater.finished()) {
+            int length = deflater.deflate(chunk);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    private static Deflater borrow(Queue<Deflater> pool, boolean nowrap) {
+        Deflater deflater = pool.poll();
+        return deflater != null ? deflater : new Deflater(LEVEL, nowrap);
+    }
+
+    private static void release(Queue<Deflater> pool, Deflater deflater) {
+        deflater.reset();
+        if (pool.size() < POOL_SIZE) {
+            pool.offer(deflater);
+        } else {
+            deflater.end();
+        }
+    }
+
+    private static void writeIntLittleEndian(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+        out.write((value >>> 16) & 0xff);
+        out.write((value >>> 24) & 0xff);
+    }
+}
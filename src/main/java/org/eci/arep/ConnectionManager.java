@@ -0,0 +1,161 @@
+package org.eci.arep;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission and lifetime rules for client connections, shared by both engines. At most {@code MAX_CONNECTIONS}
+ * are open at once; with {@code ACCEPT_POLICY=reject} the ones beyond get {@code 503}, with {@code wait} they stay
+ * in the listen backlog until a connection closes. A request must finish its header section within
+ * {@code HEADER_TIMEOUT} and its body within {@code BODY_TIMEOUT} of starting them, so a client trickling bytes
+ * cannot hold a connection, and a persistent connection is closed after {@code KEEP_ALIVE_TIMEOUT} without a
+ * request.
+ * <p>
+ * On shutdown the connections waiting for a request are closed and the others finish the request they are
+ * serving, with {@code Connection: close}, for up to {@code SHUTDOWN_TIMEOUT}.
+ */
+class ConnectionManager {
+    private final int maxConnections;
+    private final boolean waitForSlot;
+    private final int idleTimeout;
+    private final int headerTimeout;
+    private final int bodyTimeout;
+    private final long shutdownTimeout;
+    private final Semaphore slots;
+    private final Set<Socket> idle = ConcurrentHashMap.newKeySet();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private volatile boolean draining;
+
+    ConnectionManager() {
+        this.maxConnections = ServerConfig.getInt("MAX_CONNECTIONS", 10000);
+        String policy = ServerConfig.getString("ACCEPT_POLICY", "reject").toLowerCase();
+        if (!policy.equals("reject") && !policy.equals("wait")) {
+            System.err.println("Variable ACCEPT_POLICY has unknown value " + policy + " using default value reject.");
+        }
+        this.waitForSlot = policy.equals("wait");
+        this.idleTimeout = ServerConfig.getInt("KEEP_ALIVE_TIMEOUT", 5000);
+        this.headerTimeout = ServerConfig.getInt("HEADER_TIMEOUT", 10000);
+        this.bodyTimeout = ServerConfig.getInt("BODY_TIMEOUT", 30000);
+        this.shutdownTimeout = ServerConfig.getLong("SHUTDOWN_TIMEOUT", 30000);
+        this.slots = new Semaphore(maxConnections);
+    }
+
+    /**
+     * Under the wait policy, blocks until a connection may be accepted; returns false if the server started
+     * draining meanwhile. Under the reject policy returns at once.
+     */
+    boolean reserve() throws InterruptedException {
+        if (!waitForSlot) {
+            return true;
+        }
+        while (!slots.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+            if (draining) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gives back a slot reserved for an accept that failed.
+     */
+    void cancelReservation() {
+        if (waitForSlot) {
+            slots.release();
+        }
+    }
+
+    /**
+     * Whether an accepted connection may be served. Once it is, {@link #release()} must be called when it closes.
+     */
+    boolean admit() {
+        if (waitForSlot || slots.tryAcquire()) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    void release() {
+        slots.release();
+    }
+
+    int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Milliseconds a request may take to finish the part it is in, counted from the moment that part started.
+     */
+    int getReadTimeout(boolean body) {
+        return body ? bodyTimeout : headerTimeout;
+    }
+
+    void requestTimedOut() {
+        timedOut.increment();
+    }
+
+    /**
+     * Registers a blocking-engine connection that is about to wait for its next request; returns false when the
+     * server is draining and the connection should close instead.
+     */
+    boolean waitingForRequest(Socket socket) {
+        idle.add(socket);
+        if (draining) {
+            idle.remove(socket);
+            return false;
+        }
+        return true;
+    }
+
+    void requestArriving(Socket socket) {
+        idle.remove(socket);
+    }
+
+    boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Closes the connections waiting for a request and waits, until {@code deadline} in {@link System#nanoTime()}
+     * terms, for the others to finish theirs. Returns whether every connection closed in time.
+     */
+    boolean drain(long deadline) throws InterruptedException {
+        draining = true;
+        for (Socket socket : idle) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+        while (getOpen() > 0) {
+            if (deadline - System.nanoTime() <= 0) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    long getShutdownTimeout() {
+        return shutdownTimeout;
+    }
+
+    int getOpen() {
+        return maxConnections - slots.availablePermits();
+    }
+
+    long getRejected() {
+        return rejected.sum();
+    }
+
+    long getTimedOut() {
+        return timedOut.sum();
+    }
+}
@@ -0,0 +1,325 @@
+package org.eci.arep;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A channel of Server-Sent Events. A controller method that returns one subscribes the client to it: the
+ * response is a {@code text/event-stream} that stays open and receives every event published from then on,
+ * until the channel is closed or the client goes away.
+ * <p>
+ * Each event is encoded once, and all subscribers are sent the same bytes. A subscriber may have up to
+ * {@code SSE_MAX_QUEUED} bytes that its socket has not taken yet. One that falls further behind is
+ * disconnected, so it cannot slow down the others or hold on to memory. With the {@code nio} engine, events
+ * are written by the event loop, so an open stream does not hold a worker thread.
+ * <p>
+ * Every stream is kept reachable from the moment it is created until {@link #close()}, so that a stopping server
+ * can end its subscribers' responses. A stream that is no longer needed must be closed.
+ */
+public final class EventStream {
+    static final String CONTENT_TYPE = "text/event-stream; charset=utf-8";
+    static final long MAX_QUEUED = ServerConfig.getLong("SSE_MAX_QUEUED", 256 * 1024);
+    static final long HEARTBEAT_MILLIS = ServerConfig.getLong("SSE_HEARTBEAT", 15000);
+    // A comment line: ignored by clients, but it keeps proxies from timing out and reveals closed connections.
+    static final Event HEARTBEAT = new Event(":\n\n".getBytes(StandardCharsets.ISO_8859_1));
+
+    private static final Set<EventStream> OPEN = ConcurrentHashMap.newKeySet();
+    private static final AtomicInteger SUBSCRIBERS = new AtomicInteger();
+    private static final LongAdder EVICTIONS = new LongAdder();
+
+    private final Set<Subscription> subscribers = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    public EventStream() {
+        OPEN.add(this);
+    }
+
+    /**
+     * Sends an unnamed event, which clients receive as a {@code message}.
+     */
+    public void publish(Object data) {
+        publish(null, data);
+    }
+
+    /**
+     * Sends an event named {@code event} to every current subscriber. Text is sent as is, one {@code data:} line
+     * per line; any other value is sent as JSON.
+     */
+    public void publish(String event, Object data) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        Event encoded = encode(event, data);
+        for (Subscription subscriber : subscribers) {
+            subscriber.offer(encoded);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Ends every subscriber's response once the events already queued for it are sent.
+     */
+    public void close() {
+        closed = true;
+        OPEN.remove(this);
+        for (Subscription subscriber : subscribers) {
+            subscriber.end(Subscription.FINISHED);
+        }
+    }
+
+    static void closeAll() {
+        for (EventStream stream : OPEN) {
+            stream.close();
+        }
+    }
+
+    static int getOpenSubscriptions() {
+        return SUBSCRIBERS.get();
+    }
+
+    static long getEvictions() {
+        return EVICTIONS.sum();
+    }
+
+    Subscription subscribe() {
+        Subscription subscription = new Subscription(this);
+        subscribers.add(subscription);
+        SUBSCRIBERS.incrementAndGet();
+        if (closed) {
+            subscription.end(Subscription.FINISHED);
+        }
+        return subscription;
+    }
+
+    static Event encode(String event, Object data) {
+        StringBuilder text = new StringBuilder();
+        if (event != null) {
+            if (event.indexOf('\n') >= 0 || event.indexOf('\r') >= 0) {
+                throw new IllegalArgumentException("Event name contains a line break: " + event);
+            }
+            text.append("event: ").append(event).append('\n');
+        }
+        String value = data == null || data instanceof CharSequence ? String.valueOf(data)
+                : new String(JsonOutput.encode(JsonWriters.forType(data.getClass()), data), StandardCharsets.UTF_8);
+        int start = 0;
+        for (int i = 0; i <= value.length(); i++) {
+            char c = i < value.length() ? value.charAt(i) : '\n';
+            if (c == '\n' || c == '\r') {
+                text.append("data: ").append(value, start, i).append('\n');
+                if (c == '\r' && i + 1 < value.length() && value.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                start = i + 1;
+            }
+        }
+        return new Event(text.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * An encoded event, shared by all the subscribers it is sent to.
+     */
+    static final class Event {
+        final byte[] bytes;
+        private volatile byte[] chunk;
+
+        Event(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * The event framed as one HTTP/1.1 chunk, built by the first subscriber that needs it.
+         */
+        byte[] chunk() {
+            byte[] framed = chunk;
+            if (framed == null) {
+                byte[] size = (Integer.toHexString(bytes.length) + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+                framed = new byte[size.length + bytes.length + 2];
+                System.arraycopy(size, 0, framed, 0, size.length);
+                System.arraycopy(bytes, 0, framed, size.length, bytes.length);
+                framed[framed.length - 2] = '\r';
+                framed[framed.length - 1] = '\n';
+                chunk = framed;
+            }
+            return framed;
+        }
+    }
+
+    /**
+     * One client's place in the stream: the events waiting for its connection. The response body drains it on
+     * the thread that sends the response; the {@code nio} engine instead registers a listener and drains it on
+     * its event loop.
+     */
+    static final class Subscription implements StreamingBody {
+        static final int OPEN = 0;
+        static final int FINISHED = 1;
+        static final int EVICTED = 2;
+
+        private final EventStream owner;
+        private final ConcurrentLinkedQueue<Event> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicLong queued = new AtomicLong();
+        private final AtomicInteger state = new AtomicInteger(OPEN);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile Thread waiter;
+        private volatile Runnable listener;
+        private volatile Closeable connection;
+
+        Subscription(EventStream owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public String getContentType() {
+            return CONTENT_TYPE;
+        }
+
+        void offer(Event event) {
+            if (state.get() != OPEN) {
+                return;
+            }
+            if (queued.addAndGet(event.bytes.length) > MAX_QUEUED) {
+                EVICTIONS.increment();
+                end(EVICTED);
+                return;
+            }
+            queue.add(event);
+            signal();
+        }
+
+        Event poll() {
+            return queue.poll();
+        }
+
+        /**
+         * Called once the socket has taken {@code count} bytes of events, making room for more.
+         */
+        void sent(long count) {
+            queued.addAndGet(-count);
+        }
+
+        int getState() {
+            return state.get();
+        }
+
+        /**
+         * Has {@code listener} run, on the publishing thread, whenever events or the end are waiting. Runs
+         * coalesce until the listener calls {@link #listened()}.
+         */
+        void listen(Runnable listener) {
+            this.listener = listener;
+            signal();
+        }
+
+        void listened() {
+            scheduled.set(false);
+        }
+
+        /**
+         * Has {@code connection} closed if the subscriber is evicted. A thread blocked writing to a client that
+         * stopped reading only notices the eviction when the write fails, so engines whose writes block register
+         * the connection here.
+         */
+        void closeOnEviction(Closeable connection) {
+            this.connection = connection;
+            if (state.get() == EVICTED) {
+                closeConnection();
+            }
+        }
+
+        void end(int reason) {
+            if (state.compareAndSet(OPEN, reason)) {
+                cancel();
+                signal();
+                if (reason == EVICTED) {
+                    closeConnection();
+                }
+            }
+        }
+
+        private void closeConnection() {
+            Closeable close = connection;
+            if (close != null) {
+                try {
+                    close.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        /**
+         * Removes a subscriber whose client has gone away.
+         */
+        void cancel() {
+            if (owner.subscribers.remove(this)) {
+                SUBSCRIBERS.decrementAndGet();
+            }
+        }
+
+        private void signal() {
+            Thread thread = waiter;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+            Runnable run = listener;
+            if (run != null && scheduled.compareAndSet(false, true)) {
+                run.run();
+            }
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            waiter = Thread.currentThread();
+            try {
+                out.flush();
+                long heartbeat = TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_MILLIS);
+                long lastWrite = System.nanoTime();
+                boolean unflushed = false;
+                while (true) {
+                    if (state.get() == EVICTED) {
+                        throw new IOException("Subscriber fell more than " + MAX_QUEUED + " bytes behind");
+                    }
+                    Event event = queue.poll();
+                    if (event != null) {
+                        out.write(event.bytes);
+                        queued.addAndGet(-event.bytes.length);
+                        unflushed = true;
+                        continue;
+                    }
+                    long now = System.nanoTime();
+                    if (unflushed) {
+                        out.flush();
+                        unflushed = false;
+                        lastWrite = now;
+                    }
+                    if (state.get() == FINISHED) {
+                        return;
+                    }
+                    long wait = heartbeat - (now - lastWrite);
+                    if (wait <= 0) {
+                        out.write(HEARTBEAT.bytes);
+                        out.flush();
+                        lastWrite = now;
+                    } else {
+                        LockSupport.parkNanos(this, wait);
+                    }
+                }
+            } finally {
+                waiter = null;
+                cancel();
+            }
+        }
+    }
+}
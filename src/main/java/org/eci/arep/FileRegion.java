@@ -0,0 +1,61 @@
+package org.eci.arep;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A slice of an open file that is copied to the client with {@link FileChannel#transferTo}, which the
+ * kernel turns into sendfile when the target is a socket channel.
+ */
+class FileRegion implements Closeable {
+    private final FileChannel file;
+    private long position;
+    private final long end;
+
+    FileRegion(FileChannel file, long position, long count) {
+        this.file = file;
+        this.position = position;
+        this.end = position + count;
+    }
+
+    long count() {
+        return end - position;
+    }
+
+    boolean isDone() {
+        return position >= end;
+    }
+
+    /**
+     * Transfers as much as the target accepts without blocking; used by the non-blocking engine.
+     */
+    long transferSome(WritableByteChannel target) throws IOException {
+        long sent = file.transferTo(position, end - position, target);
+        if (sent == 0 && position >= file.size()) {
+            throw new EOFException("File shrank while being sent");
+        }
+        position += sent;
+        return sent;
+    }
+
+    long transferFully(WritableByteChannel target) throws IOException {
+        long total = 0;
+        while (!isDone()) {
+            long sent = file.transferTo(position, end - position, target);
+            if (sent <= 0) {
+                throw new EOFException("File shrank while being sent");
+            }
+            position += sent;
+            total += sent;
+        }
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
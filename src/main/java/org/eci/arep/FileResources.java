@@ -0,0 +1,132 @@
+package org.eci.arep;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Static assets served from a directory on disk, used when {@code staticfiles} points at a real directory.
+ * Bodies never pass through a heap array: files are streamed with {@code transferTo}. They are not memory-mapped,
+ * since a mapped file truncated while it is being sent crashes the JVM instead of failing the one response.
+ */
+public class FileResources implements StaticHandler {
+    private final Path root;
+    private final String cacheControl;
+
+    public FileResources(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+        this.cacheControl = ServerConfig.getString("STATIC_CACHE_CONTROL", "no-cache");
+    }
+
+    @Override
+    public boolean serve(HttpRequest request, String path, HttpResponse response) throws IOException {
+        if (path.endsWith("/")) {
+            path += "index.html";
+        }
+        Path file = root.resolve(path.substring(1)).normalize();
+        if (!file.startsWith(root) || !Files.isRegularFile(file)) {
+            return false;
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis() / 1000 * 1000;
+        String etag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(size) + "\"";
+        String lastModifiedHeader = StaticResources.HTTP_DATE.format(Instant.ofEpochMilli(lastModified));
+
+        response.setHeader("ETag", etag);
+        response.setHeader("Last-Modified", lastModifiedHeader);
+        response.setHeader("Cache-Control", cacheControl);
+        response.setHeader("Accept-Ranges", "bytes");
+        if (StaticResources.isNotModified(request, etag, lastModified)) {
+            response.setStatus(304, "Not Modified");
+            return true;
+        }
+        response.setContentType(HttpServer.getContentType(path));
+
+        long start = 0;
+        long end = size - 1;
+        String range = request.getHeader("Range");
+        if (range != null && isRangeCurrent(request.getHeader("If-Range"), etag, lastModified)) {
+            long[] bounds = parseRange(range, size);
+            if (bounds == null) {
+                response.setStatus(416, "Range Not Satisfiable");
+                response.setHeader("Content-Range", "bytes */" + size);
+                response.setBody(new byte[0]);
+                return true;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(206, "Partial Content");
+                response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + size);
+            }
+        }
+        long count = end - start + 1;
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        response.setBody(new FileRegion(channel, start, count));
+        return true;
+    }
+
+    /**
+     * A Range is only honored when If-Range is absent or still names the current representation.
+     */
+    private static boolean isRangeCurrent(String ifRange, String etag, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            return ZonedDateTime.parse(ifRange, StaticResources.HTTP_DATE_PARSER).toInstant().toEpochMilli() == lastModified;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses a single {@code bytes=} range. Returns the inclusive bounds, an empty array when the header
+     * should be ignored (other units or several ranges) and null when the range cannot be satisfied.
+     */
+    static long[] parseRange(String header, long size) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        String spec = header.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            }
+            if (start < 0 || start >= size || end < start) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+}
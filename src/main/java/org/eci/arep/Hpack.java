@@ -0,0 +1,410 @@
+package org.eci.arep;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * HPACK header compression (RFC 7541) for the HTTP/2 engine. Each direction of a connection keeps its own
+ * dynamic table, so a connection has a {@link Decoder} for request headers and an {@link Encoder} for response
+ * headers, and both must process header blocks in the order they travel on the connection. Header text is
+ * ISO-8859-1, one byte per char, as in the HTTP/1.1 engine.
+ */
+final class Hpack {
+    static final int DEFAULT_TABLE_SIZE = 4096;
+
+    private static final String[][] STATIC_TABLE = {
+            {":authority", ""}, {":method", "GET"}, {":method", "POST"}, {":path", "/"}, {":path", "/index.html"},
+            {":scheme", "http"}, {":scheme", "https"}, {":status", "200"}, {":status", "204"}, {":status", "206"},
+            {":status", "304"}, {":status", "400"}, {":status", "404"}, {":status", "500"}, {"accept-charset", ""},
+            {"accept-encoding", "gzip, deflate"}, {"accept-language", ""}, {"accept-ranges", ""}, {"accept", ""},
+            {"access-control-allow-origin", ""}, {"age", ""}, {"allow", ""}, {"authorization", ""},
+            {"cache-control", ""}, {"content-disposition", ""}, {"content-encoding", ""}, {"content-language", ""},
+            {"content-length", ""}, {"content-location", ""}, {"content-range", ""}, {"content-type", ""},
+            {"cookie", ""}, {"date", ""}, {"etag", ""}, {"expect", ""}, {"expires", ""}, {"from", ""}, {"host", ""},
+            {"if-match", ""}, {"if-modified-since", ""}, {"if-none-match", ""}, {"if-range", ""},
+            {"if-unmodified-since", ""}, {"last-modified", ""}, {"link", ""}, {"location", ""}, {"max-forwards", ""},
+            {"proxy-authenticate", ""}, {"proxy-authorization", ""}, {"range", ""}, {"referer", ""}, {"refresh", ""},
+            {"retry-after", ""}, {"server", ""}, {"set-cookie", ""}, {"strict-transport-security", ""},
+            {"transfer-encoding", ""}, {"user-agent", ""}, {"vary", ""}, {"via", ""}, {"www-authenticate", ""}};
+    private static final Map<String, Integer> STATIC_NAMES = new HashMap<>();
+    private static final Map<String, Integer> STATIC_FIELDS = new HashMap<>();
+
+    // Code lengths of the canonical Huffman code in RFC 7541, Appendix B; index 256 is EOS.
+    private static final int[] HUFFMAN_LENGTHS = {
+            13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+            28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+            6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+            5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+            13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+            15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+            6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+            20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+            24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+            22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+            21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+            26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+            19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+            20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+            26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26,
+            30};
+    private static final int EOS = 256;
+    private static final int[] HUFFMAN_CODES = new int[HUFFMAN_LENGTHS.length];
+    // Decoding tree: the children of node n are at 2n and 2n + 1; a negative entry is a leaf, -(symbol + 1).
+    private static final int[] HUFFMAN_TREE = new int[2 * HUFFMAN_LENGTHS.length];
+
+    static {
+        for (int i = STATIC_TABLE.length - 1; i >= 0; i--) {
+            STATIC_NAMES.put(STATIC_TABLE[i][0], i + 1);
+            STATIC_FIELDS.put(STATIC_TABLE[i][0] + '\0' + STATIC_TABLE[i][1], i + 1);
+        }
+
+        // The code is canonical: shorter codes first, symbols in order within a length.
+        Integer[] symbols = new Integer[HUFFMAN_LENGTHS.length];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = i;
+        }
+        Arrays.sort(symbols, (a, b) -> HUFFMAN_LENGTHS[a] != HUFFMAN_LENGTHS[b]
+                ? HUFFMAN_LENGTHS[a] - HUFFMAN_LENGTHS[b] : a - b);
+        int code = 0;
+        int nodes = 1;
+        for (int i = 0; i < symbols.length; i++) {
+            int symbol = symbols[i];
+            if (i > 0) {
+                code = (code + 1) << (HUFFMAN_LENGTHS[symbol] - HUFFMAN_LENGTHS[symbols[i - 1]]);
+            }
+            HUFFMAN_CODES[symbol] = code;
+            int node = 0;
+            for (int bit = HUFFMAN_LENGTHS[symbol] - 1; bit > 0; bit--) {
+                int child = 2 * node + ((code >>> bit) & 1);
+                if (HUFFMAN_TREE[child] == 0) {
+                    HUFFMAN_TREE[child] = nodes++;
+                }
+                node = HUFFMAN_TREE[child];
+            }
+            HUFFMAN_TREE[2 * node + (code & 1)] = -(symbol + 1);
+        }
+    }
+
+    private Hpack() {
+    }
+
+    static String huffmanDecode(byte[] data, int offset, int length) throws Http2Exception {
+        StringBuilder text = new StringBuilder(length * 8 / 5);
+        int node = 0;
+        int pending = 0;
+        boolean ones = true;
+        for (int i = offset; i < offset + length; i++) {
+            int octet = data[i] & 0xff;
+            for (int bit = 7; bit >= 0; bit--) {
+                int one = (octet >>> bit) & 1;
+                int next = HUFFMAN_TREE[2 * node + one];
+                pending++;
+                ones &= one == 1;
+                if (next < 0) {
+                    if (next == -(EOS + 1)) {
+                        throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "EOS in Huffman string");
+                    }
+                    text.append((char) (-next - 1));
+                    node = 0;
+                    pending = 0;
+                    ones = true;
+                } else {
+                    node = next;
+                }
+            }
+        }
+        // Only a prefix of EOS, shorter than a byte, may pad the last octet.
+        if (pending > 7 || !ones) {
+            throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Invalid Huffman padding");
+        }
+        return text.toString();
+    }
+
+    static int huffmanLength(String text) {
+        long bits = 0;
+        for (int i = 0; i < text.length(); i++) {
+            bits += HUFFMAN_LENGTHS[text.charAt(i) & 0xff];
+        }
+        return (int) ((bits + 7) / 8);
+    }
+
+    /**
+     * Dynamic table, newest entry first, evicting the oldest entries beyond its size in octets.
+     */
+    private static final class Table {
+        private String[] names = new String[16];
+        private String[] values = new String[16];
+        private int first;
+        private int count;
+        private int size;
+        private int maxSize = DEFAULT_TABLE_SIZE;
+
+        int length() {
+            return count;
+        }
+
+        String name(int index) {
+            return names[(first + index) & (names.length - 1)];
+        }
+
+        String value(int index) {
+            return values[(first + index) & (values.length - 1)];
+        }
+
+        void add(String name, String value) {
+            int entrySize = name.length() + value.length() + 32;
+            evict(maxSize - entrySize);
+            if (entrySize > maxSize) {
+                return;
+            }
+            if (count == names.length) {
+                String[] grownNames = new String[names.length * 2];
+                String[] grownValues = new String[values.length * 2];
+                for (int i = 0; i < count; i++) {
+                    grownNames[i] = name(i);
+                    grownValues[i] = value(i);
+                }
+                names = grownNames;
+                values = grownValues;
+                first = 0;
+            }
+            first = (first - 1) & (names.length - 1);
+            names[first] = name;
+            values[first] = value;
+            count++;
+            size += entrySize;
+        }
+
+        void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+            evict(maxSize);
+        }
+
+        private void evict(int limit) {
+            while (count > 0 && size > limit) {
+                int last = (first + count - 1) & (names.length - 1);
+                size -= names[last].length() + values[last].length() + 32;
+                names[last] = null;
+                values[last] = null;
+                count--;
+            }
+        }
+    }
+
+    /**
+     * Decodes request header blocks. The table may not grow beyond {@link #DEFAULT_TABLE_SIZE}, the size the
+     * server announces.
+     */
+    static final class Decoder {
+        private final Table table = new Table();
+        private byte[] block;
+        private int position;
+        private int end;
+
+        /**
+         * Passes each field of the block to {@code fields} and returns the header list size as RFC 7540 counts it.
+         */
+        int decode(byte[] block, int offset, int length, BiConsumer<String, String> fields) throws Http2Exception {
+            this.block = block;
+            this.position = offset;
+            this.end = offset + length;
+            int listSize = 0;
+            try {
+                while (position < end) {
+                    int first = block[position] & 0xff;
+                    String name;
+                    String value;
+                    if ((first & 0x80) != 0) {
+                        int index = readInt(7);
+                        name = name(index);
+                        value = index <= STATIC_TABLE.length ? STATIC_TABLE[index - 1][1]
+                                : table.value(index - STATIC_TABLE.length - 1);
+                    } else if ((first & 0xe0) == 0x20) {
+                        int size = readInt(5);
+                        if (size > DEFAULT_TABLE_SIZE) {
+                            throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Table size " + size + " too large");
+                        }
+                        table.setMaxSize(size);
+                        continue;
+                    } else {
+                        boolean indexing = (first & 0xc0) == 0x40;
+                        int index = readInt(indexing ? 6 : 4);
+                        name = index == 0 ? readString() : name(index);
+                        value = readString();
+                        if (indexing) {
+                            table.add(name, value);
+                        }
+                    }
+                    listSize += name.length() + value.length() + 32;
+                    fields.accept(name, value);
+                }
+            } finally {
+                this.block = null;
+            }
+            return listSize;
+        }
+
+        private String name(int index) throws Http2Exception {
+            if (index <= 0 || index > STATIC_TABLE.length + table.length()) {
+                throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Invalid table index " + index);
+            }
+            return index <= STATIC_TABLE.length ? STATIC_TABLE[index - 1][0] : table.name(index - STATIC_TABLE.length - 1);
+        }
+
+        private int readInt(int prefixBits) throws Http2Exception {
+            int max = (1 << prefixBits) - 1;
+            int value = block[position++] & max;
+            if (value < max) {
+                return value;
+            }
+            for (int shift = 0; shift <= 21; shift += 7) {
+                if (position >= end) {
+                    break;
+                }
+                int octet = block[position++] & 0xff;
+                value += (octet & 0x7f) << shift;
+                if ((octet & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Invalid integer");
+        }
+
+        private String readString() throws Http2Exception {
+            if (position >= end) {
+                throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Truncated string");
+            }
+            boolean huffman = (block[position] & 0x80) != 0;
+            int length = readInt(7);
+            if (length > end - position) {
+                throw new Http2Exception(Http2Exception.COMPRESSION_ERROR, "Truncated string");
+            }
+            String text = huffman ? huffmanDecode(block, position, length)
+                    : new String(block, position, length, StandardCharsets.ISO_8859_1);
+            position += length;
+            return text;
+        }
+    }
+
+    /**
+     * Encodes response header blocks. Fields are added to the dynamic table so repeated headers such as
+     * {@code content-type} shrink to one byte, except values that change with every response or must not be
+     * kept, which are sent as literals.
+     */
+    static final class Encoder {
+        private final Table table = new Table();
+        private int pendingMaxSize = -1;
+        private byte[] out = new byte[256];
+        private int length;
+
+        /**
+         * Applies the peer's {@code SETTINGS_HEADER_TABLE_SIZE}; the change is signalled in the next block.
+         */
+        void setMaxTableSize(int size) {
+            int bounded = Math.min(size, DEFAULT_TABLE_SIZE);
+            if (bounded != table.maxSize) {
+                pendingMaxSize = bounded;
+            }
+        }
+
+        void begin() {
+            length = 0;
+            if (pendingMaxSize >= 0) {
+                table.setMaxSize(pendingMaxSize);
+                writeInt(0x20, 5, pendingMaxSize);
+                pendingMaxSize = -1;
+            }
+        }
+
+        void field(String name, String value) {
+            Integer exact = STATIC_FIELDS.get(name + '\0' + value);
+            if (exact != null) {
+                writeInt(0x80, 7, exact);
+                return;
+            }
+            int nameIndex = STATIC_NAMES.getOrDefault(name, 0);
+            for (int i = 0; i < table.length(); i++) {
+                if (table.name(i).equals(name)) {
+                    if (table.value(i).equals(value)) {
+                        writeInt(0x80, 7, STATIC_TABLE.length + 1 + i);
+                        return;
+                    }
+                    if (nameIndex == 0) {
+                        nameIndex = STATIC_TABLE.length + 1 + i;
+                    }
+                }
+            }
+            boolean sensitive = name.equals("set-cookie") || name.equals("authorization");
+            boolean indexing = !sensitive && !name.equals("content-length");
+            if (indexing) {
+                writeInt(0x40, 6, nameIndex);
+            } else {
+                writeInt(sensitive ? 0x10 : 0x00, 4, nameIndex);
+            }
+            if (nameIndex == 0) {
+                writeString(name);
+            }
+            writeString(value);
+            if (indexing) {
+                table.add(name, value);
+            }
+        }
+
+        byte[] end() {
+            return Arrays.copyOf(out, length);
+        }
+
+        private void writeInt(int pattern, int prefixBits, int value) {
+            int max = (1 << prefixBits) - 1;
+            if (value < max) {
+                write(pattern | value);
+                return;
+            }
+            write(pattern | max);
+            value -= max;
+            while (value >= 0x80) {
+                write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        private void writeString(String text) {
+            int encoded = huffmanLength(text);
+            if (encoded >= text.length()) {
+                writeInt(0x00, 7, text.length());
+                for (int i = 0; i < text.length(); i++) {
+                    write(text.charAt(i));
+                }
+                return;
+            }
+            writeInt(0x80, 7, encoded);
+            long bits = 0;
+            int count = 0;
+            for (int i = 0; i < text.length(); i++) {
+                int symbol = text.charAt(i) & 0xff;
+                bits = (bits << HUFFMAN_LENGTHS[symbol]) | HUFFMAN_CODES[symbol];
+                count += HUFFMAN_LENGTHS[symbol];
+                while (count >= 8) {
+                    count -= 8;
+                    write((int) (bits >>> count));
+                }
+                bits &= (1L << count) - 1;
+            }
+            if (count > 0) {
+                write((int) (bits << (8 - count)) | (0xff >>> count));
+            }
+        }
+
+        private void write(int octet) {
+            if (length == out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            out[length++] = (byte) octet;
+        }
+    }
+}
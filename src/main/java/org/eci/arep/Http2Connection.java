@@ -0,0 +1,989 @@
+package org.eci.arep;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The HTTP/2 protocol (RFC 7540) on one connection, shared by both engines, which only move bytes: the engine
+ * feeds what it reads to {@link #receive(ByteBuffer)} and sends the frames handed to its {@link Transport}.
+ * Each request stream is handled on a worker with {@link HttpServer#handle(HttpRequest)}, so many requests are
+ * in flight at once on a single connection, and response bodies are sent as {@code DATA} frames within the
+ * flow-control windows the client grants.
+ * <p>
+ * A connection reaches here either with prior knowledge, its preface arriving in place of a first request, or
+ * through an HTTP/1.1 request with {@code Upgrade: h2c}, which becomes stream 1.
+ */
+class Http2Connection {
+    static final boolean ENABLED = ServerConfig.getBoolean("HTTP2", true);
+    private static final int MAX_CONCURRENT_STREAMS = ServerConfig.getInt("H2_MAX_CONCURRENT_STREAMS", 100);
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    // What follows the request line and empty line that the HTTP/1.1 parser already consumed.
+    private static final int PREFACE_TAIL = 6;
+    static final byte[] SWITCHING_PROTOCOLS = ("HTTP/1.1 101 Switching Protocols\r\n"
+            + "Connection: Upgrade\r\nUpgrade: h2c\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int PRIORITY = 0x2;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PUSH_PROMISE = 0x5;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int CONTINUATION = 0x9;
+
+    private static final int END_STREAM = 0x1;
+    private static final int ACK = 0x1;
+    private static final int END_HEADERS = 0x4;
+    private static final int PADDED = 0x8;
+    private static final int PRIORITY_FLAG = 0x20;
+
+    private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    private static final int SETTINGS_ENABLE_PUSH = 0x2;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+    private static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+    private static final int FRAME_HEADER = 9;
+    private static final int DEFAULT_WINDOW = 65535;
+    private static final int MAX_FRAME_SIZE = 16384;
+    private static final int MAX_HEADER_BLOCK = 4 * HttpRequestParser.MAX_HEADER_SIZE;
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * Where the connection's frames go. Calls may come from any thread but never overlap, and each buffer holds
+     * whole frames that must be sent in the order given.
+     */
+    interface Transport {
+        void write(ByteBuffer frames) throws IOException;
+
+        void close();
+    }
+
+    private final ExecutorService workers;
+    private final Transport transport;
+    private final int idleTimeout;
+    private final long client;
+    // Guards the encoder and the transport so header blocks reach the wire in the order they were encoded.
+    private final Object writeLock = new Object();
+    private final Hpack.Encoder encoder = new Hpack.Encoder();
+    private final Hpack.Decoder decoder = new Hpack.Decoder();
+
+    // Read side, only touched by the thread calling receive.
+    private int prefaceMatched;
+    private final byte[] frameHeader = new byte[FRAME_HEADER];
+    private int frameHeaderFilled;
+    private final byte[] payload = new byte[MAX_FRAME_SIZE];
+    private int payloadLength;
+    private int payloadFilled;
+    private byte[] headerBlock = new byte[1024];
+    private int headerBlockLength;
+    private int headerBlockStream;
+    private boolean headerBlockEndStream;
+    private boolean settingsReceived;
+    private int received;
+    // Recent streams reset before the client finished sending; their late frames are ignored, not errors.
+    private final Set<Integer> resetBeforeEnd = new LinkedHashSet<>();
+
+    // Guarded by this.
+    private final Map<Integer, Stream> streams = new HashMap<>();
+    private int lastStreamId;
+    private long sendWindow = DEFAULT_WINDOW;
+    private int initialStreamWindow = DEFAULT_WINDOW;
+    private volatile int peerMaxFrameSize = MAX_FRAME_SIZE;
+    private boolean closeWhenIdle;
+    private boolean closed;
+
+    /**
+     * @param client           the key the client is rate limited by, see {@link RateLimiter#clientKey}
+     * @param afterRequestLine whether the engine already read the preface's first line as an HTTP/1.1 request
+     */
+    Http2Connection(ExecutorService workers, Transport transport, int idleTimeout, long client,
+                    boolean afterRequestLine) {
+        this.workers = workers;
+        this.transport = transport;
+        this.idleTimeout = idleTimeout;
+        this.client = client;
+        this.prefaceMatched = afterRequestLine ? PREFACE.length - PREFACE_TAIL : 0;
+    }
+
+    static boolean isPreface(HttpRequest request) {
+        return "PRI".equals(request.getMethod()) && "HTTP/2.0".equals(request.getHttpVersion());
+    }
+
+    /**
+     * An HTTP/1.1 request asking to continue the connection as h2c, with settings the server can read.
+     */
+    static boolean isUpgrade(HttpRequest request) {
+        String upgrade = request.getHeader("Upgrade");
+        if (!ENABLED || upgrade == null || !containsToken(upgrade, "h2c")) {
+            return false;
+        }
+        return upgradeSettings(request) != null;
+    }
+
+    private static boolean containsToken(String value, String token) {
+        for (String part : value.split(",")) {
+            if (part.trim().equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] upgradeSettings(HttpRequest request) {
+        String settings = request.getHeader("HTTP2-Settings");
+        if (settings == null) {
+            return null;
+        }
+        try {
+            byte[] payload = Base64.getUrlDecoder().decode(settings.trim());
+            return payload.length % 6 == 0 ? payload : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Sends the server's preface, a {@code SETTINGS} frame.
+     */
+    void start() throws IOException {
+        ByteBuffer frame = frame(SETTINGS, 0, 0, 12);
+        frame.putShort((short) SETTINGS_MAX_CONCURRENT_STREAMS).putInt(MAX_CONCURRENT_STREAMS);
+        frame.putShort((short) SETTINGS_MAX_HEADER_LIST_SIZE).putInt(HttpRequestParser.MAX_HEADER_SIZE);
+        send(frame);
+    }
+
+    /**
+     * Serves the request that carried {@code Upgrade: h2c} as stream 1, applying the client settings it sent.
+     */
+    void upgrade(HttpRequest request) throws IOException {
+        byte[] settings = upgradeSettings(request);
+        synchronized (this) {
+            try {
+                applySettings(settings, settings.length);
+            } catch (Http2Exception e) {
+                goAway(e);
+                return;
+            }
+            Stream stream = new Stream(1, initialStreamWindow);
+            stream.remoteClosed = true;
+            streams.put(1, stream);
+            lastStreamId = 1;
+            request.setHttpVersion("HTTP/2.0");
+            request.setKeepAlive(true);
+            stream.request = request;
+            dispatch(stream);
+        }
+    }
+
+    /**
+     * Consumes every byte of {@code input}. Returns false once the connection is finished, after sending
+     * {@code GOAWAY} when the client broke the protocol; the engine then closes it.
+     */
+    boolean receive(ByteBuffer input) {
+        try {
+            while (input.hasRemaining()) {
+                if (prefaceMatched < PREFACE.length) {
+                    if (input.get() != PREFACE[prefaceMatched++]) {
+                        throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Invalid connection preface");
+                    }
+                    continue;
+                }
+                if (frameHeaderFilled < FRAME_HEADER) {
+                    int count = Math.min(input.remaining(), FRAME_HEADER - frameHeaderFilled);
+                    input.get(frameHeader, frameHeaderFilled, count);
+                    frameHeaderFilled += count;
+                    if (frameHeaderFilled < FRAME_HEADER) {
+                        break;
+                    }
+                    payloadLength = (frameHeader[0] & 0xff) << 16 | (frameHeader[1] & 0xff) << 8 | frameHeader[2] & 0xff;
+                    if (payloadLength > MAX_FRAME_SIZE) {
+                        throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Frame of " + payloadLength + " bytes");
+                    }
+                    payloadFilled = 0;
+                }
+                int count = Math.min(input.remaining(), payloadLength - payloadFilled);
+                input.get(payload, payloadFilled, count);
+                payloadFilled += count;
+                if (payloadFilled < payloadLength) {
+                    break;
+                }
+                frameHeaderFilled = 0;
+                int streamId = ByteBuffer.wrap(frameHeader, 5, 4).getInt() & 0x7fffffff;
+                if (!onFrame(frameHeader[3] & 0xff, frameHeader[4] & 0xff, streamId, payloadLength)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (Http2Exception e) {
+            goAway(e);
+            return false;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private synchronized boolean onFrame(int type, int flags, int streamId, int length) throws IOException {
+        if (!settingsReceived && type != SETTINGS) {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Preface must start with SETTINGS");
+        }
+        if (headerBlockStream != 0 && (type != CONTINUATION || streamId != headerBlockStream)) {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Header block interrupted");
+        }
+        switch (type) {
+            case DATA:
+                onData(flags, streamId, length);
+                break;
+            case HEADERS:
+                onHeaders(flags, streamId, length);
+                break;
+            case CONTINUATION:
+                if (headerBlockStream == 0) {
+                    throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Unexpected CONTINUATION");
+                }
+                appendHeaderBlock(0, length);
+                if ((flags & END_HEADERS) != 0) {
+                    headersComplete();
+                }
+                break;
+            case PRIORITY:
+                // Streams are served as they come; priorities are read and ignored.
+                if (length != 5) {
+                    throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "PRIORITY of " + length + " bytes");
+                }
+                break;
+            case RST_STREAM:
+                onReset(streamId, length);
+                break;
+            case SETTINGS:
+                onSettings(flags, streamId, length);
+                break;
+            case PING:
+                if (length != 8 || streamId != 0) {
+                    throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Malformed PING");
+                }
+                if ((flags & ACK) == 0) {
+                    send(frame(PING, ACK, 0, 8).put(payload, 0, 8));
+                }
+                break;
+            case GOAWAY:
+                if (streamId != 0) {
+                    throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "GOAWAY on a stream");
+                }
+                closeWhenIdle = true;
+                return !streams.isEmpty();
+            case WINDOW_UPDATE:
+                onWindowUpdate(streamId, length);
+                break;
+            case PUSH_PROMISE:
+                throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Clients cannot push");
+            default:
+                // Unknown frame types are ignored (RFC 7540, section 4.1).
+                break;
+        }
+        return true;
+    }
+
+    private void onData(int flags, int streamId, int length) throws IOException {
+        if (streamId == 0) {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "DATA on stream 0");
+        }
+        // Received bytes count against the connection window whatever becomes of them.
+        if (received + length > DEFAULT_WINDOW) {
+            throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "Connection window exceeded");
+        }
+        received += length;
+        if (received >= DEFAULT_WINDOW / 2) {
+            windowUpdate(0, received);
+            received = 0;
+        }
+        int offset = 0;
+        int dataLength = length;
+        if ((flags & PADDED) != 0) {
+            int padding = length > 0 ? payload[0] & 0xff : length;
+            if (padding >= length) {
+                throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Padding exceeds the frame");
+            }
+            offset = 1;
+            dataLength = length - 1 - padding;
+        }
+        Stream stream = streams.get(streamId);
+        if (streamId > lastStreamId) {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "DATA on idle stream " + streamId);
+        }
+        if (stream == null) {
+            // Frames still in flight for a stream that was reset are ignored.
+            return;
+        }
+        if (stream.remoteClosed) {
+            reset(streamId, Http2Exception.STREAM_CLOSED);
+            return;
+        }
+        if (stream.received + length > DEFAULT_WINDOW) {
+            throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "Stream window exceeded");
+        }
+        stream.received += length;
+        stream.appendBody(payload, offset, dataLength);
+        if ((flags & END_STREAM) != 0) {
+            stream.remoteClosed = true;
+            dispatch(stream);
+        } else if (stream.received >= DEFAULT_WINDOW / 2) {
+            windowUpdate(streamId, stream.received);
+            stream.received = 0;
+        }
+    }
+
+    private void onHeaders(int flags, int streamId, int length) throws IOException {
+        if (streamId == 0 || streamId % 2 == 0) {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "HEADERS on stream " + streamId);
+        }
+        int offset = 0;
+        int padding = 0;
+        if ((flags & PADDED) != 0) {
+            padding = length > 0 ? payload[0] & 0xff : 0;
+            offset = 1;
+        }
+        if ((flags & PRIORITY_FLAG) != 0) {
+            offset += 5;
+        }
+        if (offset + padding > length) {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Padding exceeds the frame");
+        }
+        headerBlockStream = streamId;
+        headerBlockEndStream = (flags & END_STREAM) != 0;
+        headerBlockLength = 0;
+        appendHeaderBlock(offset, length - offset - padding);
+        if ((flags & END_HEADERS) != 0) {
+            headersComplete();
+        }
+    }
+
+    private void appendHeaderBlock(int offset, int length) throws Http2Exception {
+        if (headerBlockLength + length > MAX_HEADER_BLOCK) {
+            throw new Http2Exception(Http2Exception.ENHANCE_YOUR_CALM, "Header block too large");
+        }
+        if (headerBlockLength + length > headerBlock.length) {
+            headerBlock = Arrays.copyOf(headerBlock, Math.max(headerBlock.length * 2, headerBlockLength + length));
+        }
+        System.arraycopy(payload, offset, headerBlock, headerBlockLength, length);
+        headerBlockLength += length;
+    }
+
+    /**
+     * Every block is decoded, even for streams that are refused, to keep the decoder's table in step.
+     */
+    private void headersComplete() throws IOException {
+        int streamId = headerBlockStream;
+        boolean endStream = headerBlockEndStream;
+        headerBlockStream = 0;
+        Stream stream = streams.get(streamId);
+        if (streamId <= lastStreamId) {
+            decoder.decode(headerBlock, 0, headerBlockLength, (name, value) -> { });
+            if (stream == null) {
+                if (resetBeforeEnd.remove(streamId)) {
+                    return;
+                }
+                // RFC 7540, section 5.1: a closed stream cannot be reopened.
+                throw new Http2Exception(Http2Exception.STREAM_CLOSED, "HEADERS on closed stream " + streamId);
+            }
+            if (stream.remoteClosed) {
+                throw new Http2Exception(Http2Exception.STREAM_CLOSED, "HEADERS on closed stream " + streamId);
+            }
+            // Trailers: checked but not exposed, as in HTTP/1.1.
+            if (!endStream) {
+                throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Trailers without END_STREAM");
+            }
+            stream.remoteClosed = true;
+            dispatch(stream);
+            return;
+        }
+        lastStreamId = streamId;
+        RequestFields fields = new RequestFields();
+        int listSize = decoder.decode(headerBlock, 0, headerBlockLength, fields);
+        if (closeWhenIdle || closed || !HttpServer.isRunning() || streams.size() >= MAX_CONCURRENT_STREAMS) {
+            resetEarly(streamId, endStream, Http2Exception.REFUSED_STREAM);
+            return;
+        }
+        if (fields.method == null || fields.path == null || fields.malformed) {
+            resetEarly(streamId, endStream, Http2Exception.PROTOCOL_ERROR);
+            return;
+        }
+        stream = new Stream(streamId, initialStreamWindow);
+        stream.request = fields.request();
+        if (listSize > HttpRequestParser.MAX_HEADER_SIZE) {
+            stream.error = new HttpParseException(431, "Request Header Fields Too Large", "Header list too large");
+        }
+        streams.put(streamId, stream);
+        if (endStream) {
+            stream.remoteClosed = true;
+            dispatch(stream);
+        }
+    }
+
+    private void onReset(int streamId, int length) throws Http2Exception {
+        if (length != 4) {
+            throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "RST_STREAM of " + length + " bytes");
+        }
+        if (streamId == 0 || streamId > lastStreamId) {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "RST_STREAM on idle stream " + streamId);
+        }
+        Stream stream = streams.remove(streamId);
+        if (stream != null) {
+            stream.reset = true;
+            notifyAll();
+        }
+    }
+
+    private void onSettings(int flags, int streamId, int length) throws IOException {
+        if (streamId != 0) {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "SETTINGS on a stream");
+        }
+        if ((flags & ACK) != 0) {
+            if (length != 0) {
+                throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "SETTINGS ACK with a payload");
+            }
+            return;
+        }
+        if (length % 6 != 0) {
+            throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "SETTINGS of " + length + " bytes");
+        }
+        applySettings(payload, length);
+        settingsReceived = true;
+        send(frame(SETTINGS, ACK, 0, 0));
+    }
+
+    private void applySettings(byte[] settings, int length) throws Http2Exception {
+        ByteBuffer values = ByteBuffer.wrap(settings, 0, length);
+        while (values.hasRemaining()) {
+            int id = values.getShort() & 0xffff;
+            long value = values.getInt() & 0xffffffffL;
+            switch (id) {
+                case SETTINGS_HEADER_TABLE_SIZE:
+                    synchronized (writeLock) {
+                        encoder.setMaxTableSize((int) Math.min(value, Integer.MAX_VALUE));
+                    }
+                    break;
+                case SETTINGS_ENABLE_PUSH:
+                    if (value > 1) {
+                        throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Invalid ENABLE_PUSH " + value);
+                    }
+                    break;
+                case SETTINGS_INITIAL_WINDOW_SIZE:
+                    if (value > Integer.MAX_VALUE) {
+                        throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "Invalid INITIAL_WINDOW_SIZE " + value);
+                    }
+                    // The change applies to the windows of open streams too, and may leave them negative.
+                    long delta = value - initialStreamWindow;
+                    for (Stream stream : streams.values()) {
+                        stream.sendWindow += delta;
+                        if (stream.sendWindow > Integer.MAX_VALUE) {
+                            throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "Window overflow");
+                        }
+                    }
+                    initialStreamWindow = (int) value;
+                    notifyAll();
+                    break;
+                case SETTINGS_MAX_FRAME_SIZE:
+                    if (value < MAX_FRAME_SIZE || value > 0xffffff) {
+                        throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Invalid MAX_FRAME_SIZE " + value);
+                    }
+                    peerMaxFrameSize = (int) value;
+                    break;
+                default:
+                    // MAX_CONCURRENT_STREAMS and MAX_HEADER_LIST_SIZE limit pushes and requests, which the
+                    // server does not make; unknown settings are ignored.
+                    break;
+            }
+        }
+    }
+
+    private void onWindowUpdate(int streamId, int length) throws IOException {
+        if (length != 4) {
+            throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "WINDOW_UPDATE of " + length + " bytes");
+        }
+        int increment = ByteBuffer.wrap(payload, 0, 4).getInt() & 0x7fffffff;
+        if (streamId == 0) {
+            if (increment == 0) {
+                throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Zero window increment");
+            }
+            sendWindow += increment;
+            if (sendWindow > Integer.MAX_VALUE) {
+                throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "Connection window overflow");
+            }
+        } else {
+            Stream stream = streams.get(streamId);
+            if (stream == null) {
+                return;
+            }
+            stream.sendWindow += increment;
+            if (increment == 0 || stream.sendWindow > Integer.MAX_VALUE) {
+                streams.remove(streamId);
+                stream.reset = true;
+                resetEarly(streamId, stream.remoteClosed,
+                        increment == 0 ? Http2Exception.PROTOCOL_ERROR : Http2Exception.FLOW_CONTROL_ERROR);
+            }
+        }
+        notifyAll();
+    }
+
+    /**
+     * Hands a complete request to a worker. Without a free worker the stream is refused, which tells the client
+     * it may retry it. A request over its rate limit is answered here, without a worker.
+     */
+    private void dispatch(Stream stream) throws IOException {
+        stream.finishRequest();
+        if (stream.error == null && !HttpServer.admit(stream.request, client)) {
+            try {
+                writeHeaders(stream, RateLimiter.tooManyRequests(), true);
+            } finally {
+                streamClosed(stream);
+            }
+            return;
+        }
+        RequestTrace trace = stream.error == null ? RequestTrace.start() : null;
+        if (trace != null) {
+            trace.attach(stream.request);
+            trace.begin(RequestTrace.QUEUE);
+        }
+        try {
+            workers.execute(() -> serve(stream));
+        } catch (RejectedExecutionException e) {
+            streams.remove(stream.id);
+            reset(stream.id, Http2Exception.REFUSED_STREAM);
+        }
+    }
+
+    private void serve(Stream stream) {
+        RequestTrace trace = stream.request.getTrace();
+        if (trace != null) {
+            trace.end();
+        }
+        HttpResponse response = null;
+        try {
+            response = stream.error != null ? stream.error.toResponse() : HttpServer.handle(stream.request);
+        } catch (Exception e) {
+            Logger.getLogger(Http2Connection.class.getName()).log(Level.SEVERE, null, e);
+        }
+        if (response != null && response.getDeferred() != null) {
+            // Sending may wait for the flow-control window, so it goes back to a worker.
+            response.getDeferred().whenComplete((done, error) -> {
+                if (error != null) {
+                    Logger.getLogger(Http2Connection.class.getName()).log(Level.SEVERE, null, error);
+                }
+                try {
+                    workers.execute(() -> respond(stream, done));
+                } catch (RejectedExecutionException e) {
+                    respond(stream, null);
+                }
+            });
+            return;
+        }
+        respond(stream, response);
+    }
+
+    private void respond(Stream stream, HttpResponse response) {
+        RequestTrace trace = stream.request.getTrace();
+        try {
+            if (response == null) {
+                reset(stream.id, Http2Exception.INTERNAL_ERROR);
+                return;
+            }
+            if ("HEAD".equals(stream.request.getMethod())) {
+                response.omitBody();
+            }
+            if (trace != null) {
+                trace.begin(RequestTrace.WRITE);
+            }
+            StreamingBody streamingBody = response.getStreamingBody();
+            boolean empty = streamingBody == null && response.getContentLength() == 0;
+            writeHeaders(stream, response, empty);
+            if (empty) {
+                return;
+            }
+            DataOutput out = new DataOutput(stream);
+            if (streamingBody != null) {
+                if (streamingBody instanceof EventStream.Subscription) {
+                    // A writer waiting for window the client will never grant is released by abandoning the stream.
+                    ((EventStream.Subscription) streamingBody).closeOnEviction(() -> abandon(stream));
+                }
+                // Closed only on success: closing ends the stream, which would pass a failed body off as complete.
+                OutputStream body = new BufferedOutputStream(out, MAX_FRAME_SIZE);
+                streamingBody.writeTo(body);
+                body.close();
+            } else if (response.getFileBody() != null) {
+                try (FileRegion region = response.getFileBody()) {
+                    region.transferFully(Channels.newChannel(out));
+                }
+                out.close();
+            } else if (response.getBufferBody() != null) {
+                ByteBuffer body = response.getBufferBody().duplicate();
+                byte[] chunk = new byte[Math.min(body.remaining(), MAX_FRAME_SIZE)];
+                while (body.hasRemaining()) {
+                    int count = Math.min(body.remaining(), chunk.length);
+                    body.get(chunk, 0, count);
+                    writeData(stream, chunk, 0, count, !body.hasRemaining());
+                }
+            } else {
+                byte[] body = response.getBodyBytes();
+                writeData(stream, body, 0, body.length, true);
+            }
+        } catch (IOException e) {
+            Logger.getLogger(Http2Connection.class.getName()).log(Level.FINE, "Stream " + stream.id + " aborted", e);
+            try {
+                reset(stream.id, Http2Exception.CANCEL);
+            } catch (IOException ignored) {
+            }
+        } catch (RuntimeException e) {
+            Logger.getLogger(Http2Connection.class.getName()).log(Level.SEVERE, null, e);
+            // Headers or data may already be out, so the client has to be told the stream will not finish.
+            try {
+                reset(stream.id, Http2Exception.INTERNAL_ERROR);
+            } catch (IOException ignored) {
+            }
+        } finally {
+            if (trace != null && response != null) {
+                trace.finish(response.getStatusCode());
+            }
+            streamClosed(stream);
+        }
+    }
+
+    private void writeHeaders(Stream stream, HttpResponse response, boolean endStream) throws IOException {
+        synchronized (writeLock) {
+            encoder.begin();
+            encoder.field(":status", Integer.toString(response.getStatusCode()));
+            if (response.hasDateHeader()) {
+                encoder.field("date", HttpDate.value());
+            }
+            if (response.getStatusCode() != 304) {
+                encoder.field("content-type", response.getContentType());
+                long length = response.getDeclaredLength();
+                if (length >= 0) {
+                    encoder.field("content-length", Long.toString(length));
+                }
+            }
+            for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+                String name = header.getKey().toLowerCase(Locale.ROOT);
+                if (!isConnectionSpecific(name)) {
+                    encoder.field(name, header.getValue());
+                }
+            }
+            byte[] block = encoder.end();
+            int maxFrame = peerMaxFrameSize;
+            int offset = 0;
+            int type = HEADERS;
+            do {
+                int count = Math.min(block.length - offset, maxFrame);
+                int flags = offset + count == block.length ? END_HEADERS : 0;
+                if (type == HEADERS && endStream) {
+                    flags |= END_STREAM;
+                }
+                transport.write(frame(type, flags, stream.id, count).put(block, offset, count).flip());
+                offset += count;
+                type = CONTINUATION;
+            } while (offset < block.length);
+        }
+    }
+
+    private static boolean isConnectionSpecific(String name) {
+        return name.equals("connection") || name.equals("keep-alive") || name.equals("transfer-encoding")
+                || name.equals("upgrade") || name.equals("proxy-connection");
+    }
+
+    /**
+     * Sends {@code data} as {@code DATA} frames, each as large as the windows and the client's frame size allow.
+     */
+    private void writeData(Stream stream, byte[] data, int offset, int length, boolean last) throws IOException {
+        do {
+            int count = length == 0 ? 0 : reserve(stream, length);
+            int flags = last && count == length ? END_STREAM : 0;
+            synchronized (writeLock) {
+                transport.write(frame(DATA, flags, stream.id, count).put(data, offset, count).flip());
+            }
+            offset += count;
+            length -= count;
+        } while (length > 0);
+    }
+
+    /**
+     * Takes up to {@code wanted} bytes from the connection and stream windows, waiting while either is empty.
+     * A client that grants no window for the idle timeout gets the stream cancelled.
+     */
+    private synchronized int reserve(Stream stream, int wanted) throws IOException {
+        long deadline = System.currentTimeMillis() + idleTimeout;
+        while (true) {
+            if (closed || stream.reset) {
+                throw new IOException("Stream " + stream.id + " closed");
+            }
+            long window = Math.min(sendWindow, stream.sendWindow);
+            if (window > 0) {
+                int count = (int) Math.min(Math.min(wanted, window), peerMaxFrameSize);
+                sendWindow -= count;
+                stream.sendWindow -= count;
+                return count;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new IOException("Flow-control window stayed closed on stream " + stream.id);
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    /**
+     * Fails the writes of a stream the server gives up on; the writer then resets it.
+     */
+    private synchronized void abandon(Stream stream) {
+        stream.reset = true;
+        notifyAll();
+    }
+
+    private void streamClosed(Stream stream) {
+        boolean finished;
+        synchronized (this) {
+            streams.remove(stream.id);
+            notifyAll();
+            finished = streams.isEmpty() && (closeWhenIdle || !HttpServer.isRunning()) && !closed;
+        }
+        if (finished) {
+            goAway(Http2Exception.NO_ERROR, "");
+            transport.close();
+        }
+    }
+
+    /**
+     * Whether no request is in progress, so the connection can be closed without losing one.
+     */
+    synchronized boolean isIdle() {
+        return streams.isEmpty() && headerBlockStream == 0;
+    }
+
+    /**
+     * Tells the client no further streams will be served; those it already opened still finish.
+     */
+    void goAway(int errorCode, String message) {
+        byte[] debug = message.getBytes(StandardCharsets.UTF_8);
+        int last;
+        synchronized (this) {
+            closeWhenIdle = true;
+            last = lastStreamId;
+        }
+        try {
+            send(frame(GOAWAY, 0, 0, 8 + debug.length).putInt(last).putInt(errorCode).put(debug));
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void goAway(Http2Exception error) {
+        Logger.getLogger(Http2Connection.class.getName()).log(Level.FINE, "HTTP/2 connection error", error);
+        goAway(error.getErrorCode(), error.getMessage());
+    }
+
+    /**
+     * Called by the engine once the connection is closed; wakes the workers waiting for window.
+     */
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    /**
+     * Resets a stream from the reading thread. Unless the client had finished sending on it, the stream is
+     * remembered for a while, since trailers it sent before seeing the reset are still to be ignored.
+     */
+    private void resetEarly(int streamId, boolean remoteClosed, int errorCode) throws IOException {
+        if (!remoteClosed) {
+            resetBeforeEnd.add(streamId);
+            if (resetBeforeEnd.size() > MAX_CONCURRENT_STREAMS) {
+                Iterator<Integer> oldest = resetBeforeEnd.iterator();
+                oldest.next();
+                oldest.remove();
+            }
+        }
+        reset(streamId, errorCode);
+    }
+
+    private void reset(int streamId, int errorCode) throws IOException {
+        send(frame(RST_STREAM, 0, streamId, 4).putInt(errorCode));
+    }
+
+    private void windowUpdate(int streamId, int increment) throws IOException {
+        send(frame(WINDOW_UPDATE, 0, streamId, 4).putInt(increment));
+    }
+
+    private void send(ByteBuffer frame) throws IOException {
+        synchronized (writeLock) {
+            transport.write(frame.flip());
+        }
+    }
+
+    /**
+     * A buffer for one frame, with its header written and room for {@code length} bytes of payload.
+     */
+    private static ByteBuffer frame(int type, int flags, int streamId, int length) {
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + length);
+        frame.put((byte) (length >>> 16)).put((byte) (length >>> 8)).put((byte) length);
+        frame.put((byte) type).put((byte) flags).putInt(streamId);
+        return frame;
+    }
+
+    private static final class Stream {
+        private final int id;
+        private long sendWindow;
+        private int received;
+        private HttpRequest request;
+        private HttpParseException error;
+        private byte[] body = EMPTY;
+        private int bodyLength;
+        private boolean remoteClosed;
+        private boolean reset;
+
+        Stream(int id, int sendWindow) {
+            this.id = id;
+            this.sendWindow = sendWindow;
+        }
+
+        void appendBody(byte[] data, int offset, int length) {
+            if (error != null) {
+                return;
+            }
+            if (bodyLength + length > HttpRequestParser.MAX_BODY_SIZE) {
+                error = new HttpParseException(413, "Payload Too Large", "Body too large");
+                body = EMPTY;
+                return;
+            }
+            if (bodyLength + length > body.length) {
+                body = Arrays.copyOf(body, Math.max(body.length * 2, Math.max(bodyLength + length, 1024)));
+            }
+            System.arraycopy(data, offset, body, bodyLength, length);
+            bodyLength += length;
+        }
+
+        void finishRequest() {
+            if (bodyLength > 0) {
+                request.setBodyBytes(Arrays.copyOf(body, bodyLength));
+            }
+            body = EMPTY;
+        }
+    }
+
+    /**
+     * Builds the request from its decoded fields. Pseudo-header fields must come first, field names must be
+     * lowercase and connection-specific fields are not allowed (RFC 7540, section 8.1.2).
+     */
+    private static final class RequestFields implements BiConsumer<String, String> {
+        private final HttpRequest request = new HttpRequest();
+        private String method;
+        private String path;
+        private String authority;
+        private boolean regular;
+        private boolean malformed;
+
+        @Override
+        public void accept(String name, String value) {
+            if (name.startsWith(":")) {
+                malformed |= regular;
+                switch (name) {
+                    case ":method":
+                        malformed |= method != null;
+                        method = value;
+                        break;
+                    case ":path":
+                        // Only origin-form, or * for OPTIONS, is allowed (RFC 9113, section 8.3.1).
+                        malformed |= path != null || !value.startsWith("/") && !value.equals("*");
+                        path = value;
+                        break;
+                    case ":authority":
+                        authority = value;
+                        break;
+                    case ":scheme":
+                        break;
+                    default:
+                        malformed = true;
+                }
+                return;
+            }
+            regular = true;
+            if (!name.equals(name.toLowerCase(Locale.ROOT)) || isConnectionSpecific(name)
+                    || name.equals("te") && !value.equals("trailers")) {
+                malformed = true;
+                return;
+            }
+            String previous = request.getHeader(name);
+            if (previous != null) {
+                // Cookies may be split into several fields; rejoin them the way HTTP/1.1 sends them.
+                value = previous + (name.equals("cookie") ? "; " : ", ") + value;
+            }
+            request.addHeader(name, value);
+        }
+
+        HttpRequest request() {
+            request.setMethod(method);
+            request.setTarget(path);
+            request.setHttpVersion("HTTP/2.0");
+            request.setKeepAlive(true);
+            if (authority != null && request.getHeader("Host") == null) {
+                request.addHeader("Host", authority);
+            }
+            return request;
+        }
+    }
+
+    /**
+     * Body stream of one response; the stream ends when it is closed.
+     */
+    private final class DataOutput extends OutputStream {
+        private final Stream stream;
+        private boolean closed;
+
+        DataOutput(Stream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            if (length > 0) {
+                writeData(stream, data, offset, length, false);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                writeData(stream, EMPTY, 0, 0, true);
+            }
+        }
+    }
+}
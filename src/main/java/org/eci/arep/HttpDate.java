@@ -0,0 +1,53 @@
+package org.eci.arep;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * The {@code Date} header line, formatted at most once per second and shared by every response sent
+ * within that second.
+ */
+final class HttpDate {
+    private static volatile Line current = new Line(-1, "", new byte[0]);
+
+    private HttpDate() {
+    }
+
+    static byte[] headerLine() {
+        return headerLine(System.currentTimeMillis());
+    }
+
+    static byte[] headerLine(long millis) {
+        return line(millis).bytes;
+    }
+
+    /**
+     * The header value alone, for HTTP/2 where fields are not sent as text lines.
+     */
+    static String value() {
+        return line(System.currentTimeMillis()).value;
+    }
+
+    private static Line line(long millis) {
+        long second = millis / 1000;
+        Line line = current;
+        if (line.second != second) {
+            String value = StaticResources.HTTP_DATE.format(Instant.ofEpochSecond(second));
+            line = new Line(second, value, ("Date: " + value + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            current = line;
+        }
+        return line;
+    }
+
+    private static final class Line {
+        private final long second;
+        private final String value;
+        private final byte[] bytes;
+
+        Line(long second, String value, byte[] bytes) {
+            this.second = second;
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.eci.arep;
+
+import java.io.IOException;
+
+/**
+ * A request the server refuses to parse, with the status it should be answered with before the connection
+ * is closed.
+ */
+public class HttpParseException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+    private final String reason;
+
+    public HttpParseException(int statusCode, String reason, String message) {
+        super(message);
+        this.statusCode = statusCode;
+        this.reason = reason;
+    }
+
+    static HttpParseException badRequest(String message) {
+        return new HttpParseException(400, "Bad Request", message);
+    }
+
+    static HttpParseException requestTimeout(String message) {
+        return new HttpParseException(408, "Request Timeout", message);
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * The error response, always closing the connection since the rest of the stream cannot be trusted.
+     */
+    HttpResponse toResponse() {
+        HttpResponse response = new HttpResponse();
+        response.setStatus(statusCode, reason);
+        response.setBody(reason);
+        return response;
+    }
+}
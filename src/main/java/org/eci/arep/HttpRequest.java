@@ -1,15 +1,31 @@
 package org.eci.arep;
 
 import java.net.URI;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
+/**
+ * A request as read off the wire. The parser only records the raw target and header bytes; the URI, the
+ * decoded path, the query parameters, the header map and the body string are built on first use.
+ */
 public class HttpRequest {
     private String method;
+    private String target;
     private URI uri;
+    private String rawPath;
+    private String path;
+    private QueryParameters query;
     private String httpVersion;
-    private Map<String, String> headers = new HashMap<>();
+    private Map<String, String> headers;
+    private byte[] rawHeaders;
+    private int[] headerFields;
+    private int headerCount;
     private String body;
+    private byte[] bodyBytes;
+    private boolean keepAlive;
+    private RequestTrace trace;
 
     public String getMethod() {
         return method;
@@ -20,11 +36,64 @@ public class HttpRequest {
     }
 
     public URI getUri() {
+        if (uri == null && target != null) {
+            uri = URI.create(target);
+        }
         return uri;
     }
 
     public void setUri(URI uri) {
         this.uri = uri;
+        this.target = null;
+        this.rawPath = null;
+        this.path = null;
+        this.query = null;
+    }
+
+    /**
+     * The request target exactly as sent, still percent-encoded.
+     */
+    public String getTarget() {
+        return target != null ? target : uri != null ? uri.toString() : null;
+    }
+
+    void setTarget(String target) {
+        this.target = target;
+        this.uri = null;
+        this.rawPath = null;
+        this.path = null;
+        this.query = null;
+    }
+
+    /**
+     * Path of the target still percent-encoded, so an encoded {@code /} stays inside its segment. The router
+     * matches on this path.
+     */
+    public String getRawPath() {
+        if (rawPath == null) {
+            if (uri == null && target != null && target.startsWith("/")) {
+                int end = target.indexOf('?');
+                rawPath = end < 0 ? target : target.substring(0, end);
+            } else if (getUri() != null) {
+                rawPath = uri.getRawPath();
+            }
+        }
+        return rawPath;
+    }
+
+    /**
+     * Decoded path of the target, without building a {@link URI} for origin-form targets.
+     */
+    public String getPath() {
+        if (path == null) {
+            if (uri == null && target != null && target.startsWith("/")) {
+                int end = target.indexOf('?');
+                path = QueryParameters.decode(target, 0, end < 0 ? target.length() : end, false);
+            } else if (getUri() != null) {
+                path = uri.getPath();
+            }
+        }
+        return path;
     }
 
     public String getHttpVersion() {
@@ -36,35 +105,136 @@ public class HttpRequest {
     }
 
     public Map<String, String> getHeaders() {
+        if (headers == null) {
+            headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (int i = 0; i < headerCount; i++) {
+                int field = i * 4;
+                String name = new String(rawHeaders, headerFields[field], headerFields[field + 1] - headerFields[field],
+                        StandardCharsets.ISO_8859_1);
+                headers.merge(name, fieldValue(field), (first, next) -> first + ", " + next);
+            }
+            rawHeaders = null;
+            headerFields = null;
+            headerCount = 0;
+        }
         return headers;
     }
 
+    /**
+     * Value of a header, repeated ones joined with commas. Until the header map is needed this scans the raw
+     * header bytes and only decodes the value asked for.
+     */
+    public String getHeader(String name) {
+        if (headers != null || rawHeaders == null) {
+            return getHeaders().get(name);
+        }
+        String value = null;
+        for (int i = 0; i < headerCount; i++) {
+            int field = i * 4;
+            if (HttpRequestParser.equalsIgnoreCase(rawHeaders, headerFields[field], headerFields[field + 1], name)) {
+                value = value == null ? fieldValue(field) : value + ", " + fieldValue(field);
+            }
+        }
+        return value;
+    }
+
     public void addHeader(String key, String value) {
-        headers.put(key, value);
+        getHeaders().put(key, value);
+    }
+
+    void setRawHeaders(byte[] rawHeaders, int[] headerFields, int headerCount) {
+        this.rawHeaders = rawHeaders;
+        this.headerFields = headerFields;
+        this.headerCount = headerCount;
+        this.headers = null;
+    }
+
+    private String fieldValue(int field) {
+        return new String(rawHeaders, headerFields[field + 2], headerFields[field + 3] - headerFields[field + 2],
+                StandardCharsets.ISO_8859_1);
+    }
+
+    public boolean isKeepAliveRequested() {
+        String connection = getHeader("Connection");
+        if (connection != null) {
+            String value = connection.toLowerCase();
+            if (value.contains("close")) {
+                return false;
+            }
+            if (value.contains("keep-alive")) {
+                return true;
+            }
+        }
+        return "HTTP/1.1".equals(httpVersion);
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * The request's stage timings, or null when requests are not being traced.
+     */
+    RequestTrace getTrace() {
+        return trace;
+    }
+
+    void setTrace(RequestTrace trace) {
+        this.trace = trace;
     }
 
     public String getBody() {
+        if (body == null && bodyBytes != null) {
+            body = new String(bodyBytes, StandardCharsets.UTF_8);
+        }
         return body;
     }
 
     public void setBody(String body) {
         this.body = body;
+        this.bodyBytes = null;
     }
 
-    public String getValues(String name) {
-        if (uri == null || uri.getQuery() == null) {
-            return null;
+    public byte[] getBodyBytes() {
+        if (bodyBytes == null && body != null) {
+            bodyBytes = body.getBytes(StandardCharsets.UTF_8);
         }
+        return bodyBytes;
+    }
 
-        String query = uri.getQuery().split("#")[0];
-        String[] params = query.split("&");
-        for (String param : params) {
-            String[] keyValue = param.split("=", 2);
-            if (keyValue.length == 2 && keyValue[0].equals(name)) {
-                return keyValue[1];
-            }
+    void setBodyBytes(byte[] bodyBytes) {
+        this.bodyBytes = bodyBytes;
+        this.body = null;
+    }
+
+    /**
+     * Decoded query string, parsed on first use.
+     */
+    public QueryParameters getQueryParameters() {
+        if (query == null) {
+            query = QueryParameters.parse(rawQuery());
+        }
+        return query;
+    }
+
+    private String rawQuery() {
+        if (uri != null || target == null) {
+            return uri != null ? uri.getRawQuery() : null;
         }
-        return null;
+        int start = target.indexOf('?');
+        return start < 0 ? null : target.substring(start + 1);
+    }
+
+    public String getValues(String name) {
+        return getQueryParameters().get(name);
+    }
+
+    public List<String> getAllValues(String name) {
+        return getQueryParameters().getAll(name);
     }
 
 }
@@ -0,0 +1,501 @@
+package org.eci.arep;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Incremental HTTP/1.x request parser working on bytes. Each call to {@link #parse(ByteBuffer)} consumes what
+ * the buffer holds and keeps partial lines, headers and bodies between calls, so requests may arrive split
+ * across any number of reads. One parser belongs to one connection; its line and header buffers are reused
+ * for every request on it.
+ */
+public class HttpRequestParser {
+    static final int MAX_REQUEST_LINE = ServerConfig.getInt("MAX_REQUEST_LINE", 8 * 1024);
+    static final int MAX_HEADERS = ServerConfig.getInt("MAX_HEADERS", 100);
+    static final int MAX_HEADER_SIZE = ServerConfig.getInt("MAX_HEADER_SIZE", 16 * 1024);
+    static final int MAX_BODY_SIZE = ServerConfig.getInt("MAX_BODY_SIZE", 1024 * 1024);
+
+    private static final int MAX_CHUNK_LINE = 1024;
+
+    private static final int REQUEST_LINE = 0;
+    private static final int HEADERS = 1;
+    private static final int BODY = 2;
+    private static final int CHUNK_SIZE = 3;
+    private static final int CHUNK_DATA = 4;
+    private static final int CHUNK_END = 5;
+    private static final int TRAILERS = 6;
+
+    private static final String[] METHODS = {"GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "PATCH"};
+    private static final boolean[] TOKEN = new boolean[128];
+    private static final boolean[] TARGET = new boolean[128];
+
+    static {
+        for (char c = '0'; c <= '9'; c++) {
+            TOKEN[c] = TARGET[c] = true;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            TOKEN[c] = TARGET[c] = true;
+            TOKEN[c - 32] = TARGET[c - 32] = true;
+        }
+        for (char c : "!#$%&'*+-.^_`|~".toCharArray()) {
+            TOKEN[c] = true;
+        }
+        for (char c : "-._~!$&'()*+,;=:@/?%".toCharArray()) {
+            TARGET[c] = true;
+        }
+    }
+
+    private final int maxRequestLine;
+    private final int maxHeaders;
+    private final int maxHeaderSize;
+    private final int maxBodySize;
+
+    private int state = REQUEST_LINE;
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private byte[] head = new byte[1024];
+    private int headLength;
+    private int[] fields = new int[64];
+    private int headerCount;
+    private int headerBytes;
+
+    private HttpRequest request;
+    private long contentLength = -1;
+    private boolean chunked;
+    private byte[] body;
+    private int bodyLength;
+    private long chunkRemaining;
+    private int colon;
+    private int valueStart;
+    private int valueEnd;
+
+    public HttpRequestParser() {
+        this(MAX_REQUEST_LINE, MAX_HEADERS, MAX_HEADER_SIZE, MAX_BODY_SIZE);
+    }
+
+    HttpRequestParser(int maxRequestLine, int maxHeaders, int maxHeaderSize, int maxBodySize) {
+        this.maxRequestLine = maxRequestLine;
+        this.maxHeaders = maxHeaders;
+        this.maxHeaderSize = maxHeaderSize;
+        this.maxBodySize = maxBodySize;
+    }
+
+    /**
+     * Consumes bytes from {@code buffer} and returns the request they complete, or null once the buffer is
+     * exhausted without finishing one. Bytes after a complete request are left in the buffer for the next call.
+     * After an exception the parser must not be used again.
+     */
+    public HttpRequest parse(ByteBuffer buffer) throws HttpParseException {
+        while (true) {
+            switch (state) {
+                case REQUEST_LINE:
+                    if (!readLine(buffer, maxRequestLine, 414, "URI Too Long")) {
+                        return null;
+                    }
+                    // Empty lines before a request line are tolerated (RFC 9112, section 2.2).
+                    if (lineLength > 0) {
+                        requestLine();
+                        state = HEADERS;
+                    }
+                    lineLength = 0;
+                    break;
+                case HEADERS:
+                case TRAILERS:
+                    if (!readLine(buffer, maxHeaderSize, 431, "Request Header Fields Too Large")) {
+                        return null;
+                    }
+                    headerBytes += lineLength + 2;
+                    if (headerBytes > maxHeaderSize) {
+                        throw new HttpParseException(431, "Request Header Fields Too Large", "Header section too large");
+                    }
+                    if (lineLength == 0) {
+                        if (state == TRAILERS || !startBody()) {
+                            return finish();
+                        }
+                    } else if (state == HEADERS) {
+                        headerLine();
+                    } else {
+                        // Trailer fields are checked but not exposed.
+                        validateField(0, lineLength);
+                    }
+                    lineLength = 0;
+                    break;
+                case BODY: {
+                    int count = (int) Math.min(buffer.remaining(), contentLength - bodyLength);
+                    buffer.get(body, bodyLength, count);
+                    bodyLength += count;
+                    if (bodyLength < contentLength) {
+                        return null;
+                    }
+                    return finish();
+                }
+                case CHUNK_SIZE:
+                    if (!readLine(buffer, MAX_CHUNK_LINE, 400, "Bad Request")) {
+                        return null;
+                    }
+                    chunkRemaining = chunkSize();
+                    lineLength = 0;
+                    if (chunkRemaining == 0) {
+                        state = TRAILERS;
+                    } else {
+                        if (bodyLength + chunkRemaining > maxBodySize) {
+                            throw new HttpParseException(413, "Payload Too Large", "Chunked body too large");
+                        }
+                        ensureBody(bodyLength + (int) chunkRemaining);
+                        state = CHUNK_DATA;
+                    }
+                    break;
+                case CHUNK_DATA: {
+                    int count = (int) Math.min(buffer.remaining(), chunkRemaining);
+                    buffer.get(body, bodyLength, count);
+                    bodyLength += count;
+                    chunkRemaining -= count;
+                    if (chunkRemaining > 0) {
+                        return null;
+                    }
+                    state = CHUNK_END;
+                    break;
+                }
+                case CHUNK_END:
+                    if (!readLine(buffer, 2, 400, "Bad Request")) {
+                        return null;
+                    }
+                    if (lineLength != 0) {
+                        throw HttpParseException.badRequest("Chunk data longer than its size");
+                    }
+                    state = CHUNK_SIZE;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown parser state " + state);
+            }
+        }
+    }
+
+    /**
+     * True while part of a request has been read but not yet returned.
+     */
+    public boolean isPartial() {
+        return state != REQUEST_LINE || lineLength > 0;
+    }
+
+    /**
+     * True once the header section of the current request is complete and its body, or trailers, are being read.
+     */
+    public boolean isReadingBody() {
+        return state >= BODY;
+    }
+
+    /**
+     * Appends bytes up to the next LF to the line buffer. Returns false, with the buffer drained, when the line
+     * is still incomplete; otherwise consumes the LF and drops a trailing CR.
+     */
+    private boolean readLine(ByteBuffer buffer, int max, int status, String reason) throws HttpParseException {
+        int position = buffer.position();
+        int limit = buffer.limit();
+        int end = position;
+        if (buffer.hasArray()) {
+            byte[] array = buffer.array();
+            int offset = buffer.arrayOffset();
+            while (end < limit && array[offset + end] != '\n') {
+                end++;
+            }
+        } else {
+            while (end < limit && buffer.get(end) != '\n') {
+                end++;
+            }
+        }
+        int count = end - position;
+        if (lineLength + count > max + 1) {
+            throw new HttpParseException(status, reason, "Line longer than " + max + " bytes");
+        }
+        if (lineLength + count > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + count));
+        }
+        buffer.get(line, lineLength, count);
+        lineLength += count;
+        if (end == limit) {
+            return false;
+        }
+        buffer.get();
+        if (lineLength > 0 && line[lineLength - 1] == '\r') {
+            lineLength--;
+        }
+        return true;
+    }
+
+    private void requestLine() throws HttpParseException {
+        int methodEnd = indexOf(line, ' ', 0, lineLength);
+        int targetEnd = methodEnd < 0 ? -1 : indexOf(line, ' ', methodEnd + 1, lineLength);
+        if (methodEnd <= 0 || targetEnd <= methodEnd + 1) {
+            throw HttpParseException.badRequest("Malformed request line");
+        }
+        for (int i = 0; i < methodEnd; i++) {
+            if (!isToken(line[i])) {
+                throw HttpParseException.badRequest("Invalid method");
+            }
+        }
+
+        for (int i = methodEnd + 1; i < targetEnd; i++) {
+            byte b = line[i];
+            if (b < 0 || !TARGET[b]) {
+                throw HttpParseException.badRequest("Invalid character in request target");
+            }
+            if (b == '%' && (i + 2 >= targetEnd || !isHex(line[i + 1]) || !isHex(line[i + 2]))) {
+                throw HttpParseException.badRequest("Invalid percent-encoding in request target");
+            }
+        }
+        byte first = line[methodEnd + 1];
+        if (first != '/' && !(first == '*' && targetEnd == methodEnd + 2) && !isAbsoluteForm(methodEnd + 1, targetEnd)) {
+            throw HttpParseException.badRequest("Invalid request target");
+        }
+
+        int version = targetEnd + 1;
+        if (lineLength - version != 8 || !startsWith(line, version, "HTTP/") || !isDigit(line[version + 5])
+                || line[version + 6] != '.' || !isDigit(line[version + 7])) {
+            throw HttpParseException.badRequest("Malformed HTTP version");
+        }
+        if (line[version + 5] != '1') {
+            // The HTTP/2 connection preface starts like a request; the engine hands the connection over on it.
+            if (Http2Connection.ENABLED && lineLength == 14 && startsWith(line, 0, "PRI * HTTP/2.0")) {
+                request = new HttpRequest();
+                request.setMethod("PRI");
+                request.setTarget("*");
+                request.setHttpVersion("HTTP/2.0");
+                return;
+            }
+            throw new HttpParseException(505, "HTTP Version Not Supported", "Only HTTP/1.x is supported");
+        }
+
+        request = new HttpRequest();
+        request.setMethod(method(methodEnd));
+        request.setTarget(new String(line, methodEnd + 1, targetEnd - methodEnd - 1, StandardCharsets.ISO_8859_1));
+        if (first != '/') {
+            // Only origin-form paths are decoded without a URI; parse the rest now, so a bad one is a 400 here.
+            try {
+                request.getUri();
+            } catch (IllegalArgumentException e) {
+                throw HttpParseException.badRequest("Invalid request target");
+            }
+        }
+        request.setHttpVersion(line[version + 7] == '1' ? "HTTP/1.1"
+                : line[version + 7] == '0' ? "HTTP/1.0"
+                : new String(line, version, 8, StandardCharsets.ISO_8859_1));
+    }
+
+    private String method(int length) {
+        for (String method : METHODS) {
+            if (method.length() == length && startsWith(line, 0, method)) {
+                return method;
+            }
+        }
+        return new String(line, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private boolean isAbsoluteForm(int start, int end) {
+        int colon = indexOf(line, ':', start, end);
+        return colon > start && startsWith(line, colon, "://");
+    }
+
+    private void headerLine() throws HttpParseException {
+        if (++headerCount > maxHeaders) {
+            throw new HttpParseException(431, "Request Header Fields Too Large", "More than " + maxHeaders + " headers");
+        }
+        validateField(0, lineLength);
+
+        int needed = headLength + lineLength;
+        if (needed > head.length) {
+            head = Arrays.copyOf(head, Math.max(head.length * 2, needed));
+        }
+        if (headerCount * 4 > fields.length) {
+            fields = Arrays.copyOf(fields, fields.length * 2);
+        }
+        int nameStart = headLength;
+        System.arraycopy(line, 0, head, headLength, colon);
+        headLength += colon;
+        int storedValue = headLength;
+        System.arraycopy(line, valueStart, head, headLength, valueEnd - valueStart);
+        headLength += valueEnd - valueStart;
+        int field = (headerCount - 1) * 4;
+        fields[field] = nameStart;
+        fields[field + 1] = nameStart + colon;
+        fields[field + 2] = storedValue;
+        fields[field + 3] = headLength;
+
+        if (equalsIgnoreCase(line, 0, colon, "Content-Length")) {
+            long length = 0;
+            if (valueStart == valueEnd) {
+                throw HttpParseException.badRequest("Empty Content-Length");
+            }
+            for (int i = valueStart; i < valueEnd; i++) {
+                if (!isDigit(line[i]) || length > maxBodySize) {
+                    throw HttpParseException.badRequest("Invalid Content-Length");
+                }
+                length = length * 10 + (line[i] - '0');
+            }
+            if (contentLength >= 0 && contentLength != length) {
+                throw HttpParseException.badRequest("Conflicting Content-Length headers");
+            }
+            contentLength = length;
+        } else if (equalsIgnoreCase(line, 0, colon, "Transfer-Encoding")) {
+            if (!equalsIgnoreCase(line, valueStart, valueEnd, "chunked")) {
+                throw new HttpParseException(501, "Not Implemented", "Unsupported Transfer-Encoding");
+            }
+            chunked = true;
+        }
+    }
+
+    /**
+     * Checks a {@code name: value} field line and records its colon and the bounds of the trimmed value.
+     */
+    private void validateField(int start, int end) throws HttpParseException {
+        colon = indexOf(line, ':', start, end);
+        if (colon <= start) {
+            throw HttpParseException.badRequest("Malformed header line");
+        }
+        for (int i = start; i < colon; i++) {
+            if (!isToken(line[i])) {
+                throw HttpParseException.badRequest("Invalid header name");
+            }
+        }
+        valueStart = colon + 1;
+        valueEnd = end;
+        while (valueStart < valueEnd && isWhitespace(line[valueStart])) {
+            valueStart++;
+        }
+        while (valueEnd > valueStart && isWhitespace(line[valueEnd - 1])) {
+            valueEnd--;
+        }
+        for (int i = valueStart; i < valueEnd; i++) {
+            byte b = line[i];
+            if (b >= 0 && b < 0x20 && b != '\t' || b == 0x7f) {
+                throw HttpParseException.badRequest("Invalid character in header value");
+            }
+        }
+    }
+
+    private boolean startBody() throws HttpParseException {
+        if (chunked) {
+            if (contentLength >= 0) {
+                throw HttpParseException.badRequest("Both Content-Length and Transfer-Encoding present");
+            }
+            bodyLength = 0;
+            state = CHUNK_SIZE;
+            return true;
+        }
+        if (contentLength > maxBodySize) {
+            throw new HttpParseException(413, "Payload Too Large", "Body larger than " + maxBodySize + " bytes");
+        }
+        if (contentLength > 0) {
+            body = new byte[(int) contentLength];
+            bodyLength = 0;
+            state = BODY;
+            return true;
+        }
+        return false;
+    }
+
+    private long chunkSize() throws HttpParseException {
+        int end = indexOf(line, ';', 0, lineLength);
+        if (end < 0) {
+            end = lineLength;
+        }
+        while (end > 0 && isWhitespace(line[end - 1])) {
+            end--;
+        }
+        if (end == 0) {
+            throw HttpParseException.badRequest("Missing chunk size");
+        }
+        long size = 0;
+        for (int i = 0; i < end; i++) {
+            int digit = Character.digit(line[i], 16);
+            if (digit < 0) {
+                throw HttpParseException.badRequest("Invalid chunk size");
+            }
+            size = size * 16 + digit;
+            if (size > maxBodySize) {
+                throw new HttpParseException(413, "Payload Too Large", "Chunk larger than " + maxBodySize + " bytes");
+            }
+        }
+        return size;
+    }
+
+    private void ensureBody(int capacity) {
+        if (body == null) {
+            body = new byte[Math.max(capacity, 256)];
+        } else if (capacity > body.length) {
+            body = Arrays.copyOf(body, Math.max(body.length * 2, capacity));
+        }
+    }
+
+    private HttpRequest finish() {
+        HttpRequest done = request;
+        done.setRawHeaders(Arrays.copyOf(head, headLength), Arrays.copyOf(fields, headerCount * 4), headerCount);
+        if (body != null) {
+            done.setBodyBytes(chunked ? Arrays.copyOf(body, bodyLength) : body);
+        }
+
+        state = REQUEST_LINE;
+        lineLength = 0;
+        headLength = 0;
+        headerCount = 0;
+        headerBytes = 0;
+        request = null;
+        contentLength = -1;
+        chunked = false;
+        body = null;
+        bodyLength = 0;
+        chunkRemaining = 0;
+        return done;
+    }
+
+    private static int indexOf(byte[] data, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] data, int offset, String prefix) {
+        if (offset + prefix.length() > data.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (data[offset + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean equalsIgnoreCase(byte[] data, int start, int end, String text) {
+        if (end - start != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char a = (char) (data[start + i] & 0xff);
+            if (a != text.charAt(i) && Character.toLowerCase(a) != Character.toLowerCase(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isToken(byte b) {
+        return b >= 0 && TOKEN[b];
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isHex(byte b) {
+        return Character.digit(b, 16) >= 0;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+}
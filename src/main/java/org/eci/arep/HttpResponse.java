@@ -1,34 +1,402 @@
 package org.eci.arep;
 
+import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * A response and its wire encoding. The head is assembled from pre-encoded status lines and header
+ * fragments straight into bytes; the body is sent as it is held, so a string body is encoded exactly once.
+ */
 public class HttpResponse {
+    private static final String[] REASONS = new String[600];
+    private static final byte[][] STATUS_LINES = new byte[600][];
+    private static final Map<String, byte[]> CONTENT_TYPE_LINES = new ConcurrentHashMap<>();
+    private static final int MAX_CACHED_CONTENT_TYPES = 256;
+
+    private static final byte[] CRLF = ascii("\r\n");
+    private static final byte[] COLON = ascii(": ");
+    private static final byte[] CONTENT_LENGTH = ascii("Content-Length: ");
+    private static final byte[] CHUNKED = ascii("Transfer-Encoding: chunked\r\n");
+    private static final byte[] KEEP_ALIVE = ascii("Connection: keep-alive\r\n");
+    private static final byte[] CLOSE = ascii("Connection: close\r\n");
+    private static final byte[] EMPTY = new byte[0];
+
+    static {
+        reason(200, "OK");
+        reason(201, "Created");
+        reason(202, "Accepted");
+        reason(204, "No Content");
+        reason(206, "Partial Content");
+        reason(301, "Moved Permanently");
+        reason(302, "Found");
+        reason(304, "Not Modified");
+        reason(400, "Bad Request");
+        reason(401, "Unauthorized");
+        reason(403, "Forbidden");
+        reason(404, "Not Found");
+        reason(405, "Method Not Allowed");
+        reason(408, "Request Timeout");
+        reason(413, "Payload Too Large");
+        reason(414, "URI Too Long");
+        reason(416, "Range Not Satisfiable");
+        reason(429, "Too Many Requests");
+        reason(431, "Request Header Fields Too Large");
+        reason(500, "Internal Server Error");
+        reason(501, "Not Implemented");
+        reason(503, "Service Unavailable");
+        reason(504, "Gateway Timeout");
+        reason(505, "HTTP Version Not Supported");
+    }
+
     private int statusCode = 200;
     private String statusMessage = "OK";
     private String contentType = "text/plain";
-    private String body = "";
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private byte[] body = EMPTY;
+    private ByteBuffer bufferBody;
+    private FileRegion fileBody;
+    private StreamingBody streamingBody;
+    private boolean chunked = true;
+    private boolean keepAlive;
+    private boolean dateHeader = true;
+    private boolean bodyOmitted;
+    // The length of the body a HEAD response leaves out, or -1 when that body would have been streamed.
+    private long omittedLength;
+    private CompletableFuture<HttpResponse> deferred;
+
+    private static void reason(int code, String reason) {
+        REASONS[code] = reason;
+        STATUS_LINES[code] = ascii("HTTP/1.1 " + code + " " + reason + "\r\n");
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
 
     public void setStatus(int code, String message) {
         this.statusCode = code;
         this.statusMessage = message;
     }
 
+    /**
+     * Sets a status with its standard reason phrase.
+     */
+    public void setStatus(int code) {
+        setStatus(code, code >= 0 && code < REASONS.length && REASONS[code] != null ? REASONS[code] : "Unknown");
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    String getStatusMessage() {
+        return statusMessage;
+    }
+
     public void setContentType(String contentType) {
         this.contentType = contentType;
     }
 
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setHeader(String name, String value) {
+        headers.put(name, value);
+    }
+
+    String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    Map<String, String> getHeaders() {
+        return headers;
+    }
+
     public void setBody(String body) {
+        setBody(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void setBody(byte[] body) {
+        clearBody();
         this.body = body;
     }
 
-    public void send(OutputStream output) {
-        PrintWriter writer = new PrintWriter(output, true);
-        writer.printf("HTTP/1.1 %d %s\r\n", statusCode, statusMessage);
-        writer.printf("Content-Type: %s\r\n", contentType);
-        writer.printf("Content-Length: %d\r\n", body.getBytes().length);
-        writer.print("\r\n");
-        writer.print(body);
-        writer.flush();
+    /**
+     * Sends the remaining bytes of the buffer, typically a slice of a memory-mapped file, without copying
+     * them to the heap.
+     */
+    public void setBody(ByteBuffer body) {
+        clearBody();
+        this.bufferBody = body;
+    }
+
+    void setBody(FileRegion body) {
+        clearBody();
+        this.fileBody = body;
+    }
+
+    /**
+     * Streams the body with chunked transfer encoding, using the content type the body declares.
+     */
+    public void setBody(StreamingBody body) {
+        clearBody();
+        this.streamingBody = body;
+        this.contentType = body.getContentType();
+    }
+
+    private void clearBody() {
+        this.body = EMPTY;
+        this.bufferBody = null;
+        this.fileBody = null;
+        this.streamingBody = null;
+    }
+
+    /**
+     * Makes this the answer to a HEAD request: the head still describes the body, Content-Length included, but
+     * the body itself is dropped and never sent.
+     */
+    void omitBody() {
+        if (bodyOmitted) {
+            return;
+        }
+        bodyOmitted = true;
+        if (streamingBody != null) {
+            omittedLength = -1;
+            if (streamingBody instanceof EventStream.Subscription) {
+                ((EventStream.Subscription) streamingBody).cancel();
+            }
+        } else {
+            omittedLength = getContentLength();
+            if (fileBody != null) {
+                try {
+                    fileBody.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        clearBody();
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * HTTP/1.0 clients do not understand chunked framing; their streamed bodies end when the connection closes.
+     */
+    void setChunkedAllowed(boolean chunked) {
+        this.chunked = chunked;
+    }
+
+    /**
+     * Responses serialized once and replayed later leave the {@code Date} header out rather than send a stale one.
+     */
+    void setDateHeader(boolean dateHeader) {
+        this.dateHeader = dateHeader;
+    }
+
+    boolean hasDateHeader() {
+        return dateHeader;
+    }
+
+    /**
+     * Set when an asynchronous handler has not finished yet; the future completes with this response once its
+     * body, or an error status, has been filled in.
+     */
+    void setDeferred(CompletableFuture<HttpResponse> deferred) {
+        this.deferred = deferred;
+    }
+
+    CompletableFuture<HttpResponse> getDeferred() {
+        return deferred;
+    }
+
+    /**
+     * This response, once any asynchronous handler behind it has completed.
+     */
+    HttpResponse await() {
+        return deferred != null ? deferred.join() : this;
+    }
+
+    long getContentLength() {
+        if (fileBody != null) {
+            return fileBody.count();
+        }
+        return bufferBody != null ? bufferBody.remaining() : body.length;
+    }
+
+    /**
+     * The length the head declares, which for a HEAD response is that of the omitted body; -1 when the body is
+     * streamed and its length unknown.
+     */
+    long getDeclaredLength() {
+        if (bodyOmitted) {
+            return omittedLength;
+        }
+        return streamingBody != null ? -1 : getContentLength();
+    }
+
+    ByteBuffer encodeHead() {
+        Head head = new Head(256 + headers.size() * 48);
+        byte[] statusLine = statusCode >= 0 && statusCode < STATUS_LINES.length
+                && statusMessage.equals(REASONS[statusCode]) ? STATUS_LINES[statusCode] : null;
+        if (statusLine != null) {
+            head.append(statusLine);
+        } else {
+            head.append("HTTP/1.1 ").append(Integer.toString(statusCode)).append(" ").append(statusMessage).append(CRLF);
+        }
+        if (dateHeader) {
+            head.append(HttpDate.headerLine());
+        }
+        long length = getDeclaredLength();
+        if (statusCode != 304) {
+            head.append(contentTypeLine(contentType));
+            if (length >= 0) {
+                head.append(CONTENT_LENGTH).append(Long.toString(length)).append(CRLF);
+            } else if (isChunked()) {
+                head.append(CHUNKED);
+            }
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            head.append(header.getKey()).append(COLON).append(header.getValue()).append(CRLF);
+        }
+        head.append(keepAlive && (length >= 0 || isChunked()) ? KEEP_ALIVE : CLOSE);
+        head.append(CRLF);
+        return head.toBuffer();
+    }
+
+    private static byte[] contentTypeLine(String contentType) {
+        byte[] line = CONTENT_TYPE_LINES.get(contentType);
+        if (line == null) {
+            line = ascii("Content-Type: " + contentType + "\r\n");
+            if (CONTENT_TYPE_LINES.size() < MAX_CACHED_CONTENT_TYPES) {
+                CONTENT_TYPE_LINES.put(contentType, line);
+            }
+        }
+        return line;
+    }
+
+    /**
+     * Head and in-memory body as buffers for one gathering write. File and streamed bodies are not included.
+     */
+    ByteBuffer[] encode() {
+        ByteBuffer head = encodeHead();
+        if (fileBody != null || streamingBody != null) {
+            return new ByteBuffer[]{head};
+        }
+        return new ByteBuffer[]{head, bufferBody != null ? bufferBody.duplicate() : ByteBuffer.wrap(body)};
+    }
+
+    byte[] getBodyBytes() {
+        return body;
+    }
+
+    ByteBuffer getBufferBody() {
+        return bufferBody;
+    }
+
+    FileRegion getFileBody() {
+        return fileBody;
+    }
+
+    StreamingBody getStreamingBody() {
+        return streamingBody;
+    }
+
+    boolean isChunked() {
+        return chunked;
+    }
+
+    /**
+     * Produces the streamed body into {@code out}, framed as chunks unless the client cannot take them.
+     */
+    void writeStreamingBody(OutputStream out) throws IOException {
+        if (isChunked()) {
+            try (ChunkedOutputStream chunks = new ChunkedOutputStream(out)) {
+                streamingBody.writeTo(chunks);
+            }
+        } else {
+            streamingBody.writeTo(out);
+            out.flush();
+        }
+    }
+
+    public void send(OutputStream output) throws IOException {
+        ByteBuffer head = encodeHead();
+        output.write(head.array(), 0, head.limit());
+        if (streamingBody != null) {
+            writeStreamingBody(output);
+            return;
+        }
+        if (fileBody == null && bufferBody == null) {
+            output.write(body);
+            return;
+        }
+
+        output.flush();
+        WritableByteChannel target = Channels.newChannel(output);
+        if (fileBody != null) {
+            try (FileRegion region = fileBody) {
+                region.transferFully(target);
+            }
+        } else {
+            ByteBuffer remaining = bufferBody.duplicate();
+            while (remaining.hasRemaining()) {
+                target.write(remaining);
+            }
+        }
+    }
+
+    /**
+     * Growable byte array the head is written into; header text is ISO-8859-1, one byte per char.
+     */
+    private static final class Head {
+        private byte[] bytes;
+        private int length;
+
+        Head(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        Head append(byte[] data) {
+            ensure(data.length);
+            System.arraycopy(data, 0, bytes, length, data.length);
+            length += data.length;
+            return this;
+        }
+
+        Head append(String text) {
+            int count = text.length();
+            ensure(count);
+            for (int i = 0; i < count; i++) {
+                bytes[length + i] = (byte) text.charAt(i);
+            }
+            length += count;
+            return this;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+
+        ByteBuffer toBuffer() {
+            return ByteBuffer.wrap(bytes, 0, length);
+        }
     }
 }
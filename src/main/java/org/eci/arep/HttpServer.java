@@ -1,30 +1,63 @@
 package org.eci.arep;
 
 import org.eci.arep.annotations.GetMapping;
-import org.eci.arep.annotations.RequestParam;
 import org.eci.arep.annotations.RestController;
 
 import java.net.*;
 import java.nio.file.*;
 import java.util.*;
 import java.io.*;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Parameter;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class HttpServer {
-    private static final Map<String, Method> services = new HashMap<>();
-    private static final Map<String, List<Parameter>> parameters = new HashMap<>();
+    private static final Router router = new Router();
+    private static final Map<Class<?>, Object> controllers = new HashMap<>();
+    private static final int INPUT_BUFFER_SIZE = 8 * 1024;
     private static volatile boolean running = true;
     private static String WEB_ROOT_DIR = "public";
+    private static volatile StaticHandler staticHandler;
     private static ServerSocket serverSocket;
-
+    private static NioServer nioServer;
+    private static volatile ExecutorService executor;
+    private static volatile ConnectionManager connections = new ConnectionManager();
+    private static byte[] serviceUnavailable;
+    private static volatile boolean routeLimits;
+    private static final String[][] CONTENT_TYPES = {
+            {".html", "text/html; charset=utf-8"}, {".htm", "text/html; charset=utf-8"},
+            {".css", "text/css; charset=utf-8"}, {".js", "application/javascript; charset=utf-8"},
+            {".json", "application/json; charset=utf-8"}, {".png", "image/png"},
+            {".jpg", "image/jpeg"}, {".jpeg", "image/jpeg"}, {".gif", "image/gif"},
+            {".svg", "image/svg+xml"}, {".ico", "image/x-icon"}};
+
+    /**
+     * Registers the routes listed in the compile-time route index; the classpath is only scanned when there is
+     * no index or {@code ROUTE_INDEX} is false.
+     */
     public static void loadComponents(String[] args){
         try {
+            List<RouteIndex.Entry> entries = ServerConfig.getBoolean("ROUTE_INDEX", true)
+                    ? RouteIndex.load(HttpServer.class.getClassLoader(), "org.eci.arep") : null;
+            if (entries != null) {
+                for (RouteIndex.Entry entry : entries) {
+                    System.out.println(entry.path);
+                    register(entry.path, entry.handler);
+                }
+                return;
+            }
             List<Class<?>> classes = ComponentScanner.scanForControllers("org.eci.arep");
             for (Class<?> cl : classes){
                 loadComponent(cl);
@@ -45,233 +78,813 @@ public class HttpServer {
             }
             String mapping = m.getAnnotation(GetMapping.class).value();
             System.out.println(mapping);
-            services.put(mapping, m);
-            checkMethodParameters(m, mapping);
+            register(mapping, m);
         }
     }
 
-    private static void checkMethodParameters(Method method, String mapping){
-        Parameter[] params = method.getParameters();
-        for(Parameter p : params){
-            if(p.isAnnotationPresent(RequestParam.class)){
-                parameters.computeIfAbsent(mapping, l -> new ArrayList<>()).add(p);
+    private static void register(String mapping, Method m){
+        try {
+            Invoker invoker = Invokers.compile(m, controllerFor(m));
+            Route route = new Route("GET", mapping, m, invoker);
+            router.add("GET", mapping, route);
+            if (route.getRateLimiter() != null) {
+                routeLimits = true;
             }
+        } catch (ReflectiveOperationException | IllegalArgumentException ex) {
+            Logger.getLogger(HttpServer.class.getName()).log(Level.SEVERE, "Could not register " + mapping, ex);
         }
     }
+
+    /**
+     * Instance handlers share one controller per class, created with its no-argument constructor.
+     */
+    private static Object controllerFor(Method m) throws ReflectiveOperationException {
+        if (Modifier.isStatic(m.getModifiers())) {
+            return null;
+        }
+        Class<?> type = m.getDeclaringClass();
+        Object controller = controllers.get(type);
+        if (controller == null) {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            controller = constructor.newInstance();
+            controllers.put(type, controller);
+        }
+        return controller;
+    }
+
     public static void get(String path, Method service){
-        services.put(path, service);
+        register(path, service);
     }
 
     
     public static void staticfiles(String path){
         WEB_ROOT_DIR = path;
+        staticHandler = null;
     }
 
-    private static int getPort(){
-        String portEnv = System.getenv("PORT");
-        if (portEnv != null) {
-            try {
-                return Integer.parseInt(portEnv);
-            } catch (NumberFormatException e) {
-                System.err.println("Variable PORT is not a number using default value 35000.");
+    /**
+     * A web root that exists on disk is served from the filesystem; anything else is looked up on the classpath.
+     */
+    public static StaticHandler staticHandler() {
+        StaticHandler handler = staticHandler;
+        if (handler == null) {
+            synchronized (HttpServer.class) {
+                handler = staticHandler;
+                if (handler == null) {
+                    Path directory = Paths.get(WEB_ROOT_DIR);
+                    handler = Files.isDirectory(directory)
+                            ? new FileResources(directory)
+                            : new StaticResources(WEB_ROOT_DIR);
+                    staticHandler = handler;
+                }
             }
         }
-        return 35000;
+        return handler;
     }
 
-    public static void run(String[] args) throws IOException, URISyntaxException {
-        ExecutorService executor = Executors.newFixedThreadPool(10);
-        try {
-            serverSocket = new ServerSocket(getPort());
-        } catch (IOException e) {
-            System.err.println("Could not listen on port: 35000.");
-            System.exit(1);
-        }
+    private static int getPort(){
+        return ServerConfig.getInt("PORT", 35000);
+    }
 
+    static boolean isRunning() {
+        return running;
+    }
+
+    public static void run(String[] args) throws IOException, URISyntaxException {
+        running = true;
+        ExecutorService executor = ServerExecutors.create();
+        ConnectionManager connections = new ConnectionManager();
+        HttpServer.executor = executor;
+        HttpServer.connections = connections;
+        Metrics.setExecutor(executor);
+        Metrics.setConnections(connections);
+        serviceUnavailable = buildServiceUnavailable();
+        staticHandler();
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("Shutdown hook activated. Closing server...");
-            running = false;
+            stop();
+        }));
+
+        if ("nio".equalsIgnoreCase(ServerConfig.getString("SERVER_ENGINE", "blocking"))) {
+            nioServer = new NioServer(executor, connections, ServerConfig.getInt("EVENT_LOOP_THREADS",
+                    Runtime.getRuntime().availableProcessors()));
+            loadComponents(args);
             try {
-                serverSocket.close();
-            } catch (IOException e) {
-                Logger.getLogger(HttpServer.class.getName()).log(Level.SEVERE, null, e);
+                nioServer.run(getPort());
+            } finally {
+                executor.shutdown();
             }
-        }));
+            return;
+        }
+
+        try {
+            // Opened through a channel so accepted sockets expose one for transferTo.
+            serverSocket = ServerSocketChannel.open().bind(new InetSocketAddress(getPort()), acceptBacklog()).socket();
+        } catch (IOException e) {
+            System.err.println("Could not listen on port: " + getPort() + ".");
+            System.exit(1);
+        }
 
         loadComponents(args);
         while(running){
             try {
-                System.out.println("Listo para recibir...");
-                Socket clientSocket = serverSocket.accept();
-                executor.submit(() -> {
-                    try {
-                        handleClient(clientSocket);
-                    } catch (Exception e) {
-                        Logger.getLogger(HttpServer.class.getName()).log(Level.SEVERE, null, e);
-                    }
-                });
+                if (!connections.reserve()) {
+                    break;
+                }
+                Socket clientSocket;
+                try {
+                    clientSocket = serverSocket.accept();
+                } catch (IOException e) {
+                    connections.cancelReservation();
+                    throw e;
+                }
+                if (!connections.admit()) {
+                    rejectClient(clientSocket);
+                    continue;
+                }
+                RequestTrace queued = RequestTrace.start();
+                if (queued != null) {
+                    queued.begin(RequestTrace.QUEUE);
+                }
+                try {
+                    executor.execute(() -> {
+                        try {
+                            handleClient(clientSocket, executor, queued);
+                        } catch (Exception e) {
+                            Logger.getLogger(HttpServer.class.getName()).log(Level.SEVERE, null, e);
+                        } finally {
+                            connections.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    connections.release();
+                    rejectClient(clientSocket);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             } catch (IOException e) {
+                if (!running) {
+                    break;
+                }
                 Logger.getLogger(HttpServer.class.getName()).log(Level.SEVERE, null, e);
                 System.exit(1);
             }
         }
+        executor.shutdown();
+    }
+
+    static int acceptBacklog() {
+        return ServerConfig.getInt("ACCEPT_BACKLOG", 1024);
+    }
+
+    private static byte[] buildServiceUnavailable() {
+        HttpResponse response = new HttpResponse();
+        response.setStatus(503, "Service Unavailable");
+        response.setHeader("Retry-After", String.valueOf(ServerConfig.getInt("RETRY_AFTER", 1)));
+        response.setDateHeader(false);
+        response.setBody("Server is busy, try again later");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            response.send(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] serviceUnavailable() {
+        return serviceUnavailable;
+    }
+
+    /**
+     * The answer to a request whose handler threw. It closes the connection, so a client that pipelined more
+     * requests behind it knows they were not served and can retry them.
+     */
+    static HttpResponse internalServerError() {
+        HttpResponse response = new HttpResponse();
+        response.setStatus(500, "Internal Server Error");
+        response.setContentType("text/plain; charset=utf-8");
+        response.setBody("Internal Server Error");
+        response.setKeepAlive(false);
+        return response;
+    }
+
+    /**
+     * Whether {@code client} is within the rate limits for {@code request}. The engines check this before handing
+     * a request to a worker, so a rejected request costs at most a route lookup.
+     */
+    static boolean admit(HttpRequest request, long client) {
+        RateLimiter global = RateLimiter.GLOBAL;
+        if (global != null && !global.tryAcquire(client)) {
+            RateLimiter.rejected();
+            return false;
+        }
+        if (routeLimits) {
+            String path = routePath(request);
+            Route route = path != null ? router.find(requestMethod(request), path, new RouteMatch()) : null;
+            if (route != null && route.getRateLimiter() != null && !route.getRateLimiter().tryAcquire(client)) {
+                RateLimiter.rejected();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void rejectClient(Socket clientSocket) {
+        try (clientSocket) {
+            clientSocket.getOutputStream().write(serviceUnavailable);
+        } catch (IOException e) {
+            Logger.getLogger(HttpServer.class.getName()).log(Level.FINE, null, e);
+        }
+    }
+
+    /**
+     * Stops accepting, lets in-flight requests finish within {@code SHUTDOWN_TIMEOUT}, then shuts the workers
+     * down. Connections still open at the deadline are closed.
+     */
+    public static void stop() {
+        running = false;
+        ConnectionManager manager = connections;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(manager.getShutdownTimeout());
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+            if (nioServer != null) {
+                nioServer.stopAccepting();
+            }
+            EventStream.closeAll();
+            if (!manager.drain(deadline)) {
+                Logger.getLogger(HttpServer.class.getName()).log(Level.WARNING,
+                        manager.getOpen() + " connection(s) still open at the shutdown deadline");
+            }
+            if (nioServer != null) {
+                nioServer.stop();
+            }
+            ExecutorService workers = executor;
+            if (workers != null) {
+                workers.shutdown();
+                if (!workers.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    workers.shutdownNow();
+                }
+            }
+            AccessLog.shutdown();
+            RequestTrace.stopSampler();
+        } catch (IOException e) {
+            Logger.getLogger(HttpServer.class.getName()).log(Level.SEVERE, null, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     public static void main(String[] args) throws IOException, URISyntaxException  {
        run(args);
     }
 
-    private static HttpRequest getClientHttpRequest(BufferedReader in) throws IOException, URISyntaxException {
-        String inputLine;
-        boolean firstLine = true;
-        HttpRequest request = new HttpRequest();
-        URI requestUri = null;
-
-        while ((inputLine = in.readLine()) != null) {
-            if (firstLine) {
-                String[] parts = inputLine.split(" ");
-                requestUri = new URI(parts[1]);
-                request.setMethod(parts[0]);
-                request.setUri(requestUri);
-                request.setHttpVersion(parts[2]);
-                firstLine = false;
+    /**
+     * Feeds {@code input} to the parser, refilling it from the stream until a request is complete. Returns null
+     * when the client closes the connection first.
+     */
+    private static HttpRequest readRequest(Socket socket, InputStream in, ByteBuffer input, HttpRequestParser parser) throws IOException {
+        ConnectionManager manager = connections;
+        long partStarted = 0;
+        boolean body = false;
+        while (true) {
+            RequestTrace trace = input.hasRemaining() ? RequestTrace.start() : null;
+            if (trace != null) {
+                trace.begin(RequestTrace.PARSE);
+            }
+            HttpRequest request = parser.parse(input);
+            if (request != null) {
+                if (trace != null) {
+                    trace.attach(request);
+                    trace.end();
+                }
+                return request;
+            }
+            boolean waiting = !parser.isPartial();
+            if (waiting) {
+                if (!manager.waitingForRequest(socket)) {
+                    return null;
+                }
+                socket.setSoTimeout(manager.getIdleTimeout());
             } else {
-                String[] headerParts = inputLine.split(":", 2);
-                if (headerParts.length == 2) {
-                    request.addHeader(headerParts[0].trim(), headerParts[1].trim());
+                // Each part gets its own deadline, however the client spreads its bytes over it.
+                long now = System.nanoTime();
+                if (partStarted == 0 || body != parser.isReadingBody()) {
+                    partStarted = now;
+                    body = parser.isReadingBody();
+                }
+                long remaining = manager.getReadTimeout(body) - TimeUnit.NANOSECONDS.toMillis(now - partStarted);
+                if (remaining <= 0) {
+                    manager.requestTimedOut();
+                    throw HttpParseException.requestTimeout(body ? "Body not received in time" : "Headers not received in time");
                 }
+                socket.setSoTimeout((int) remaining);
             }
-            if (!in.ready()) {
-                break;
+            // The parser has consumed everything it was given, so the buffer can be refilled from the start.
+            int read;
+            try {
+                read = in.read(input.array(), 0, input.capacity());
+            } catch (SocketTimeoutException e) {
+                if (waiting) {
+                    throw e;
+                }
+                continue;
+            } catch (IOException e) {
+                // a connection closed by the shutdown drain while it waited
+                if (waiting && manager.isDraining()) {
+                    return null;
+                }
+                throw e;
+            } finally {
+                if (waiting) {
+                    manager.requestArriving(socket);
+                }
+            }
+            if (read < 0) {
+                return null;
             }
+            Metrics.bytesRead(read);
+            input.clear().limit(read);
         }
-        return request;
     }
 
-    private static void handleClient(Socket clientSocket) throws IOException, URISyntaxException {
-        PrintWriter out = new PrintWriter(clientSocket.getOutputStream(), true);
-        BufferedReader in = new BufferedReader(
-                new InputStreamReader(clientSocket.getInputStream()));
-        HttpRequest request = getClientHttpRequest(in);
-        try {
-            handleHttpRequest(request, out, clientSocket);
-        } catch (Exception ex) {
-            Logger.getLogger(HttpServer.class.getName()).log(Level.SEVERE, null, ex);
+    static void handleClient(Socket clientSocket) throws IOException {
+        handleClient(clientSocket, executor);
+    }
+
+    /**
+     * Serves one connection on the calling thread. If the client switches it to HTTP/2 its streams run on
+     * {@code workers}; without them the connection stays on HTTP/1.1.
+     */
+    static void handleClient(Socket clientSocket, ExecutorService workers) throws IOException {
+        handleClient(clientSocket, workers, null);
+    }
+
+    /**
+     * @param queued the connection's wait for a thread, counted in the trace of its first request
+     */
+    private static void handleClient(Socket clientSocket, ExecutorService workers, RequestTrace queued) throws IOException {
+        if (queued != null) {
+            queued.end();
         }
+        int maxRequests = ServerConfig.getInt("MAX_KEEP_ALIVE_REQUESTS", 100);
+        try (clientSocket; InputStream in = clientSocket.getInputStream()) {
+            ResponseWriter out = new ResponseWriter(clientSocket);
+            HttpRequestParser parser = new HttpRequestParser();
+            ByteBuffer input = ByteBuffer.allocate(INPUT_BUFFER_SIZE).limit(0);
+            long client = RateLimiter.clientKey(clientSocket.getInetAddress());
+            int served = 0;
+            while (running) {
+                HttpRequest request;
+                try {
+                    request = readRequest(clientSocket, in, input, parser);
+                } catch (SocketTimeoutException e) {
+                    break;
+                } catch (HttpParseException e) {
+                    out.write(e.toResponse());
+                    out.flush();
+                    break;
+                }
+                if (request == null) {
+                    break;
+                }
+                RequestTrace trace = request.getTrace();
+                if (queued != null && trace != null) {
+                    trace.addQueueWait(queued.getQueueWait());
+                }
+                queued = null;
+                if (workers != null && (Http2Connection.isPreface(request) || Http2Connection.isUpgrade(request))) {
+                    out.flush();
+                    serveHttp2(clientSocket, in, input, request, workers, client);
+                    break;
+                }
 
-        out.close();
-        in.close();
-        clientSocket.close();
+                served++;
+                boolean keepAlive = running && served < maxRequests && request.isKeepAliveRequested();
+                request.setKeepAlive(keepAlive);
+                try {
+                    if (!admit(request, client)) {
+                        out.write(RateLimiter.tooManyRequests(keepAlive));
+                    } else {
+                        HttpResponse response;
+                        try {
+                            response = handle(request);
+                            if (response != null && response.getDeferred() != null) {
+                                // Responses already queued for earlier pipelined requests should not wait on this one.
+                                out.flush();
+                                response = response.await();
+                            }
+                        } catch (Exception ex) {
+                            Logger.getLogger(HttpServer.class.getName()).log(Level.SEVERE, null, ex);
+                            response = internalServerError();
+                        }
+                        if (response != null) {
+                            if (response.getStreamingBody() instanceof EventStream.Subscription) {
+                                // Writes have no timeout, so only closing the socket frees a thread stuck on one.
+                                ((EventStream.Subscription) response.getStreamingBody()).closeOnEviction(clientSocket);
+                            }
+                            if (trace != null) {
+                                trace.begin(RequestTrace.WRITE);
+                            }
+                            out.write(response);
+                            if (trace != null) {
+                                trace.finish(response.getStatusCode());
+                            }
+                            keepAlive = response.isKeepAlive();
+                        }
+                    }
+                } catch (Exception ex) {
+                    Logger.getLogger(HttpServer.class.getName()).log(Level.SEVERE, null, ex);
+                    break;
+                }
+
+                // Pipelined requests already buffered get their responses batched in a single write.
+                if (!keepAlive || !input.hasRemaining() && in.available() == 0) {
+                    out.flush();
+                }
+                if (!keepAlive) {
+                    break;
+                }
+            }
+        }
     }
 
+    /**
+     * Continues the connection as HTTP/2 from the preface or upgrade {@code request}, reading frames on this
+     * thread while the streams are handled on {@code workers}.
+     */
+    private static void serveHttp2(Socket socket, InputStream in, ByteBuffer input, HttpRequest request,
+                                   ExecutorService workers, long client) throws IOException {
+        ConnectionManager manager = connections;
+        OutputStream out = socket.getOutputStream();
+        boolean upgrade = !Http2Connection.isPreface(request);
+        Http2Connection connection = new Http2Connection(workers, new Http2Connection.Transport() {
+            @Override
+            public void write(ByteBuffer frames) throws IOException {
+                out.write(frames.array(), frames.arrayOffset() + frames.position(), frames.remaining());
+                Metrics.bytesWritten(frames.remaining());
+            }
+
+            @Override
+            public void close() {
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }, manager.getIdleTimeout(), client, !upgrade);
+        try {
+            if (upgrade) {
+                out.write(Http2Connection.SWITCHING_PROTOCOLS);
+            }
+            connection.start();
+            if (upgrade) {
+                connection.upgrade(request);
+            }
+            boolean open = connection.receive(input);
+            socket.setSoTimeout(manager.getIdleTimeout());
+            while (open) {
+                boolean idle = connection.isIdle();
+                if (idle && !manager.waitingForRequest(socket)) {
+                    connection.goAway(Http2Exception.NO_ERROR, "");
+                    break;
+                }
+                int read;
+                try {
+                    read = in.read(input.array(), 0, input.capacity());
+                } catch (SocketTimeoutException e) {
+                    if (connection.isIdle()) {
+                        connection.goAway(Http2Exception.NO_ERROR, "");
+                        break;
+                    }
+                    continue;
+                } catch (IOException e) {
+                    // closed by the shutdown drain, or by the connection once its last stream finished
+                    break;
+                } finally {
+                    if (idle) {
+                        manager.requestArriving(socket);
+                    }
+                }
+                if (read < 0) {
+                    break;
+                }
+                Metrics.bytesRead(read);
+                input.clear().limit(read);
+                open = connection.receive(input);
+            }
+        } finally {
+            connection.close();
+        }
+    }
 
     public static void handleDynamicRequest(Socket clientSocket, HttpRequest request) throws IOException, IllegalAccessException, InvocationTargetException {
         HttpResponse response = new HttpResponse();
-        URI requestUri = request.getUri();
+        handleDynamicRequest(request, response);
+        response.await().send(clientSocket.getOutputStream());
+    }
+
+    public static void handleDynamicRequest(HttpRequest request, HttpResponse response) throws IllegalAccessException, InvocationTargetException {
+        handleDynamicRequest(request, response, new RouteMatch());
+    }
 
-        Method handler = services.get(requestUri.getPath());
-        if (handler != null) {
-            Object[] params = getRequestParamsValues(request);
-            Object body = handler.invoke(null, params);
-            response.setBody(body.toString());
+    private static void handleDynamicRequest(HttpRequest request, HttpResponse response, RouteMatch match) throws InvocationTargetException {
+        String path = routePath(request);
+        Route route = router.find(requestMethod(request), path, match);
+        if (route != null) {
+            RequestTrace trace = request.getTrace();
+            if (trace != null) {
+                trace.begin(RequestTrace.BIND);
+            }
+            Object[] params;
+            try {
+                params = getRequestParamsValues(request, match);
+            } catch (BindingPlan.BindingException e) {
+                response.setStatus(400, "Bad Request");
+                response.setContentType("text/plain; charset=utf-8");
+                response.setBody(e.getMessage());
+                return;
+            } finally {
+                if (trace != null) {
+                    trace.end();
+                }
+            }
+            ResponseCache cache = route.getCache();
+            if (cache != null && cache.serve(params, request, response,
+                    () -> invokeAlone(route, params, request, response.isKeepAlive()))) {
+                return;
+            }
+            invoke(route, params, request, response, cache);
+            return;
+        }
+
+        List<String> allowed = router.allowedMethods(path);
+        response.setContentType("text/plain; charset=utf-8");
+        if (!allowed.isEmpty()) {
+            response.setStatus(405, "Method Not Allowed");
+            response.setHeader("Allow", String.join(", ", allowed));
+            response.setBody("Method not allowed: " + requestMethod(request) + " " + path);
         } else {
             response.setStatus(404, "Not Found");
-            response.setContentType("text/plain; charset=utf-8");
-            response.setBody("Not found: " + requestUri.getPath());
+            response.setBody("Not found: " + path);
         }
+    }
 
-        response.send(clientSocket.getOutputStream());
+    /**
+     * Runs the handler and sets its result, reporting the outcome to {@code cache} when there is one.
+     */
+    private static void invoke(Route route, Object[] params, HttpRequest request, HttpResponse response,
+                               ResponseCache cache) throws InvocationTargetException {
+        RequestTrace trace = request.getTrace();
+        if (trace != null) {
+            trace.begin(RequestTrace.INVOKE);
+        }
+        Object body;
+        try {
+            body = route.getInvoker().invoke(params);
+        } catch (Throwable e) {
+            if (cache != null) {
+                cache.failed(params, e);
+            }
+            throw new InvocationTargetException(e);
+        }
+        try {
+            if (body instanceof CompletionStage) {
+                response.setDeferred(whenComplete((CompletionStage<?>) body, response, route));
+            } else {
+                setResult(response, body, route.getJsonWriter());
+            }
+            if (trace != null) {
+                trace.end();
+            }
+            if (cache != null) {
+                cache.loaded(params, response);
+            }
+        } catch (RuntimeException | Error e) {
+            // A result that cannot be encoded must not leave the requests coalesced on this one waiting.
+            if (cache != null) {
+                cache.failed(params, e);
+            }
+            throw e;
+        }
     }
 
+    /**
+     * Invokes the handler for a request that waited on another one whose response could not be cached.
+     */
+    private static CompletableFuture<HttpResponse> invokeAlone(Route route, Object[] params, HttpRequest request,
+                                                               boolean keepAlive) {
+        HttpResponse response = new HttpResponse();
+        response.setKeepAlive(keepAlive);
+        try {
+            invoke(route, params, request, response, null);
+        } catch (InvocationTargetException | RuntimeException e) {
+            Logger.getLogger(HttpServer.class.getName()).log(Level.SEVERE, null, e);
+            return CompletableFuture.completedFuture(internalServerError());
+        }
+        return response.getDeferred() != null ? response.getDeferred() : CompletableFuture.completedFuture(response);
+    }
 
-    public static Object[] getRequestParamsValues(HttpRequest request){
-        List<Parameter> parameterList = parameters.get(request.getUri().getPath());
-        Object[] params = new Object[parameterList.size()];
+    private static void setResult(HttpResponse response, Object body, JsonWriter json) {
+        if (body instanceof StreamingBody) {
+            response.setBody((StreamingBody) body);
+        } else if (body instanceof EventStream) {
+            response.setBody(((EventStream) body).subscribe());
+            response.setHeader("Cache-Control", "no-cache");
+        } else if (json != null && !(body instanceof CharSequence)) {
+            response.setContentType(JsonWriters.CONTENT_TYPE);
+            response.setBody(JsonOutput.encode(json, body));
+        } else {
+            response.setBody(String.valueOf(body));
+        }
+    }
 
-        for(int i = 0; i < parameterList.size(); i++) {
-            Parameter param = parameterList.get(i);
-            if (param == null) {
-                continue;
+    /**
+     * Fills the response once the handler's stage completes, with {@code 504} if it takes longer than the
+     * route's timeout and {@code 500} if it fails. The handler's own future is never completed or cancelled here.
+     */
+    private static CompletableFuture<HttpResponse> whenComplete(CompletionStage<?> stage, HttpResponse response, Route route) {
+        long timeoutMillis = route.getTimeoutMillis();
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        stage.whenComplete((value, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
             }
-
-            RequestParam values = param.getAnnotation(RequestParam.class);
-            String rawValue = request.getValues(values.value());
-            if (rawValue == null || rawValue.isEmpty()){
-                if (!values.defaultValue().equals(RequestParam.DEFAULT_NONE)) {
-                    rawValue = values.defaultValue();
-                }
+        });
+        if (timeoutMillis > 0) {
+            result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return result.handle((value, error) -> {
+            if (error == null) {
+                setResult(response, value, route.getJsonWriter());
+                return response;
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            response.setContentType("text/plain; charset=utf-8");
+            if (cause instanceof TimeoutException) {
+                response.setStatus(504, "Gateway Timeout");
+                response.setBody("Handler did not complete within " + timeoutMillis + " ms");
+            } else {
+                Logger.getLogger(HttpServer.class.getName()).log(Level.SEVERE, "Asynchronous handler failed", cause);
+                response.setStatus(500, "Internal Server Error");
+                response.setBody("Internal Server Error");
             }
+            return response;
+        });
+    }
 
-            Class<?> type = param.getType();
-            Object convertedValue = convertValue(rawValue, type);
-            params[i] = convertedValue;
+    static String requestMethod(HttpRequest request) {
+        return request.getMethod() != null ? request.getMethod() : "GET";
+    }
+
+    // Requests built by hand or mocked may only carry a URI.
+    static String requestPath(HttpRequest request) {
+        if (request.getPath() != null) {
+            return request.getPath();
         }
+        return request.getUri() != null ? request.getUri().getPath() : null;
+    }
 
-        return params;
+    /**
+     * Path the router matches, still percent-encoded so that an encoded {@code /} cannot split a segment.
+     * Path variables are decoded when they are bound.
+     */
+    static String routePath(HttpRequest request) {
+        if (request.getRawPath() != null) {
+            return request.getRawPath();
+        }
+        return request.getUri() != null ? request.getUri().getRawPath() : null;
     }
 
-    public static void handleHttpRequest(HttpRequest request, PrintWriter out, Socket clientSocket)
-            throws IOException, InvocationTargetException, IllegalAccessException {
-        URI requestUri = request.getUri();
-        if (requestUri != null) {
-            String resourcePath = WEB_ROOT_DIR + requestUri.getPath();
-            if (resourcePath.endsWith("/")) {
-                resourcePath += "index.html";
-            }
+    public static Object[] getRequestParamsValues(HttpRequest request){
+        RouteMatch match = new RouteMatch();
+        if (router.find(requestMethod(request), routePath(request), match) == null) {
+            return new Object[0];
+        }
+        return getRequestParamsValues(request, match);
+    }
 
-            InputStream resourceStream = Main.class.getClassLoader().getResourceAsStream(resourcePath);
+    static Object[] getRequestParamsValues(HttpRequest request, RouteMatch match){
+        return match.getRoute().getBindingPlan().bind(request, match);
+    }
 
-            if (resourceStream != null) {
-                String contentType = getContentType(resourcePath);
+    public static void handleHttpRequest(HttpRequest request, PrintWriter out, Socket clientSocket)
+            throws IOException, InvocationTargetException, IllegalAccessException {
+        handleHttpRequest(request, clientSocket.getOutputStream());
+    }
 
-                byte[] fileBytes = resourceStream.readAllBytes();
-                String outputLine = "HTTP/1.1 200 OK\r\n"
-                        + "content-type: " + contentType + "\r\n"
-                        + "content-length: " + fileBytes.length + "\r\n"
-                        + "\r\n";
+    public static void handleHttpRequest(HttpRequest request, OutputStream out)
+            throws IOException, InvocationTargetException, IllegalAccessException {
+        HttpResponse response = handle(request);
+        if (response != null) {
+            response.await().send(out);
+        }
+    }
 
-                try (OutputStream outputStream = clientSocket.getOutputStream()) {
-                    outputStream.write(outputLine.getBytes());
-                    outputStream.write(fileBytes);
-                }
+    static HttpResponse handle(HttpRequest request)
+            throws IOException, InvocationTargetException, IllegalAccessException {
+        String path = requestPath(request);
+        if (path == null) {
+            return null;
+        }
+        HttpResponse response = new HttpResponse();
+        response.setKeepAlive(request.isKeepAlive());
+        long started = Metrics.requestStarted();
+        if (started == 0 && AccessLog.isEnabled()) {
+            started = System.nanoTime();
+        }
+        Metrics.RouteMetrics metrics = Metrics.UNMATCHED;
+        // Filled in by the router, so a handler that throws is still counted against its route.
+        RouteMatch match = null;
+        int status = 500;
+        HttpResponse finished = null;
+        boolean deferred = false;
+        try {
+            if (Metrics.ENABLED && path.equals(Metrics.PATH)) {
+                metrics = Metrics.SCRAPE;
+                Metrics.scrape(response);
+            } else if (serveStatic(request, path, response)) {
+                metrics = Metrics.STATIC;
             } else {
-                handleDynamicRequest(clientSocket, request);
+                match = new RouteMatch();
+                handleDynamicRequest(request, response, match);
+                if (response.getDeferred() != null) {
+                    Metrics.RouteMetrics route = routeMetrics(match);
+                    long begun = started;
+                    response.setDeferred(response.getDeferred().thenApply(done -> {
+                        Compression.compress(request, done);
+                        Metrics.requestFinished(route, done.getStatusCode(), begun);
+                        AccessLog.requestFinished(request, done, done.getStatusCode(), begun);
+                        return finish(request, done);
+                    }));
+                    deferred = true;
+                    return response;
+                }
+                Compression.compress(request, response);
+            }
+            status = response.getStatusCode();
+            finished = response;
+        } finally {
+            if (!deferred) {
+                if (match != null) {
+                    metrics = routeMetrics(match);
+                }
+                Metrics.requestFinished(metrics, status, started);
+                AccessLog.requestFinished(request, finished, status, started);
             }
         }
+        return finish(request, response);
     }
 
+    private static Metrics.RouteMetrics routeMetrics(RouteMatch match) {
+        return match.getRoute() != null ? match.getRoute().getMetrics() : Metrics.UNMATCHED;
+    }
 
-    private static Object convertValue(String value, Class<?> type) {
-        if (value == null) return null;
-
-        if (type.equals(String.class)) {
-            return value;
-        } else if (type.equals(int.class) || type.equals(Integer.class)) {
-            return Integer.parseInt(value);
-        } else if (type.equals(long.class) || type.equals(Long.class)) {
-            return Long.parseLong(value);
-        } else if (type.equals(double.class) || type.equals(Double.class)) {
-            return Double.parseDouble(value);
-        } else if (type.equals(boolean.class) || type.equals(Boolean.class)) {
-            return Boolean.parseBoolean(value);
-        } else if (type.isEnum()) {
-            return Enum.valueOf((Class<Enum>) type, value.toUpperCase());
+    private static boolean serveStatic(HttpRequest request, String path, HttpResponse response) throws IOException {
+        RequestTrace trace = request.getTrace();
+        if (trace == null) {
+            return staticHandler().serve(request, path, response);
         }
+        trace.begin(RequestTrace.STATIC);
+        try {
+            return staticHandler().serve(request, path, response);
+        } finally {
+            trace.end();
+        }
+    }
 
-        return value;
+    private static HttpResponse finish(HttpRequest request, HttpResponse response) {
+        if (response.getStreamingBody() != null && "HTTP/1.0".equals(request.getHttpVersion())) {
+            response.setChunkedAllowed(false);
+            response.setKeepAlive(false);
+        }
+        if ("HEAD".equals(request.getMethod())) {
+            response.omitBody();
+        }
+        return response;
     }
 
+
+    /**
+     * Matches the extension in place, ignoring case, so the lookup does not copy the path.
+     */
     public static String getContentType(String path) {
-        String name = path.toLowerCase(Locale.ROOT);
-        if (name.endsWith(".html") || name.endsWith(".htm")) return "text/html; charset=utf-8";
-        if (name.endsWith(".css"))  return "text/css; charset=utf-8";
-        if (name.endsWith(".js"))   return "application/javascript; charset=utf-8";
-        if (name.endsWith(".json")) return "application/json; charset=utf-8";
-        if (name.endsWith(".png"))  return "image/png";
-        if (name.endsWith(".jpg") || name.endsWith(".jpeg")) return "image/jpeg";
-        if (name.endsWith(".gif"))  return "image/gif";
-        if (name.endsWith(".svg"))  return "image/svg+xml";
-        if (name.endsWith(".ico"))  return "image/x-icon";
+        int dot = path.lastIndexOf('.');
+        int length = path.length() - dot;
+        if (dot >= 0) {
+            for (String[] type : CONTENT_TYPES) {
+                String extension = type[0];
+                if (extension.length() == length && path.regionMatches(true, dot, extension, 0, length)) {
+                    return type[1];
+                }
+            }
+        }
         return "application/octet-stream";
     }
 }
@@ -0,0 +1,9 @@
+package org.eci.arep;
+
+/**
+ * Calls one controller method with already converted arguments.
+ */
+@FunctionalInterface
+public interface Invoker {
+    Object invoke(Object[] args) throws Throwable;
+}
@@ -0,0 +1,96 @@
+package org.eci.arep;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Compiles controller methods into {@link Invoker}s when routes are registered. Methods with up to three
+ * parameters get a class spun by {@link LambdaMetafactory} that calls the method directly, with casts and
+ * unboxing in bytecode; longer signatures use a spreading {@link MethodHandle}. Neither path goes through
+ * {@code Method.invoke} at request time.
+ */
+public class Invokers {
+
+    public interface Arity0 {
+        Object invoke();
+    }
+
+    public interface Arity1 {
+        Object invoke(Object a);
+    }
+
+    public interface Arity2 {
+        Object invoke(Object a, Object b);
+    }
+
+    public interface Arity3 {
+        Object invoke(Object a, Object b, Object c);
+    }
+
+    private static final Class<?>[] ARITY_INTERFACES = {Arity0.class, Arity1.class, Arity2.class, Arity3.class};
+
+    /**
+     * Builds the invoker of {@code method}; {@code target} is the controller instance for instance methods
+     * and is ignored for static ones.
+     */
+    public static Invoker compile(Method method, Object target) throws ReflectiveOperationException {
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(method.getDeclaringClass(), MethodHandles.lookup());
+        MethodHandle handle = lookup.unreflect(method);
+        int arity = method.getParameterCount();
+
+        if (arity < ARITY_INTERFACES.length && method.getReturnType() != void.class) {
+            try {
+                return fromLambda(lookup, handle, arity, isStatic ? null : target);
+            } catch (Throwable e) {
+                // Signatures the metafactory cannot adapt fall back to a method handle.
+            }
+        }
+        return fromHandle(isStatic ? handle : handle.bindTo(target), arity);
+    }
+
+    private static Invoker fromLambda(MethodHandles.Lookup lookup, MethodHandle handle, int arity, Object target)
+            throws Throwable {
+        Class<?> face = ARITY_INTERFACES[arity];
+        MethodType erased = MethodType.genericMethodType(arity);
+        // Primitives are boxed in the dynamic signature; the spun class unboxes them before the call.
+        MethodType instantiated = handle.type().wrap();
+        MethodType factoryType = MethodType.methodType(face);
+        if (target != null) {
+            instantiated = instantiated.dropParameterTypes(0, 1);
+            factoryType = factoryType.appendParameterTypes(handle.type().parameterType(0));
+        }
+        CallSite site = LambdaMetafactory.metafactory(lookup, "invoke", factoryType, erased, handle, instantiated);
+        Object function = target != null ? site.getTarget().invoke(target) : site.getTarget().invoke();
+
+        switch (arity) {
+            case 0: {
+                Arity0 call = (Arity0) function;
+                return args -> call.invoke();
+            }
+            case 1: {
+                Arity1 call = (Arity1) function;
+                return args -> call.invoke(args[0]);
+            }
+            case 2: {
+                Arity2 call = (Arity2) function;
+                return args -> call.invoke(args[0], args[1]);
+            }
+            default: {
+                Arity3 call = (Arity3) function;
+                return args -> call.invoke(args[0], args[1], args[2]);
+            }
+        }
+    }
+
+    private static Invoker fromHandle(MethodHandle handle, int arity) {
+        MethodHandle spread = handle.asSpreader(Object[].class, arity)
+                .asType(MethodType.methodType(Object.class, Object[].class));
+        return args -> spread.invokeExact(args);
+    }
+}
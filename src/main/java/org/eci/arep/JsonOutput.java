@@ -0,0 +1,223 @@
+package org.eci.arep;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable UTF-8 buffer that JSON is written into. Each thread reuses one, so encoding a response allocates
+ * only the final copy of its bytes.
+ */
+final class JsonOutput {
+    private static final ThreadLocal<JsonOutput> LOCAL = ThreadLocal.withInitial(JsonOutput::new);
+    private static final int INITIAL_SIZE = 1024;
+    // A buffer grown past this by one large document is not kept for the next one.
+    private static final int MAX_RETAINED = 64 * 1024;
+    private static final int MAX_DEPTH = 256;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] TRUE = ascii("true");
+    private static final byte[] FALSE = ascii("false");
+    private static final byte[] MIN_LONG = ascii(Long.toString(Long.MIN_VALUE));
+    private static final byte[] POINT_ZERO = ascii(".0");
+
+    private byte[] bytes = new byte[INITIAL_SIZE];
+    private int length;
+    private int depth;
+    // Doubles are formatted here, which spares the String that Double.toString would allocate.
+    private final StringBuilder number = new StringBuilder(32);
+
+    JsonOutput() {
+    }
+
+    static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Encodes {@code value}, which may be null, with {@code writer} into a new array.
+     */
+    static byte[] encode(JsonWriter writer, Object value) {
+        JsonOutput out = LOCAL.get();
+        out.length = 0;
+        out.depth = 0;
+        try {
+            if (value == null) {
+                out.writeNull();
+            } else {
+                writer.write(value, out);
+            }
+            return out.toByteArray();
+        } finally {
+            if (out.bytes.length > MAX_RETAINED) {
+                out.bytes = new byte[INITIAL_SIZE];
+            }
+        }
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * Called when an object or array opens, so a cyclic object graph fails instead of overflowing the stack.
+     */
+    void enter() {
+        if (++depth > MAX_DEPTH) {
+            throw new IllegalStateException("JSON nested deeper than " + MAX_DEPTH + " levels; is the object graph cyclic?");
+        }
+    }
+
+    void leave() {
+        depth--;
+    }
+
+    void writeRaw(byte[] data) {
+        ensure(data.length);
+        System.arraycopy(data, 0, bytes, length, data.length);
+        length += data.length;
+    }
+
+    void writeByte(char c) {
+        ensure(1);
+        bytes[length++] = (byte) c;
+    }
+
+    void writeNull() {
+        writeRaw(NULL);
+    }
+
+    void writeBoolean(boolean value) {
+        writeRaw(value ? TRUE : FALSE);
+    }
+
+    void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeRaw(MIN_LONG);
+            return;
+        }
+        ensure(20);
+        if (value < 0) {
+            bytes[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = length + digits - 1; i >= length; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    /**
+     * JSON has no NaN or infinity; they are written as null.
+     */
+    void writeDouble(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writeNull();
+        } else if (value == (long) value && Math.abs(value) < 1e15) {
+            writeLong((long) value);
+            writeRaw(POINT_ZERO);
+        } else {
+            number.setLength(0);
+            writeAscii(number.append(value));
+        }
+    }
+
+    void writeFloat(float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            writeNull();
+        } else {
+            number.setLength(0);
+            writeAscii(number.append(value));
+        }
+    }
+
+    /**
+     * Text already known to be a valid JSON token, such as the digits of a {@code BigDecimal}.
+     */
+    void writeAscii(CharSequence text) {
+        int count = text.length();
+        ensure(count);
+        for (int i = 0; i < count; i++) {
+            bytes[length + i] = (byte) text.charAt(i);
+        }
+        length += count;
+    }
+
+    /**
+     * Writes a quoted string, escaping what JSON requires and encoding the rest as UTF-8 in the same pass.
+     */
+    void writeString(CharSequence text) {
+        int count = text.length();
+        // Worst case: six bytes per char for \\u escapes, plus the quotes.
+        ensure(count * 6 + 2);
+        byte[] out = bytes;
+        int position = length;
+        out[position++] = '"';
+        for (int i = 0; i < count; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    out[position++] = (byte) c;
+                    continue;
+                }
+                out[position++] = '\\';
+                switch (c) {
+                    case '"':
+                    case '\\':
+                        out[position++] = (byte) c;
+                        break;
+                    case '\n':
+                        out[position++] = 'n';
+                        break;
+                    case '\r':
+                        out[position++] = 'r';
+                        break;
+                    case '\t':
+                        out[position++] = 't';
+                        break;
+                    case '\b':
+                        out[position++] = 'b';
+                        break;
+                    case '\f':
+                        out[position++] = 'f';
+                        break;
+                    default:
+                        out[position++] = 'u';
+                        out[position++] = '0';
+                        out[position++] = '0';
+                        out[position++] = HEX[c >> 4];
+                        out[position++] = HEX[c & 0xf];
+                }
+            } else if (c < 0x800) {
+                out[position++] = (byte) (0xc0 | c >> 6);
+                out[position++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                out[position++] = (byte) (0xf0 | codePoint >> 18);
+                out[position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                out[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                out[position++] = (byte) (0x80 | codePoint & 0x3f);
+            } else {
+                // A lone surrogate cannot be encoded; it becomes the replacement character U+FFFD.
+                if (Character.isSurrogate(c)) {
+                    c = '\uFFFD';
+                }
+                out[position++] = (byte) (0xe0 | c >> 12);
+                out[position++] = (byte) (0x80 | c >> 6 & 0x3f);
+                out[position++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        out[position++] = '"';
+        length = position;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package org.eci.arep;
+
+/**
+ * Writes one non-null value of the type it was built for as JSON. Built once per type by {@link JsonWriters}.
+ */
+@FunctionalInterface
+interface JsonWriter {
+
+    void write(Object value, JsonOutput out);
+}
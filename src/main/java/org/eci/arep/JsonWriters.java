@@ -0,0 +1,543 @@
+package org.eci.arep;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Builds a {@link JsonWriter} per type, once, when a route is registered. Records are written with their
+ * components in declaration order; other classes with their public fields and getters, by name. Property
+ * accessors are compiled with {@link LambdaMetafactory}, as {@link Invokers} compiles handlers, so encoding a
+ * value calls them directly with no reflection and writes straight into a {@link JsonOutput}.
+ * <p>
+ * Strings, numbers, booleans, enums, collections, arrays, maps and {@link Optional} map to their JSON
+ * counterparts; other JDK types, such as dates or UUIDs, are written as the string of their {@code toString()}.
+ */
+final class JsonWriters {
+    static final String CONTENT_TYPE = "application/json; charset=utf-8";
+
+    private static final Map<Type, JsonWriter> WRITERS = new ConcurrentHashMap<>();
+    // Writers of the bean types being built, visible to the properties that refer back to them.
+    private static final Map<Type, JsonWriter> BUILDING = new HashMap<>();
+
+    private static final JsonWriter STRING = (value, out) -> out.writeString(value.toString());
+    private static final JsonWriter BOOLEAN = (value, out) -> out.writeBoolean((Boolean) value);
+    private static final JsonWriter INTEGRAL = (value, out) -> out.writeLong(((Number) value).longValue());
+    private static final JsonWriter DOUBLE = (value, out) -> out.writeDouble(((Number) value).doubleValue());
+    private static final JsonWriter FLOAT = (value, out) -> out.writeFloat((Float) value);
+    private static final JsonWriter DECIMAL = (value, out) -> out.writeAscii(value.toString());
+    private static final JsonWriter ENUM = (value, out) -> out.writeString(((Enum<?>) value).name());
+    private static final JsonWriter DYNAMIC = (value, out) -> forType(value.getClass()).write(value, out);
+
+    private JsonWriters() {
+    }
+
+    /**
+     * The writer for a handler's declared result, looking through {@link CompletionStage}, or null when the
+     * result is text: strings, primitives and their wrappers keep being sent as {@code text/plain}.
+     */
+    static JsonWriter forResult(Type type) {
+        Class<?> raw = rawType(type);
+        if (CompletionStage.class.isAssignableFrom(raw)) {
+            type = typeArgument(type, 0);
+            raw = rawType(type);
+        }
+        if (raw == void.class || raw == Void.class || raw.isPrimitive() || CharSequence.class.isAssignableFrom(raw)
+                || Number.class.isAssignableFrom(raw) || raw == Boolean.class || raw == Character.class
+                || StreamingBody.class.isAssignableFrom(raw) || raw == EventStream.class) {
+            return null;
+        }
+        return forType(type);
+    }
+
+    static JsonWriter forType(Type type) {
+        JsonWriter writer = WRITERS.get(type);
+        return writer != null ? writer : build(type);
+    }
+
+    private static synchronized JsonWriter build(Type type) {
+        JsonWriter writer = WRITERS.get(type);
+        if (writer == null) {
+            writer = BUILDING.get(type);
+        }
+        if (writer != null) {
+            return writer;
+        }
+        writer = create(type);
+        if (!BUILDING.containsKey(type)) {
+            WRITERS.put(type, writer);
+        }
+        return writer;
+    }
+
+    private static JsonWriter create(Type type) {
+        Class<?> raw = rawType(type);
+        if (raw == Object.class) {
+            return DYNAMIC;
+        }
+        if (CharSequence.class.isAssignableFrom(raw) || raw == char.class || raw == Character.class) {
+            return STRING;
+        }
+        if (raw == boolean.class || raw == Boolean.class) {
+            return BOOLEAN;
+        }
+        if (raw == long.class || raw == int.class || raw == short.class || raw == byte.class || raw == Long.class
+                || raw == Integer.class || raw == Short.class || raw == Byte.class) {
+            return INTEGRAL;
+        }
+        if (raw == float.class || raw == Float.class) {
+            return FLOAT;
+        }
+        if (raw == BigDecimal.class || raw == BigInteger.class) {
+            return DECIMAL;
+        }
+        if (Number.class.isAssignableFrom(raw) || raw == double.class) {
+            return DOUBLE;
+        }
+        if (raw.isEnum()) {
+            return ENUM;
+        }
+        if (raw.isArray() || type instanceof GenericArrayType) {
+            return arrayWriter(type, raw);
+        }
+        if (Iterable.class.isAssignableFrom(raw)) {
+            return iterableWriter(elementWriter(typeArgument(parameterizedAs(type, Iterable.class), 0)));
+        }
+        if (Map.class.isAssignableFrom(raw)) {
+            return mapWriter(elementWriter(typeArgument(parameterizedAs(type, Map.class), 1)));
+        }
+        if (raw == Optional.class) {
+            JsonWriter content = elementWriter(typeArgument(type, 0));
+            return (value, out) -> writeNullable(((Optional<?>) value).orElse(null), content, out);
+        }
+        if (raw.isInterface() || Modifier.isAbstract(raw.getModifiers())) {
+            return DYNAMIC;
+        }
+        if (raw.getName().startsWith("java.") || raw.getName().startsWith("javax.")) {
+            return STRING;
+        }
+        return beanWriter(raw);
+    }
+
+    /**
+     * Writer for values declared as {@code type}. Subclasses of a non-final class are looked up by their
+     * runtime class so their extra properties are written too.
+     */
+    private static JsonWriter elementWriter(Type type) {
+        JsonWriter declared = forType(type);
+        Class<?> raw = rawType(type);
+        if (declared == DYNAMIC || Modifier.isFinal(raw.getModifiers()) || raw.isPrimitive() || raw.isArray()
+                || raw.isEnum() || declared == STRING || declared == INTEGRAL || declared == DOUBLE) {
+            return declared;
+        }
+        return (value, out) -> (value.getClass() == raw ? declared : forType(value.getClass())).write(value, out);
+    }
+
+    private static void writeNullable(Object value, JsonWriter writer, JsonOutput out) {
+        if (value == null) {
+            out.writeNull();
+        } else {
+            writer.write(value, out);
+        }
+    }
+
+    private static JsonWriter iterableWriter(JsonWriter element) {
+        return (value, out) -> {
+            out.enter();
+            out.writeByte('[');
+            if (value instanceof RandomAccess) {
+                List<?> list = (List<?>) value;
+                for (int i = 0, size = list.size(); i < size; i++) {
+                    if (i > 0) {
+                        out.writeByte(',');
+                    }
+                    writeNullable(list.get(i), element, out);
+                }
+            } else {
+                boolean first = true;
+                for (Object item : (Iterable<?>) value) {
+                    if (!first) {
+                        out.writeByte(',');
+                    }
+                    first = false;
+                    writeNullable(item, element, out);
+                }
+            }
+            out.writeByte(']');
+            out.leave();
+        };
+    }
+
+    private static JsonWriter mapWriter(JsonWriter valueWriter) {
+        return (value, out) -> {
+            out.enter();
+            out.writeByte('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    out.writeByte(',');
+                }
+                first = false;
+                out.writeString(String.valueOf(entry.getKey()));
+                out.writeByte(':');
+                writeNullable(entry.getValue(), valueWriter, out);
+            }
+            out.writeByte('}');
+            out.leave();
+        };
+    }
+
+    private static JsonWriter arrayWriter(Type type, Class<?> raw) {
+        Class<?> component = raw.getComponentType();
+        if (component == int.class) {
+            return (value, out) -> {
+                int[] array = (int[]) value;
+                out.writeByte('[');
+                for (int i = 0; i < array.length; i++) {
+                    if (i > 0) {
+                        out.writeByte(',');
+                    }
+                    out.writeLong(array[i]);
+                }
+                out.writeByte(']');
+            };
+        }
+        if (component == long.class) {
+            return (value, out) -> {
+                long[] array = (long[]) value;
+                out.writeByte('[');
+                for (int i = 0; i < array.length; i++) {
+                    if (i > 0) {
+                        out.writeByte(',');
+                    }
+                    out.writeLong(array[i]);
+                }
+                out.writeByte(']');
+            };
+        }
+        if (component == double.class) {
+            return (value, out) -> {
+                double[] array = (double[]) value;
+                out.writeByte('[');
+                for (int i = 0; i < array.length; i++) {
+                    if (i > 0) {
+                        out.writeByte(',');
+                    }
+                    out.writeDouble(array[i]);
+                }
+                out.writeByte(']');
+            };
+        }
+        Type componentType = type instanceof GenericArrayType ? ((GenericArrayType) type).getGenericComponentType() : component;
+        JsonWriter element = elementWriter(componentType);
+        if (component != null && component.isPrimitive()) {
+            // The remaining primitive arrays are rare enough to box through java.lang.reflect.Array.
+            return (value, out) -> {
+                out.writeByte('[');
+                for (int i = 0, length = Array.getLength(value); i < length; i++) {
+                    if (i > 0) {
+                        out.writeByte(',');
+                    }
+                    element.write(Array.get(value, i), out);
+                }
+                out.writeByte(']');
+            };
+        }
+        return (value, out) -> {
+            Object[] array = (Object[]) value;
+            out.enter();
+            out.writeByte('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    out.writeByte(',');
+                }
+                writeNullable(array[i], element, out);
+            }
+            out.writeByte(']');
+            out.leave();
+        };
+    }
+
+    private static JsonWriter beanWriter(Class<?> type) {
+        BeanWriter writer = new BeanWriter();
+        BUILDING.put(type, writer);
+        try {
+            writer.properties = properties(type);
+        } finally {
+            BUILDING.remove(type);
+        }
+        return writer;
+    }
+
+    private static final class BeanWriter implements JsonWriter {
+        private Property[] properties;
+
+        @Override
+        public void write(Object value, JsonOutput out) {
+            out.enter();
+            out.writeByte('{');
+            for (Property property : properties) {
+                out.writeRaw(property.name);
+                property.write(value, out);
+            }
+            out.writeByte('}');
+            out.leave();
+        }
+    }
+
+    private static Property[] properties(Class<?> type) {
+        MethodHandles.Lookup lookup;
+        try {
+            lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot serialize " + type.getName() + " as JSON", e);
+        }
+        List<Object[]> found = new ArrayList<>();
+        try {
+            if (type.isRecord()) {
+                for (RecordComponent component : type.getRecordComponents()) {
+                    found.add(new Object[]{component.getName(), lookup.unreflect(component.getAccessor()),
+                            component.getGenericType()});
+                }
+            } else {
+                for (Field field : type.getFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        found.add(new Object[]{field.getName(), lookup.unreflectGetter(field), field.getGenericType()});
+                    }
+                }
+                for (Method method : type.getMethods()) {
+                    String name = propertyName(method);
+                    if (name != null && found.stream().noneMatch(property -> property[0].equals(name))) {
+                        found.add(new Object[]{name, lookup.unreflect(method), method.getGenericReturnType()});
+                    }
+                }
+                found.sort(Comparator.comparing(property -> (String) property[0]));
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Cannot serialize " + type.getName() + " as JSON", e);
+        }
+
+        Property[] properties = new Property[found.size()];
+        for (int i = 0; i < properties.length; i++) {
+            Object[] property = found.get(i);
+            properties[i] = property(lookup, type, prefix((String) property[0], i > 0), (MethodHandle) property[1],
+                    (Type) property[2]);
+        }
+        return properties;
+    }
+
+    /**
+     * {@code "name":}, preceded by the comma for every property but the first. Written into its own buffer since
+     * a type first met at runtime is built while the thread's buffer holds a document.
+     */
+    private static byte[] prefix(String name, boolean comma) {
+        JsonOutput out = new JsonOutput();
+        if (comma) {
+            out.writeByte(',');
+        }
+        out.writeString(name);
+        out.writeByte(':');
+        return out.toByteArray();
+    }
+
+    /**
+     * {@code getName()}, or {@code isName()} for booleans, as the bean property {@code name}.
+     */
+    private static String propertyName(Method method) {
+        if (Modifier.isStatic(method.getModifiers()) || method.getParameterCount() != 0
+                || method.getReturnType() == void.class || method.getDeclaringClass() == Object.class) {
+            return null;
+        }
+        String name = method.getName();
+        int prefix = name.startsWith("get") ? 3
+                : name.startsWith("is") && method.getReturnType() == boolean.class ? 2 : 0;
+        if (prefix == 0 || name.length() == prefix) {
+            return null;
+        }
+        String property = name.substring(prefix);
+        // As java.beans.Introspector.decapitalize: "URL" stays "URL", "Name" becomes "name".
+        if (property.length() > 1 && Character.isUpperCase(property.charAt(1)) && Character.isUpperCase(property.charAt(0))) {
+            return property;
+        }
+        return Character.toLowerCase(property.charAt(0)) + property.substring(1);
+    }
+
+    private abstract static class Property {
+        final byte[] name;
+
+        Property(byte[] name) {
+            this.name = name;
+        }
+
+        abstract void write(Object bean, JsonOutput out);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Property property(MethodHandles.Lookup lookup, Class<?> owner, byte[] name, MethodHandle getter, Type type) {
+        Class<?> raw = getter.type().returnType();
+        if (raw == long.class || raw == int.class || raw == short.class || raw == byte.class) {
+            ToLongFunction<Object> read = (ToLongFunction<Object>) accessor(lookup, owner, getter,
+                    ToLongFunction.class, "applyAsLong", long.class);
+            return new Property(name) {
+                @Override
+                void write(Object bean, JsonOutput out) {
+                    out.writeLong(read.applyAsLong(bean));
+                }
+            };
+        }
+        if (raw == double.class) {
+            ToDoubleFunction<Object> read = (ToDoubleFunction<Object>) accessor(lookup, owner, getter,
+                    ToDoubleFunction.class, "applyAsDouble", double.class);
+            return new Property(name) {
+                @Override
+                void write(Object bean, JsonOutput out) {
+                    out.writeDouble(read.applyAsDouble(bean));
+                }
+            };
+        }
+        if (raw == boolean.class) {
+            Predicate<Object> read = (Predicate<Object>) accessor(lookup, owner, getter, Predicate.class, "test", boolean.class);
+            return new Property(name) {
+                @Override
+                void write(Object bean, JsonOutput out) {
+                    out.writeBoolean(read.test(bean));
+                }
+            };
+        }
+        Function<Object, Object> read = (Function<Object, Object>) accessor(lookup, owner, getter,
+                Function.class, "apply", Object.class);
+        JsonWriter writer = elementWriter(type);
+        return new Property(name) {
+            @Override
+            void write(Object bean, JsonOutput out) {
+                writeNullable(read.apply(bean), writer, out);
+            }
+        };
+    }
+
+    /**
+     * Spins an implementation of {@code face} that calls {@code getter} directly. Field getters, which the
+     * metafactory cannot target, are wrapped in a lambda over the exact-typed method handle instead.
+     */
+    private static Object accessor(MethodHandles.Lookup lookup, Class<?> owner, MethodHandle getter, Class<?> face,
+                                   String method, Class<?> result) {
+        MethodType erased = MethodType.methodType(result, Object.class);
+        try {
+            return LambdaMetafactory.metafactory(lookup, method, MethodType.methodType(face), erased, getter,
+                    MethodType.methodType(result == Object.class ? getter.type().wrap().returnType() : result, owner))
+                    .getTarget().invoke();
+        } catch (Throwable e) {
+            MethodHandle exact = getter.asType(erased);
+            if (result == long.class) {
+                return (ToLongFunction<Object>) bean -> {
+                    try {
+                        return (long) exact.invokeExact(bean);
+                    } catch (Throwable t) {
+                        throw rethrow(t);
+                    }
+                };
+            }
+            if (result == double.class) {
+                return (ToDoubleFunction<Object>) bean -> {
+                    try {
+                        return (double) exact.invokeExact(bean);
+                    } catch (Throwable t) {
+                        throw rethrow(t);
+                    }
+                };
+            }
+            if (result == boolean.class) {
+                return (Predicate<Object>) bean -> {
+                    try {
+                        return (boolean) exact.invokeExact(bean);
+                    } catch (Throwable t) {
+                        throw rethrow(t);
+                    }
+                };
+            }
+            return (Function<Object, Object>) bean -> {
+                try {
+                    return (Object) exact.invokeExact(bean);
+                } catch (Throwable t) {
+                    throw rethrow(t);
+                }
+            };
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable error) {
+        if (error instanceof RuntimeException) {
+            return (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        return new IllegalStateException(error);
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        }
+        if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+        if (type instanceof GenericArrayType) {
+            return Array.newInstance(rawType(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+        }
+        if (type instanceof WildcardType) {
+            return rawType(((WildcardType) type).getUpperBounds()[0]);
+        }
+        // Type variables are resolved from the runtime class of each value.
+        return Object.class;
+    }
+
+    private static Type typeArgument(Type type, int index) {
+        if (type instanceof ParameterizedType) {
+            Type argument = ((ParameterizedType) type).getActualTypeArguments()[index];
+            return argument instanceof WildcardType ? ((WildcardType) argument).getUpperBounds()[0] : argument;
+        }
+        return Object.class;
+    }
+
+    /**
+     * {@code type} viewed as the generic interface {@code target}, e.g. {@code List<Item>} as {@code Iterable<Item>}.
+     * Classes that bind the parameters through their own supertypes, or raw types, fall back to {@code Object}.
+     */
+    private static Type parameterizedAs(Type type, Class<?> target) {
+        if (rawType(type) == target || !(type instanceof ParameterizedType)) {
+            return type;
+        }
+        Class<?> raw = rawType(type);
+        if (raw.getTypeParameters().length == target.getTypeParameters().length) {
+            // List<T>, Set<T>, Map<K, V> and their implementations keep the parameters in the same order.
+            return type;
+        }
+        return Object.class;
+    }
+}
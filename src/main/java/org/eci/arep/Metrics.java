@@ -0,0 +1,238 @@
+package org.eci.arep;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Server instrumentation, rendered as Prometheus text on {@code METRICS_PATH} (default {@code /metrics}).
+ * Each route owns its counters and histogram, so recording a request is a few uncontended adds with no lookup
+ * or allocation. {@code METRICS=false} turns recording off.
+ */
+public class Metrics {
+    static final boolean ENABLED = ServerConfig.getBoolean("METRICS", true);
+    static final String PATH = ServerConfig.getString("METRICS_PATH", "/metrics");
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final long[] BUCKET_BOUNDS = {
+            100_000L, 250_000L, 500_000L, 1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L,
+            50_000_000L, 100_000_000L, 250_000_000L, 500_000_000L, 1_000_000_000L, 2_500_000_000L,
+            5_000_000_000L, 10_000_000_000L};
+    private static final String[] BUCKET_LABELS = {
+            "0.0001", "0.00025", "0.0005", "0.001", "0.0025", "0.005", "0.01", "0.025", "0.05", "0.1", "0.25", "0.5",
+            "1", "2.5", "5", "10"};
+
+    private static final Map<String, RouteMetrics> ROUTES = new ConcurrentHashMap<>();
+    static final RouteMetrics STATIC = route("static");
+    static final RouteMetrics UNMATCHED = route("unmatched");
+    static final RouteMetrics SCRAPE = route(PATH);
+
+    private static final LongAdder BYTES_IN = new LongAdder();
+    private static final LongAdder BYTES_OUT = new LongAdder();
+    private static final LongAdder IN_FLIGHT = new LongAdder();
+    private static volatile ExecutorService executor;
+    private static volatile ConnectionManager connections;
+
+    /**
+     * Metrics of a route, shared by every registration of the same path.
+     */
+    static RouteMetrics route(String path) {
+        return ROUTES.computeIfAbsent(path, RouteMetrics::new);
+    }
+
+    static void setExecutor(ExecutorService workers) {
+        executor = workers;
+    }
+
+    static void setConnections(ConnectionManager manager) {
+        connections = manager;
+    }
+
+    static long requestStarted() {
+        if (!ENABLED) {
+            return 0;
+        }
+        IN_FLIGHT.increment();
+        return System.nanoTime();
+    }
+
+    static void requestFinished(RouteMetrics route, int status, long started) {
+        if (!ENABLED) {
+            return;
+        }
+        route.record(status, System.nanoTime() - started);
+        IN_FLIGHT.decrement();
+    }
+
+    static void bytesRead(long count) {
+        if (ENABLED && count > 0) {
+            BYTES_IN.add(count);
+        }
+    }
+
+    static void bytesWritten(long count) {
+        if (ENABLED && count > 0) {
+            BYTES_OUT.add(count);
+        }
+    }
+
+    static void scrape(HttpResponse response) {
+        response.setContentType(CONTENT_TYPE);
+        response.setBody(render());
+    }
+
+    static String render() {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# HELP http_requests_total Requests handled, by route and status.\n");
+        out.append("# TYPE http_requests_total counter\n");
+        for (RouteMetrics route : ROUTES.values()) {
+            for (int status = 0; status < route.statuses.length(); status++) {
+                LongAdder count = route.statuses.get(status);
+                if (count != null) {
+                    out.append("http_requests_total{route=\"").append(route.label).append("\",status=\"")
+                            .append(status).append("\"} ").append(count.sum()).append('\n');
+                }
+            }
+        }
+
+        out.append("# HELP http_request_duration_seconds Time to produce the response, by route.\n");
+        out.append("# TYPE http_request_duration_seconds histogram\n");
+        for (RouteMetrics route : ROUTES.values()) {
+            long count = route.latency.getCount();
+            if (count == 0) {
+                continue;
+            }
+            long[] cumulative = route.latency.getCumulativeCounts(BUCKET_BOUNDS);
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+                out.append("http_request_duration_seconds_bucket{route=\"").append(route.label).append("\",le=\"")
+                        .append(BUCKET_LABELS[i]).append("\"} ").append(cumulative[i]).append('\n');
+            }
+            out.append("http_request_duration_seconds_bucket{route=\"").append(route.label).append("\",le=\"+Inf\"} ")
+                    .append(count).append('\n');
+            out.append("http_request_duration_seconds_sum{route=\"").append(route.label).append("\"} ")
+                    .append(route.latency.getSum() / 1e9).append('\n');
+            out.append("http_request_duration_seconds_count{route=\"").append(route.label).append("\"} ")
+                    .append(count).append('\n');
+        }
+
+        counter(out, "http_server_bytes_received_total", "Request bytes read from clients.", BYTES_IN.sum());
+        counter(out, "http_server_bytes_sent_total", "Response bytes written to clients.", BYTES_OUT.sum());
+        gauge(out, "http_server_requests_in_flight", "Requests being handled.", IN_FLIGHT.sum());
+        if (AccessLog.isEnabled()) {
+            counter(out, "http_server_access_log_dropped_total", "Access log records dropped because its buffer was full.",
+                    AccessLog.getDropped());
+        }
+
+        counter(out, "http_server_rate_limited_total", "Requests answered 429 for exceeding a rate limit.",
+                RateLimiter.getRejected());
+        gauge(out, "http_server_sse_subscribers", "Clients subscribed to an event stream.", EventStream.getOpenSubscriptions());
+        counter(out, "http_server_sse_evictions_total", "Event stream subscribers disconnected for falling behind.",
+                EventStream.getEvictions());
+
+        ConnectionManager manager = connections;
+        if (manager != null) {
+            gauge(out, "http_server_connections_open", "Client connections open.", manager.getOpen());
+            counter(out, "http_server_connections_rejected_total", "Connections refused at MAX_CONNECTIONS.",
+                    manager.getRejected());
+            counter(out, "http_server_request_timeouts_total", "Requests answered 408 for missing a read deadline.",
+                    manager.getTimedOut());
+        }
+
+        ExecutorService workers = executor;
+        if (workers instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) workers;
+            gauge(out, "http_server_executor_queue_depth", "Tasks waiting for a worker.", pool.getQueue().size());
+            gauge(out, "http_server_executor_active_threads", "Workers running a task.", pool.getActiveCount());
+        } else if (workers instanceof ServerExecutors.BoundedExecutorService) {
+            gauge(out, "http_server_executor_queue_depth", "Tasks submitted and not finished.",
+                    ((ServerExecutors.BoundedExecutorService) workers).getPending());
+        }
+
+        cacheCounter(out, "http_server_response_cache_hits_total", "Responses served from a route's cache.",
+                ResponseCache::getHits);
+        cacheCounter(out, "http_server_response_cache_misses_total", "Cacheable requests that invoked the handler.",
+                ResponseCache::getMisses);
+        cacheCounter(out, "http_server_response_cache_coalesced_total",
+                "Cacheable requests that waited for another request's invocation.", ResponseCache::getCoalesced);
+        cacheCounter(out, "http_server_response_cache_evictions_total", "Cached responses evicted for space.",
+                ResponseCache::getEvictions);
+
+        StaticHandler handler = HttpServer.staticHandler();
+        if (handler instanceof StaticResources) {
+            StaticResources resources = (StaticResources) handler;
+            counter(out, "http_server_static_cache_hits_total", "Static assets served from memory.", resources.getHits());
+            counter(out, "http_server_static_cache_misses_total", "Static assets loaded from the classpath.",
+                    resources.getMisses());
+        }
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void cacheCounter(StringBuilder out, String name, String help, ToLongFunction<ResponseCache> value) {
+        boolean first = true;
+        for (RouteMetrics route : ROUTES.values()) {
+            ResponseCache cache = route.cache;
+            if (cache == null) {
+                continue;
+            }
+            if (first) {
+                out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+                out.append("# TYPE ").append(name).append(" counter\n");
+                first = false;
+            }
+            out.append(name).append("{route=\"").append(route.label).append("\"} ").append(value.applyAsLong(cache))
+                    .append('\n');
+        }
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Request counts by status code and the latency histogram of one route, and its response cache if it has one.
+     */
+    static final class RouteMetrics {
+        private final String label;
+        private final AtomicReferenceArray<LongAdder> statuses = new AtomicReferenceArray<>(600);
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private volatile ResponseCache cache;
+
+        RouteMetrics(String path) {
+            this.label = path.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        }
+
+        void record(int status, long nanos) {
+            if (status < 0 || status >= statuses.length()) {
+                status = 0;
+            }
+            LongAdder count = statuses.get(status);
+            if (count == null) {
+                statuses.compareAndSet(status, null, new LongAdder());
+                count = statuses.get(status);
+            }
+            count.increment();
+            latency.record(nanos);
+        }
+
+        void setCache(ResponseCache cache) {
+            this.cache = cache;
+        }
+
+        long getCount(int status) {
+            LongAdder count = statuses.get(status);
+            return count == null ? 0 : count.sum();
+        }
+    }
+}
@@ -0,0 +1,607 @@
+package org.eci.arep;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * State of one client channel. Every method runs on the owning event loop thread; requests on the same
+ * connection are handled one at a time so pipelined responses leave in order.
+ */
+class NioConnection {
+    private static final int INPUT_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_STREAM_QUEUED = 256 * 1024;
+    private static final int MAX_REQUESTS = ServerConfig.getInt("MAX_KEEP_ALIVE_REQUESTS", 100);
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final NioEventLoop loop;
+    private final ExecutorService workers;
+    private final ConnectionManager manager;
+    private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+    private final ByteBuffer[] gather = new ByteBuffer[16];
+    private FileRegion pendingFile;
+    private Semaphore credits;
+    private int streamQueued;
+    private boolean streaming;
+    private EventStream.Subscription subscription;
+    private HttpResponse subscribed;
+    private long eventsQueued;
+    private final ByteBuffer input = ByteBuffer.allocate(INPUT_BUFFER_SIZE);
+    private final HttpRequestParser parser = new HttpRequestParser();
+    private boolean processing;
+    private boolean inputClosed;
+    private boolean closeAfterWrite;
+    private boolean closed;
+    private int served;
+    private long lastActivity = System.currentTimeMillis();
+    private long partStarted;
+    private boolean readingBody;
+    private Http2Connection http2;
+    private final long client;
+
+    NioConnection(SocketChannel channel, SelectionKey key, NioEventLoop loop, ExecutorService workers,
+                  ConnectionManager manager) {
+        this.channel = channel;
+        this.key = key;
+        this.loop = loop;
+        this.workers = workers;
+        this.manager = manager;
+        this.client = RateLimiter.clientKey(channel.socket().getInetAddress());
+    }
+
+    void onReadable() {
+        if (http2 != null) {
+            readHttp2();
+            return;
+        }
+        if (!input.hasRemaining()) {
+            // Unparsed pipelined bytes fill the buffer while a request is in flight; resume once it is written.
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            return;
+        }
+        int read;
+        try {
+            read = channel.read(input);
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        if (read < 0 && subscription != null) {
+            close();
+            return;
+        }
+        if (read < 0) {
+            inputClosed = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            if (!processing) {
+                tryDispatch();
+                if (!processing) {
+                    close();
+                }
+            }
+            return;
+        }
+        Metrics.bytesRead(read);
+        lastActivity = System.currentTimeMillis();
+        tryDispatch();
+    }
+
+    void onWritable() {
+        flush();
+    }
+
+    private void readHttp2() {
+        int read;
+        try {
+            read = channel.read(input);
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        if (read < 0) {
+            close();
+            return;
+        }
+        Metrics.bytesRead(read);
+        lastActivity = System.currentTimeMillis();
+        input.flip();
+        boolean open = http2.receive(input);
+        input.clear();
+        if (!open) {
+            closeAfterFrames();
+        }
+    }
+
+    /**
+     * Hands the connection to HTTP/2 once its preface, or a request upgrading to h2c, has been read. Frames are
+     * queued on the event loop from whichever thread sends them.
+     */
+    private void switchToHttp2(HttpRequest request) {
+        boolean upgrade = !Http2Connection.isPreface(request);
+        partStarted = 0;
+        http2 = new Http2Connection(workers, new Http2Connection.Transport() {
+            @Override
+            public void write(ByteBuffer frames) {
+                loop.execute(() -> queueFrames(frames));
+            }
+
+            @Override
+            public void close() {
+                loop.execute(NioConnection.this::close);
+            }
+        }, manager.getIdleTimeout(), client, !upgrade);
+        try {
+            if (upgrade) {
+                queueFrames(ByteBuffer.wrap(Http2Connection.SWITCHING_PROTOCOLS));
+            }
+            http2.start();
+            if (upgrade) {
+                http2.upgrade(request);
+            }
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        // The rest of the preface, and frames sent right after it, may already be buffered.
+        boolean open = http2.receive(input);
+        input.clear();
+        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        if (!open) {
+            closeAfterFrames();
+        }
+    }
+
+    private void queueFrames(ByteBuffer frames) {
+        if (channel.isOpen()) {
+            output.add(frames);
+            flush();
+        }
+    }
+
+    /**
+     * Closes the connection once the frames already handed to the event loop, such as a {@code GOAWAY}, are sent.
+     */
+    private void closeAfterFrames() {
+        loop.execute(() -> {
+            closeAfterWrite = true;
+            flush();
+        });
+    }
+
+    boolean isWaitingForRequest() {
+        if (http2 != null) {
+            return http2.isIdle() && output.isEmpty();
+        }
+        return !processing && !parser.isPartial() && output.isEmpty() && pendingFile == null;
+    }
+
+    /**
+     * Called by the event loop's periodic sweep. Closes a connection idle for the keep-alive timeout, or whose
+     * client stopped reading a response for as long, and answers {@code 408} to a request that did not finish
+     * its headers or body in time.
+     */
+    void checkTimeouts(long now) {
+        if (http2 != null && !isWaitingForRequest()) {
+            if (!output.isEmpty() && now - lastActivity >= manager.getIdleTimeout()) {
+                close();
+            }
+            return;
+        }
+        if (isWaitingForRequest()) {
+            if (loop.isDraining() || now - lastActivity >= manager.getIdleTimeout()) {
+                close();
+            }
+        } else if (!processing) {
+            if (partStarted != 0 && now - partStarted >= manager.getReadTimeout(readingBody)) {
+                manager.requestTimedOut();
+                input.clear();
+                respondError(HttpParseException.requestTimeout(readingBody ? "Body not received in time"
+                        : "Headers not received in time"));
+            }
+        } else if ((!output.isEmpty() || pendingFile != null) && now - lastActivity >= manager.getIdleTimeout()) {
+            close();
+        } else if (subscription != null && output.isEmpty() && now - lastActivity >= EventStream.HEARTBEAT_MILLIS) {
+            write(ByteBuffer.wrap(subscribed.isChunked() ? EventStream.HEARTBEAT.chunk() : EventStream.HEARTBEAT.bytes),
+                    false);
+        }
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        manager.release();
+        loop.remove(this);
+        key.cancel();
+        closeQuietly(pendingFile);
+        pendingFile = null;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+        if (credits != null) {
+            // Wakes a worker blocked on a streamed body so it sees the closed channel.
+            credits.release(MAX_STREAM_QUEUED);
+        }
+        if (http2 != null) {
+            http2.close();
+        }
+        if (subscription != null) {
+            subscription.cancel();
+            subscription = null;
+        }
+    }
+
+    private static void closeQuietly(FileRegion region) {
+        if (region == null) {
+            return;
+        }
+        try {
+            region.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void tryDispatch() {
+        if (processing || !channel.isOpen()) {
+            return;
+        }
+        HttpRequest request;
+        input.flip();
+        RequestTrace trace = input.hasRemaining() ? RequestTrace.start() : null;
+        if (trace != null) {
+            trace.begin(RequestTrace.PARSE);
+        }
+        try {
+            request = parser.parse(input);
+        } catch (HttpParseException e) {
+            input.clear();
+            respondError(e);
+            return;
+        }
+        if (trace != null && request != null) {
+            trace.attach(request);
+            trace.end();
+        }
+        if (request != null && (Http2Connection.isPreface(request) || Http2Connection.isUpgrade(request))) {
+            switchToHttp2(request);
+            return;
+        }
+        input.compact();
+        if (request == null) {
+            // Each part gets its own deadline, however the client spreads its bytes over it.
+            if (!parser.isPartial()) {
+                partStarted = 0;
+            } else if (partStarted == 0 || readingBody != parser.isReadingBody()) {
+                partStarted = System.currentTimeMillis();
+                readingBody = parser.isReadingBody();
+            }
+            return;
+        }
+        partStarted = 0;
+
+        processing = true;
+        served++;
+        boolean keepAlive = HttpServer.isRunning() && !inputClosed && served < MAX_REQUESTS
+                && request.isKeepAliveRequested();
+        request.setKeepAlive(keepAlive);
+        if (!HttpServer.admit(request, client)) {
+            write(ByteBuffer.wrap(RateLimiter.tooManyRequests(keepAlive)), !keepAlive);
+            return;
+        }
+        if (trace != null) {
+            trace.begin(RequestTrace.QUEUE);
+        }
+        try {
+            workers.execute(() -> {
+                if (trace != null) {
+                    trace.end();
+                }
+                HttpResponse response = null;
+                try {
+                    response = HttpServer.handle(request);
+                } catch (Exception e) {
+                    Logger.getLogger(NioConnection.class.getName()).log(Level.SEVERE, null, e);
+                    response = HttpServer.internalServerError();
+                }
+                if (response != null && response.getDeferred() != null) {
+                    // The worker is released; whichever thread completes the handler's future sends the response.
+                    response.getDeferred().whenComplete((done, error) -> {
+                        if (error != null) {
+                            Logger.getLogger(NioConnection.class.getName()).log(Level.SEVERE, null, error);
+                            done = HttpServer.internalServerError();
+                        }
+                        respond(done, trace, false);
+                    });
+                    return;
+                }
+                respond(response, trace, true);
+            });
+        } catch (RejectedExecutionException e) {
+            write(ByteBuffer.wrap(HttpServer.serviceUnavailable()), true);
+        }
+    }
+
+    /**
+     * Hands a finished response to the event loop. A streamed body is produced on a worker, so one completed on
+     * another thread is handed back to the pool.
+     */
+    private void respond(HttpResponse response, RequestTrace trace, boolean onWorker) {
+        if (response != null && response.getStreamingBody() != null
+                && !(response.getStreamingBody() instanceof EventStream.Subscription)) {
+            Runnable stream = () -> {
+                if (trace != null) {
+                    trace.begin(RequestTrace.WRITE);
+                }
+                stream(response);
+                if (trace != null) {
+                    trace.finish(response.getStatusCode());
+                }
+            };
+            if (onWorker) {
+                stream.run();
+                return;
+            }
+            try {
+                workers.execute(stream);
+            } catch (RejectedExecutionException e) {
+                loop.execute(this::close);
+            }
+            return;
+        }
+        loop.execute(() -> {
+            if (response == null) {
+                close();
+                return;
+            }
+            if (trace != null) {
+                trace.begin(RequestTrace.WRITE);
+            }
+            if (response.getStreamingBody() != null) {
+                subscribe(response);
+            } else {
+                write(response, !response.isKeepAlive());
+            }
+            if (trace != null) {
+                trace.finish(response.getStatusCode());
+            }
+        });
+    }
+
+    private void respondError(HttpParseException error) {
+        processing = true;
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        try {
+            error.toResponse().send(response);
+        } catch (IOException ignored) {
+        }
+        write(ByteBuffer.wrap(response.toByteArray()), true);
+    }
+
+    private void write(HttpResponse response, boolean close) {
+        if (!channel.isOpen()) {
+            closeQuietly(response.getFileBody());
+            return;
+        }
+        Collections.addAll(output, response.encode());
+        pendingFile = response.getFileBody();
+        closeAfterWrite = close;
+        flush();
+    }
+
+    /**
+     * Runs a streamed body on the calling worker thread. Each chunk is handed to the event loop, and the worker
+     * blocks while more than {@link #MAX_STREAM_QUEUED} bytes are waiting for the socket.
+     */
+    private void stream(HttpResponse response) {
+        credits = new Semaphore(MAX_STREAM_QUEUED);
+        ByteBuffer head = response.encodeHead();
+        loop.execute(() -> {
+            streaming = true;
+            write(head, false);
+        });
+        boolean complete = false;
+        try {
+            response.writeStreamingBody(new StreamOutput());
+            complete = true;
+        } catch (IOException e) {
+            Logger.getLogger(NioConnection.class.getName()).log(Level.FINE, "Stream aborted", e);
+        } catch (RuntimeException e) {
+            Logger.getLogger(NioConnection.class.getName()).log(Level.SEVERE, null, e);
+        }
+        boolean finished = complete;
+        loop.execute(() -> {
+            streaming = false;
+            if (!finished) {
+                close();
+            } else if (channel.isOpen()) {
+                closeAfterWrite = !response.isKeepAlive();
+                flush();
+            }
+        });
+    }
+
+    /**
+     * Sends the events of a subscription from the event loop as they are published, without holding a worker.
+     */
+    private void subscribe(HttpResponse response) {
+        EventStream.Subscription events = (EventStream.Subscription) response.getStreamingBody();
+        if (!channel.isOpen()) {
+            events.cancel();
+            return;
+        }
+        subscription = events;
+        subscribed = response;
+        streaming = true;
+        write(response.encodeHead(), false);
+        events.listen(() -> loop.execute(this::pushEvents));
+    }
+
+    private void pushEvents() {
+        EventStream.Subscription events = subscription;
+        if (events == null) {
+            return;
+        }
+        events.listened();
+        boolean chunked = subscribed.isChunked();
+        for (EventStream.Event event = events.poll(); event != null; event = events.poll()) {
+            output.add(ByteBuffer.wrap(chunked ? event.chunk() : event.bytes));
+            eventsQueued += event.bytes.length;
+        }
+        int state = events.getState();
+        if (state == EventStream.Subscription.EVICTED) {
+            close();
+            return;
+        }
+        if (state == EventStream.Subscription.FINISHED) {
+            subscription = null;
+            streaming = false;
+            if (chunked) {
+                output.add(ByteBuffer.wrap(LAST_CHUNK));
+            }
+            closeAfterWrite = !subscribed.isKeepAlive() || !chunked;
+            subscribed = null;
+        }
+        flush();
+    }
+
+    private void write(ByteBuffer bytes, boolean close) {
+        if (!channel.isOpen()) {
+            return;
+        }
+        output.add(bytes);
+        closeAfterWrite = close;
+        flush();
+    }
+
+    private void flush() {
+        try {
+            while (!output.isEmpty()) {
+                int count = 0;
+                for (ByteBuffer buffer : output) {
+                    gather[count++] = buffer;
+                    if (count == gather.length) {
+                        break;
+                    }
+                }
+                long written = channel.write(gather, 0, count);
+                Metrics.bytesWritten(written);
+                if (written > 0) {
+                    lastActivity = System.currentTimeMillis();
+                }
+                boolean drained = !gather[count - 1].hasRemaining();
+                Arrays.fill(gather, 0, count, null);
+                while (!output.isEmpty() && !output.peek().hasRemaining()) {
+                    output.poll();
+                }
+                if (!drained) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            if (pendingFile != null) {
+                long transferred = pendingFile.transferSome(channel);
+                Metrics.bytesWritten(transferred);
+                if (transferred > 0) {
+                    lastActivity = System.currentTimeMillis();
+                }
+                if (!pendingFile.isDone()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                closeQuietly(pendingFile);
+                pendingFile = null;
+            }
+        } catch (IOException e) {
+            close();
+            return;
+        }
+
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        lastActivity = System.currentTimeMillis();
+        if (http2 != null) {
+            if (closeAfterWrite) {
+                close();
+            }
+            return;
+        }
+        if (streamQueued > 0) {
+            credits.release(streamQueued);
+            streamQueued = 0;
+        }
+        if (eventsQueued > 0) {
+            if (subscription != null) {
+                subscription.sent(eventsQueued);
+            }
+            eventsQueued = 0;
+        }
+        if (streaming) {
+            return;
+        }
+        processing = false;
+        if (!inputClosed) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+        if (closeAfterWrite || loop.isDraining() || inputClosed && input.position() == 0) {
+            close();
+            return;
+        }
+        tryDispatch();
+        if (!processing && inputClosed) {
+            close();
+        }
+    }
+
+    /**
+     * Body stream of a streamed response, written by a worker thread. Bytes are copied and queued on the
+     * event loop, which writes them in order after the head.
+     */
+    private final class StreamOutput extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            int permits = Math.min(length, MAX_STREAM_QUEUED);
+            try {
+                credits.acquire(permits);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (!channel.isOpen()) {
+                throw new IOException("Connection closed");
+            }
+            ByteBuffer chunk = ByteBuffer.wrap(Arrays.copyOfRange(data, offset, offset + length));
+            loop.execute(() -> {
+                if (channel.isOpen()) {
+                    output.add(chunk);
+                    streamQueued += permits;
+                    NioConnection.this.flush();
+                }
+            });
+        }
+    }
+}
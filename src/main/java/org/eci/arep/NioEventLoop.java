@@ -0,0 +1,140 @@
+package org.eci.arep;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+class NioEventLoop implements Runnable {
+    private final Selector selector;
+    private static final long SWEEP_INTERVAL = 250;
+
+    private final ExecutorService workers;
+    private final ConnectionManager manager;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Set<NioConnection> connections = new HashSet<>();
+    private volatile boolean running = true;
+    private volatile boolean draining;
+
+    NioEventLoop(ExecutorService workers, ConnectionManager manager) throws IOException {
+        this.selector = Selector.open();
+        this.workers = workers;
+        this.manager = manager;
+    }
+
+    /**
+     * Adopts an admitted channel; the connection gives its slot back to the {@link ConnectionManager} when it closes.
+     */
+    void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                NioConnection connection = new NioConnection(channel, key, this, workers, manager);
+                key.attach(connection);
+                connections.add(connection);
+            } catch (IOException e) {
+                closeQuietly(channel);
+                manager.release();
+            }
+        });
+    }
+
+    /**
+     * Runs the task on the event loop thread; this is the only way worker threads may touch a connection.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    void remove(NioConnection connection) {
+        connections.remove(connection);
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    void drain() {
+        draining = true;
+        execute(this::closeIdle);
+    }
+
+    boolean isDraining() {
+        return draining;
+    }
+
+    @Override
+    public void run() {
+        long lastSweep = System.currentTimeMillis();
+        while (running) {
+            try {
+                selector.select(SWEEP_INTERVAL);
+                runTasks();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioConnection connection = (NioConnection) key.attachment();
+                    if (key.isValid() && key.isReadable()) {
+                        connection.onReadable();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.onWritable();
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastSweep >= SWEEP_INTERVAL) {
+                    for (NioConnection connection : new ArrayList<>(connections)) {
+                        connection.checkTimeouts(now);
+                    }
+                    lastSweep = now;
+                }
+            } catch (IOException e) {
+                Logger.getLogger(NioEventLoop.class.getName()).log(Level.SEVERE, null, e);
+            }
+        }
+        for (NioConnection connection : new ArrayList<>(connections)) {
+            connection.close();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            Logger.getLogger(NioEventLoop.class.getName()).log(Level.SEVERE, null, e);
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void closeIdle() {
+        for (NioConnection connection : new ArrayList<>(connections)) {
+            if (connection.isWaitingForRequest()) {
+                connection.close();
+            }
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
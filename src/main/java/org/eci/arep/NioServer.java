@@ -0,0 +1,108 @@
+package org.eci.arep;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking server engine: a single acceptor thread hands every accepted channel to one of N
+ * selector-driven event loops, which parse and write without blocking and run handlers on the worker pool.
+ */
+class NioServer {
+    private final ExecutorService workers;
+    private final ConnectionManager connections;
+    private final NioEventLoop[] loops;
+    private volatile ServerSocketChannel serverChannel;
+    private volatile boolean running = true;
+
+    NioServer(ExecutorService workers, ConnectionManager connections, int eventLoops) {
+        this.workers = workers;
+        this.connections = connections;
+        this.loops = new NioEventLoop[Math.max(1, eventLoops)];
+    }
+
+    void run(int port) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), HttpServer.acceptBacklog());
+
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new NioEventLoop(workers, connections);
+            Thread thread = new Thread(loops[i], "nio-event-loop-" + i);
+            thread.start();
+        }
+
+        int next = 0;
+        while (running) {
+            try {
+                if (!connections.reserve()) {
+                    break;
+                }
+                SocketChannel channel;
+                try {
+                    channel = serverChannel.accept();
+                } catch (IOException e) {
+                    connections.cancelReservation();
+                    throw e;
+                }
+                if (!connections.admit()) {
+                    reject(channel);
+                    continue;
+                }
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                loops[next].register(channel);
+                next = (next + 1) % loops.length;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                if (!running) {
+                    break;
+                }
+                Logger.getLogger(NioServer.class.getName()).log(Level.SEVERE, null, e);
+            }
+        }
+    }
+
+    // The channel is still blocking, so the short response is written before it is closed.
+    private static void reject(SocketChannel channel) {
+        try (channel) {
+            channel.write(ByteBuffer.wrap(HttpServer.serviceUnavailable()));
+        } catch (IOException e) {
+            Logger.getLogger(NioServer.class.getName()).log(Level.FINE, null, e);
+        }
+    }
+
+    /**
+     * Closes the listening channel and has the event loops close each connection once it is not serving a
+     * request.
+     */
+    void stopAccepting() throws IOException {
+        running = false;
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+        for (NioEventLoop loop : loops) {
+            if (loop != null) {
+                loop.drain();
+            }
+        }
+    }
+
+    void stop() throws IOException {
+        stopAccepting();
+        for (NioEventLoop loop : loops) {
+            if (loop != null) {
+                loop.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package org.eci.arep;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Concurrent map from {@code String} keys to primitive {@code long} or {@code double} values, for controller
+ * state shared by the worker threads. Keys are split over lock-striped segments, each an open-addressing table
+ * with linear probing; writers lock one segment, readers never lock. Values are stored unboxed, so an update does
+ * not allocate and the tables hold no per-entry objects besides the keys.
+ * <p>
+ * A reader may run concurrently with a writer of the same segment: a value slot is written before its key is
+ * published, and a resized table is only published once it is complete, so a reader sees either the previous
+ * or the new value of a key.
+ */
+public class PrimitiveStore {
+    private static final Map<String, PrimitiveStore> SHARED = new ConcurrentHashMap<>();
+    private static final String TOMBSTONE = new String("<removed>");
+    private static final int SEGMENTS = 16;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    public PrimitiveStore() {
+        this(64);
+    }
+
+    /**
+     * Presizing for the expected number of keys avoids resizing while the store fills up.
+     */
+    public PrimitiveStore(int expectedSize) {
+        int perSegment = (int) Math.ceil(expectedSize / (double) SEGMENTS / LOAD_FACTOR);
+        int capacity = Math.max(4, Integer.highestOneBit(Math.max(1, perSegment - 1)) << 1);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    /**
+     * The store registered under {@code name}, created on first use; controllers that name the same store share it.
+     */
+    public static PrimitiveStore shared(String name) {
+        return SHARED.computeIfAbsent(name, n -> new PrimitiveStore());
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[hash >>> 28];
+    }
+
+    public long getLong(String key, long missing) {
+        int hash = hash(key);
+        Table table = segmentFor(hash).table;
+        int slot = table.find(key, hash);
+        return slot >= 0 ? table.values.get(slot) : missing;
+    }
+
+    public double getDouble(String key, double missing) {
+        int hash = hash(key);
+        Table table = segmentFor(hash).table;
+        int slot = table.find(key, hash);
+        return slot >= 0 ? Double.longBitsToDouble(table.values.get(slot)) : missing;
+    }
+
+    public boolean containsKey(String key) {
+        int hash = hash(key);
+        return segmentFor(hash).table.find(key, hash) >= 0;
+    }
+
+    public void putLong(String key, long value) {
+        int hash = hash(key);
+        segmentFor(hash).put(key, hash, value, false);
+    }
+
+    public void putDouble(String key, double value) {
+        putLong(key, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Atomically adds {@code delta} to the value of {@code key}, starting from 0, and returns the new value.
+     */
+    public long addLong(String key, long delta) {
+        int hash = hash(key);
+        return segmentFor(hash).put(key, hash, delta, true);
+    }
+
+    public boolean remove(String key) {
+        int hash = hash(key);
+        return segmentFor(hash).remove(key, hash);
+    }
+
+    /**
+     * Number of keys; concurrent writers may make it momentarily stale.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    private static final class Segment {
+        private volatile Table table;
+        private volatile int size;
+        private int used;
+
+        Segment(int capacity) {
+            table = new Table(capacity);
+        }
+
+        synchronized long put(String key, int hash, long value, boolean add) {
+            Table current = table;
+            int slot = current.find(key, hash);
+            if (slot >= 0) {
+                long next = add ? current.values.get(slot) + value : value;
+                current.values.set(slot, next);
+                return next;
+            }
+            if (used + 1 > current.capacity() * LOAD_FACTOR) {
+                current = resize(current, size + 1);
+            }
+            slot = current.freeSlot(hash);
+            used++;
+            current.hashes[slot] = hash;
+            current.values.set(slot, value);
+            current.keys.set(slot, key);
+            size++;
+            return value;
+        }
+
+        synchronized boolean remove(String key, int hash) {
+            Table current = table;
+            int slot = current.find(key, hash);
+            if (slot < 0) {
+                return false;
+            }
+            current.keys.set(slot, TOMBSTONE);
+            size--;
+            return true;
+        }
+
+        /**
+         * Rehashes the live keys, dropping tombstones, into a table sized for {@code needed} keys.
+         */
+        private Table resize(Table current, int needed) {
+            int capacity = current.capacity();
+            while (needed > capacity * LOAD_FACTOR / 2) {
+                capacity <<= 1;
+            }
+            Table resized = new Table(capacity);
+            for (int i = 0; i < current.capacity(); i++) {
+                String key = current.keys.get(i);
+                if (key != null && key != TOMBSTONE) {
+                    int slot = resized.freeSlot(current.hashes[i]);
+                    resized.hashes[slot] = current.hashes[i];
+                    resized.values.set(slot, current.values.get(i));
+                    resized.keys.set(slot, key);
+                }
+            }
+            used = size;
+            table = resized;
+            return resized;
+        }
+    }
+
+    private static final class Table {
+        final AtomicReferenceArray<String> keys;
+        final AtomicLongArray values;
+        final int[] hashes;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new AtomicReferenceArray<>(capacity);
+            values = new AtomicLongArray(capacity);
+            hashes = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        int find(String key, int hash) {
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                String candidate = keys.get(slot);
+                if (candidate == null) {
+                    return -1;
+                }
+                if (candidate != TOMBSTONE && hashes[slot] == hash && (candidate == key || candidate.equals(key))) {
+                    return slot;
+                }
+            }
+        }
+
+        /**
+         * First empty slot on the probe sequence; only called under the segment lock. Removed slots are not reused
+         * until the next resize, so a reader that has just matched a key can never read another key's value.
+         */
+        int freeSlot(int hash) {
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                if (keys.get(slot) == null) {
+                    return slot;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.eci.arep;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Query string decoded once into parallel name/value arrays. Names and values are percent-decoded as UTF-8
+ * and {@code +} is read as a space; segments without escapes are plain substrings of the raw query.
+ */
+public class QueryParameters {
+    public static final QueryParameters EMPTY = new QueryParameters(new String[0], 0);
+
+    private final String[] entries;
+    private final int size;
+
+    private QueryParameters(String[] entries, int size) {
+        this.entries = entries;
+        this.size = size;
+    }
+
+    /**
+     * Parses a raw (still percent-encoded) query string, as returned by {@code URI.getRawQuery()}.
+     */
+    public static QueryParameters parse(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return EMPTY;
+        }
+        String[] entries = new String[8];
+        int size = 0;
+        int length = rawQuery.length();
+        int start = 0;
+        while (start <= length) {
+            int end = rawQuery.indexOf('&', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                int equals = rawQuery.indexOf('=', start);
+                if (equals < 0 || equals > end) {
+                    equals = end;
+                }
+                if (size + 2 > entries.length) {
+                    entries = Arrays.copyOf(entries, entries.length * 2);
+                }
+                entries[size++] = decode(rawQuery, start, equals, true);
+                entries[size++] = equals < end ? decode(rawQuery, equals + 1, end, true) : "";
+            }
+            start = end + 1;
+        }
+        return new QueryParameters(entries, size);
+    }
+
+    /**
+     * First value of the parameter, or null when it is absent.
+     */
+    public String get(String name) {
+        for (int i = 0; i < size; i += 2) {
+            if (entries[i].equals(name)) {
+                return entries[i + 1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Every value of a repeated parameter, in query order.
+     */
+    public List<String> getAll(String name) {
+        List<String> values = null;
+        for (int i = 0; i < size; i += 2) {
+            if (entries[i].equals(name)) {
+                if (values == null) {
+                    values = new ArrayList<>(2);
+                }
+                values.add(entries[i + 1]);
+            }
+        }
+        return values != null ? values : Collections.emptyList();
+    }
+
+    public int size() {
+        return size / 2;
+    }
+
+    /**
+     * Percent-decodes {@code raw[start, end)} as UTF-8; {@code plusAsSpace} applies the form encoding rule
+     * used in query strings but not in paths.
+     */
+    static String decode(String raw, int start, int end, boolean plusAsSpace) {
+        int i = start;
+        while (i < end) {
+            char c = raw.charAt(i);
+            if (c == '%' || c == '+' && plusAsSpace) {
+                break;
+            }
+            i++;
+        }
+        if (i == end) {
+            return raw.substring(start, end);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(end - start);
+        byte[] plain = raw.substring(start, i).getBytes(StandardCharsets.UTF_8);
+        bytes.write(plain, 0, plain.length);
+        while (i < end) {
+            char c = raw.charAt(i);
+            if (c == '+' && plusAsSpace) {
+                bytes.write(' ');
+                i++;
+            } else if (c == '%' && i + 2 < end && hex(raw.charAt(i + 1)) >= 0 && hex(raw.charAt(i + 2)) >= 0) {
+                bytes.write(hex(raw.charAt(i + 1)) << 4 | hex(raw.charAt(i + 2)));
+                i += 3;
+            } else if (c < 0x80) {
+                bytes.write(c);
+                i++;
+            } else {
+                // Raw non-ASCII characters are kept as they are.
+                int next = Character.isHighSurrogate(c) && i + 1 < end ? i + 2 : i + 1;
+                byte[] encoded = raw.substring(i, next).getBytes(StandardCharsets.UTF_8);
+                bytes.write(encoded, 0, encoded.length);
+                i = next;
+            }
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    private static int hex(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,189 @@
+package org.eci.arep;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token buckets per client, in a table of fixed size. Each bucket is a single "theoretical arrival time"
+ * (the generic cell rate algorithm): a request is admitted when that time is at most {@code burst - 1}
+ * intervals ahead of now, and admitting it moves the time one interval further. Checking a bucket is one
+ * compare-and-set, with no lock and no allocation.
+ * <p>
+ * A bucket whose time has passed is full again and is indistinguishable from a new one, so the table
+ * reclaims it for another client when their slots collide. Memory therefore stays bounded however many
+ * addresses the clients use. Clients that find no free or idle slot share one overflow bucket. IPv6 clients
+ * are keyed by their /64 prefix, the block a single subscriber is usually given.
+ */
+final class RateLimiter {
+    private static final long EMPTY = 0;
+    private static final int MAX_PROBES = 8;
+    private static final long EPOCH = System.nanoTime();
+    private static final int CAPACITY = ServerConfig.getInt("RATE_LIMIT_CLIENTS", 65536);
+    private static final LongAdder REJECTED = new LongAdder();
+    private static final byte[] TOO_MANY_REQUESTS = build(true);
+    private static final byte[] TOO_MANY_REQUESTS_CLOSE = build(false);
+
+    /**
+     * The server-wide limit per client, or null when {@code RATE_LIMIT} is 0.
+     */
+    static final RateLimiter GLOBAL = create(ServerConfig.getInt("RATE_LIMIT", 0),
+            ServerConfig.getInt("RATE_LIMIT_BURST", 0));
+
+    private final long interval;
+    private final long tolerance;
+    private final int mask;
+    private final AtomicLongArray keys;
+    private final AtomicLongArray times;
+    private final AtomicLong overflow = new AtomicLong();
+
+    /**
+     * @param rate     requests per second each client is allowed on average
+     * @param burst    requests a client that has been quiet may make at once
+     * @param capacity clients tracked at once, rounded up to a power of two
+     */
+    RateLimiter(double rate, int burst, int capacity) {
+        this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+        this.tolerance = interval * (Math.max(1, burst) - 1);
+        int size = Integer.highestOneBit(Math.max(MAX_PROBES, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.keys = new AtomicLongArray(size);
+        this.times = new AtomicLongArray(size);
+    }
+
+    /**
+     * A limiter of {@code rate} requests per second, with {@code burst} defaulting to one second's worth, or
+     * null when {@code rate} is 0.
+     */
+    static RateLimiter create(int rate, int burst) {
+        return rate > 0 ? new RateLimiter(rate, burst > 0 ? burst : rate, CAPACITY) : null;
+    }
+
+    /**
+     * The key a client is limited by: its IPv4 address, or the first 64 bits of its IPv6 address. Computed once
+     * per connection.
+     */
+    static long clientKey(InetAddress address) {
+        if (address == null) {
+            return 1;
+        }
+        byte[] bytes = address.getAddress();
+        long key = 0;
+        for (int i = 0; i < Math.min(8, bytes.length); i++) {
+            key = key << 8 | (bytes[i] & 0xff);
+        }
+        // IPv4 keys get bit 32 set, so no key is EMPTY.
+        return address instanceof Inet4Address ? key | 1L << 32 : key == EMPTY ? 1 : key;
+    }
+
+    /**
+     * The {@code 429} sent to rejected requests, serialized once.
+     */
+    static byte[] tooManyRequests(boolean keepAlive) {
+        return keepAlive ? TOO_MANY_REQUESTS : TOO_MANY_REQUESTS_CLOSE;
+    }
+
+    /**
+     * The {@code 429} without a body, for HTTP/2, where the engine frames each response itself.
+     */
+    static HttpResponse tooManyRequests() {
+        HttpResponse response = new HttpResponse();
+        response.setStatus(429, "Too Many Requests");
+        response.setHeader("Retry-After", "1");
+        response.setDateHeader(false);
+        return response;
+    }
+
+    static void rejected() {
+        REJECTED.increment();
+    }
+
+    static long getRejected() {
+        return REJECTED.sum();
+    }
+
+    boolean tryAcquire(long client) {
+        long now = System.nanoTime() - EPOCH;
+        int slot = slot(client, now);
+        return slot >= 0 ? tryAcquire(times, slot, now) : tryAcquire(overflow, now);
+    }
+
+    private boolean tryAcquire(AtomicLongArray times, int slot, long now) {
+        long arrival = times.get(slot);
+        while (true) {
+            long start = Math.max(arrival, now);
+            if (start - now > tolerance) {
+                return false;
+            }
+            if (times.compareAndSet(slot, arrival, start + interval)) {
+                return true;
+            }
+            arrival = times.get(slot);
+        }
+    }
+
+    private boolean tryAcquire(AtomicLong time, long now) {
+        long arrival = time.get();
+        while (true) {
+            long start = Math.max(arrival, now);
+            if (start - now > tolerance) {
+                return false;
+            }
+            if (time.compareAndSet(arrival, start + interval)) {
+                return true;
+            }
+            arrival = time.get();
+        }
+    }
+
+    /**
+     * The slot holding {@code client}'s bucket, claiming an empty or idle one among the first few it probes, or
+     * -1 when all of them belong to active clients.
+     */
+    private int slot(long client, long now) {
+        int start = (int) (client * 0x9E3779B97F4A7C15L >>> 32) & mask;
+        int idle = -1;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = (start + probe) & mask;
+            long key = keys.get(slot);
+            if (key == EMPTY) {
+                if (keys.compareAndSet(slot, EMPTY, client)) {
+                    return slot;
+                }
+                key = keys.get(slot);
+            }
+            if (key == client) {
+                return slot;
+            }
+            if (idle < 0 && times.get(slot) <= now) {
+                idle = slot;
+            }
+        }
+        if (idle >= 0) {
+            long previous = keys.get(idle);
+            if (times.get(idle) <= now && keys.compareAndSet(idle, previous, client)) {
+                return idle;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] build(boolean keepAlive) {
+        HttpResponse response = tooManyRequests();
+        response.setKeepAlive(keepAlive);
+        response.setBody("Too many requests, slow down");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            response.send(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
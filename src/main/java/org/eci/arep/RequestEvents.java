@@ -0,0 +1,108 @@
+package org.eci.arep;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The Flight Recorder events of the request pipeline: one per stage and one per request. They are disabled by
+ * default, so only a recording that enables them, such as one started with {@code pipeline.jfc}, gets them.
+ */
+final class RequestEvents {
+
+    private RequestEvents() {
+    }
+
+    @Category({"HTTP Server", "Pipeline"})
+    @Enabled(false)
+    @StackTrace(false)
+    abstract static class Stage extends Event {
+        @Label("Method")
+        String method;
+
+        @Label("Path")
+        String path;
+    }
+
+    @Name("org.eci.arep.QueueWait")
+    @Label("Queue Wait")
+    @Description("Time a request or, with the blocking engine, a new connection waited for a worker thread")
+    static final class QueueWait extends Stage {
+    }
+
+    @Name("org.eci.arep.Parse")
+    @Label("Parse")
+    @Description("Parsing the request line and headers")
+    static final class Parse extends Stage {
+    }
+
+    @Name("org.eci.arep.StaticLookup")
+    @Label("Static Lookup")
+    @Description("Looking the path up among the static files, and serving it when found")
+    static final class StaticLookup extends Stage {
+    }
+
+    @Name("org.eci.arep.Bind")
+    @Label("Bind")
+    @Description("Converting path variables and query parameters to the handler's arguments")
+    static final class Bind extends Stage {
+    }
+
+    @Name("org.eci.arep.Invoke")
+    @Label("Invoke")
+    @Description("Running the handler and encoding its result")
+    static final class Invoke extends Stage {
+    }
+
+    @Name("org.eci.arep.Write")
+    @Label("Write")
+    @Description("Serializing the response and handing it to the connection")
+    static final class Write extends Stage {
+    }
+
+    @Name("org.eci.arep.Request")
+    @Label("HTTP Request")
+    @Description("A request from parsing to its response, with the time spent in each stage")
+    @Category({"HTTP Server"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Request extends Event {
+        @Label("Method")
+        String method;
+
+        @Label("Path")
+        String path;
+
+        @Label("Status")
+        int status;
+
+        @Label("Queue Wait")
+        @Timespan
+        long queueWait;
+
+        @Label("Parse")
+        @Timespan
+        long parse;
+
+        @Label("Static Lookup")
+        @Timespan
+        long staticLookup;
+
+        @Label("Bind")
+        @Timespan
+        long bind;
+
+        @Label("Invoke")
+        @Timespan
+        long invoke;
+
+        @Label("Write")
+        @Timespan
+        long write;
+    }
+}
@@ -0,0 +1,218 @@
+package org.eci.arep;
+
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+
+import java.util.List;
+
+/**
+ * Where one request's time went, stage by stage. Requests are only traced while a Flight Recorder recording has
+ * the {@link RequestEvents} enabled or the {@link SlowRequestSampler} runs; otherwise {@link #start()} returns
+ * null, and each stage costs the engines a null check. Recordings can be started and stopped while the server
+ * runs, and tracing follows them.
+ * <p>
+ * A trace is handed from thread to thread with its request, never used by two at once.
+ */
+final class RequestTrace {
+    static final int QUEUE = 0;
+    static final int PARSE = 1;
+    static final int STATIC = 2;
+    static final int BIND = 3;
+    static final int INVOKE = 4;
+    static final int WRITE = 5;
+    static final String[] STAGES = {"queue", "parse", "static", "bind", "invoke", "write"};
+
+    private static final List<Class<? extends Event>> EVENTS = List.of(RequestEvents.Request.class,
+            RequestEvents.QueueWait.class, RequestEvents.Parse.class, RequestEvents.StaticLookup.class,
+            RequestEvents.Bind.class, RequestEvents.Invoke.class, RequestEvents.Write.class);
+
+    private static volatile boolean recording;
+    private static volatile SlowRequestSampler sampler;
+
+    static {
+        // Adding a listener does not start the recorder, so a server that never records pays nothing for it.
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recorderInitialized(FlightRecorder recorder) {
+                updateRecording();
+            }
+
+            @Override
+            public void recordingStateChanged(Recording changed) {
+                updateRecording();
+            }
+        });
+        int slowest = ServerConfig.getInt("TRACE_SLOWEST", 0);
+        if (slowest > 0) {
+            startSampler(slowest, ServerConfig.getLong("TRACE_INTERVAL", 60000));
+        }
+    }
+
+    private final long[] nanos = new long[STAGES.length];
+    private final RequestEvents.Request event;
+    private long started = System.nanoTime();
+    private long total;
+    private int status;
+    private String method;
+    private String path;
+    private int stage;
+    private long stageStarted;
+    private RequestEvents.Stage stageEvent;
+
+    RequestTrace() {
+        if (recording) {
+            event = new RequestEvents.Request();
+            event.begin();
+        } else {
+            event = null;
+        }
+    }
+
+    static boolean isEnabled() {
+        return recording || sampler != null;
+    }
+
+    /**
+     * A new trace, or null when nothing would read it.
+     */
+    static RequestTrace start() {
+        return isEnabled() ? new RequestTrace() : null;
+    }
+
+    /**
+     * Logs the {@code slowest} requests of every interval, replacing the sampler already running.
+     */
+    static synchronized void startSampler(int slowest, long intervalMillis) {
+        stopSampler();
+        SlowRequestSampler started = new SlowRequestSampler(slowest, intervalMillis);
+        started.start();
+        sampler = started;
+    }
+
+    /**
+     * Stops the sampler, logging the requests it kept since its last report.
+     */
+    static synchronized void stopSampler() {
+        SlowRequestSampler running = sampler;
+        sampler = null;
+        if (running != null) {
+            running.stop();
+        }
+    }
+
+    private static synchronized void updateRecording() {
+        boolean enabled = false;
+        for (Class<? extends Event> type : EVENTS) {
+            enabled |= EventType.getEventType(type).isEnabled();
+        }
+        recording = enabled;
+    }
+
+    /**
+     * Ties the trace to the request it times, so the later stages can find it.
+     */
+    void attach(HttpRequest request) {
+        method = HttpServer.requestMethod(request);
+        path = HttpServer.requestPath(request);
+        request.setTrace(this);
+    }
+
+    void begin(int stage) {
+        this.stage = stage;
+        if (event != null) {
+            stageEvent = newEvent(stage);
+            stageEvent.begin();
+        }
+        stageStarted = System.nanoTime();
+    }
+
+    void end() {
+        nanos[stage] += System.nanoTime() - stageStarted;
+        RequestEvents.Stage finished = stageEvent;
+        if (finished != null) {
+            stageEvent = null;
+            finished.method = method;
+            finished.path = path;
+            finished.commit();
+        }
+    }
+
+    /**
+     * Counts {@code waited} nanoseconds spent in a queue before the trace started, such as a new connection's wait
+     * for a thread of the blocking engine.
+     */
+    void addQueueWait(long waited) {
+        nanos[QUEUE] += waited;
+        started -= waited;
+    }
+
+    long getQueueWait() {
+        return nanos[QUEUE];
+    }
+
+    /**
+     * Ends the write stage, which completes the request.
+     */
+    void finish(int status) {
+        end();
+        this.status = status;
+        total = System.nanoTime() - started;
+        RequestEvents.Request request = event;
+        if (request != null) {
+            request.method = method;
+            request.path = path;
+            request.status = status;
+            request.queueWait = nanos[QUEUE];
+            request.parse = nanos[PARSE];
+            request.staticLookup = nanos[STATIC];
+            request.bind = nanos[BIND];
+            request.invoke = nanos[INVOKE];
+            request.write = nanos[WRITE];
+            request.commit();
+        }
+        SlowRequestSampler running = sampler;
+        if (running != null) {
+            running.offer(this);
+        }
+    }
+
+    long getTotal() {
+        return total;
+    }
+
+    long getStage(int stage) {
+        return nanos[stage];
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    String getMethod() {
+        return method;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    private static RequestEvents.Stage newEvent(int stage) {
+        switch (stage) {
+            case QUEUE:
+                return new RequestEvents.QueueWait();
+            case PARSE:
+                return new RequestEvents.Parse();
+            case STATIC:
+                return new RequestEvents.StaticLookup();
+            case BIND:
+                return new RequestEvents.Bind();
+            case INVOKE:
+                return new RequestEvents.Invoke();
+            default:
+                return new RequestEvents.Write();
+        }
+    }
+}
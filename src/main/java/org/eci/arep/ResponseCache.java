@@ -0,0 +1,372 @@
+package org.eci.arep;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Responses of a {@code @Cacheable} route, keyed by the arguments bound for its handler, so requests that only
+ * differ in how a value was written, or in a parameter left to its default, share an entry. Entries keep the
+ * serialized body and its compressed variants, and expire {@code ttl} milliseconds after the handler produced
+ * them.
+ * <p>
+ * Eviction is a segmented LRU: new entries go to a probation segment and move to a protected segment, 80% of
+ * the capacity, when they are hit again, so a burst of one-off keys only displaces other one-off keys. Lookups
+ * never block; a hit is recorded only when the policy lock is free, so under contention the order is
+ * approximate. Concurrent misses on the same key wait for the one invocation already running instead of
+ * invoking the handler again, unless its response turns out not to be cacheable, such as a streamed one; then
+ * each of them invokes the handler itself.
+ */
+public class ResponseCache {
+    private static final int NONE = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final int maxProtected;
+    private final long timeoutMillis;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Key, CompletableFuture<Entry>> loading = new ConcurrentHashMap<>();
+    private final ReentrantLock policy = new ReentrantLock();
+    private final Entry probation = new Entry();
+    private final Entry protectedEntries = new Entry();
+    private int size;
+    private int protectedSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Invokes the handler for one request, without the cache, into a response of its own.
+     */
+    interface Invocation {
+        CompletableFuture<HttpResponse> invoke();
+    }
+
+    /**
+     * @param timeoutMillis how long a request waits for another request's invocation of the handler, or 0
+     */
+    public ResponseCache(long ttlMillis, int maxEntries, long timeoutMillis) {
+        if (ttlMillis <= 0 || maxEntries <= 0) {
+            throw new IllegalArgumentException("ttl and maxEntries must be positive");
+        }
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxEntries = maxEntries;
+        this.maxProtected = maxEntries * 4 / 5;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Fills the response from the cache, or defers it to the invocation already running for the same arguments,
+     * and returns true. Returns false when the caller has to invoke the handler, and then report the outcome
+     * with {@link #loaded} or {@link #failed}. A deferred request whose wait ends without a cacheable response
+     * runs {@code alone} instead.
+     */
+    boolean serve(Object[] arguments, HttpRequest request, HttpResponse response, Invocation alone) {
+        Key key = new Key(arguments);
+        Entry entry = lookup(key);
+        if (entry == null) {
+            CompletableFuture<Entry> load = new CompletableFuture<>();
+            CompletableFuture<Entry> running = loading.putIfAbsent(key, load);
+            if (running != null) {
+                coalesced.increment();
+                response.setDeferred(waitFor(running, request, response, alone));
+                return true;
+            }
+            // the previous invocation may have stored its entry after the first lookup
+            entry = lookup(key);
+            if (entry == null) {
+                misses.increment();
+                return false;
+            }
+            loading.remove(key, load);
+            load.complete(entry);
+        }
+        hits.increment();
+        entry.fill(request, response);
+        return true;
+    }
+
+    /**
+     * Stores the handler's response, once an asynchronous result has completed, and hands it to the requests
+     * that waited for it. Only {@code 200} responses with an in-memory body are cached. A deferred response that
+     * fails is reported as {@link #failed}.
+     */
+    void loaded(Object[] arguments, HttpResponse response) {
+        Key key = new Key(arguments);
+        CompletableFuture<HttpResponse> deferred = response.getDeferred();
+        if (deferred == null) {
+            store(key, response);
+        } else {
+            response.setDeferred(deferred.whenComplete((done, error) -> {
+                if (error != null) {
+                    failed(arguments, error);
+                } else {
+                    store(key, done);
+                }
+            }));
+        }
+    }
+
+    void failed(Object[] arguments, Throwable error) {
+        CompletableFuture<Entry> load = loading.remove(new Key(arguments));
+        if (load != null) {
+            load.completeExceptionally(error);
+        }
+    }
+
+    private Entry lookup(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expires >= 0) {
+            policy.lock();
+            try {
+                if (entries.remove(key, entry)) {
+                    unlink(entry);
+                }
+            } finally {
+                policy.unlock();
+            }
+            return null;
+        }
+        if (policy.tryLock()) {
+            try {
+                touch(entry);
+            } finally {
+                policy.unlock();
+            }
+        }
+        return entry;
+    }
+
+    private void store(Key key, HttpResponse response) {
+        Entry entry = null;
+        if (response.getStreamingBody() == null && response.getFileBody() == null && response.getBufferBody() == null) {
+            entry = new Entry(key, response, System.nanoTime() + ttlNanos);
+            if (entry.status == 200) {
+                insert(entry);
+            }
+        }
+        CompletableFuture<Entry> load = loading.remove(key);
+        if (load != null) {
+            load.complete(entry);
+        }
+    }
+
+    private CompletableFuture<HttpResponse> waitFor(CompletableFuture<Entry> running, HttpRequest request,
+                                                    HttpResponse response, Invocation alone) {
+        CompletableFuture<Entry> result = running.copy();
+        if (timeoutMillis > 0) {
+            result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return result.handle((entry, error) -> {
+            if (entry != null) {
+                entry.fill(request, response);
+                return CompletableFuture.completedFuture(response);
+            }
+            if (error == null) {
+                // Off the thread that completed the load, which would otherwise run every waiter's handler in turn.
+                return CompletableFuture.supplyAsync(alone::invoke).thenCompose(Function.identity());
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            response.setContentType("text/plain; charset=utf-8");
+            if (cause instanceof TimeoutException) {
+                response.setStatus(504, "Gateway Timeout");
+                response.setBody("Handler did not complete within " + timeoutMillis + " ms");
+            } else {
+                response.setStatus(500, "Internal Server Error");
+                response.setBody("Internal Server Error");
+            }
+            return CompletableFuture.completedFuture(response);
+        }).thenCompose(Function.identity());
+    }
+
+    private void insert(Entry entry) {
+        policy.lock();
+        try {
+            Entry previous = entries.put(entry.key, entry);
+            if (previous != null) {
+                unlink(previous);
+            }
+            link(probation, entry);
+            while (size > maxEntries) {
+                Entry victim = probation.prev != probation ? probation.prev : protectedEntries.prev;
+                unlink(victim);
+                entries.remove(victim.key, victim);
+                evictions.increment();
+            }
+        } finally {
+            policy.unlock();
+        }
+    }
+
+    private void touch(Entry entry) {
+        if (entry.segment == NONE) {
+            return;
+        }
+        unlink(entry);
+        link(protectedEntries, entry);
+        while (protectedSize > maxProtected) {
+            Entry demoted = protectedEntries.prev;
+            unlink(demoted);
+            link(probation, demoted);
+        }
+    }
+
+    private void link(Entry head, Entry entry) {
+        entry.segment = head == probation ? PROBATION : PROTECTED;
+        entry.next = head.next;
+        entry.prev = head;
+        head.next.prev = entry;
+        head.next = entry;
+        size++;
+        if (entry.segment == PROTECTED) {
+            protectedSize++;
+        }
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.segment == NONE) {
+            return;
+        }
+        entry.prev.next = entry.next;
+        entry.next.prev = entry.prev;
+        entry.prev = null;
+        entry.next = null;
+        size--;
+        if (entry.segment == PROTECTED) {
+            protectedSize--;
+        }
+        entry.segment = NONE;
+    }
+
+    /**
+     * Number of cached responses, including expired ones not looked up since.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Misses that waited for another request's invocation instead of invoking the handler.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private static final class Key {
+        private final Object[] values;
+        private final int hash;
+
+        Key(Object[] values) {
+            this.values = values;
+            this.hash = Arrays.deepHashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && hash == ((Key) other).hash && Arrays.deepEquals(values, ((Key) other).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A serialized response with the headers its handler set; the list links and segment are only touched under the policy lock.
+     */
+    private static final class Entry {
+        private final Key key;
+        private final int status;
+        private final String message;
+        private final String contentType;
+        private final byte[] body;
+        private final Map<String, String> headers;
+        private final long expires;
+        private volatile byte[] gzip;
+        private volatile byte[] deflate;
+        private Entry prev = this;
+        private Entry next = this;
+        private int segment;
+
+        // list head
+        Entry() {
+            this.key = null;
+            this.status = 0;
+            this.message = null;
+            this.contentType = null;
+            this.body = null;
+            this.headers = null;
+            this.expires = 0;
+        }
+
+        Entry(Key key, HttpResponse response, long expires) {
+            this.key = key;
+            this.status = response.getStatusCode();
+            this.message = response.getStatusMessage();
+            this.contentType = response.getContentType();
+            this.body = response.getBodyBytes();
+            this.headers = response.getHeaders().isEmpty() ? Map.of() : new LinkedHashMap<>(response.getHeaders());
+            this.expires = expires;
+        }
+
+        void fill(HttpRequest request, HttpResponse response) {
+            response.setStatus(status, message);
+            response.setContentType(contentType);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                response.setHeader(header.getKey(), header.getValue());
+            }
+            String encoding = Compression.encodingFor(request, contentType, body.length);
+            if (encoding != null) {
+                response.setBody(encoded(encoding));
+                response.setHeader("Content-Encoding", encoding);
+            } else {
+                response.setBody(body);
+            }
+        }
+
+        /**
+         * Compresses the body on first use and keeps the variant. Concurrent first uses may both compress; the
+         * results are identical.
+         */
+        private byte[] encoded(String encoding) {
+            boolean isGzip = Compression.GZIP.equals(encoding);
+            byte[] variant = isGzip ? gzip : deflate;
+            if (variant == null) {
+                variant = Compression.encode(body, encoding);
+                if (isGzip) {
+                    gzip = variant;
+                } else {
+                    deflate = variant;
+                }
+            }
+            return variant;
+        }
+    }
+}
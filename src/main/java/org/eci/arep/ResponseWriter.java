@@ -0,0 +1,92 @@
+package org.eci.arep;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the responses of one blocking connection. Heads and in-memory bodies are queued so the responses to
+ * pipelined requests leave together in one gathering write; file and streamed bodies drain the queue first.
+ * Sockets without a channel fall back to a buffered stream.
+ */
+class ResponseWriter {
+    private final SocketChannel channel;
+    private final OutputStream out;
+    private final List<ByteBuffer> pending = new ArrayList<>();
+
+    ResponseWriter(Socket socket) throws IOException {
+        this.channel = socket.getChannel();
+        this.out = new BufferedOutputStream(new CountingOutputStream(socket.getOutputStream()));
+    }
+
+    void write(HttpResponse response) throws IOException {
+        if (channel == null) {
+            response.send(out);
+            return;
+        }
+        for (ByteBuffer buffer : response.encode()) {
+            pending.add(buffer);
+        }
+        if (response.getFileBody() != null) {
+            flush();
+            try (FileRegion region = response.getFileBody()) {
+                Metrics.bytesWritten(region.transferFully(channel));
+            }
+        } else if (response.getStreamingBody() != null) {
+            flush();
+            response.writeStreamingBody(out);
+        }
+    }
+
+    /**
+     * Queues a response that was serialized in advance.
+     */
+    void write(byte[] response) throws IOException {
+        if (channel == null) {
+            out.write(response);
+        } else {
+            pending.add(ByteBuffer.wrap(response));
+        }
+    }
+
+    void flush() throws IOException {
+        if (channel == null || pending.isEmpty()) {
+            out.flush();
+            return;
+        }
+        ByteBuffer[] buffers = pending.toArray(new ByteBuffer[0]);
+        pending.clear();
+        int first = 0;
+        while (first < buffers.length) {
+            Metrics.bytesWritten(channel.write(buffers, first, buffers.length - first));
+            while (first < buffers.length && !buffers[first].hasRemaining()) {
+                first++;
+            }
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            Metrics.bytesWritten(1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            out.write(data, offset, length);
+            Metrics.bytesWritten(length);
+        }
+    }
+}
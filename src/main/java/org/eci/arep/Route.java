@@ -0,0 +1,134 @@
+package org.eci.arep;
+
+import org.eci.arep.annotations.Cacheable;
+import org.eci.arep.annotations.GetMapping;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * A registered controller method together with everything precomputed for dispatching to it.
+ */
+public class Route {
+    private final String httpMethod;
+    private final String path;
+    private final Method method;
+    private final Invoker invoker;
+    private final List<String> variables;
+    private final Parameter[] parameters;
+    private final BindingPlan bindingPlan;
+    private final Metrics.RouteMetrics metrics;
+    private final long timeoutMillis;
+    private final ResponseCache cache;
+    private final JsonWriter jsonWriter;
+    private final RateLimiter rateLimiter;
+
+    public Route(String httpMethod, String path, Method method, Invoker invoker) {
+        this.httpMethod = httpMethod;
+        this.path = path;
+        this.method = method;
+        this.invoker = invoker;
+        this.variables = Router.variableNames(path);
+        this.parameters = method.getParameters();
+        this.bindingPlan = BindingPlan.compile(method, variables);
+        this.metrics = Metrics.route(path);
+        GetMapping mapping = method.getAnnotation(GetMapping.class);
+        this.timeoutMillis = mapping != null && mapping.timeout() > 0
+                ? mapping.timeout() : ServerConfig.getLong("ASYNC_TIMEOUT", 30000);
+        this.rateLimiter = mapping != null ? RateLimiter.create(mapping.rateLimit(), mapping.burst()) : null;
+        Cacheable cacheable = method.getAnnotation(Cacheable.class);
+        if (cacheable != null && isStreamed(method.getGenericReturnType())) {
+            throw new IllegalArgumentException("Streamed responses cannot be cached: " + method);
+        }
+        this.cache = cacheable != null ? new ResponseCache(cacheable.ttl(), cacheable.maxEntries(), timeoutMillis) : null;
+        metrics.setCache(cache);
+        this.jsonWriter = JsonWriters.forResult(method.getGenericReturnType());
+    }
+
+    public String getHttpMethod() {
+        return httpMethod;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public Invoker getInvoker() {
+        return invoker;
+    }
+
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    public Parameter[] getParameters() {
+        return parameters;
+    }
+
+    public BindingPlan getBindingPlan() {
+        return bindingPlan;
+    }
+
+    /**
+     * Time an asynchronous result of this route may take before the request is answered with {@code 504}.
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Responses of a {@code @Cacheable} route, or null.
+     */
+    public ResponseCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Encoder for results sent as JSON, or null when the route answers with text or a stream.
+     */
+    JsonWriter getJsonWriter() {
+        return jsonWriter;
+    }
+
+    /**
+     * This route's own limit per client, or null.
+     */
+    RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    Metrics.RouteMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Whether a result of this type, or the value of a stage of it, is sent as a stream.
+     */
+    private static boolean isStreamed(Type type) {
+        if (type instanceof ParameterizedType && CompletionStage.class.isAssignableFrom(
+                (Class<?>) ((ParameterizedType) type).getRawType())) {
+            type = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (type instanceof WildcardType) {
+                type = ((WildcardType) type).getUpperBounds()[0];
+            }
+        }
+        if (type instanceof ParameterizedType) {
+            type = ((ParameterizedType) type).getRawType();
+        }
+        return type instanceof Class && (StreamingBody.class.isAssignableFrom((Class<?>) type)
+                || EventStream.class.isAssignableFrom((Class<?>) type));
+    }
+
+    int getVariableIndex(String name) {
+        return variables.indexOf(name);
+    }
+}
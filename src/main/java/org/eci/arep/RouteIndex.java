@@ -0,0 +1,92 @@
+package org.eci.arep;
+
+import org.eci.arep.processor.RouteIndexProcessor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads the route index written by {@link RouteIndexProcessor} from every classpath entry that has one. Only the
+ * indexed controllers are loaded, and none of them is initialized until its first route is registered.
+ */
+class RouteIndex {
+    private static final Map<String, Class<?>> PRIMITIVES = Map.of(
+            "boolean", boolean.class, "byte", byte.class, "char", char.class, "short", short.class,
+            "int", int.class, "long", long.class, "float", float.class, "double", double.class);
+
+    static final class Entry {
+        final String method;
+        final String path;
+        final Method handler;
+
+        Entry(String method, String path, Method handler) {
+            this.method = method;
+            this.path = path;
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * Routes of the controllers under {@code basePackage}, or {@code null} when no index is on the classpath.
+     */
+    static List<Entry> load(ClassLoader loader, String basePackage) throws IOException {
+        Enumeration<URL> resources = loader.getResources(RouteIndexProcessor.INDEX);
+        if (!resources.hasMoreElements()) {
+            return null;
+        }
+        Set<String> lines = new LinkedHashSet<>();
+        while (resources.hasMoreElements()) {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(resources.nextElement().openStream(),
+                    StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (!line.isEmpty() && line.charAt(0) != '#') {
+                        lines.add(line);
+                    }
+                }
+            }
+        }
+
+        String prefix = basePackage.isEmpty() ? "" : basePackage + ".";
+        List<Entry> entries = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length < 5 || !fields[2].startsWith(prefix)) {
+                continue;
+            }
+            try {
+                Class<?> controller = Class.forName(fields[2], false, loader);
+                String[] typeNames = fields[4].isEmpty() ? new String[0] : fields[4].split(",");
+                Class<?>[] types = new Class<?>[typeNames.length];
+                for (int i = 0; i < types.length; i++) {
+                    types[i] = type(typeNames[i], loader);
+                }
+                entries.add(new Entry(fields[0], fields[1], controller.getDeclaredMethod(fields[3], types)));
+            } catch (ReflectiveOperationException | LinkageError ex) {
+                Logger.getLogger(RouteIndex.class.getName()).log(Level.WARNING, "Stale route index entry: " + line, ex);
+            }
+        }
+        return entries;
+    }
+
+    private static Class<?> type(String name, ClassLoader loader) throws ClassNotFoundException {
+        if (name.endsWith("[]")) {
+            return Array.newInstance(type(name.substring(0, name.length() - 2), loader), 0).getClass();
+        }
+        Class<?> primitive = PRIMITIVES.get(name);
+        return primitive != null ? primitive : Class.forName(name, false, loader);
+    }
+}
@@ -0,0 +1,62 @@
+package org.eci.arep;
+
+import java.util.Arrays;
+
+/**
+ * Result of a router lookup. Path variables are kept as offsets into the raw request path and only turned into
+ * strings, percent-decoded, when a handler asks for them.
+ */
+public class RouteMatch {
+    private Route route;
+    private String path;
+    private int count;
+    private int[] starts;
+    private int[] ends;
+
+    public Route getRoute() {
+        return route;
+    }
+
+    void reset(String path) {
+        this.route = null;
+        this.path = path;
+        this.count = 0;
+    }
+
+    void setRoute(Route route) {
+        this.route = route;
+    }
+
+    int mark() {
+        return count;
+    }
+
+    void rewind(int mark) {
+        count = mark;
+    }
+
+    void capture(int start, int end) {
+        if (starts == null) {
+            starts = new int[4];
+            ends = new int[4];
+        } else if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    /**
+     * Decoded value of the path variable with the given name, or null when the matched route does not declare it.
+     */
+    public String getVariable(String name) {
+        int index = route != null ? route.getVariableIndex(name) : -1;
+        return index >= 0 ? getVariable(index) : null;
+    }
+
+    String getVariable(int index) {
+        return index < count ? QueryParameters.decode(path, starts[index], ends[index], false) : null;
+    }
+}
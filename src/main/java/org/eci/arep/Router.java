@@ -0,0 +1,278 @@
+package org.eci.arep;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Routes requests with one compressed radix tree per HTTP method. Patterns are made of literal text,
+ * {@code {name}} variables that match one non-empty path segment, and a trailing {@code {*name}} or
+ * {@code *} wildcard that matches the rest of the path. Literal edges win over variables, and variables
+ * win over wildcards; the search backtracks when a more specific branch dead-ends. Lookups walk the path
+ * in place and do not allocate.
+ */
+public class Router {
+    private final Map<String, Node> trees = new HashMap<>();
+
+    public void add(String httpMethod, String pattern, Route route) {
+        if (!pattern.startsWith("/")) {
+            throw new IllegalArgumentException("Route must start with '/': " + pattern);
+        }
+        Node node = trees.computeIfAbsent(httpMethod, m -> new Node(""));
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '{' || c == '*') {
+                int close = c == '*' ? i : pattern.indexOf('}', i);
+                if (close < 0) {
+                    throw new IllegalArgumentException("Unclosed variable in route " + pattern);
+                }
+                String name = c == '*' ? "*" : pattern.substring(i + 1, close);
+                if (name.startsWith("*") || c == '*') {
+                    if (close != pattern.length() - 1) {
+                        throw new IllegalArgumentException("Wildcard must end the route " + pattern);
+                    }
+                    node = node.wildcard(c == '*' ? "*" : name.substring(1), pattern);
+                } else {
+                    node = node.variable(name, pattern);
+                }
+                i = close + 1;
+            } else {
+                int end = i;
+                while (end < pattern.length() && pattern.charAt(end) != '{' && pattern.charAt(end) != '*') {
+                    end++;
+                }
+                node = node.literal(pattern.substring(i, end));
+                i = end;
+            }
+        }
+        node.route = route;
+    }
+
+    /**
+     * Finds the route for the method and path, filling {@code match} with its path variables. Returns null
+     * when no route of that method matches.
+     */
+    public Route find(String httpMethod, String path, RouteMatch match) {
+        match.reset(path);
+        Node root = trees.get(httpMethod);
+        if (root != null && search(root, path, 0, match)) {
+            return match.getRoute();
+        }
+        match.reset(path);
+        return null;
+    }
+
+    /**
+     * Methods that have a route for the path, used for the {@code Allow} header of a 405 response.
+     */
+    public List<String> allowedMethods(String path) {
+        TreeSet<String> allowed = new TreeSet<>();
+        RouteMatch probe = new RouteMatch();
+        for (Map.Entry<String, Node> tree : trees.entrySet()) {
+            probe.reset(path);
+            if (search(tree.getValue(), path, 0, probe)) {
+                allowed.add(tree.getKey());
+            }
+        }
+        return new ArrayList<>(allowed);
+    }
+
+    public List<Route> routes() {
+        List<Route> routes = new ArrayList<>();
+        for (Node root : trees.values()) {
+            collect(root, routes);
+        }
+        return routes;
+    }
+
+    static List<String> variableNames(String pattern) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*') {
+                names.add("*");
+            } else if (c == '{') {
+                int close = pattern.indexOf('}', i);
+                if (close < 0) {
+                    break;
+                }
+                String name = pattern.substring(i + 1, close);
+                names.add(name.startsWith("*") ? name.substring(1) : name);
+                i = close;
+            }
+        }
+        return List.copyOf(names);
+    }
+
+    private static boolean search(Node node, String path, int position, RouteMatch match) {
+        int length = path.length();
+        if (position == length && node.route != null) {
+            match.setRoute(node.route);
+            return true;
+        }
+
+        if (position < length) {
+            // Sibling edges start with distinct characters, so at most one literal child can match.
+            Node child = node.child(path.charAt(position));
+            if (child != null && path.startsWith(child.prefix, position)
+                    && search(child, path, position + child.prefix.length(), match)) {
+                return true;
+            }
+
+            if (node.variable != null) {
+                int end = path.indexOf('/', position);
+                if (end < 0) {
+                    end = length;
+                }
+                if (end > position) {
+                    int mark = match.mark();
+                    match.capture(position, end);
+                    if (search(node.variable, path, end, match)) {
+                        return true;
+                    }
+                    match.rewind(mark);
+                }
+            }
+        }
+
+        if (node.wildcard != null && node.wildcard.route != null) {
+            match.capture(position, length);
+            match.setRoute(node.wildcard.route);
+            return true;
+        }
+        return false;
+    }
+
+    private static void collect(Node node, List<Route> routes) {
+        if (node.route != null) {
+            routes.add(node.route);
+        }
+        for (Node child : node.children) {
+            collect(child, routes);
+        }
+        if (node.variable != null) {
+            collect(node.variable, routes);
+        }
+        if (node.wildcard != null) {
+            collect(node.wildcard, routes);
+        }
+    }
+
+    private static final class Node {
+        private static final Node[] NONE = new Node[0];
+        private static final int INDEX_THRESHOLD = 4;
+        private static final int INDEX_SIZE = 128;
+
+        private String prefix;
+        private char first;
+        private Node[] children = NONE;
+        private Node[] index;
+        private Node variable;
+        private String variableName;
+        private Node wildcard;
+        private String wildcardName;
+        private Route route;
+
+        Node(String prefix) {
+            setPrefix(prefix);
+        }
+
+        private void setPrefix(String prefix) {
+            this.prefix = prefix;
+            this.first = prefix.isEmpty() ? 0 : prefix.charAt(0);
+        }
+
+        Node child(char first) {
+            if (index != null && first < INDEX_SIZE) {
+                return index[first];
+            }
+            for (Node child : children) {
+                if (child.first == first) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Nodes with many edges get a direct table for ASCII first characters instead of a linear scan.
+         */
+        private void reindex() {
+            if (children.length <= INDEX_THRESHOLD) {
+                index = null;
+                return;
+            }
+            Node[] table = new Node[INDEX_SIZE];
+            for (Node child : children) {
+                if (child.first >= INDEX_SIZE) {
+                    index = null;
+                    return;
+                }
+                table[child.first] = child;
+            }
+            index = table;
+        }
+
+        Node literal(String text) {
+            if (text.isEmpty()) {
+                return this;
+            }
+            for (int i = 0; i < children.length; i++) {
+                Node child = children[i];
+                if (child.first != text.charAt(0)) {
+                    continue;
+                }
+                int common = commonPrefix(child.prefix, text);
+                if (common < child.prefix.length()) {
+                    Node split = new Node(child.prefix.substring(0, common));
+                    child.setPrefix(child.prefix.substring(common));
+                    split.children = new Node[]{child};
+                    children[i] = split;
+                    reindex();
+                    child = split;
+                }
+                return child.literal(text.substring(common));
+            }
+            Node child = new Node(text);
+            children = Arrays.copyOf(children, children.length + 1);
+            children[children.length - 1] = child;
+            reindex();
+            return child;
+        }
+
+        Node variable(String name, String pattern) {
+            if (variable == null) {
+                variable = new Node("");
+                variableName = name;
+            } else if (!variableName.equals(name)) {
+                throw new IllegalArgumentException("Variable {" + name + "} in " + pattern
+                        + " conflicts with {" + variableName + "} registered at the same position");
+            }
+            return variable;
+        }
+
+        Node wildcard(String name, String pattern) {
+            if (wildcard == null) {
+                wildcard = new Node("");
+                wildcardName = name;
+            } else if (!wildcardName.equals(name)) {
+                throw new IllegalArgumentException("Wildcard " + name + " in " + pattern
+                        + " conflicts with " + wildcardName + " registered at the same position");
+            }
+            return wildcard;
+        }
+
+        private static int commonPrefix(String a, String b) {
+            int max = Math.min(a.length(), b.length());
+            int i = 0;
+            while (i < max && a.charAt(i) == b.charAt(i)) {
+                i++;
+            }
+            return i;
+        }
+    }
+}
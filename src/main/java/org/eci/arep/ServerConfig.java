@@ -0,0 +1,41 @@
+package org.eci.arep;
+
+public class ServerConfig {
+
+    public static String getString(String name, String defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            value = System.getenv(name);
+        }
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    public static int getInt(String name, int defaultValue) {
+        String value = getString(name, null);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                System.err.println("Variable " + name + " is not a number using default value " + defaultValue + ".");
+            }
+        }
+        return defaultValue;
+    }
+
+    public static long getLong(String name, long defaultValue) {
+        String value = getString(name, null);
+        if (value != null) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                System.err.println("Variable " + name + " is not a number using default value " + defaultValue + ".");
+            }
+        }
+        return defaultValue;
+    }
+
+    public static boolean getBoolean(String name, boolean defaultValue) {
+        String value = getString(name, null);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+}
@@ -0,0 +1,115 @@
+package org.eci.arep;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Builds the worker executor selected with {@code EXECUTOR}. Every mode is bounded: once the pending work
+ * reaches its limit, {@code execute} throws {@link RejectedExecutionException} so the engine can shed load.
+ */
+public class ServerExecutors {
+
+    public static ExecutorService create() {
+        String mode = ServerConfig.getString("EXECUTOR", "fixed").toLowerCase();
+        int threads = ServerConfig.getInt("WORKER_THREADS", 10);
+        int queueSize = ServerConfig.getInt("WORKER_QUEUE_SIZE", 1000);
+
+        switch (mode) {
+            case "work-stealing":
+                return new BoundedExecutorService(Executors.newWorkStealingPool(threads), threads + queueSize);
+            case "virtual":
+                return new BoundedExecutorService(newVirtualThreadExecutor(), queueSize);
+            default:
+                if (!mode.equals("fixed")) {
+                    System.err.println("Variable EXECUTOR has unknown value " + mode + " using default value fixed.");
+                }
+                return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(queueSize), new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    /**
+     * Virtual threads are looked up reflectively so the project still compiles for Java 17; on runtimes
+     * without them every task gets its own platform thread instead.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            Logger.getLogger(ServerExecutors.class.getName()).log(Level.WARNING,
+                    "Virtual threads are not available on this runtime, using a thread per task instead");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    static class BoundedExecutorService extends AbstractExecutorService {
+        private final ExecutorService delegate;
+        private final int maxPending;
+        private final AtomicInteger pending = new AtomicInteger();
+
+        BoundedExecutorService(ExecutorService delegate, int maxPending) {
+            this.delegate = delegate;
+            this.maxPending = maxPending;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (pending.incrementAndGet() > maxPending) {
+                pending.decrementAndGet();
+                throw new RejectedExecutionException("Worker limit of " + maxPending + " tasks reached");
+            }
+            try {
+                delegate.execute(() -> {
+                    try {
+                        command.run();
+                    } finally {
+                        pending.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pending.decrementAndGet();
+                throw e;
+            }
+        }
+
+        int getPending() {
+            return pending.get();
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
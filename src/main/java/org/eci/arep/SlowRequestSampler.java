@@ -0,0 +1,111 @@
+package org.eci.arep;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Logs the slowest requests of each interval with the time each of their stages took, so a latency spike can be
+ * pinned on a stage without a recording. Only requests slower than every one kept so far take the lock; the rest
+ * are turned away after reading one field.
+ */
+final class SlowRequestSampler {
+    private static final Logger LOGGER = Logger.getLogger(SlowRequestSampler.class.getName());
+    private static final Comparator<RequestTrace> FASTEST_FIRST = Comparator.comparingLong(RequestTrace::getTotal);
+
+    private final int slowest;
+    private final long intervalMillis;
+    private final PriorityQueue<RequestTrace> kept;
+    // The fastest kept request's time once slowest are kept, before that 0.
+    private volatile long threshold;
+    private final LongAdder seen = new LongAdder();
+    private ScheduledExecutorService timer;
+
+    SlowRequestSampler(int slowest, long intervalMillis) {
+        this.slowest = slowest;
+        this.intervalMillis = intervalMillis;
+        this.kept = new PriorityQueue<>(slowest + 1, FASTEST_FIRST);
+    }
+
+    void start() {
+        timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "slow-request-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(this::log, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        log();
+    }
+
+    void offer(RequestTrace trace) {
+        seen.increment();
+        if (trace.getTotal() <= threshold) {
+            return;
+        }
+        synchronized (this) {
+            kept.add(trace);
+            if (kept.size() > slowest) {
+                kept.poll();
+            }
+            if (kept.size() == slowest) {
+                threshold = kept.peek().getTotal();
+            }
+        }
+    }
+
+    /**
+     * The report for the interval that ends now, or null when no request finished in it.
+     */
+    String report() {
+        List<RequestTrace> traces;
+        synchronized (this) {
+            traces = new ArrayList<>(kept);
+            kept.clear();
+            threshold = 0;
+        }
+        long count = seen.sumThenReset();
+        if (traces.isEmpty()) {
+            return null;
+        }
+        traces.sort(FASTEST_FIRST.reversed());
+        StringBuilder report = new StringBuilder();
+        report.append("Slowest ").append(traces.size()).append(" of ").append(count).append(" requests:");
+        for (RequestTrace trace : traces) {
+            report.append(System.lineSeparator()).append("  ").append(trace.getMethod()).append(' ')
+                    .append(trace.getPath()).append(' ').append(trace.getStatus()).append(' ')
+                    .append(millis(trace.getTotal())).append(" ms (");
+            for (int stage = 0; stage < RequestTrace.STAGES.length; stage++) {
+                if (stage > 0) {
+                    report.append(", ");
+                }
+                report.append(RequestTrace.STAGES[stage]).append(' ').append(millis(trace.getStage(stage)));
+            }
+            report.append(')');
+        }
+        return report.toString();
+    }
+
+    private void log() {
+        String report = report();
+        if (report != null) {
+            LOGGER.info(report);
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+}
@@ -0,0 +1,11 @@
+package org.eci.arep;
+
+import java.io.IOException;
+
+public interface StaticHandler {
+    /**
+     * Fills the response with the asset mapped to the request path. Returns false when the path is not a
+     * static asset so the request can be routed to the controllers.
+     */
+    boolean serve(HttpRequest request, String path, HttpResponse response) throws IOException;
+}
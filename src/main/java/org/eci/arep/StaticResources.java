@@ -0,0 +1,273 @@
+package org.eci.arep;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Static assets under the web root. The directory is indexed once, so a path that is not an asset is
+ * rejected with a map lookup instead of a classloader search, and asset bytes are kept in an LRU cache
+ * bounded by {@code STATIC_CACHE_SIZE} bytes.
+ */
+public class StaticResources implements StaticHandler {
+    // IMF-fixdate (RFC 7231, section 7.1.1.1), whose day always has two digits.
+    static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+            .withZone(ZoneOffset.UTC);
+    // Parses request headers, accepting the one-digit days that some clients still send.
+    static final DateTimeFormatter HTTP_DATE_PARSER = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    private final String root;
+    private final Map<String, Resource> index;
+    private final long capacity;
+    private final String cacheControl;
+    private final LinkedHashMap<String, Cached> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+
+    public StaticResources(String root) {
+        this.root = root;
+        this.capacity = ServerConfig.getLong("STATIC_CACHE_SIZE", 16L * 1024 * 1024);
+        this.cacheControl = ServerConfig.getString("STATIC_CACHE_CONTROL", "no-cache");
+        this.index = Collections.unmodifiableMap(buildIndex(root));
+    }
+
+    /**
+     * Writes the asset for the request path into the response, answering {@code 304 Not Modified} when the
+     * client copy is still current. Returns false when the path is not a static asset.
+     */
+    @Override
+    public boolean serve(HttpRequest request, String path, HttpResponse response) throws IOException {
+        Resource resource = index.get(resolve(path));
+        if (resource == null) {
+            return false;
+        }
+
+        Cached cached = get(resource);
+        byte[] body = cached.body;
+        String etag = cached.etag;
+        String encoding = null;
+        if (resource.compressible) {
+            response.setHeader("Vary", "Accept-Encoding");
+            encoding = Compression.negotiate(request.getHeader("Accept-Encoding"));
+            byte[] encoded = encoding != null ? cached.encoded(encoding) : null;
+            if (encoded != null) {
+                body = encoded;
+                etag = cached.etag.substring(0, cached.etag.length() - 1) + "-" + encoding + "\"";
+            } else {
+                encoding = null;
+            }
+        }
+
+        response.setHeader("ETag", etag);
+        response.setHeader("Last-Modified", resource.lastModifiedHeader);
+        response.setHeader("Cache-Control", cacheControl);
+        if (isNotModified(request, etag, resource.lastModified)) {
+            notModified.increment();
+            response.setStatus(304, "Not Modified");
+            return true;
+        }
+        if (encoding != null) {
+            response.setHeader("Content-Encoding", encoding);
+        }
+        response.setContentType(resource.contentType);
+        response.setBody(body);
+        return true;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getNotModified() {
+        return notModified.sum();
+    }
+
+    private static String resolve(String path) {
+        return path.endsWith("/") ? path + "index.html" : path;
+    }
+
+    private Cached get(Resource resource) throws IOException {
+        synchronized (cache) {
+            Cached cached = cache.get(resource.path);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+
+        byte[] body;
+        try (InputStream in = StaticResources.class.getClassLoader().getResourceAsStream(root + resource.path)) {
+            if (in == null) {
+                throw new IOException("Indexed resource disappeared: " + root + resource.path);
+            }
+            body = in.readAllBytes();
+        }
+        Cached cached = new Cached(body, etag(body));
+        if (body.length <= capacity / 4) {
+            synchronized (cache) {
+                if (cache.put(resource.path, cached) == null) {
+                    cachedBytes += body.length;
+                }
+                Iterator<Cached> eldest = cache.values().iterator();
+                while (cachedBytes > capacity && eldest.hasNext()) {
+                    cachedBytes -= eldest.next().body.length;
+                    eldest.remove();
+                }
+            }
+        }
+        return cached;
+    }
+
+    static boolean isNotModified(HttpRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        String ifModifiedSince = request.getHeader("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince, HTTP_DATE_PARSER).toInstant().toEpochMilli();
+                return lastModified <= since;
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static String etag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            StringBuilder tag = new StringBuilder(34).append('"');
+            for (int i = 0; i < 16; i++) {
+                tag.append(Character.forDigit((digest[i] >> 4) & 0xF, 16)).append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return tag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map<String, Resource> buildIndex(String root) {
+        Map<String, Resource> index = new HashMap<>();
+        URL url = StaticResources.class.getClassLoader().getResource(root);
+        if (url == null) {
+            return index;
+        }
+        try {
+            if ("file".equals(url.getProtocol())) {
+                Path dir = Paths.get(url.toURI());
+                try (Stream<Path> files = Files.walk(dir)) {
+                    for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                        String path = "/" + dir.relativize(file).toString().replace('\\', '/');
+                        index.put(path, new Resource(path, Files.getLastModifiedTime(file).toMillis()));
+                    }
+                }
+            } else if ("jar".equals(url.getProtocol())) {
+                JarFile jar = ((JarURLConnection) url.openConnection()).getJarFile();
+                String prefix = root + "/";
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    JarEntry entry = entries.nextElement();
+                    if (!entry.isDirectory() && entry.getName().startsWith(prefix)) {
+                        String path = "/" + entry.getName().substring(prefix.length());
+                        index.put(path, new Resource(path, entry.getTime()));
+                    }
+                }
+            }
+        } catch (IOException | URISyntaxException e) {
+            Logger.getLogger(StaticResources.class.getName()).log(Level.SEVERE, null, e);
+        }
+        return index;
+    }
+
+    private static class Resource {
+        private final String path;
+        private final String contentType;
+        private final long lastModified;
+        private final String lastModifiedHeader;
+        private final boolean compressible;
+
+        Resource(String path, long lastModifiedMillis) {
+            this.path = path;
+            this.contentType = HttpServer.getContentType(path);
+            this.compressible = Compression.isCompressible(contentType);
+            // HTTP dates have second precision, so comparisons are made on whole seconds.
+            this.lastModified = lastModifiedMillis / 1000 * 1000;
+            this.lastModifiedHeader = HTTP_DATE.format(Instant.ofEpochMilli(lastModified));
+        }
+    }
+
+    private static class Cached {
+        private static final byte[] NOT_SMALLER = new byte[0];
+
+        private final byte[] body;
+        private final String etag;
+        private volatile byte[] gzip;
+        private volatile byte[] deflate;
+
+        Cached(byte[] body, String etag) {
+            this.body = body;
+            this.etag = etag;
+        }
+
+        /**
+         * Compresses the asset on first use and keeps the variant, or returns null when compression does
+         * not make it smaller. Concurrent first hits may both compress; the results are identical.
+         */
+        byte[] encoded(String encoding) {
+            boolean isGzip = Compression.GZIP.equals(encoding);
+            byte[] variant = isGzip ? gzip : deflate;
+            if (variant == null) {
+                variant = Compression.encode(body, encoding);
+                if (variant.length >= body.length) {
+                    variant = NOT_SMALLER;
+                }
+                if (isGzip) {
+                    gzip = variant;
+                } else {
+                    deflate = variant;
+                }
+            }
+            return variant == NOT_SMALLER ? null : variant;
+        }
+    }
+}
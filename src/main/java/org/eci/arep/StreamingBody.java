@@ -0,0 +1,33 @@
+package org.eci.arep;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A response body produced while it is being sent. Controllers return one for large or incrementally
+ * generated content; the server sends it with chunked transfer encoding, and every {@code flush()} on the
+ * stream pushes what has been written so far to the client.
+ */
+@FunctionalInterface
+public interface StreamingBody {
+
+    void writeTo(OutputStream out) throws IOException;
+
+    default String getContentType() {
+        return "text/plain; charset=utf-8";
+    }
+
+    static StreamingBody of(String contentType, StreamingBody body) {
+        return new StreamingBody() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                body.writeTo(out);
+            }
+
+            @Override
+            public String getContentType() {
+                return contentType;
+            }
+        };
+    }
+}
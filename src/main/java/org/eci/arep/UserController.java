@@ -4,22 +4,30 @@ import org.eci.arep.annotations.GetMapping;
 import org.eci.arep.annotations.RequestParam;
 import org.eci.arep.annotations.RestController;
 
-import java.util.HashMap;
-import java.util.Map;
-
 @RestController
 public class UserController {
-    private static final Map<String, Double> users = new HashMap<>();
+    private static final PrimitiveStore users = PrimitiveStore.shared("users");
+    private static final EventStream events = new EventStream();
+
+    public record User(String name, Double height) {
+    }
+
     @GetMapping("/users")
-    public static String saveUser(@RequestParam("name") String name, @RequestParam("height") double height){
-        users.put(name, height);
-        return "User " + name + " with height " + height + " was saved";
+    public static User saveUser(@RequestParam(value = "name", required = true) String name, @RequestParam("height") double height){
+        users.putDouble(name, height);
+        User user = new User(name, height);
+        events.publish("saved", user);
+        return user;
+    }
+
+    @GetMapping("/users/events")
+    public static EventStream userEvents() {
+        return events;
     }
 
     @GetMapping("/users/coincidences")
-    public static String getUser(@RequestParam("name") String name){
-        Double height = users.get(name);
-        return "User "+ name + " retrieved value: " + (height != null? "height is " + height : " user data not found");
+    public static User getUser(@RequestParam("name") String name){
+        double height = users.getDouble(name, Double.NaN);
+        return new User(name, !Double.isNaN(height) ? height : null);
     }
 }
-
@@ -0,0 +1,24 @@
+package org.eci.arep.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caches the responses of a {@code @GetMapping} method by its bound arguments, for handlers whose result only
+ * depends on them.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cacheable {
+    /**
+     * Milliseconds a cached response is served before the handler is invoked again.
+     */
+    public long ttl() default 60000;
+
+    /**
+     * Distinct argument combinations kept; the least used are evicted beyond it.
+     */
+    public int maxEntries() default 1024;
+}
@@ -13,4 +13,20 @@ import java.lang.annotation.Target;
 @Target(ElementType.METHOD)
 public @interface GetMapping {
     public String value(); 
+
+    /**
+     * Milliseconds an asynchronous handler has to complete before the client gets {@code 504}; 0 uses
+     * {@code ASYNC_TIMEOUT}.
+     */
+    public long timeout() default 0;
+
+    /**
+     * Requests per second each client may make to this route, on top of {@code RATE_LIMIT}; 0 for no route limit.
+     */
+    public int rateLimit() default 0;
+
+    /**
+     * Requests a client that has been quiet may make to this route at once; 0 allows one second's worth.
+     */
+    public int burst() default 0;
 }
@@ -11,4 +11,6 @@ public @interface RequestParam {
     public String value();
     String DEFAULT_NONE = "\t\t\t\t\t\t \n \n \t";
     public String defaultValue() default DEFAULT_NONE;
+    // Primitive parameters are always required, since they cannot be null.
+    public boolean required() default false;
 }
@@ -0,0 +1,144 @@
+package org.eci.arep.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Writes the route index ({@value #INDEX}) at compile time: one line per {@code @GetMapping} method of a
+ * {@code @RestController}, with the HTTP method, the path, the controller's binary name, the Java method and its
+ * erased parameter types. The server reads the index at startup instead of scanning the classpath; arguments are
+ * still bound from the annotations of the resolved method. Path variables that the route does not declare are
+ * reported as compile errors.
+ */
+@SupportedAnnotationTypes({RouteIndexProcessor.REST_CONTROLLER, RouteIndexProcessor.GET_MAPPING})
+public class RouteIndexProcessor extends AbstractProcessor {
+    public static final String INDEX = "META-INF/guajava/routes";
+    public static final String HEADER = "# guajava route index v1";
+
+    static final String REST_CONTROLLER = "org.eci.arep.annotations.RestController";
+    static final String GET_MAPPING = "org.eci.arep.annotations.GetMapping";
+    private static final String PATH_VARIABLE = "org.eci.arep.annotations.PathVariable";
+
+    private final TreeSet<String> lines = new TreeSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        TypeElement getMapping = processingEnv.getElementUtils().getTypeElement(GET_MAPPING);
+        if (getMapping != null) {
+            for (Element element : round.getElementsAnnotatedWith(getMapping)) {
+                if (element.getKind() == ElementKind.METHOD) {
+                    index((ExecutableElement) element);
+                }
+            }
+        }
+        if (round.processingOver() && !lines.isEmpty()) {
+            write();
+        }
+        return false;
+    }
+
+    private void index(ExecutableElement method) {
+        TypeElement controller = (TypeElement) method.getEnclosingElement();
+        if (annotation(controller, REST_CONTROLLER) == null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "@GetMapping method outside a @RestController is not routed", method);
+            return;
+        }
+        String path = String.valueOf(value(annotation(method, GET_MAPPING), "value"));
+
+        List<String> types = new ArrayList<>();
+        for (VariableElement parameter : method.getParameters()) {
+            types.add(typeName(parameter.asType()));
+            AnnotationMirror variable = annotation(parameter, PATH_VARIABLE);
+            if (variable != null) {
+                String name = String.valueOf(value(variable, "value"));
+                if (!path.contains("{" + name + "}") && !path.contains("{*" + name + "}")) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                            "Route " + path + " has no path variable {" + name + "}", parameter);
+                }
+            }
+        }
+
+        lines.add(String.join("\t", "GET", path,
+                processingEnv.getElementUtils().getBinaryName(controller).toString(),
+                method.getSimpleName().toString(), String.join(",", types)));
+    }
+
+    private void write() {
+        try {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX);
+            try (Writer writer = index.openWriter()) {
+                writer.write(HEADER);
+                writer.write('\n');
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write " + INDEX + ": " + e);
+        }
+    }
+
+    /**
+     * Erased type in the form {@code Class.forName} and the primitive names understand; arrays keep a
+     * {@code []} suffix per dimension.
+     */
+    private String typeName(TypeMirror type) {
+        TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        if (erased.getKind() == TypeKind.ARRAY) {
+            return typeName(((ArrayType) erased).getComponentType()) + "[]";
+        }
+        if (erased.getKind() == TypeKind.DECLARED) {
+            TypeElement element = (TypeElement) ((DeclaredType) erased).asElement();
+            return processingEnv.getElementUtils().getBinaryName(element).toString();
+        }
+        return erased.toString();
+    }
+
+    private static AnnotationMirror annotation(Element element, String type) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(type)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private static Object value(AnnotationMirror mirror, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+}
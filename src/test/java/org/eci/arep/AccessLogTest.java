@@ -0,0 +1,82 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AccessLogTest {
+
+    @Test
+    public void testRecordsFromManyThreadsAreAllWritten(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("access.log");
+        AccessLog log = new AccessLog(file, 64, true, Long.MAX_VALUE, 1);
+        log.start();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    log.log("GET", "/temp?t=" + thread + "&i=" + i, "HTTP/1.1", 200, i, TimeUnit.MICROSECONDS.toNanos(1500));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        log.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2000, lines.size());
+        assertEquals(2000, new HashSet<>(lines).size());
+        assertEquals(0, log.dropped());
+        assertTrue(lines.get(0).matches("\\d{4}-\\d\\d-\\d\\dT\\d\\d:\\d\\d:\\d\\d\\.\\d{3}Z "
+                + "\"GET /temp\\?t=\\d&i=\\d+ HTTP/1\\.1\" 200 \\d+ 1\\.500"), lines.get(0));
+    }
+
+    @Test
+    public void testFullBufferDropsRecords(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("access.log");
+        AccessLog log = new AccessLog(file, 8, false, Long.MAX_VALUE, 1);
+        for (int i = 0; i < 10; i++) {
+            log.log("GET", "/" + i, "HTTP/1.1", 404, -1, 0);
+        }
+        assertEquals(2, log.dropped());
+
+        log.start();
+        log.close();
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(8, lines.size());
+        assertTrue(lines.get(7).endsWith("\"GET /7 HTTP/1.1\" 404 - 0.000"), lines.get(7));
+    }
+
+    @Test
+    public void testFileIsRotatedBySize(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("access.log");
+        AccessLog log = new AccessLog(file, 4, true, 200, 2);
+        log.start();
+        for (int i = 0; i < 20; i++) {
+            log.log("GET", "/rotate/" + i, "HTTP/1.1", 200, 0, 0);
+            Thread.sleep(8);
+        }
+        log.close();
+
+        Set<String> kept = new HashSet<>();
+        for (Path path : List.of(file, dir.resolve("access.log.1"), dir.resolve("access.log.2"))) {
+            assertTrue(Files.size(path) <= 200, path + " has " + Files.size(path) + " bytes");
+            kept.addAll(Files.readAllLines(path));
+        }
+        assertFalse(Files.exists(dir.resolve("access.log.3")));
+        assertTrue(Files.readAllLines(file).get(Files.readAllLines(file).size() - 1).contains("/rotate/19 "));
+        assertTrue(kept.size() >= 3);
+    }
+}
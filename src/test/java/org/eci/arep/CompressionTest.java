@@ -0,0 +1,59 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressionTest {
+
+    @Test
+    public void testNegotiationHonorsQualityValues() {
+        assertEquals("gzip", Compression.negotiate("gzip, deflate, br"));
+        assertEquals("deflate", Compression.negotiate("gzip;q=0.5, deflate"));
+        assertEquals("gzip", Compression.negotiate("*"));
+        assertNull(Compression.negotiate("gzip;q=0, identity"));
+        assertNull(Compression.negotiate(null));
+    }
+
+    @Test
+    public void testGzipAndDeflateRoundTrip() throws Exception {
+        byte[] data = "compress me ".repeat(500).getBytes(StandardCharsets.UTF_8);
+
+        byte[] gzip = Compression.gzip(data);
+        byte[] deflate = Compression.deflate(data);
+
+        assertTrue(gzip.length < data.length);
+        assertArrayEquals(data, new GZIPInputStream(new ByteArrayInputStream(gzip)).readAllBytes());
+        assertArrayEquals(data, new InflaterInputStream(new ByteArrayInputStream(deflate)).readAllBytes());
+    }
+
+    @Test
+    public void testLargeDynamicBodyIsCompressed() throws Exception {
+        HttpRequest request = new HttpRequest();
+        request.addHeader("Accept-Encoding", "gzip");
+        HttpResponse response = new HttpResponse();
+        byte[] body = "x".repeat(4096).getBytes(StandardCharsets.UTF_8);
+        response.setBody(body);
+
+        Compression.compress(request, response);
+
+        assertArrayEquals(body, new GZIPInputStream(new ByteArrayInputStream(response.getBodyBytes())).readAllBytes());
+    }
+
+    @Test
+    public void testSmallDynamicBodyIsSentAsIs() {
+        HttpRequest request = new HttpRequest();
+        request.addHeader("Accept-Encoding", "gzip");
+        HttpResponse response = new HttpResponse();
+        response.setBody("short");
+
+        Compression.compress(request, response);
+
+        assertEquals("short", new String(response.getBodyBytes(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,32 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionManagerTest {
+
+    @AfterEach
+    public void clearConfig() {
+        System.clearProperty("MAX_CONNECTIONS");
+    }
+
+    @Test
+    public void testRejectsConnectionsBeyondTheLimitUntilOneCloses() throws Exception {
+        System.setProperty("MAX_CONNECTIONS", "2");
+        ConnectionManager manager = new ConnectionManager();
+        assertTrue(manager.reserve());
+        assertTrue(manager.admit());
+        assertTrue(manager.admit());
+        assertFalse(manager.admit());
+        assertEquals(2, manager.getOpen());
+        assertEquals(1, manager.getRejected());
+
+        manager.release();
+        assertTrue(manager.admit());
+        manager.release();
+        manager.release();
+        assertTrue(manager.drain(System.nanoTime()));
+    }
+}
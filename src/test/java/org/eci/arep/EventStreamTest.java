@@ -0,0 +1,118 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventStreamTest {
+
+    public record Reading(String sensor, double value) {
+    }
+
+    private static String text(EventStream.Event event) {
+        return new String(event.bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testEventsAreEncodedOnceForEverySubscriber() {
+        EventStream stream = new EventStream();
+        EventStream.Subscription first = stream.subscribe();
+        EventStream.Subscription second = stream.subscribe();
+        stream.publish("reading", new Reading("lab", 21.5));
+        stream.publish("one\r\ntwo\rthree\n");
+
+        EventStream.Event event = first.poll();
+        assertSame(event, second.poll());
+        assertEquals("event: reading\ndata: {\"sensor\":\"lab\",\"value\":21.5}\n\n", text(event));
+        assertEquals("34\r\n" + text(event) + "\r\n", new String(event.chunk(), StandardCharsets.UTF_8));
+        assertEquals("data: one\ndata: two\ndata: three\ndata: \n\n", text(first.poll()));
+        assertThrows(IllegalArgumentException.class, () -> stream.publish("bad\nname", "x"));
+    }
+
+    @Test
+    public void testSlowSubscriberIsEvictedWithoutAffectingOthers() {
+        EventStream stream = new EventStream();
+        EventStream.Subscription slow = stream.subscribe();
+        EventStream.Subscription fast = stream.subscribe();
+        String data = "x".repeat(1000);
+        long evictions = EventStream.getEvictions();
+        for (long sent = 0; sent <= EventStream.MAX_QUEUED; sent += 1008) {
+            stream.publish(data);
+            fast.sent(fast.poll().bytes.length);
+        }
+        assertEquals(EventStream.Subscription.EVICTED, slow.getState());
+        assertEquals(EventStream.Subscription.OPEN, fast.getState());
+        assertEquals(1, stream.getSubscriberCount());
+        assertEquals(evictions + 1, EventStream.getEvictions());
+    }
+
+    @Test
+    public void testClosingEndsTheBodyAfterQueuedEvents() throws Exception {
+        EventStream stream = new EventStream();
+        EventStream.Subscription subscription = stream.subscribe();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Thread writer = new Thread(() -> {
+            try {
+                subscription.writeTo(out);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+        stream.publish("tick", 1);
+        stream.publish("tick", 2);
+        stream.close();
+        writer.join(5000);
+
+        assertFalse(writer.isAlive());
+        assertEquals("event: tick\ndata: 1\n\nevent: tick\ndata: 2\n\n", out.toString(StandardCharsets.UTF_8));
+        assertEquals(0, stream.getSubscriberCount());
+        assertEquals(EventStream.Subscription.FINISHED, stream.subscribe().getState());
+    }
+
+    @Test
+    public void testEvictionClosesTheConnectionOfAWriterStuckOnAWrite() throws Exception {
+        EventStream stream = new EventStream();
+        EventStream.Subscription subscription = stream.subscribe();
+        CountDownLatch closed = new CountDownLatch(1);
+        // Like a socket whose client stopped reading: every write blocks until the socket is closed.
+        OutputStream stuck = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                try {
+                    closed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException("Socket closed");
+            }
+        };
+        subscription.closeOnEviction(closed::countDown);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                subscription.writeTo(stuck);
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+        writer.start();
+        String data = "x".repeat(1000);
+        for (long sent = 0; sent <= EventStream.MAX_QUEUED; sent += 1008) {
+            stream.publish(data);
+        }
+        writer.join(5000);
+
+        assertFalse(writer.isAlive());
+        assertEquals(EventStream.Subscription.EVICTED, subscription.getState());
+        assertInstanceOf(IOException.class, failure.get());
+        stream.close();
+    }
+}
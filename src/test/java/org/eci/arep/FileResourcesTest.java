@@ -0,0 +1,104 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileResourcesTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    public void testServesWholeFile() throws Exception {
+        Files.writeString(root.resolve("app.js"), "console.log('hi');");
+
+        String response = send(new FileResources(root), new HttpRequest(), "/app.js");
+
+        assertTrue(response.startsWith("HTTP/1.1 200 OK"));
+        assertTrue(response.contains("Accept-Ranges: bytes"));
+        assertTrue(response.endsWith("\r\n\r\nconsole.log('hi');"));
+    }
+
+    @Test
+    public void testRangeReturnsPartialContent() throws Exception {
+        Files.writeString(root.resolve("data.txt"), "0123456789");
+        HttpRequest request = new HttpRequest();
+        request.addHeader("Range", "bytes=2-5");
+
+        String response = send(new FileResources(root), request, "/data.txt");
+
+        assertTrue(response.startsWith("HTTP/1.1 206 Partial Content"));
+        assertTrue(response.contains("Content-Range: bytes 2-5/10"));
+        assertTrue(response.endsWith("\r\n\r\n2345"));
+    }
+
+    @Test
+    public void testSuffixRange() throws Exception {
+        Files.writeString(root.resolve("data.txt"), "0123456789");
+        HttpRequest request = new HttpRequest();
+        request.addHeader("Range", "bytes=-3");
+
+        String response = send(new FileResources(root), request, "/data.txt");
+
+        assertTrue(response.contains("Content-Range: bytes 7-9/10"));
+        assertTrue(response.endsWith("\r\n\r\n789"));
+    }
+
+    @Test
+    public void testStaleIfRangeSendsWholeFile() throws Exception {
+        Files.writeString(root.resolve("data.txt"), "0123456789");
+        HttpRequest request = new HttpRequest();
+        request.addHeader("Range", "bytes=2-5");
+        request.addHeader("If-Range", "\"outdated\"");
+
+        String response = send(new FileResources(root), request, "/data.txt");
+
+        assertTrue(response.startsWith("HTTP/1.1 200 OK"));
+        assertTrue(response.endsWith("\r\n\r\n0123456789"));
+    }
+
+    @Test
+    public void testUnsatisfiableRange() throws Exception {
+        Files.writeString(root.resolve("data.txt"), "0123456789");
+        HttpRequest request = new HttpRequest();
+        request.addHeader("Range", "bytes=20-");
+
+        String response = send(new FileResources(root), request, "/data.txt");
+
+        assertTrue(response.startsWith("HTTP/1.1 416 Range Not Satisfiable"));
+        assertTrue(response.contains("Content-Range: bytes */10"));
+    }
+
+    @Test
+    public void testFileTruncatedWhileSentFailsOnlyItsResponse() throws Exception {
+        Path file = root.resolve("big.bin");
+        Files.write(file, new byte[64 * 1024]);
+        HttpResponse response = new HttpResponse();
+        assertTrue(new FileResources(root).serve(new HttpRequest(), "/big.bin", response));
+        Files.write(file, new byte[16]);
+
+        assertThrows(IOException.class, () -> response.send(new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void testPathOutsideRootIsNotServed() throws Exception {
+        Files.writeString(root.resolve("data.txt"), "0123456789");
+
+        assertFalse(new FileResources(root.resolve("sub")).serve(new HttpRequest(), "/../data.txt", new HttpResponse()));
+    }
+
+    private static String send(FileResources resources, HttpRequest request, String path) throws Exception {
+        HttpResponse response = new HttpResponse();
+        assertTrue(resources.serve(request, path, response));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.send(out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,76 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HpackTest {
+
+    private static byte[] hex(String text) {
+        String digits = text.replace(" ", "");
+        byte[] bytes = new byte[digits.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(digits.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static List<String> decode(Hpack.Decoder decoder, byte[] block) throws Http2Exception {
+        List<String> fields = new ArrayList<>();
+        decoder.decode(block, 0, block.length, (name, value) -> fields.add(name + ": " + value));
+        return fields;
+    }
+
+    @Test
+    void testDecodesRequestExamplesOfRfc7541WithHuffman() throws Exception {
+        // RFC 7541, C.4: three requests on one connection, sharing the dynamic table.
+        Hpack.Decoder decoder = new Hpack.Decoder();
+        assertEquals(List.of(":method: GET", ":scheme: http", ":path: /", ":authority: www.example.com"),
+                decode(decoder, hex("8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff")));
+        assertEquals(List.of(":method: GET", ":scheme: http", ":path: /", ":authority: www.example.com",
+                        "cache-control: no-cache"),
+                decode(decoder, hex("8286 84be 5886 a8eb 1064 9cbf")));
+        assertEquals(List.of(":method: GET", ":scheme: https", ":path: /index.html", ":authority: www.example.com",
+                        "custom-key: custom-value"),
+                decode(decoder, hex("8287 85bf 4088 25a8 49e9 5ba9 7d7f 8925 a849 e95b b8e8 b4bf")));
+    }
+
+    @Test
+    void testEncodedBlocksRoundTripAndRepeatedFieldsShrink() throws Exception {
+        Hpack.Encoder encoder = new Hpack.Encoder();
+        Hpack.Decoder decoder = new Hpack.Decoder();
+        List<String> expected = List.of(":status: 200", "content-type: application/json; charset=utf-8",
+                "content-length: 1234", "set-cookie: id=42", "x-trace: été");
+        byte[][] blocks = new byte[2][];
+        for (int i = 0; i < blocks.length; i++) {
+            encoder.begin();
+            for (String field : expected) {
+                int colon = field.indexOf(": ");
+                encoder.field(field.substring(0, colon), field.substring(colon + 2));
+            }
+            blocks[i] = encoder.end();
+            assertEquals(expected, decode(decoder, blocks[i]));
+        }
+        assertTrue(blocks[1].length < blocks[0].length / 2, blocks[0].length + " then " + blocks[1].length);
+
+        encoder.setMaxTableSize(0);
+        encoder.begin();
+        encoder.field("content-type", "application/json; charset=utf-8");
+        byte[] resized = encoder.end();
+        assertEquals(0x20, resized[0] & 0xff);
+        assertEquals(List.of("content-type: application/json; charset=utf-8"), decode(decoder, resized));
+    }
+
+    @Test
+    void testRejectsMalformedBlocks() {
+        assertEquals("0", assertDoesNotThrow(() -> Hpack.huffmanDecode(new byte[]{0x07}, 0, 1)));
+        Http2Exception padding = assertThrows(Http2Exception.class, () -> Hpack.huffmanDecode(new byte[]{0x00}, 0, 1));
+        assertEquals(Http2Exception.COMPRESSION_ERROR, padding.getErrorCode());
+        assertThrows(Http2Exception.class, () -> decode(new Hpack.Decoder(), hex("be")));
+        assertThrows(Http2Exception.class, () -> decode(new Hpack.Decoder(), hex("3fe21f")));
+        assertThrows(Http2Exception.class, () -> decode(new Hpack.Decoder(), hex("4085 f2b2")));
+    }
+}
@@ -0,0 +1,294 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Http2Test {
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static ServerSocketChannel listener;
+    private static ExecutorService workers;
+    private static HttpClient client;
+    private static String base;
+
+    @BeforeAll
+    public static void startServer() throws IOException {
+        HttpServer.loadComponents(new String[]{});
+        workers = Executors.newFixedThreadPool(16);
+        listener = ServerSocketChannel.open().bind(new InetSocketAddress("localhost", 0));
+        base = "http://localhost:" + listener.socket().getLocalPort();
+        Thread acceptor = new Thread(() -> {
+            while (listener.isOpen()) {
+                try {
+                    Socket socket = listener.socket().accept();
+                    workers.execute(() -> {
+                        try {
+                            HttpServer.handleClient(socket, workers);
+                        } catch (IOException ignored) {
+                        }
+                    });
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+    }
+
+    @AfterAll
+    public static void stopServer() throws IOException {
+        listener.close();
+        workers.shutdownNow();
+    }
+
+    private static HttpResponse<String> get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create(base + path)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    public void testUpgradedConnectionServesRequestsOverHttp2() throws Exception {
+        HttpResponse<String> first = get("/temp?msg=upgraded");
+        assertEquals(HttpClient.Version.HTTP_2, first.version());
+        assertEquals(200, first.statusCode());
+        assertEquals("Temp says: upgraded", first.body());
+
+        HttpResponse<String> streamed = get("/temp/stream?n=2");
+        assertEquals(HttpClient.Version.HTTP_2, streamed.version());
+        assertEquals("reading 1\nreading 2\n", streamed.body());
+        assertFalse(streamed.headers().firstValue("transfer-encoding").isPresent());
+
+        assertEquals(404, get("/missing").statusCode());
+    }
+
+    @Test
+    public void testStreamsRunConcurrentlyOnOneConnection() throws Exception {
+        get("/temp?msg=warm-up");
+        long started = System.nanoTime();
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/temp/async?delay=300&msg=" + i)).build();
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+        }
+        for (int i = 0; i < responses.size(); i++) {
+            HttpResponse<String> response = responses.get(i).join();
+            assertEquals(HttpClient.Version.HTTP_2, response.version());
+            assertEquals("Async says: " + i, response.body());
+        }
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+        assertTrue(elapsedMillis < 3000, "20 streams of 300 ms took " + elapsedMillis + " ms");
+    }
+
+    @Test
+    public void testBodyLargerThanTheInitialWindowIsComplete() throws Exception {
+        byte[] expected;
+        try (InputStream logo = Http2Test.class.getResourceAsStream("/public/logo.png")) {
+            expected = logo.readAllBytes();
+        }
+        assertTrue(expected.length > 65535);
+        HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(URI.create(base + "/logo.png")).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(HttpClient.Version.HTTP_2, response.version());
+        assertEquals("image/png", response.headers().firstValue("content-type").orElse(null));
+        assertArrayEquals(expected, response.body());
+    }
+
+    @Test
+    public void testStreamFailingAfterItsHeadersIsReset() throws Exception {
+        CompletableFuture<HttpResponse<String>> response = client.sendAsync(
+                HttpRequest.newBuilder(URI.create(base + "/temp/stream/broken")).build(), HttpResponse.BodyHandlers.ofString());
+        ExecutionException error = assertThrows(ExecutionException.class, () -> response.get(5, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof IOException, String.valueOf(error.getCause()));
+    }
+
+    @Test
+    public void testEventStreamOverHttp2() throws Exception {
+        HttpResponse<java.util.stream.Stream<String>> response = client.send(
+                HttpRequest.newBuilder(URI.create(base + "/temp/events/h2")).build(), HttpResponse.BodyHandlers.ofLines());
+        assertEquals(HttpClient.Version.HTTP_2, response.version());
+        assertEquals("text/event-stream; charset=utf-8", response.headers().firstValue("content-type").orElse(null));
+
+        EventStream topic = TempController.topics.get("h2");
+        topic.publish("first\nsecond");
+        topic.close();
+        assertEquals(List.of("data: first", "data: second", ""), response.body().collect(java.util.stream.Collectors.toList()));
+    }
+
+    @Test
+    public void testPriorKnowledgeConnection() throws Exception {
+        try (Socket socket = new Socket("localhost", listener.socket().getLocalPort())) {
+            OutputStream out = socket.getOutputStream();
+            Hpack.Encoder encoder = new Hpack.Encoder();
+            encoder.begin();
+            encoder.field(":method", "GET");
+            encoder.field(":scheme", "http");
+            encoder.field(":path", "/temp?msg=raw");
+            encoder.field(":authority", "localhost");
+            byte[] block = encoder.end();
+            out.write(PREFACE);
+            out.write(frame(0x4, 0, 0, new byte[0]));
+            out.write(frame(0x1, 0x5, 1, block));
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            Hpack.Decoder decoder = new Hpack.Decoder();
+            Map<String, String> headers = new HashMap<>();
+            StringBuilder body = new StringBuilder();
+            boolean settings = false;
+            boolean ended = false;
+            while (!ended) {
+                int length = in.readUnsignedShort() << 8 | in.readUnsignedByte();
+                int type = in.readUnsignedByte();
+                int flags = in.readUnsignedByte();
+                int stream = in.readInt();
+                byte[] payload = in.readNBytes(length);
+                if (type == 0x4 && (flags & 0x1) == 0) {
+                    settings = true;
+                } else if (type == 0x1) {
+                    assertEquals(1, stream);
+                    decoder.decode(payload, 0, length, headers::put);
+                } else if (type == 0x0) {
+                    body.append(new String(payload, StandardCharsets.UTF_8));
+                    ended = (flags & 0x1) != 0;
+                }
+            }
+            assertTrue(settings);
+            assertEquals("200", headers.get(":status"));
+            assertEquals("Temp says: raw", body.toString());
+        }
+    }
+
+    @Test
+    public void testFrameBeforeSettingsIsAConnectionError() throws Exception {
+        try (Socket socket = new Socket("localhost", listener.socket().getLocalPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(PREFACE);
+            out.write(frame(0x6, 0, 0, new byte[8]));
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            int type;
+            byte[] payload;
+            do {
+                int length = in.readUnsignedShort() << 8 | in.readUnsignedByte();
+                type = in.readUnsignedByte();
+                in.readUnsignedByte();
+                in.readInt();
+                payload = in.readNBytes(length);
+            } while (type != 0x7);
+            assertEquals(Http2Exception.PROTOCOL_ERROR, ByteBuffer.wrap(payload, 4, 4).getInt());
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testHeadIsAnsweredWithoutData() throws Exception {
+        try (Socket socket = new Socket("localhost", listener.socket().getLocalPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(PREFACE);
+            out.write(frame(0x4, 0, 0, new byte[0]));
+            out.write(frame(0x1, 0x5, 1, request("HEAD", "/styles.css")));
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            Map<String, String> headers = new HashMap<>();
+            Frame frame;
+            do {
+                frame = Frame.read(in);
+                assertNotEquals(0x0, frame.type);
+                if (frame.type == 0x1) {
+                    new Hpack.Decoder().decode(frame.payload, 0, frame.payload.length, headers::put);
+                }
+            } while (frame.type != 0x1);
+            assertEquals(0x1, frame.flags & 0x1);
+            assertEquals("200", headers.get(":status"));
+            try (InputStream css = Http2Test.class.getResourceAsStream("/public/styles.css")) {
+                assertEquals(String.valueOf(css.readAllBytes().length), headers.get("content-length"));
+            }
+        }
+    }
+
+    @Test
+    public void testHeadersOnAClosedStreamIsAConnectionError() throws Exception {
+        try (Socket socket = new Socket("localhost", listener.socket().getLocalPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(PREFACE);
+            out.write(frame(0x4, 0, 0, new byte[0]));
+            out.write(frame(0x1, 0x5, 1, request("GET", "/temp?msg=once")));
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            Frame frame;
+            do {
+                frame = Frame.read(in);
+            } while (frame.stream != 1 || (frame.flags & 0x1) == 0);
+            out.write(frame(0x1, 0x5, 1, request("GET", "/temp?msg=twice")));
+            out.flush();
+
+            do {
+                frame = Frame.read(in);
+            } while (frame.type != 0x7);
+            assertEquals(Http2Exception.STREAM_CLOSED, ByteBuffer.wrap(frame.payload, 4, 4).getInt());
+            assertEquals(-1, in.read());
+        }
+    }
+
+    private static byte[] request(String method, String path) {
+        Hpack.Encoder encoder = new Hpack.Encoder();
+        encoder.begin();
+        encoder.field(":method", method);
+        encoder.field(":scheme", "http");
+        encoder.field(":path", path);
+        encoder.field(":authority", "localhost");
+        return encoder.end();
+    }
+
+    private static final class Frame {
+        int type;
+        int flags;
+        int stream;
+        byte[] payload;
+
+        static Frame read(DataInputStream in) throws IOException {
+            Frame frame = new Frame();
+            int length = in.readUnsignedShort() << 8 | in.readUnsignedByte();
+            frame.type = in.readUnsignedByte();
+            frame.flags = in.readUnsignedByte();
+            frame.stream = in.readInt();
+            frame.payload = in.readNBytes(length);
+            return frame;
+        }
+    }
+
+    private static byte[] frame(int type, int flags, int stream, byte[] payload) {
+        return ByteBuffer.allocate(9 + payload.length)
+                .put((byte) (payload.length >>> 16)).put((byte) (payload.length >>> 8)).put((byte) payload.length)
+                .put((byte) type).put((byte) flags).putInt(stream).put(payload).array();
+    }
+}
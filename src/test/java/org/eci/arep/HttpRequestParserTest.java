@@ -0,0 +1,178 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HttpRequestParserTest {
+
+    private static final String PIPELINED =
+            "POST /users/caf%C3%A9?name=Ana+Maria&tag=a&tag=b HTTP/1.1\r\n"
+            + "Host: localhost\r\n"
+            + "Content-Length: 11\r\n"
+            + "X-Trace: one\r\n"
+            + "x-trace: two\r\n"
+            + "\r\n"
+            + "hello world"
+            + "PUT /upload HTTP/1.1\r\n"
+            + "Transfer-Encoding: chunked\r\n"
+            + "\r\n"
+            + "5;ext=1\r\nhello\r\n"
+            + "6\r\n world\r\n"
+            + "0\r\n"
+            + "Checksum: abc\r\n"
+            + "\r\n"
+            + "GET / HTTP/1.0\n"
+            + "Connection: keep-alive\n"
+            + "\n";
+
+    @Test
+    void testParsesPipelinedRequestsSplitAtEveryByte() throws Exception {
+        byte[] bytes = PIPELINED.getBytes(StandardCharsets.ISO_8859_1);
+        for (int chunk = 1; chunk <= bytes.length; chunk++) {
+            List<HttpRequest> requests = feed(new HttpRequestParser(), bytes, chunk);
+            assertEquals(3, requests.size(), "chunk size " + chunk);
+
+            HttpRequest post = requests.get(0);
+            assertEquals("POST", post.getMethod());
+            assertEquals("/users/café", post.getPath());
+            assertEquals("Ana Maria", post.getValues("name"));
+            assertEquals(List.of("a", "b"), post.getAllValues("tag"));
+            assertEquals("localhost", post.getHeader("host"));
+            assertEquals("one, two", post.getHeader("X-TRACE"));
+            assertEquals("hello world", post.getBody());
+
+            HttpRequest put = requests.get(1);
+            assertEquals("PUT", put.getMethod());
+            assertEquals("hello world", put.getBody());
+
+            HttpRequest get = requests.get(2);
+            assertEquals("HTTP/1.0", get.getHttpVersion());
+            assertTrue(get.isKeepAliveRequested());
+            assertNull(get.getBody());
+        }
+    }
+
+    @Test
+    void testRejectsRequestsOverLimits() {
+        HttpRequestParser strict = new HttpRequestParser(32, 2, 64, 16);
+        assertStatus(414, strict, "GET /" + "a".repeat(40) + " HTTP/1.1\r\n\r\n");
+        assertStatus(431, new HttpRequestParser(32, 2, 64, 16), "GET / HTTP/1.1\r\nA: 1\r\nB: 2\r\nC: 3\r\n\r\n");
+        assertStatus(431, new HttpRequestParser(32, 2, 64, 16), "GET / HTTP/1.1\r\nA: " + "x".repeat(70) + "\r\n\r\n");
+        assertStatus(413, new HttpRequestParser(32, 2, 64, 16), "POST / HTTP/1.1\r\nContent-Length: 17\r\n\r\n");
+        assertStatus(413, new HttpRequestParser(32, 2, 64, 16),
+                "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n10\r\n" + "x".repeat(16) + "\r\n1\r\n");
+    }
+
+    @Test
+    void testRejectsMalformedRequests() {
+        String[][] cases = {
+                {"400", "GET /\r\n\r\n"},
+                {"400", "GET  / HTTP/1.1\r\n\r\n"},
+                {"400", "GET / HTTP/1.1 extra\r\n\r\n"},
+                {"400", "G(T / HTTP/1.1\r\n\r\n"},
+                {"400", "GET /a b HTTP/1.1\r\n\r\n"},
+                {"400", "GET /%zz HTTP/1.1\r\n\r\n"},
+                {"400", "GET relative HTTP/1.1\r\n\r\n"},
+                {"400", "GET a:// HTTP/1.1\r\n\r\n"},
+                {"400", "GET http://[::1/ HTTP/1.1\r\n\r\n"},
+                {"400", "GET / HTTX/1.1\r\n\r\n"},
+                {"505", "GET / HTTP/2.0\r\n\r\n"},
+                {"400", "GET / HTTP/1.1\r\nNoColon\r\n\r\n"},
+                {"400", "GET / HTTP/1.1\r\nBad Name: x\r\n\r\n"},
+                {"400", "GET / HTTP/1.1\r\nA: 1\r\n folded\r\n\r\n"},
+                {"400", "GET / HTTP/1.1\r\nA: x\u0000y\r\n\r\n"},
+                {"400", "GET / HTTP/1.1\r\nContent-Length: -1\r\n\r\n"},
+                {"400", "GET / HTTP/1.1\r\nContent-Length: 1\r\nContent-Length: 2\r\n\r\n"},
+                {"400", "GET / HTTP/1.1\r\nContent-Length: 1\r\nTransfer-Encoding: chunked\r\n\r\n"},
+                {"501", "GET / HTTP/1.1\r\nTransfer-Encoding: gzip\r\n\r\n"},
+                {"400", "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n"},
+                {"400", "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n1\r\nabc\r\n"},
+        };
+        for (String[] c : cases) {
+            assertStatus(Integer.parseInt(c[0]), new HttpRequestParser(), c[1]);
+        }
+    }
+
+    @Test
+    void testAcceptsAbsoluteFormTargets() throws Exception {
+        List<HttpRequest> requests = feed(new HttpRequestParser(),
+                "GET http://example.com/a?b=1 HTTP/1.1\r\nHost: example.com\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1), 7);
+
+        assertEquals(1, requests.size());
+        assertEquals("/a", requests.get(0).getPath());
+    }
+
+    @Test
+    void testMutatedInputNeverFailsOutsideTheProtocol() {
+        byte[] valid = PIPELINED.getBytes(StandardCharsets.ISO_8859_1);
+        Random random = new Random(42);
+        for (int iteration = 0; iteration < 5000; iteration++) {
+            byte[] mutated = mutate(valid, random);
+            HttpRequestParser parser = new HttpRequestParser(256, 16, 512, 1024);
+            try {
+                for (HttpRequest request : feed(parser, mutated, 1 + random.nextInt(64))) {
+                    assertNotNull(request.getMethod());
+                    assertNotNull(request.getPath());
+                    request.getQueryParameters();
+                    request.getHeaders();
+                    request.getBody();
+                }
+            } catch (HttpParseException e) {
+                assertTrue(e.getStatusCode() >= 400 && e.getStatusCode() < 600);
+            }
+        }
+    }
+
+    private static byte[] mutate(byte[] data, Random random) {
+        List<Byte> bytes = new ArrayList<>(data.length + 8);
+        for (byte b : data) {
+            bytes.add(b);
+        }
+        int edits = 1 + random.nextInt(8);
+        for (int i = 0; i < edits; i++) {
+            int at = random.nextInt(bytes.size());
+            switch (random.nextInt(3)) {
+                case 0:
+                    bytes.set(at, (byte) random.nextInt(256));
+                    break;
+                case 1:
+                    bytes.add(at, "\r\n :%0aF;".getBytes(StandardCharsets.ISO_8859_1)[random.nextInt(9)]);
+                    break;
+                default:
+                    bytes.remove(at);
+                    break;
+            }
+        }
+        byte[] result = new byte[bytes.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bytes.get(i);
+        }
+        return result;
+    }
+
+    private static void assertStatus(int status, HttpRequestParser parser, String request) {
+        HttpParseException error = assertThrows(HttpParseException.class,
+                () -> feed(parser, request.getBytes(StandardCharsets.ISO_8859_1), 7), request);
+        assertEquals(status, error.getStatusCode(), request);
+    }
+
+    private static List<HttpRequest> feed(HttpRequestParser parser, byte[] bytes, int chunk) throws HttpParseException {
+        List<HttpRequest> requests = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; offset += chunk) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, Math.min(chunk, bytes.length - offset));
+            HttpRequest request;
+            while ((request = parser.parse(buffer)) != null) {
+                requests.add(request);
+            }
+            assertFalse(buffer.hasRemaining());
+        }
+        return requests;
+    }
+}
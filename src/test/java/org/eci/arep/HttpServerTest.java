@@ -6,6 +6,8 @@ import org.mockito.*;
 import java.io.*;
 import java.lang.reflect.Method;
 import java.net.*;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.Arrays;
 import java.util.List;
@@ -89,4 +91,106 @@ public class HttpServerTest {
         assertEquals("image/png", HttpServer.getContentType("IMAGE.PNG"));
     }
 
-}
\ No newline at end of file
+    @Test
+    void testKeepAliveServesPipelinedRequestsInOrder() throws Exception {
+        try (ServerSocket listener = new ServerSocket(0);
+             Socket client = new Socket("localhost", listener.getLocalPort())) {
+            Socket accepted = listener.accept();
+            Future<?> served = Executors.newSingleThreadExecutor().submit(() -> {
+                HttpServer.handleClient(accepted);
+                return null;
+            });
+
+            OutputStream out = client.getOutputStream();
+            out.write(("GET /index.html HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /styles.css HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes());
+            out.flush();
+
+            String response = new String(client.getInputStream().readAllBytes());
+            served.get(5, TimeUnit.SECONDS);
+
+            int first = response.indexOf("text/html");
+            int second = response.indexOf("text/css");
+            assertTrue(first >= 0 && second > first);
+            assertTrue(response.contains("Connection: keep-alive"));
+            assertTrue(response.contains("Connection: close"));
+        }
+    }
+
+    @Test
+    void testHeadResponseDeclaresTheBodyWithoutSendingIt() throws Exception {
+        HttpServer.loadComponents(new String[]{});
+        try (ServerSocketChannel listener = ServerSocketChannel.open().bind(new InetSocketAddress("localhost", 0));
+             Socket client = new Socket("localhost", listener.socket().getLocalPort())) {
+            Socket accepted = listener.socket().accept();
+            Future<?> served = Executors.newSingleThreadExecutor().submit(() -> {
+                HttpServer.handleClient(accepted);
+                return null;
+            });
+
+            client.getOutputStream().write(("HEAD /styles.css HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /temp?msg=after HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes());
+
+            String response = new String(client.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            served.get(5, TimeUnit.SECONDS);
+
+            long size;
+            try (InputStream css = HttpServerTest.class.getResourceAsStream("/public/styles.css")) {
+                size = css.readAllBytes().length;
+            }
+            int headEnd = response.indexOf("\r\n\r\n");
+            assertTrue(response.substring(0, headEnd).contains("Content-Length: " + size), response);
+            assertTrue(response.startsWith("HTTP/1.1 200 OK", headEnd + 4), response);
+            assertTrue(response.endsWith("Temp says: after"), response);
+        }
+    }
+
+    @Test
+    void testFailingHandlerAnswers500AndClosesThePipeline() throws Exception {
+        HttpServer.loadComponents(new String[]{});
+        try (ServerSocket listener = new ServerSocket(0);
+             Socket client = new Socket("localhost", listener.getLocalPort())) {
+            Socket accepted = listener.accept();
+            Future<?> served = Executors.newSingleThreadExecutor().submit(() -> {
+                HttpServer.handleClient(accepted);
+                return null;
+            });
+
+            client.getOutputStream().write(("GET /temp?msg=first HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /temp/failing HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /temp?msg=after HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes());
+
+            String response = new String(client.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            served.get(5, TimeUnit.SECONDS);
+
+            int failed = response.indexOf("HTTP/1.1 500 Internal Server Error");
+            assertTrue(response.indexOf("Temp says: first") >= 0 && failed > 0, response);
+            assertTrue(response.indexOf("Connection: close", failed) > failed, response);
+            assertFalse(response.contains("after"), response);
+        }
+    }
+
+    @Test
+    void testStreamedBodyIsChunkedAndPipelinedInOrder() throws Exception {
+        HttpServer.loadComponents(new String[]{});
+        try (ServerSocketChannel listener = ServerSocketChannel.open().bind(new InetSocketAddress("localhost", 0));
+             Socket client = new Socket("localhost", listener.socket().getLocalPort())) {
+            Socket accepted = listener.socket().accept();
+            Future<?> served = Executors.newSingleThreadExecutor().submit(() -> {
+                HttpServer.handleClient(accepted);
+                return null;
+            });
+
+            client.getOutputStream().write(("GET /temp/stream?n=2 HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /temp?msg=after HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes());
+
+            String response = new String(client.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            served.get(5, TimeUnit.SECONDS);
+
+            assertTrue(response.contains("Transfer-Encoding: chunked"), response);
+            assertTrue(response.contains("\r\n\r\na\r\nreading 1\n\r\na\r\nreading 2\n\r\n0\r\n\r\nHTTP/1.1 200 OK"), response);
+            assertTrue(response.endsWith("Temp says: after"), response);
+            assertTrue(response.contains("Date: "), response);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InvokersTest {
+
+    public static String describe(String name, double height) {
+        return name + " is " + height;
+    }
+
+    public static int sum(int a, int b, int c, int d, int e) {
+        return a + b + c + d + e;
+    }
+
+    private final String prefix = "instance ";
+
+    public String greet(String name) {
+        return prefix + name;
+    }
+
+    @Test
+    public void testStaticMethodWithPrimitiveParameter() throws Throwable {
+        Method method = InvokersTest.class.getMethod("describe", String.class, double.class);
+
+        Invoker invoker = Invokers.compile(method, null);
+
+        assertEquals("ana is 1.7", invoker.invoke(new Object[]{"ana", 1.7}));
+    }
+
+    @Test
+    public void testInstanceMethodIsBoundToController() throws Throwable {
+        Method method = InvokersTest.class.getMethod("greet", String.class);
+
+        Invoker invoker = Invokers.compile(method, new InvokersTest());
+
+        assertEquals("instance bob", invoker.invoke(new Object[]{"bob"}));
+    }
+
+    @Test
+    public void testLongSignatureBoxesPrimitiveResult() throws Throwable {
+        Method method = InvokersTest.class.getMethod("sum", int.class, int.class, int.class, int.class, int.class);
+
+        Invoker invoker = Invokers.compile(method, null);
+
+        assertEquals(15, invoker.invoke(new Object[]{1, 2, 3, 4, 5}));
+    }
+
+    @Test
+    public void testControllerExceptionPropagates() throws Throwable {
+        Method method = InvokersTest.class.getMethod("describe", String.class, double.class);
+
+        Invoker invoker = Invokers.compile(method, null);
+
+        assertThrows(NullPointerException.class, () -> invoker.invoke(new Object[]{"ana", null}));
+    }
+}
@@ -0,0 +1,119 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonWritersTest {
+
+    public enum Unit { CELSIUS, KELVIN }
+
+    public record Sample(long at, double value, boolean valid, Unit unit, String note) {
+    }
+
+    public record Series(String name, List<Sample> samples, Map<String, int[]> ranges, Optional<BigDecimal> offset) {
+    }
+
+    public static class Station {
+        public final String id = "st-1";
+        private final List<Station> neighbours = new ArrayList<>();
+
+        public List<Station> getNeighbours() {
+            return neighbours;
+        }
+
+        public boolean isActive() {
+            return true;
+        }
+
+        public float getElevation() {
+            return 2.5f;
+        }
+
+        public String getURL() {
+            return null;
+        }
+    }
+
+    public static class Site {
+        public Object detail;
+    }
+
+    private static String json(Object value) {
+        return new String(JsonOutput.encode(JsonWriters.forType(value.getClass()), value), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testRecordsNestedCollectionsAndMaps() {
+        Map<String, int[]> ranges = new LinkedHashMap<>();
+        ranges.put("day", new int[]{18, 24});
+        ranges.put("night", new int[0]);
+        Series series = new Series("lab", List.of(new Sample(1L, 20.25, true, Unit.KELVIN, null),
+                new Sample(-9, Double.NaN, false, Unit.CELSIUS, "probe")), ranges, Optional.of(new BigDecimal("0.10")));
+
+        assertEquals("{\"name\":\"lab\",\"samples\":[{\"at\":1,\"value\":20.25,\"valid\":true,\"unit\":\"KELVIN\",\"note\":null},"
+                + "{\"at\":-9,\"value\":null,\"valid\":false,\"unit\":\"CELSIUS\",\"note\":\"probe\"}],"
+                + "\"ranges\":{\"day\":[18,24],\"night\":[]},\"offset\":0.10}", json(series));
+        assertEquals("[1,9223372036854775807,-9223372036854775808,1.0E20,100.0]",
+                json(new Object[]{1, Long.MAX_VALUE, Long.MIN_VALUE, 1e20, 100.0}));
+    }
+
+    @Test
+    public void testBeansUseGettersAndPublicFieldsByName() {
+        Station station = new Station();
+        station.neighbours.add(new Station());
+        assertEquals("{\"URL\":null,\"active\":true,\"elevation\":2.5,\"id\":\"st-1\",\"neighbours\":["
+                + "{\"URL\":null,\"active\":true,\"elevation\":2.5,\"id\":\"st-1\",\"neighbours\":[]}]}", json(station));
+
+        Site site = new Site();
+        site.detail = List.of(UUID.fromString("00000000-0000-0000-0000-00000000002a"), station.neighbours.get(0));
+        assertEquals("{\"detail\":[\"00000000-0000-0000-0000-00000000002a\","
+                + "{\"URL\":null,\"active\":true,\"elevation\":2.5,\"id\":\"st-1\",\"neighbours\":[]}]}", json(site));
+    }
+
+    @Test
+    public void testStringsAreEscapedAndEncodedAsUtf8() {
+        assertEquals("[\"quote \\\" slash \\\\ \\n\\t\\u0001\",\"ñ € 🌡\",\"�\"]",
+                json(new String[]{"quote \" slash \\ \n\t\u0001", "ñ € 🌡", "\ud800"}));
+    }
+
+    @Test
+    public void testCyclicGraphsFailAndTextResultsStayPlain() {
+        Station station = new Station();
+        station.neighbours.add(station);
+        assertThrows(IllegalStateException.class, () -> json(station));
+        assertEquals("\"after\"", json("after"));
+
+        assertNull(JsonWriters.forResult(String.class));
+        assertNull(JsonWriters.forResult(int.class));
+        assertNull(JsonWriters.forResult(StreamingBody.class));
+        assertNotNull(JsonWriters.forResult(Sample.class));
+        assertEquals("null", new String(JsonOutput.encode(JsonWriters.forType(Sample.class), null), StandardCharsets.UTF_8));
+    }
+
+    public static CompletableFuture<String> text() {
+        return null;
+    }
+
+    public static CompletableFuture<List<Sample>> samples() {
+        return null;
+    }
+
+    @Test
+    public void testAsynchronousResultsUseTheirValueType() throws Exception {
+        assertNull(JsonWriters.forResult(JsonWritersTest.class.getMethod("text").getGenericReturnType()));
+        JsonWriter writer = JsonWriters.forResult(JsonWritersTest.class.getMethod("samples").getGenericReturnType());
+        assertEquals("[{\"at\":3,\"value\":1.5,\"valid\":true,\"unit\":\"CELSIUS\",\"note\":\"\"}]",
+                new String(JsonOutput.encode(writer, List.of(new Sample(3, 1.5, true, Unit.CELSIUS, ""))), StandardCharsets.UTF_8));
+    }
+}
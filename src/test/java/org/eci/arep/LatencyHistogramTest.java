@@ -0,0 +1,47 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    void testPercentilesStayWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000_000, histogram.getMax());
+        assertEquals(50_000_500, histogram.getMean(), 1);
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            double expected = percentile * 1_000_000;
+            assertEquals(expected, histogram.getPercentile(percentile), expected / LatencyHistogram.SUB_BUCKETS);
+        }
+    }
+
+    @Test
+    void testBucketsCoverTheLongRange() {
+        for (long value : new long[]{0, 1, 31, 32, 33, 63, 64, 1000, 1L << 40, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(LatencyHistogram.upperBound(bucket) >= value, "value " + value);
+            assertTrue(bucket == 0 || LatencyHistogram.upperBound(bucket - 1) < value, "value " + value);
+        }
+    }
+
+    @Test
+    void testCorrectedRecordingFillsInMissedSamples() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordCorrected(100, 10);
+        assertEquals(10, histogram.getCount());
+        assertEquals(10, histogram.getPercentile(0));
+        assertEquals(100, histogram.getPercentile(100));
+
+        LatencyHistogram merged = new LatencyHistogram();
+        merged.record(5);
+        merged.add(histogram);
+        assertEquals(11, merged.getCount());
+        assertEquals(555, merged.getSum());
+    }
+}
@@ -0,0 +1,69 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class MetricsTest {
+
+    @BeforeAll
+    public static void setUp() {
+        HttpServer.loadComponents(new String[]{});
+    }
+
+    @Test
+    void testRequestsAreCountedByRouteAndStatus() throws Exception {
+        Metrics.RouteMetrics byId = Metrics.route("/temp/{id}");
+        long before = byId.getCount(200);
+        long unmatched = Metrics.UNMATCHED.getCount(404);
+
+        handle("/temp/7");
+        handle("/temp/8");
+        handle("/no/such/route");
+
+        assertEquals(before + 2, byId.getCount(200));
+        assertEquals(unmatched + 1, Metrics.UNMATCHED.getCount(404));
+    }
+
+    @Test
+    void testHandlerFailureIsCountedAgainstItsRoute() throws Exception {
+        Metrics.RouteMetrics failing = Metrics.route("/temp/failing");
+        long before = failing.getCount(500);
+        long unmatched = Metrics.UNMATCHED.getCount(500);
+
+        HttpRequest request = new HttpRequest();
+        request.setUri(new URI("/temp/failing"));
+        assertThrows(Exception.class, () -> HttpServer.handle(request));
+
+        assertEquals(before + 1, failing.getCount(500));
+        assertEquals(unmatched, Metrics.UNMATCHED.getCount(500));
+    }
+
+    @Test
+    void testMetricsRouteRendersPrometheusText() throws Exception {
+        handle("/temp/9");
+        HttpResponse response = handle("/metrics");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.send(out);
+        String text = out.toString(StandardCharsets.UTF_8);
+
+        assertTrue(text.contains("Content-Type: " + Metrics.CONTENT_TYPE));
+        assertTrue(text.contains("# TYPE http_requests_total counter"));
+        assertTrue(text.matches("(?s).*http_requests_total\\{route=\"/temp/\\{id}\",status=\"200\"} \\d+\n.*"));
+        assertTrue(text.contains("http_request_duration_seconds_bucket{route=\"/temp/{id}\",le=\"+Inf\"}"));
+        assertTrue(text.contains("http_server_requests_in_flight 1"));
+        assertTrue(text.contains("http_server_bytes_sent_total"));
+    }
+
+    private static HttpResponse handle(String path) throws Exception {
+        HttpRequest request = mock(HttpRequest.class);
+        when(request.getUri()).thenReturn(new URI(path));
+        return HttpServer.handle(request);
+    }
+}
@@ -0,0 +1,238 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NioServerTest {
+    private static int port;
+
+    @BeforeAll
+    public static void startServer() throws Exception {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        System.setProperty("PORT", String.valueOf(port));
+        System.setProperty("SERVER_ENGINE", "nio");
+        System.setProperty("EVENT_LOOP_THREADS", "2");
+        System.setProperty("HEADER_TIMEOUT", "300");
+        Thread server = new Thread(() -> {
+            try {
+                HttpServer.run(new String[]{});
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        server.setDaemon(true);
+        server.start();
+        waitUntilListening();
+    }
+
+    @AfterAll
+    public static void stopServer() {
+        HttpServer.stop();
+        System.clearProperty("PORT");
+        System.clearProperty("SERVER_ENGINE");
+        System.clearProperty("EVENT_LOOP_THREADS");
+        System.clearProperty("HEADER_TIMEOUT");
+    }
+
+    @Test
+    public void testPipelinedRequestsAreAnsweredInOrder() throws Exception {
+        try (Socket client = new Socket("localhost", port)) {
+            OutputStream out = client.getOutputStream();
+            out.write(("GET /temp?msg=first HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /index.html HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /temp?msg=last HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes());
+            out.flush();
+
+            String response = new String(client.getInputStream().readAllBytes());
+            int first = response.indexOf("Temp says: first");
+            int index = response.indexOf("text/html");
+            int last = response.indexOf("Temp says: last");
+            assertTrue(first >= 0 && index > first && last > index, response);
+        }
+    }
+
+    @Test
+    public void testHeadResponseDeclaresTheBodyWithoutSendingIt() throws Exception {
+        try (Socket client = new Socket("localhost", port)) {
+            OutputStream out = client.getOutputStream();
+            out.write(("HEAD /styles.css HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /temp?msg=after HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes());
+            out.flush();
+
+            String response = new String(client.getInputStream().readAllBytes());
+            long size;
+            try (InputStream css = NioServerTest.class.getResourceAsStream("/public/styles.css")) {
+                size = css.readAllBytes().length;
+            }
+            int headEnd = response.indexOf("\r\n\r\n");
+            assertTrue(response.substring(0, headEnd).contains("Content-Length: " + size), response);
+            assertTrue(response.startsWith("HTTP/1.1 200 OK", headEnd + 4), response);
+            assertTrue(response.endsWith("Temp says: after"), response);
+        }
+    }
+
+    @Test
+    public void testFailingHandlerAnswers500AndClosesThePipeline() throws Exception {
+        try (Socket client = new Socket("localhost", port)) {
+            OutputStream out = client.getOutputStream();
+            out.write(("GET /temp?msg=first HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /temp/failing HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /temp?msg=after HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes());
+            out.flush();
+
+            String response = new String(client.getInputStream().readAllBytes());
+            int failed = response.indexOf("HTTP/1.1 500 Internal Server Error");
+            assertTrue(response.indexOf("Temp says: first") >= 0 && failed > 0, response);
+            assertTrue(response.indexOf("Connection: close", failed) > failed, response);
+            assertFalse(response.contains("after"), response);
+        }
+    }
+
+    @Test
+    public void testRequestSplitAcrossWrites() throws Exception {
+        try (Socket client = new Socket("localhost", port)) {
+            OutputStream out = client.getOutputStream();
+            out.write("GET /temp?msg=split HT".getBytes());
+            out.flush();
+            Thread.sleep(50);
+            out.write("TP/1.1\r\nConnection: close\r\n\r\n".getBytes());
+            out.flush();
+
+            String response = new String(client.getInputStream().readAllBytes());
+            assertTrue(response.startsWith("HTTP/1.1 200 OK"));
+            assertTrue(response.contains("Temp says: split"));
+        }
+    }
+
+    @Test
+    public void testMalformedRequestGetsBadRequest() throws Exception {
+        try (Socket client = new Socket("localhost", port)) {
+            client.getOutputStream().write("NONSENSE\r\n\r\n".getBytes());
+            String response = new String(client.getInputStream().readAllBytes());
+            assertTrue(response.startsWith("HTTP/1.1 400 Bad Request"));
+        }
+    }
+
+    @Test
+    public void testStreamedBodyIsSentInChunks() throws Exception {
+        try (Socket client = new Socket("localhost", port)) {
+            client.getOutputStream().write("GET /temp/stream?n=3 HTTP/1.1\r\nConnection: close\r\n\r\n".getBytes());
+            String response = new String(client.getInputStream().readAllBytes());
+            assertTrue(response.contains("Transfer-Encoding: chunked"), response);
+            assertTrue(response.endsWith("a\r\nreading 1\n\r\na\r\nreading 2\n\r\na\r\nreading 3\n\r\n0\r\n\r\n"), response);
+        }
+    }
+
+    @Test
+    public void testAsyncResponsesKeepPipelineOrder() throws Exception {
+        try (Socket client = new Socket("localhost", port)) {
+            client.getOutputStream().write(("GET /temp/async?msg=first&delay=100 HTTP/1.1\r\n\r\n"
+                    + "GET /temp?msg=second HTTP/1.1\r\n\r\n"
+                    + "GET /temp/async/slow HTTP/1.1\r\nConnection: close\r\n\r\n").getBytes());
+            String response = new String(client.getInputStream().readAllBytes());
+            int first = response.indexOf("Async says: first");
+            int second = response.indexOf("Temp says: second");
+            int timeout = response.indexOf("HTTP/1.1 504 Gateway Timeout");
+            assertTrue(first >= 0 && second > first && timeout > second, response);
+        }
+    }
+
+    @Test
+    public void testTricklingHeadersGetRequestTimeout() throws Exception {
+        try (Socket client = new Socket("localhost", port)) {
+            OutputStream out = client.getOutputStream();
+            out.write("GET /temp HTTP/1.1\r\n".getBytes());
+            for (int i = 0; i < 2; i++) {
+                Thread.sleep(100);
+                out.write(("X-Slow-" + i + ": 1\r\n").getBytes());
+            }
+            String response = new String(client.getInputStream().readAllBytes());
+            assertTrue(response.startsWith("HTTP/1.1 408 Request Timeout"), response);
+        }
+    }
+
+    @Test
+    public void testEventStreamPushesEventsFromTheEventLoop() throws Exception {
+        try (Socket client = new Socket("localhost", port)) {
+            client.setSoTimeout(5000);
+            client.getOutputStream().write("GET /temp/events/nio HTTP/1.1\r\n\r\n".getBytes());
+            InputStream in = client.getInputStream();
+            String head = readUntil(in, "\r\n\r\n");
+            assertTrue(head.contains("Content-Type: text/event-stream; charset=utf-8"), head);
+            assertTrue(head.contains("Transfer-Encoding: chunked"), head);
+
+            EventStream topic = TempController.topics.get("nio");
+            topic.publish("reading", "21.5");
+            topic.publish(List.of(1, 2));
+            assertEquals("1b\r\nevent: reading\ndata: 21.5\n\n\r\n", readUntil(in, "\n\n\r\n"));
+            assertEquals("d\r\ndata: [1,2]\n\n\r\n", readUntil(in, "\n\n\r\n"));
+
+            topic.close();
+            assertEquals("0\r\n\r\n", readUntil(in, "\r\n\r\n"));
+            client.getOutputStream().write("GET /temp?msg=after HTTP/1.1\r\nConnection: close\r\n\r\n".getBytes());
+            assertTrue(new String(in.readAllBytes()).contains("Temp says: after"));
+        }
+    }
+
+    private static String readUntil(InputStream in, String end) throws IOException {
+        StringBuilder text = new StringBuilder();
+        while (text.indexOf(end) < 0) {
+            int b = in.read();
+            if (b < 0) {
+                break;
+            }
+            text.append((char) b);
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void testHttp2StreamsShareOneConnection() throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        responses.add(client.sendAsync(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/temp?msg=h2")).build(),
+                HttpResponse.BodyHandlers.ofString()));
+        responses.get(0).join();
+        for (String path : new String[]{"/temp/async?msg=h2", "/temp/stream?n=2", "/logo.png"}) {
+            responses.add(client.sendAsync(HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).build(),
+                    HttpResponse.BodyHandlers.ofString()));
+        }
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            assertEquals(HttpClient.Version.HTTP_2, response.join().version());
+            assertEquals(200, response.join().statusCode());
+        }
+        assertEquals("Temp says: h2", responses.get(0).join().body());
+        assertEquals("Async says: h2", responses.get(1).join().body());
+        assertEquals("reading 1\nreading 2\n", responses.get(2).join().body());
+        assertEquals("118284", responses.get(3).join().headers().firstValue("content-length").orElse(null));
+    }
+
+    private static void waitUntilListening() throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            try (Socket ignored = new Socket("localhost", port)) {
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        fail("Server did not start on port " + port);
+    }
+}
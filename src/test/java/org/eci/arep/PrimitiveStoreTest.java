@@ -0,0 +1,58 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrimitiveStoreTest {
+
+    @Test
+    void testStoresUpdatesAndRemovesKeysAcrossResizes() {
+        PrimitiveStore store = new PrimitiveStore(4);
+        for (int i = 0; i < 10_000; i++) {
+            store.putDouble("user" + i, i + 0.5);
+        }
+        for (int i = 0; i < 10_000; i += 2) {
+            assertTrue(store.remove("user" + i));
+        }
+        store.putDouble("user1", -1.25);
+        store.putDouble("user0", 7);
+
+        assertEquals(5_001, store.size());
+        assertEquals(-1.25, store.getDouble("user1", Double.NaN));
+        assertEquals(7, store.getDouble("user0", Double.NaN));
+        assertEquals(9_999.5, store.getDouble("user9999", Double.NaN));
+        assertTrue(Double.isNaN(store.getDouble("user2", Double.NaN)));
+        assertFalse(store.containsKey("user4"));
+        assertFalse(store.remove("user4"));
+        assertEquals(-1, store.getLong("missing", -1));
+    }
+
+    @Test
+    void testConcurrentAddsAreNotLost() throws InterruptedException {
+        PrimitiveStore store = new PrimitiveStore();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    store.addLong("counter" + (i % 100), 1);
+                    store.getLong("counter" + (i % 7), 0);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long total = 0;
+        for (int i = 0; i < 100; i++) {
+            total += store.getLong("counter" + i, 0);
+        }
+        assertEquals(80_000, total);
+        assertSame(PrimitiveStore.shared("test"), PrimitiveStore.shared("test"));
+    }
+}
@@ -0,0 +1,63 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+
+    @Test
+    public void testBurstIsAdmittedThenRefilled() throws Exception {
+        RateLimiter limiter = new RateLimiter(20, 3, 16);
+        assertTrue(limiter.tryAcquire(42));
+        assertTrue(limiter.tryAcquire(42));
+        assertTrue(limiter.tryAcquire(42));
+        assertFalse(limiter.tryAcquire(42));
+        assertTrue(limiter.tryAcquire(43));
+
+        Thread.sleep(120);
+        assertTrue(limiter.tryAcquire(42));
+    }
+
+    @Test
+    public void testIdleClientsGiveUpTheirSlots() throws Exception {
+        RateLimiter limiter = new RateLimiter(50, 1, 8);
+        // While all eight slots are active, other clients share the overflow bucket.
+        for (long client = 1; client <= 8; client++) {
+            assertTrue(limiter.tryAcquire(client));
+        }
+        assertTrue(limiter.tryAcquire(1000));
+        assertFalse(limiter.tryAcquire(1001));
+
+        Thread.sleep(40);
+        for (long client = 2000; client < 2008; client++) {
+            assertTrue(limiter.tryAcquire(client));
+        }
+        assertFalse(limiter.tryAcquire(2000));
+        assertTrue(limiter.tryAcquire(3000));
+        assertFalse(limiter.tryAcquire(3001));
+    }
+
+    @Test
+    public void testClientKeys() throws Exception {
+        long v4 = RateLimiter.clientKey(InetAddress.getByName("192.168.0.1"));
+        assertEquals(1L << 32 | 0xc0a80001L, v4);
+        assertEquals(RateLimiter.clientKey(InetAddress.getByName("2001:db8::1")),
+                RateLimiter.clientKey(InetAddress.getByName("2001:db8::ffff:2")));
+        assertNotEquals(RateLimiter.clientKey(InetAddress.getByName("2001:db8::1")),
+                RateLimiter.clientKey(InetAddress.getByName("2001:db8:0:1::1")));
+        assertEquals(1, RateLimiter.clientKey(InetAddress.getByName("::1")));
+    }
+
+    @Test
+    public void testTooManyRequestsIsSerializedOnce() {
+        assertSame(RateLimiter.tooManyRequests(true), RateLimiter.tooManyRequests(true));
+        String response = new String(RateLimiter.tooManyRequests(false), StandardCharsets.ISO_8859_1);
+        assertTrue(response.startsWith("HTTP/1.1 429 Too Many Requests\r\n"), response);
+        assertTrue(response.contains("Retry-After: 1\r\n"), response);
+        assertTrue(response.contains("Connection: close\r\n"), response);
+    }
+}
@@ -0,0 +1,92 @@
+package org.eci.arep;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.Socket;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RequestTraceTest {
+
+    @Test
+    public void testRecordingTurnsTracingOnAndOff(@TempDir Path dir) throws Exception {
+        HttpServer.loadComponents(new String[]{});
+        assertNull(RequestTrace.start());
+
+        Path file = dir.resolve("pipeline.jfr");
+        try (Recording recording = new Recording()) {
+            for (String event : List.of("Request", "Parse", "StaticLookup", "Bind", "Invoke", "Write")) {
+                recording.enable("org.eci.arep." + event).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            assertTrue(RequestTrace.isEnabled());
+
+            try (ServerSocket listener = new ServerSocket(0);
+                 Socket client = new Socket("localhost", listener.getLocalPort())) {
+                Socket accepted = listener.accept();
+                Future<?> served = Executors.newSingleThreadExecutor().submit(() -> {
+                    HttpServer.handleClient(accepted);
+                    return null;
+                });
+                client.getOutputStream().write("GET /temp?msg=traced HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                        .getBytes(StandardCharsets.ISO_8859_1));
+                assertTrue(new String(client.getInputStream().readAllBytes(), StandardCharsets.UTF_8).endsWith("Temp says: traced"));
+                served.get(5, TimeUnit.SECONDS);
+            }
+            recording.stop();
+            recording.dump(file);
+        }
+        assertFalse(RequestTrace.isEnabled());
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Set<String> names = events.stream().map(event -> event.getEventType().getName()).collect(Collectors.toSet());
+        assertEquals(Set.of("org.eci.arep.Parse", "org.eci.arep.StaticLookup", "org.eci.arep.Bind",
+                "org.eci.arep.Invoke", "org.eci.arep.Write", "org.eci.arep.Request"), names);
+        RecordedEvent request = events.stream().filter(event -> event.getEventType().getName().equals("org.eci.arep.Request"))
+                .findFirst().orElseThrow();
+        assertEquals("/temp", request.getString("path"));
+        assertEquals(200, request.getInt("status"));
+        assertTrue(request.getDuration("invoke").toNanos() > 0);
+        assertTrue(request.getDuration().compareTo(request.getDuration("invoke")) >= 0);
+    }
+
+    @Test
+    public void testSamplerReportsSlowestRequestsWithStages() throws Exception {
+        SlowRequestSampler sampler = new SlowRequestSampler(2, 60000);
+        long[] waits = {3, 9, 1, 5};
+        for (int i = 0; i < waits.length; i++) {
+            HttpRequest request = new HttpRequest();
+            request.setUri(new URI("/temp/" + i));
+            RequestTrace trace = new RequestTrace();
+            trace.attach(request);
+            trace.addQueueWait(TimeUnit.MILLISECONDS.toNanos(waits[i]));
+            trace.begin(RequestTrace.WRITE);
+            trace.finish(200);
+            sampler.offer(trace);
+        }
+
+        String report = sampler.report();
+        String[] lines = report.split(System.lineSeparator());
+        assertEquals("Slowest 2 of 4 requests:", lines[0]);
+        assertTrue(lines[1].matches("  GET /temp/1 200 9\\.\\d{3} ms \\(queue 9\\.000, parse 0\\.000, static 0\\.000, "
+                + "bind 0\\.000, invoke 0\\.000, write 0\\.\\d{3}\\)"), lines[1]);
+        assertTrue(lines[2].contains(" /temp/3 200 5."), lines[2]);
+        assertEquals(3, lines.length);
+        assertNull(sampler.report());
+    }
+}
@@ -0,0 +1,115 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class ResponseCacheTest {
+    private final HttpRequest request = mock(HttpRequest.class);
+
+    private boolean serve(ResponseCache cache, Object... arguments) {
+        HttpResponse response = new HttpResponse();
+        if (cache.serve(arguments, request, response, () -> fail("Waiting request invoked the handler"))) {
+            return true;
+        }
+        response.setBody("value " + arguments[0]);
+        cache.loaded(arguments, response);
+        return false;
+    }
+
+    @Test
+    void testEvictsFromProbationBeforeEntriesHitAgain() {
+        ResponseCache cache = new ResponseCache(60_000, 2, 0);
+        assertFalse(serve(cache, 1));
+        assertFalse(serve(cache, 2));
+        assertTrue(serve(cache, 1));
+        assertFalse(serve(cache, 3));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertTrue(serve(cache, 1));
+        assertTrue(serve(cache, 3));
+        assertFalse(serve(cache, 2));
+        assertEquals(3, cache.getHits());
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    void testKeysCompareArgumentValues() {
+        ResponseCache cache = new ResponseCache(60_000, 8, 0);
+        assertFalse(serve(cache, "a", new int[]{1, 2}));
+        assertTrue(serve(cache, "a", new int[]{1, 2}));
+        assertFalse(serve(cache, "a", new int[]{2, 1}));
+    }
+
+    @Test
+    void testExpiredEntriesAreLoadedAgain() throws InterruptedException {
+        ResponseCache cache = new ResponseCache(1, 8, 0);
+        assertFalse(serve(cache, 1));
+        Thread.sleep(5);
+        assertFalse(serve(cache, 1));
+    }
+
+    @Test
+    void testWaitingRequestsShareTheOutcome() {
+        ResponseCache cache = new ResponseCache(60_000, 8, 0);
+        Object[] arguments = {1};
+        assertFalse(cache.serve(arguments, request, new HttpResponse(), null));
+        HttpResponse waiting = new HttpResponse();
+        assertTrue(cache.serve(arguments, request, waiting, null));
+        cache.failed(arguments, new IllegalStateException("down"));
+        assertEquals(500, waiting.await().getStatusCode());
+
+        assertFalse(cache.serve(arguments, request, new HttpResponse(), null));
+        waiting = new HttpResponse();
+        assertTrue(cache.serve(arguments, request, waiting, null));
+        HttpResponse loaded = new HttpResponse();
+        loaded.setBody("value");
+        cache.loaded(arguments, loaded);
+        assertEquals("value", new String(waiting.await().getBodyBytes(), StandardCharsets.UTF_8));
+        assertEquals(2, cache.getCoalesced());
+    }
+
+    @Test
+    void testWaitingRequestsInvokeTheHandlerWhenTheResponseIsNotCacheable() {
+        ResponseCache cache = new ResponseCache(60_000, 8, 0);
+        Object[] arguments = {1};
+        assertFalse(cache.serve(arguments, request, new HttpResponse(), null));
+        HttpResponse waiting = new HttpResponse();
+        assertTrue(cache.serve(arguments, request, waiting, () -> {
+            HttpResponse own = new HttpResponse();
+            own.setBody("own");
+            return CompletableFuture.completedFuture(own);
+        }));
+        HttpResponse streamed = new HttpResponse();
+        streamed.setBody(out -> out.write('x'));
+        cache.loaded(arguments, streamed);
+
+        HttpResponse answered = waiting.await();
+        assertEquals(200, answered.getStatusCode());
+        assertEquals("own", new String(answered.getBodyBytes(), StandardCharsets.UTF_8));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testHitsCarryTheHeadersTheHandlerSet() {
+        ResponseCache cache = new ResponseCache(60_000, 8, 0);
+        Object[] arguments = {1};
+        HttpResponse loaded = new HttpResponse();
+        assertFalse(cache.serve(arguments, request, loaded, null));
+        loaded.setStatus(200, "OK");
+        loaded.setHeader("Cache-Control", "max-age=60");
+        loaded.setHeader("Set-Cookie", "seen=1");
+        loaded.setBody("value");
+        cache.loaded(arguments, loaded);
+
+        HttpResponse hit = new HttpResponse();
+        assertTrue(cache.serve(arguments, request, hit, null));
+        assertEquals("max-age=60", hit.getHeader("Cache-Control"));
+        assertEquals("seen=1", hit.getHeader("Set-Cookie"));
+    }
+}
@@ -0,0 +1,38 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RouteIndexTest {
+
+    @Test
+    void testIndexListsRoutesOfEveryClasspathEntry() throws Exception {
+        Map<String, RouteIndex.Entry> routes = RouteIndex.load(getClass().getClassLoader(), "org.eci.arep").stream()
+                .collect(Collectors.toMap(e -> e.path, e -> e));
+
+        assertEquals("hello", routes.get("/hello").handler.getName());
+        RouteIndex.Entry byId = routes.get("/temp/{id}");
+        assertEquals("GET", byId.method);
+        assertEquals(TempController.class.getDeclaredMethod("tempById", int.class, String.class), byId.handler);
+        assertEquals(TempController.class.getDeclaredMethod("readings", List.class, java.util.Optional.class),
+                routes.get("/temp/readings").handler);
+    }
+
+    @Test
+    void testIndexIsFilteredByBasePackage() throws Exception {
+        assertTrue(RouteIndex.load(getClass().getClassLoader(), "org.eci.arep.annotations").isEmpty());
+        assertTrue(RouteIndex.load(getClass().getClassLoader(), "org.eci.are").isEmpty());
+    }
+
+    @Test
+    void testScannerFindsTheSameControllers() throws Exception {
+        List<Class<?>> controllers = ComponentScanner.scanForControllers("org.eci.arep");
+        assertTrue(controllers.contains(TempController.class));
+        assertTrue(ComponentScanner.scanForControllers("org.eci.arep.annotations").isEmpty());
+    }
+}
@@ -0,0 +1,90 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RouterTest {
+
+    private static Route route(String method, String path) throws Exception {
+        return new Route(method, path, RouterTest.class.getDeclaredMethod("route", String.class, String.class), args -> null);
+    }
+
+    @Test
+    public void testLiteralRoutesSharingPrefixes() throws Exception {
+        Router router = new Router();
+        Route users = route("GET", "/users");
+        Route coincidences = route("GET", "/users/coincidences");
+        Route userList = route("GET", "/userlist");
+        router.add("GET", "/users", users);
+        router.add("GET", "/users/coincidences", coincidences);
+        router.add("GET", "/userlist", userList);
+
+        RouteMatch match = new RouteMatch();
+        assertSame(users, router.find("GET", "/users", match));
+        assertSame(coincidences, router.find("GET", "/users/coincidences", match));
+        assertSame(userList, router.find("GET", "/userlist", match));
+        assertNull(router.find("GET", "/user", match));
+        assertNull(router.find("GET", "/users/", match));
+    }
+
+    @Test
+    public void testLiteralWinsOverVariableAndBacktracks() throws Exception {
+        Router router = new Router();
+        Route byId = route("GET", "/users/{id}/posts");
+        Route fresh = route("GET", "/users/new");
+        router.add("GET", "/users/{id}/posts", byId);
+        router.add("GET", "/users/new", fresh);
+
+        RouteMatch match = new RouteMatch();
+        assertSame(fresh, router.find("GET", "/users/new", match));
+        assertSame(byId, router.find("GET", "/users/new/posts", match));
+        assertEquals("new", match.getVariable("id"));
+        assertSame(byId, router.find("GET", "/users/42/posts", match));
+        assertEquals("42", match.getVariable("id"));
+    }
+
+    @Test
+    public void testVariablesMatchRawSegmentsAndAreDecodedWhenRead() throws Exception {
+        Router router = new Router();
+        Route posts = route("GET", "/users/{id}/posts");
+        router.add("GET", "/users/{id}/posts", posts);
+
+        RouteMatch match = new RouteMatch();
+        assertSame(posts, router.find("GET", "/users/a%2Fb/posts", match));
+        assertEquals("a/b", match.getVariable("id"));
+        assertNull(router.find("GET", "/users/a/b/posts", match));
+    }
+
+    @Test
+    public void testWildcardCapturesRemainder() throws Exception {
+        Router router = new Router();
+        Route files = route("GET", "/files/{*path}");
+        router.add("GET", "/files/{*path}", files);
+
+        RouteMatch match = new RouteMatch();
+        assertSame(files, router.find("GET", "/files/css/site/main.css", match));
+        assertEquals("css/site/main.css", match.getVariable("path"));
+    }
+
+    @Test
+    public void testTablesArePerMethod() throws Exception {
+        Router router = new Router();
+        router.add("GET", "/items/{id}", route("GET", "/items/{id}"));
+        router.add("DELETE", "/items/{id}", route("DELETE", "/items/{id}"));
+
+        assertNull(router.find("POST", "/items/7", new RouteMatch()));
+        assertEquals(List.of("DELETE", "GET"), router.allowedMethods("/items/7"));
+        assertTrue(router.allowedMethods("/other").isEmpty());
+    }
+
+    @Test
+    public void testConflictingVariableNamesAreRejected() throws Exception {
+        Router router = new Router();
+        router.add("GET", "/items/{id}", route("GET", "/items/{id}"));
+
+        assertThrows(IllegalArgumentException.class, () -> router.add("GET", "/items/{name}/x", route("GET", "/items/{name}/x")));
+    }
+}
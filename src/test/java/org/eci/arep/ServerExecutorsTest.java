@@ -0,0 +1,60 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ServerExecutorsTest {
+
+    @AfterEach
+    public void clearConfig() {
+        System.clearProperty("EXECUTOR");
+        System.clearProperty("WORKER_THREADS");
+        System.clearProperty("WORKER_QUEUE_SIZE");
+    }
+
+    @Test
+    public void testFixedPoolRejectsWhenQueueIsFull() throws Exception {
+        assertRejectsAfter("fixed", 2);
+    }
+
+    @Test
+    public void testWorkStealingPoolRejectsWhenQueueIsFull() throws Exception {
+        assertRejectsAfter("work-stealing", 2);
+    }
+
+    @Test
+    public void testVirtualModeRejectsWhenQueueIsFull() throws Exception {
+        assertRejectsAfter("virtual", 1);
+    }
+
+    private void assertRejectsAfter(String mode, int accepted) throws Exception {
+        System.setProperty("EXECUTOR", mode);
+        System.setProperty("WORKER_THREADS", "1");
+        System.setProperty("WORKER_QUEUE_SIZE", "1");
+        ExecutorService executor = ServerExecutors.create();
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < accepted; i++) {
+                executor.execute(() -> awaitQuietly(release));
+            }
+            assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.eci.arep;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StaticResourcesTest {
+
+    @Test
+    public void testCachedResourceCountsHitsAndMisses() throws Exception {
+        StaticResources resources = new StaticResources("public");
+
+        assertTrue(resources.serve(new HttpRequest(), "/styles.css", new HttpResponse()));
+        assertTrue(resources.serve(new HttpRequest(), "/styles.css", new HttpResponse()));
+
+        assertEquals(1, resources.getMisses());
+        assertEquals(1, resources.getHits());
+    }
+
+    @Test
+    public void testUnknownPathIsNotServed() throws Exception {
+        StaticResources resources = new StaticResources("public");
+
+        assertFalse(resources.serve(new HttpRequest(), "/users", new HttpResponse()));
+        assertEquals(0, resources.getMisses());
+    }
+
+    @Test
+    public void testIfNoneMatchAnswersNotModified() throws Exception {
+        StaticResources resources = new StaticResources("public");
+        String first = send(resources, new HttpRequest());
+        String etag = header(first, "ETag");
+
+        HttpRequest revalidation = new HttpRequest();
+        revalidation.addHeader("If-None-Match", etag);
+        String second = send(resources, revalidation);
+
+        assertTrue(second.startsWith("HTTP/1.1 304 Not Modified"));
+        assertEquals(etag, header(second, "ETag"));
+        assertFalse(second.contains("<html"));
+    }
+
+    @Test
+    public void testIfModifiedSinceAnswersNotModified() throws Exception {
+        StaticResources resources = new StaticResources("public");
+        String lastModified = header(send(resources, new HttpRequest()), "Last-Modified");
+
+        HttpRequest revalidation = new HttpRequest();
+        revalidation.addHeader("If-Modified-Since", lastModified);
+
+        assertTrue(send(resources, revalidation).startsWith("HTTP/1.1 304 Not Modified"));
+    }
+
+    @Test
+    public void testDatesAreImfFixdateWithTwoDigitDays() throws Exception {
+        long fifth = Instant.parse("2026-10-05T09:30:00Z").toEpochMilli();
+        assertEquals("Mon, 05 Oct 2026 09:30:00 GMT", StaticResources.HTTP_DATE.format(Instant.ofEpochMilli(fifth)));
+        assertEquals("Date: Mon, 05 Oct 2026 09:30:00 GMT\r\n",
+                new String(HttpDate.headerLine(fifth), StandardCharsets.ISO_8859_1));
+
+        // A client that still sends a one-digit day is understood.
+        for (String since : new String[]{"Mon, 05 Oct 2026 09:30:00 GMT", "Mon, 5 Oct 2026 09:30:00 GMT"}) {
+            assertEquals(fifth, ZonedDateTime.parse(since, StaticResources.HTTP_DATE_PARSER).toInstant().toEpochMilli());
+        }
+    }
+
+    @Test
+    public void testCompressibleAssetIsServedGzipped() throws Exception {
+        StaticResources resources = new StaticResources("public");
+        HttpRequest request = new HttpRequest();
+        request.addHeader("Accept-Encoding", "gzip, deflate");
+        HttpResponse response = new HttpResponse();
+
+        assertTrue(resources.serve(request, "/styles.css", response));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.send(out);
+        String head = out.toString();
+
+        assertTrue(head.contains("Content-Encoding: gzip"));
+        assertTrue(head.contains("Vary: Accept-Encoding"));
+        assertTrue(header(head, "ETag").endsWith("-gzip\""));
+    }
+
+    @Test
+    public void testRootPathServesIndex() throws Exception {
+        HttpRequest request = new HttpRequest();
+        request.setUri(new URI("/"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        HttpServer.handleHttpRequest(request, out);
+
+        assertTrue(out.toString().contains("text/html"));
+        assertTrue(out.toString().contains("Cache-Control: no-cache"));
+    }
+
+    private static String send(StaticResources resources, HttpRequest request) throws Exception {
+        HttpResponse response = new HttpResponse();
+        assertTrue(resources.serve(request, "/index.html", response));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.send(out);
+        return out.toString();
+    }
+
+    private static String header(String response, String name) {
+        for (String line : response.split("\r\n")) {
+            if (line.startsWith(name + ": ")) {
+                return line.substring(name.length() + 2);
+            }
+        }
+        return null;
+    }
+}
@@ -1,14 +1,143 @@
 package org.eci.arep;
 
+import org.eci.arep.annotations.Cacheable;
 import org.eci.arep.annotations.GetMapping;
+import org.eci.arep.annotations.PathVariable;
 import org.eci.arep.annotations.RequestParam;
 import org.eci.arep.annotations.RestController;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 @RestController
 public class TempController {
+    static final AtomicInteger cachedCalls = new AtomicInteger();
+    static final AtomicInteger faultyCalls = new AtomicInteger();
+    static final Map<String, EventStream> topics = new ConcurrentHashMap<>();
 
     @GetMapping("/temp")
     public static String temp(@RequestParam(value = "msg", defaultValue = "default") String msg) {
         return "Temp says: " + msg;
     }
-}
\ No newline at end of file
+
+    @GetMapping("/temp/{id}")
+    public static String tempById(@PathVariable("id") int id, @RequestParam(value = "unit", defaultValue = "C") String unit) {
+        return "Temp " + id + " in " + unit;
+    }
+
+    @GetMapping("/temp/readings")
+    public static String readings(@RequestParam("value") List<Integer> values, @RequestParam("label") Optional<String> label) {
+        int sum = 0;
+        for (int value : values) {
+            sum += value;
+        }
+        return label.orElse("none") + ": " + values.size() + " readings, sum " + sum;
+    }
+
+    public record Reading(int sensor, String unit, double value, List<String> tags) {
+    }
+
+    @GetMapping("/temp/report/{id}")
+    public static Reading report(@PathVariable("id") int id, @RequestParam(value = "unit", defaultValue = "C") String unit) {
+        return new Reading(id, unit, 21.5, List.of("indoor", "calibrated"));
+    }
+
+    @GetMapping("/temp/report/{id}/async")
+    public static CompletionStage<List<Reading>> asyncReport(@PathVariable("id") int id) {
+        return CompletableFuture.supplyAsync(() -> List.of(new Reading(id, "C", 20, List.of()), new Reading(id, "F", 68, List.of())));
+    }
+
+    @GetMapping("/temp/echo/{word}")
+    public static String echo(@PathVariable("word") String word) {
+        return "Echo: " + word;
+    }
+
+    @GetMapping("/temp/events/{topic}")
+    public static EventStream events(@PathVariable("topic") String topic) {
+        return topics.computeIfAbsent(topic, name -> new EventStream());
+    }
+
+    @GetMapping("/temp/stream")
+    public static StreamingBody stream(@RequestParam(value = "n", defaultValue = "3") int n) {
+        return out -> {
+            for (int i = 1; i <= n; i++) {
+                out.write(("reading " + i + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        };
+    }
+
+    @GetMapping("/temp/failing")
+    public static String failingHandler() {
+        throw new IllegalStateException("sensor offline");
+    }
+
+    @GetMapping("/temp/stream/broken")
+    public static StreamingBody brokenStream() {
+        return out -> {
+            out.write("reading 1\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            throw new IllegalStateException("sensor offline");
+        };
+    }
+
+    @GetMapping("/temp/async")
+    public static CompletionStage<String> async(@RequestParam(value = "msg", defaultValue = "default") String msg,
+                                                @RequestParam(value = "delay", defaultValue = "20") int delay) {
+        return CompletableFuture.supplyAsync(() -> "Async says: " + msg,
+                CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+    }
+
+    @GetMapping(value = "/temp/async/slow", timeout = 100)
+    public static CompletableFuture<String> slow() {
+        return new CompletableFuture<>();
+    }
+
+    @GetMapping(value = "/temp/limited", rateLimit = 1, burst = 2)
+    public static String limited() {
+        return "Limited";
+    }
+
+    @GetMapping("/temp/async/failing")
+    public static CompletableFuture<String> failing() {
+        return CompletableFuture.failedFuture(new IllegalStateException("sensor offline"));
+    }
+
+    @Cacheable(maxEntries = 16)
+    @GetMapping("/temp/cached/{id}")
+    public static CompletionStage<String> cached(@PathVariable("id") int id) {
+        cachedCalls.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> "Cached " + id,
+                CompletableFuture.delayedExecutor(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Cacheable(maxEntries = 16)
+    @GetMapping("/temp/faulty/{id}")
+    public static Faulty faulty(@PathVariable("id") int id) {
+        faultyCalls.incrementAndGet();
+        return new Faulty();
+    }
+
+    @Cacheable(maxEntries = 16)
+    @GetMapping("/temp/faulty/{id}/async")
+    public static CompletionStage<Faulty> faultyAsync(@PathVariable("id") int id) {
+        faultyCalls.incrementAndGet();
+        return CompletableFuture.supplyAsync(Faulty::new, CompletableFuture.delayedExecutor(20, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * A result that cannot be encoded as JSON.
+     */
+    public static final class Faulty {
+        public String getValue() {
+            throw new IllegalStateException("sensor offline");
+        }
+    }
+}
@@ -6,7 +6,16 @@ import org.junit.jupiter.api.Test;
 import java.io.ByteArrayOutputStream;
 import java.net.Socket;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
@@ -54,4 +63,190 @@ public class TempControllerTest {
         // Verificar que usa el defaultValue
         assertTrue(responseText.contains("Temp says: default"));
     }
+
+    @Test
+    public void testTempEndpoint_withPathVariable() throws Exception {
+        HttpRequest request = mock(HttpRequest.class);
+        when(request.getUri()).thenReturn(new URI("/temp/7"));
+        when(request.getValues("unit")).thenReturn("F");
+
+        Socket socket = mock(Socket.class);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        when(socket.getOutputStream()).thenReturn(baos);
+
+        HttpServer.handleDynamicRequest(socket, request);
+
+        assertTrue(baos.toString().contains("Temp 7 in F"));
+    }
+
+    @Test
+    public void testTempEndpoint_wrongMethod() throws Exception {
+        HttpRequest request = mock(HttpRequest.class);
+        when(request.getUri()).thenReturn(new URI("/temp"));
+        when(request.getMethod()).thenReturn("POST");
+
+        Socket socket = mock(Socket.class);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        when(socket.getOutputStream()).thenReturn(baos);
+
+        HttpServer.handleDynamicRequest(socket, request);
+
+        String responseText = baos.toString();
+        assertTrue(responseText.contains("405 Method Not Allowed"));
+        assertTrue(responseText.contains("Allow: GET"));
+    }
+
+    @Test
+    public void testTempEndpoint_withRepeatedAndOptionalParams() throws Exception {
+        HttpRequest request = new HttpRequest();
+        request.setUri(new URI("/temp/readings?value=3&label=lab%20%C3%B1+north&value=4&value=5"));
+
+        Socket socket = mock(Socket.class);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        when(socket.getOutputStream()).thenReturn(baos);
+
+        HttpServer.handleDynamicRequest(socket, request);
+
+        assertTrue(baos.toString(StandardCharsets.UTF_8).contains("lab \u00f1 north: 3 readings, sum 12"));
+    }
+
+    @Test
+    public void testUnconvertibleOrMissingArgumentsAreBadRequests() throws Exception {
+        String[][] cases = {
+                {"/temp/abc", "Invalid value for id: abc"},
+                {"/temp/readings?value=3&value=x", "Invalid value for value: x"},
+                {"/users?name=x", "Missing parameter: height"},
+                {"/users?height=1.8", "Missing parameter: name"},
+        };
+        for (String[] c : cases) {
+            HttpRequest request = new HttpRequest();
+            request.setUri(new URI(c[0]));
+            HttpResponse response = HttpServer.handle(request);
+            assertEquals(400, response.getStatusCode(), c[0]);
+            assertEquals(c[1], new String(response.getBodyBytes(), StandardCharsets.UTF_8), c[0]);
+        }
+    }
+
+    @Test
+    public void testEncodedSlashStaysInsideItsPathVariable() throws Exception {
+        HttpRequest request = new HttpRequest();
+        request.setTarget("/temp/echo/a%2Fb?x=1");
+        HttpResponse response = HttpServer.handle(request);
+        assertEquals(200, response.getStatusCode());
+        assertEquals("Echo: a/b", new String(response.getBodyBytes(), StandardCharsets.UTF_8));
+
+        request = new HttpRequest();
+        request.setUri(new URI("/temp/echo/caf%C3%A9"));
+        assertEquals("Echo: café", new String(HttpServer.handle(request).getBodyBytes(), StandardCharsets.UTF_8));
+
+        request = new HttpRequest();
+        request.setTarget("/temp/echo/a/b");
+        assertEquals(404, HttpServer.handle(request).getStatusCode());
+    }
+
+    @Test
+    public void testQueryParametersDecodeOnce() {
+        QueryParameters query = QueryParameters.parse("a=1&b=x%26y%3Dz&flag&a=2&&c=%zz&d=");
+
+        assertEquals("1", query.get("a"));
+        assertEquals(List.of("1", "2"), query.getAll("a"));
+        assertEquals("x&y=z", query.get("b"));
+        assertEquals("", query.get("flag"));
+        assertEquals("%zz", query.get("c"));
+        assertEquals("", query.get("d"));
+        assertNull(query.get("missing"));
+        assertEquals(6, query.size());
+    }
+
+    @Test
+    public void testAsyncEndpointsCompleteTimeOutAndFail() throws Exception {
+        HttpRequest request = mock(HttpRequest.class);
+        when(request.getUri()).thenReturn(new URI("/temp/async"));
+        when(request.getValues("msg")).thenReturn("later");
+        HttpResponse response = HttpServer.handle(request);
+        assertNotNull(response.getDeferred());
+        assertEquals("Async says: later", new String(response.await().getBodyBytes(), StandardCharsets.UTF_8));
+
+        HttpRequest slow = mock(HttpRequest.class);
+        when(slow.getUri()).thenReturn(new URI("/temp/async/slow"));
+        assertEquals(504, HttpServer.handle(slow).await().getStatusCode());
+
+        HttpRequest failing = mock(HttpRequest.class);
+        when(failing.getUri()).thenReturn(new URI("/temp/async/failing"));
+        assertEquals(500, HttpServer.handle(failing).await().getStatusCode());
+    }
+
+    @Test
+    public void testRecordResultsAreSentAsJson() throws Exception {
+        HttpRequest request = new HttpRequest();
+        request.setUri(new URI("/temp/report/4?unit=K"));
+        HttpResponse response = HttpServer.handle(request);
+        assertEquals("application/json; charset=utf-8", response.getContentType());
+        assertEquals("{\"sensor\":4,\"unit\":\"K\",\"value\":21.5,\"tags\":[\"indoor\",\"calibrated\"]}",
+                new String(response.getBodyBytes(), StandardCharsets.UTF_8));
+
+        HttpRequest async = new HttpRequest();
+        async.setUri(new URI("/temp/report/2/async"));
+        HttpResponse deferred = HttpServer.handle(async).await();
+        assertEquals("application/json; charset=utf-8", deferred.getContentType());
+        assertEquals("[{\"sensor\":2,\"unit\":\"C\",\"value\":20.0,\"tags\":[]},"
+                        + "{\"sensor\":2,\"unit\":\"F\",\"value\":68.0,\"tags\":[]}]",
+                new String(deferred.getBodyBytes(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCacheableEndpointInvokesHandlerOncePerKey() throws Exception {
+        HttpResponse[] responses = new HttpResponse[8];
+        for (int i = 0; i < responses.length; i++) {
+            HttpRequest request = mock(HttpRequest.class);
+            when(request.getUri()).thenReturn(new URI("/temp/cached/7"));
+            responses[i] = HttpServer.handle(request);
+        }
+        for (HttpResponse response : responses) {
+            assertEquals("Cached 7", new String(response.await().getBodyBytes(), StandardCharsets.UTF_8));
+        }
+
+        HttpRequest padded = mock(HttpRequest.class);
+        when(padded.getUri()).thenReturn(new URI("/temp/cached/007"));
+        HttpResponse hit = HttpServer.handle(padded);
+        assertNull(hit.getDeferred());
+        assertEquals("Cached 7", new String(hit.getBodyBytes(), StandardCharsets.UTF_8));
+        assertEquals(1, TempController.cachedCalls.get());
+        assertTrue(Metrics.render().contains("http_server_response_cache_coalesced_total{route=\"/temp/cached/{id}\"} 7"));
+    }
+
+    @Test
+    public void testRouteRateLimitAppliesPerClient() throws Exception {
+        HttpRequest request = new HttpRequest();
+        request.setUri(new URI("/temp/limited"));
+        long rejected = RateLimiter.getRejected();
+        assertTrue(HttpServer.admit(request, 10));
+        assertTrue(HttpServer.admit(request, 10));
+        assertFalse(HttpServer.admit(request, 10));
+        assertTrue(HttpServer.admit(request, 11));
+        assertEquals(rejected + 1, RateLimiter.getRejected());
+
+        HttpRequest other = new HttpRequest();
+        other.setUri(new URI("/temp"));
+        assertTrue(HttpServer.admit(other, 10));
+    }
+
+    @Test
+    public void testCacheableResultThatFailsToEncodeIsNotCoalescedOn() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            HttpRequest request = new HttpRequest();
+            request.setUri(new URI("/temp/faulty/3"));
+            assertThrows(IllegalStateException.class, () -> HttpServer.handle(request));
+        }
+        assertEquals(2, TempController.faultyCalls.get());
+
+        for (int i = 0; i < 2; i++) {
+            HttpRequest request = new HttpRequest();
+            request.setUri(new URI("/temp/faulty/4/async"));
+            HttpResponse response = HttpServer.handle(request);
+            assertNotNull(response.getDeferred());
+            assertThrows(ExecutionException.class, () -> response.getDeferred().get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(4, TempController.faultyCalls.get());
+    }
 }